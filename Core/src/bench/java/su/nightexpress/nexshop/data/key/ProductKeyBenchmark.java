@@ -0,0 +1,117 @@
+package su.nightexpress.nexshop.data.key;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+
+/**
+ * Compares data lookups with the interned {@link ProductKey} against the previous key of three lower cased strings.
+ * Reports allocated bytes and time per lookup for keys built from ids, global keys cached on products and personal keys.
+ * Run with {@code ./gradlew :Core:productKeyBenchmark}.
+ */
+public class ProductKeyBenchmark {
+
+    private static final int SHOPS    = 50;
+    private static final int PRODUCTS = 200;
+    private static final int PLAYERS  = 20;
+
+    private static final int WARMUP_ROUNDS = 20;
+    private static final int ROUNDS        = 50;
+
+    private static long sink;
+
+    /**
+     * Key as it was before ids were interned.
+     */
+    private record StringKey(String shopId, String productId, String holderId) {
+
+        StringKey(@NotNull String shopId, @NotNull String productId, @NotNull String holderId) {
+            this.shopId = shopId.toLowerCase();
+            this.productId = productId.toLowerCase();
+            this.holderId = holderId.toLowerCase();
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(this.shopId, this.productId, this.holderId);
+        }
+    }
+
+    private interface Lookup {
+
+        Object get(int shop, int product, int player);
+    }
+
+    public static void main(String[] args) {
+        // Ids as configured, with upper case letters, so keys from ids have to be lower cased.
+        String[] shopIds = new String[SHOPS];
+        String[] productIds = new String[PRODUCTS];
+        UUID[] playerIds = new UUID[PLAYERS];
+        for (int shop = 0; shop < SHOPS; shop++) shopIds[shop] = "Shop_" + shop;
+        for (int product = 0; product < PRODUCTS; product++) productIds[product] = "Product_" + product;
+        for (int player = 0; player < PLAYERS; player++) playerIds[player] = UUID.randomUUID();
+
+        Map<StringKey, Object> stringDatas = new HashMap<>();
+        Map<ProductKey, Object> productDatas = new HashMap<>();
+        ProductKey[][] cached = new ProductKey[SHOPS][PRODUCTS]; // As products keep their global key.
+        for (int shop = 0; shop < SHOPS; shop++) {
+            for (int product = 0; product < PRODUCTS; product++) {
+                Object data = new Object();
+                ProductKey key = ProductKey.global(shopIds[shop], productIds[product]);
+                cached[shop][product] = key;
+                stringDatas.put(new StringKey(shopIds[shop], productIds[product], shopIds[shop]), data);
+                productDatas.put(key, data);
+
+                for (UUID playerId : playerIds) {
+                    stringDatas.put(new StringKey(shopIds[shop], productIds[product], playerId.toString()), data);
+                    productDatas.put(key.withHolder(playerId), data);
+                }
+            }
+        }
+
+        System.out.printf("%d datas, %d lookups per round%n", productDatas.size(), SHOPS * PRODUCTS);
+        System.out.printf("%-30s %12s %12s%n", "Lookup", "Bytes/op", "ns/op");
+
+        measure("Old key, global", (shop, product, player) -> stringDatas.get(new StringKey(shopIds[shop], productIds[product], shopIds[shop])));
+        measure("ProductKey from ids, global", (shop, product, player) -> productDatas.get(ProductKey.global(shopIds[shop], productIds[product])));
+        measure("ProductKey cached, global", (shop, product, player) -> productDatas.get(cached[shop][product]));
+        measure("Old key, personal", (shop, product, player) -> stringDatas.get(new StringKey(shopIds[shop], productIds[product], playerIds[player].toString())));
+        measure("ProductKey cached, personal", (shop, product, player) -> productDatas.get(cached[shop][product].withHolder(playerIds[player])));
+
+        if (sink == 42) System.out.println(); // Keeps results alive.
+    }
+
+    private static void measure(@NotNull String name, @NotNull Lookup lookup) {
+        for (int round = 0; round < WARMUP_ROUNDS; round++) {
+            round(lookup);
+        }
+
+        long lookups = (long) ROUNDS * SHOPS * PRODUCTS;
+        long allocated = allocatedBytes();
+        long start = System.nanoTime();
+        for (int round = 0; round < ROUNDS; round++) {
+            round(lookup);
+        }
+        long nanos = System.nanoTime() - start;
+        allocated = allocatedBytes() - allocated;
+
+        System.out.printf("%-30s %12.1f %12.1f%n", name, allocated / (double) lookups, nanos / (double) lookups);
+    }
+
+    private static void round(@NotNull Lookup lookup) {
+        for (int shop = 0; shop < SHOPS; shop++) {
+            for (int product = 0; product < PRODUCTS; product++) {
+                Object data = lookup.get(shop, product, product % PLAYERS);
+                if (data != null) sink++;
+            }
+        }
+    }
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).getCurrentThreadAllocatedBytes();
+    }
+}
@@ -0,0 +1,117 @@
+package su.nightexpress.nexshop.shop;
+
+import org.jetbrains.annotations.NotNull;
+import su.nightexpress.nexshop.api.shop.type.TradeType;
+import su.nightexpress.nexshop.data.DataIndex;
+import su.nightexpress.nexshop.data.key.ProductKey;
+import su.nightexpress.nexshop.data.product.PriceData;
+import su.nightexpress.nexshop.product.price.impl.DemandPricer;
+import su.nightexpress.nightcore.util.wrapper.UniDouble;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Measures a price update pass of demand priced products with 1, 4 and 8 workers.
+ * Products are routed to single thread mailboxes by shop, as the price engine does, and every product is calculated as a separate task.
+ * Run with {@code ./gradlew :Core:priceEngineBenchmark}.
+ */
+public class PriceEngineBenchmark {
+
+    private static final int[] WORKERS  = {1, 4, 8};
+    private static final int   SHOPS    = 200;
+    private static final int   PRODUCTS = 250;
+
+    private static final int WARMUP_PASSES = 20;
+    private static final int PASSES        = 50;
+
+    private record Entry(String shopId, String productId, DemandPricer pricer) {}
+
+    public static void main(String[] args) throws InterruptedException {
+        DataIndex<PriceData> index = new DataIndex<>();
+        List<Entry> entries = entries(index);
+
+        System.out.printf("%d products in %d shops, %d available processors%n", entries.size(), SHOPS, Runtime.getRuntime().availableProcessors());
+        System.out.printf("%-8s %12s %16s %8s%n", "Workers", "Pass ms", "Products/s", "Speedup");
+
+        double baseline = 0D;
+        for (int workers : WORKERS) {
+            double millis = measure(workers, entries, index);
+            if (baseline == 0D) baseline = millis;
+
+            System.out.printf("%-8d %12.2f %16.0f %8.2f%n", workers, millis, entries.size() / millis * 1000D, baseline / millis);
+        }
+    }
+
+    @NotNull
+    private static List<Entry> entries(@NotNull DataIndex<PriceData> index) {
+        long now = System.currentTimeMillis();
+        List<Entry> entries = new ArrayList<>();
+
+        for (int shop = 0; shop < SHOPS; shop++) {
+            String shopId = "shop_" + shop;
+            for (int product = 0; product < PRODUCTS; product++) {
+                String productId = "product_" + product;
+
+                DemandPricer pricer = new DemandPricer();
+                pricer.setHalfLife(3600L);
+                for (TradeType tradeType : TradeType.values()) {
+                    pricer.setPriceRange(tradeType, UniDouble.of(1D, 1000D));
+                    pricer.setInitial(tradeType, 100D);
+                    pricer.setStep(tradeType, 0.5D);
+                }
+
+                index.put(ProductKey.global(shopId, productId), new PriceData(shopId, productId, 100D, 50D, now - 60_000L, 0L, 0, 0, product % 50));
+                entries.add(new Entry(shopId, productId, pricer));
+            }
+        }
+        return entries;
+    }
+
+    private static double measure(int workers, @NotNull List<Entry> entries, @NotNull DataIndex<PriceData> index) throws InterruptedException {
+        ExecutorService[] mailboxes = new ExecutorService[workers];
+        for (int mailbox = 0; mailbox < workers; mailbox++) {
+            mailboxes[mailbox] = Executors.newSingleThreadExecutor();
+        }
+
+        for (int pass = 0; pass < WARMUP_PASSES; pass++) {
+            pass(mailboxes, entries, index);
+        }
+
+        long start = System.nanoTime();
+        for (int pass = 0; pass < PASSES; pass++) {
+            pass(mailboxes, entries, index);
+        }
+        double millis = (System.nanoTime() - start) / 1_000_000D / PASSES;
+
+        for (ExecutorService mailbox : mailboxes) {
+            mailbox.shutdown();
+        }
+        return millis;
+    }
+
+    private static void pass(@NotNull ExecutorService[] mailboxes, @NotNull List<Entry> entries, @NotNull DataIndex<PriceData> index) throws InterruptedException {
+        for (Entry entry : entries) {
+            mailboxes[PriceEngine.indexOf(entry.shopId(), mailboxes.length)].execute(() -> calculate(entry, index));
+        }
+
+        // Mailboxes run tasks in order, so the pass is done when every mailbox gets to its marker.
+        CountDownLatch latch = new CountDownLatch(mailboxes.length);
+        for (ExecutorService mailbox : mailboxes) {
+            mailbox.execute(latch::countDown);
+        }
+        latch.await();
+    }
+
+    // Same steps as the price engine does for expired datas, without currency rounding on publish.
+    private static void calculate(@NotNull Entry entry, @NotNull DataIndex<PriceData> index) {
+        PriceData priceData = index.get(ProductKey.global(entry.shopId(), entry.productId()));
+        if (priceData == null) return;
+
+        PriceEngine.recalculate(entry.pricer(), priceData, System.currentTimeMillis());
+        entry.pricer().setPrices(priceData.getLatestBuyPrice(), priceData.getLatestSellPrice());
+    }
+}
@@ -0,0 +1,218 @@
+package su.nightexpress.nexshop.sync;
+
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import org.jetbrains.annotations.NotNull;
+import su.nightexpress.nexshop.data.product.PriceData;
+import su.nightexpress.nexshop.data.product.StockData;
+import su.nightexpress.nexshop.data.shop.RotationData;
+import su.nightexpress.nexshop.sync.codec.BinarySyncCodec;
+import su.nightexpress.nexshop.sync.codec.JsonSyncCodec;
+import su.nightexpress.nexshop.sync.codec.SyncCodecMode;
+import su.nightexpress.nexshop.sync.codec.SyncCodecs;
+import su.nightexpress.nexshop.sync.codec.SyncMessage;
+import su.nightexpress.nexshop.sync.transport.LoopbackSyncHub;
+import su.nightexpress.nexshop.sync.transport.LoopbackSyncTransport;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Runs several simulated nodes in one JVM over the loopback transport. Every node changes the same price datas concurrently
+ * and sends them in batches, then the time until all nodes handled all messages and agree on every data is measured.
+ * Run with {@code ./gradlew :Core:loopbackSyncBenchmark}.
+ */
+public class LoopbackSyncBenchmark {
+
+    private static final int[] NODES      = {2, 4, 8};
+    private static final int   SHOPS      = 50;
+    private static final int   PRODUCTS   = 20;
+    private static final int   ROUNDS     = 20;
+    private static final int   BATCH_SIZE = 100;
+
+    private static final long TIMEOUT_SECONDS = 120L;
+
+    public static void main(String[] args) throws InterruptedException {
+        run(2, false); // Warmup.
+
+        System.out.printf("%d datas, %d changes per data on every node, batches of %d%n", SHOPS * PRODUCTS, ROUNDS, BATCH_SIZE);
+        System.out.printf("%-6s %10s %12s %10s %14s %10s %10s%n", "Nodes", "Messages", "Deliveries", "Total ms", "Records/s", "Dropped", "Converged");
+        for (int nodes : NODES) {
+            run(nodes, true);
+        }
+    }
+
+    private static void run(int nodeCount, boolean print) throws InterruptedException {
+        LoopbackSyncHub hub = new LoopbackSyncHub();
+        List<Node> nodes = new ArrayList<>();
+        for (int index = 0; index < nodeCount; index++) {
+            nodes.add(new Node("node-" + index, hub.connect()));
+        }
+
+        long start = System.nanoTime();
+        List<Thread> writers = new ArrayList<>();
+        for (Node node : nodes) {
+            Thread thread = new Thread(node::writeAll, node.nodeId + "-writer");
+            writers.add(thread);
+            thread.start();
+        }
+        for (Thread thread : writers) {
+            thread.join();
+        }
+        boolean delivered = hub.awaitDelivery(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        double millis = (System.nanoTime() - start) / 1_000_000D;
+
+        boolean converged = delivered && converged(nodes);
+        long records = (long) nodeCount * (nodeCount - 1) * SHOPS * PRODUCTS * ROUNDS; // Own messages are skipped by the handler.
+        long dropped = nodes.stream().mapToLong(node -> node.handler.getDroppedUpserts()).sum();
+
+        nodes.forEach(node -> node.transport.shutdown());
+
+        if (print) {
+            System.out.printf("%-6d %10d %12d %10.1f %14.0f %10d %10s%n",
+                nodeCount, hub.getSentMessages(), hub.getDeliveredMessages(), millis, records / millis * 1000D, dropped, converged ? "yes" : "NO");
+        }
+    }
+
+    private static boolean converged(@NotNull List<Node> nodes) {
+        Map<String, PriceData> first = nodes.getFirst().target.datas;
+        for (Node node : nodes) {
+            if (node.target.datas.size() != first.size()) return false;
+
+            for (Map.Entry<String, PriceData> entry : first.entrySet()) {
+                PriceData other = node.target.datas.get(entry.getKey());
+                if (other == null) return false;
+                if (!other.getSyncStamp().equals(entry.getValue().getSyncStamp())) return false;
+                PriceData.Snapshot snapshot = other.getSnapshot();
+                if (!snapshot.withValues(entry.getValue().getSnapshot()).equals(snapshot)) return false;
+            }
+        }
+        return true;
+    }
+
+    private static class Node {
+
+        private final String                nodeId;
+        private final LoopbackSyncTransport transport;
+        private final HybridClock           clock;
+        private final SyncCodecs            codecs;
+        private final MemoryTarget          target;
+        private final SyncMessageHandler    handler;
+
+        Node(@NotNull String nodeId, @NotNull LoopbackSyncTransport transport) {
+            this.nodeId = nodeId;
+            this.transport = transport;
+            this.clock = new HybridClock();
+            this.codecs = new SyncCodecs(new JsonSyncCodec(new GsonBuilder().create()), new BinarySyncCodec(512), SyncCodecMode.LATEST, 90_000L);
+            this.target = new MemoryTarget();
+            this.handler = new SyncMessageHandler(nodeId, this.target, Runnable::run, this.codecs, this.clock);
+            this.transport.start(this.handler::handle);
+        }
+
+        void writeAll() {
+            JsonArray entries = new JsonArray();
+            for (int round = 0; round < ROUNDS; round++) {
+                for (int shop = 0; shop < SHOPS; shop++) {
+                    for (int product = 0; product < PRODUCTS; product++) {
+                        entries.add(this.change("shop_" + shop, "product_" + product));
+                        if (entries.size() >= BATCH_SIZE) {
+                            this.send(entries);
+                            entries = new JsonArray();
+                        }
+                    }
+                }
+            }
+            if (!entries.isEmpty()) this.send(entries);
+        }
+
+        // Local change as done by the data manager: new values and a new version, then the encoded record is sent.
+        @NotNull
+        private JsonObject change(@NotNull String shopId, @NotNull String productId) {
+            double buyPrice = ThreadLocalRandom.current().nextInt(1, 1000);
+            long now = System.currentTimeMillis();
+
+            // Encoded under the same lock as received datas are applied with, so the record has values and version of the same change.
+            JsonObject[] encoded = new JsonObject[1];
+            this.target.datas.compute(shopId + "/" + productId, (key, current) -> {
+                PriceData changed = current == null ? new PriceData(shopId, productId, buyPrice, buyPrice / 2D, now, -1L, 0, 0, 0D) : current;
+                changed.update(snapshot -> snapshot.withPrices(buyPrice, buyPrice / 2D, now, -1L));
+                changed.setSyncStamp(new SyncStamp(this.clock.tick(), this.nodeId));
+                encoded[0] = this.handler.encodePriceData(changed);
+                return changed;
+            });
+            return encoded[0];
+        }
+
+        private void send(@NotNull JsonArray entries) {
+            JsonObject data = new JsonObject();
+            data.add("entries", entries);
+            SyncMessage message = new SyncMessage("PRICE_DATA_UPSERT" + RedisSyncManager.BATCH_SUFFIX, this.nodeId, this.codecs.getLatestVersion(), data);
+            this.transport.send(List.of(this.codecs.encode(message)));
+        }
+    }
+
+    /**
+     * Keeps price datas in memory and applies received ones if they are newer, like the data manager does.
+     */
+    private static class MemoryTarget implements SyncTarget {
+
+        private final Map<String, PriceData> datas = new ConcurrentHashMap<>();
+
+        @Override
+        public void applyPriceData(@NotNull PriceData data, @NotNull Consumer<Boolean> callback) {
+            boolean[] applied = new boolean[1];
+            this.datas.compute(data.getShopId() + "/" + data.getProductId(), (key, current) -> {
+                if (current == null) {
+                    applied[0] = true;
+                    return data;
+                }
+                if (data.getSyncStamp().isNone() || data.getSyncStamp().isNewerThan(current.getSyncStamp())) {
+                    current.update(snapshot -> snapshot.withValues(data.getSnapshot()));
+                    current.setSyncStamp(data.getSyncStamp());
+                    applied[0] = true;
+                }
+                return current;
+            });
+            callback.accept(applied[0]);
+        }
+
+        @Override
+        public boolean applyStockData(@NotNull StockData data) {
+            return false;
+        }
+
+        @Override
+        public boolean applyRotationData(@NotNull RotationData data) {
+            return false;
+        }
+
+        @Override
+        public void deletePriceDataByShop(@NotNull String shopId) {}
+
+        @Override
+        public void deletePriceDataByProduct(@NotNull String shopId, @NotNull String productId) {}
+
+        @Override
+        public void deleteStockDataByShop(@NotNull String shopId) {}
+
+        @Override
+        public void deleteStockDataByProduct(@NotNull String shopId, @NotNull String productId) {}
+
+        @Override
+        public void deleteRotationDataByShop(@NotNull String shopId) {}
+
+        @Override
+        public void deleteRotationDataByRotation(@NotNull String shopId, @NotNull String rotationId) {}
+
+        @Override
+        public void warn(@NotNull String message) {
+            System.err.println(message);
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package su.nightexpress.nexshop.sync.codec;
+
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Compares message size and encode/decode time of the JSON and binary sync codecs on typical sync payloads.
+ * Run with {@code ./gradlew :Core:syncCodecBenchmark}.
+ */
+public class SyncCodecBenchmark {
+
+    private static final int WARMUP_ROUNDS = 20_000;
+    private static final int ROUNDS        = 20_000;
+
+    private static long sink;
+
+    public static void main(String[] args) {
+        SyncCodecs json = codecs(SyncCodecMode.JSON);
+        SyncCodecs binary = codecs(SyncCodecMode.LATEST);
+
+        System.out.printf("%-24s %-7s %10s %12s %12s%n", "Payload", "Codec", "Bytes", "Encode ns", "Decode ns");
+        run("Price batch (100)", priceBatch(100), json, binary);
+        run("Stock batch (100)", stockBatch(100), json, binary);
+        run("Single price update", priceData(0), json, binary);
+        run("Auction item", auctionItem(), json, binary);
+
+        if (sink == 42) System.out.println(); // Keeps results alive.
+    }
+
+    @NotNull
+    private static SyncCodecs codecs(@NotNull SyncCodecMode mode) {
+        return new SyncCodecs(new JsonSyncCodec(new GsonBuilder().create()), new BinarySyncCodec(512), mode, 90_000L);
+    }
+
+    private static void run(@NotNull String name, @NotNull JsonObject data, @NotNull SyncCodecs json, @NotNull SyncCodecs binary) {
+        SyncMessage message = new SyncMessage("PRICE_DATA_UPSERT_BATCH", "node-1", 0, data);
+        measure(name, "json", message, json);
+        measure(name, "binary", message, binary);
+    }
+
+    private static void measure(@NotNull String name, @NotNull String codec, @NotNull SyncMessage message, @NotNull SyncCodecs codecs) {
+        byte[] encoded = codecs.encode(message);
+        if (!codecs.decode(encoded).data().equals(message.data())) {
+            throw new IllegalStateException(codec + " codec changed the '" + name + "' payload.");
+        }
+
+        for (int round = 0; round < WARMUP_ROUNDS; round++) {
+            sink += codecs.decode(codecs.encode(message)).data().size();
+        }
+
+        long start = System.nanoTime();
+        for (int round = 0; round < ROUNDS; round++) {
+            sink += codecs.encode(message).length;
+        }
+        long encodeNanos = (System.nanoTime() - start) / ROUNDS;
+
+        start = System.nanoTime();
+        for (int round = 0; round < ROUNDS; round++) {
+            sink += codecs.decode(encoded).data().size();
+        }
+        long decodeNanos = (System.nanoTime() - start) / ROUNDS;
+
+        System.out.printf("%-24s %-7s %10d %12d %12d%n", name, codec, encoded.length, encodeNanos, decodeNanos);
+    }
+
+    @NotNull
+    private static JsonObject priceBatch(int size) {
+        JsonArray entries = new JsonArray();
+        for (int index = 0; index < size; index++) {
+            entries.add(priceData(index));
+        }
+
+        JsonObject data = new JsonObject();
+        data.add("entries", entries);
+        return data;
+    }
+
+    @NotNull
+    private static JsonObject priceData(int index) {
+        JsonObject data = new JsonObject();
+        data.addProperty("shopId", "blocks");
+        data.addProperty("productId", "stone_" + index);
+        data.addProperty("latestBuyPrice", 12.5 + index);
+        data.addProperty("latestSellPrice", 3.0);
+        data.addProperty("latestUpdateDate", 1_760_000_000_000L + index);
+        data.addProperty("expireDate", 1_760_000_600_000L);
+        data.addProperty("purchases", index * 3);
+        data.addProperty("sales", index);
+        data.addProperty("demand", 0.25 * index);
+        return data;
+    }
+
+    @NotNull
+    private static JsonObject stockBatch(int size) {
+        JsonArray entries = new JsonArray();
+        for (int index = 0; index < size; index++) {
+            JsonObject data = new JsonObject();
+            data.addProperty("shopId", "blocks");
+            data.addProperty("productId", "stone_" + index);
+            data.addProperty("holder", "blocks");
+            data.addProperty("buyStock", 640 - index);
+            data.addProperty("sellStock", index);
+            data.addProperty("restockDate", 1_760_003_600_000L);
+            entries.add(data);
+        }
+
+        JsonObject data = new JsonObject();
+        data.add("entries", entries);
+        return data;
+    }
+
+    @NotNull
+    private static JsonObject auctionItem() {
+        JsonObject data = new JsonObject();
+        data.addProperty("id", "6f1c0a52-3b8e-4d6f-9a51-0f2b6d9f3c11");
+        data.addProperty("owner", "2b7e1516-28ae-4d2a-a6d2-abf7158809cf");
+        data.addProperty("itemData", "{\"v\":1,\"item\":\"" + "H4sIAAAAAAAA/".repeat(80) + "\"}");
+        data.addProperty("price", 100.25);
+        data.addProperty("currency", "vault");
+        data.addProperty("expireDate", 1_760_086_400_000L);
+        return data;
+    }
+}
@@ -18,6 +18,7 @@ import su.nightexpress.nexshop.auction.listing.CompletedListing;
 import su.nightexpress.nexshop.config.Lang;
 import su.nightexpress.nexshop.data.shop.RotationData;
 import su.nightexpress.nexshop.product.price.AbstractProductPricer;
+import su.nightexpress.nexshop.product.price.impl.DemandPricer;
 import su.nightexpress.nexshop.product.price.impl.DynamicPricer;
 import su.nightexpress.nexshop.product.price.impl.FloatPricer;
 import su.nightexpress.nexshop.product.price.impl.PlayersPricer;
@@ -30,6 +31,8 @@ import su.nightexpress.nexshop.shop.virtual.impl.Rotation;
 import su.nightexpress.nexshop.shop.virtual.impl.VirtualProduct;
 import su.nightexpress.nexshop.shop.virtual.impl.VirtualShop;
 import su.nightexpress.nexshop.shop.virtual.lang.VirtualLang;
+import su.nightexpress.nexshop.sync.RedisLeaderLease;
+import su.nightexpress.nexshop.sync.RedisSyncManager;
 import su.nightexpress.nexshop.util.ShopUtils;
 import su.nightexpress.nightcore.core.config.CoreLang;
 import su.nightexpress.nightcore.language.LangAssets;
@@ -155,6 +158,8 @@ public class Placeholders extends su.nightexpress.nightcore.util.Placeholders {
     public static final String PRICER_DYNAMIC_STEP_BUY     = "%product_pricer_dynamic_step_buy%";
     public static final String PRICER_DYNAMIC_STEP_SELL    = "%product_pricer_dynamic_step_sell%";
 
+    public static final String PRICER_DEMAND_HALF_LIFE = "%product_pricer_demand_half_life%";
+
     public static final String PRICER_PLAYERS_ADJUST_AMOUNT_BUY  = "%product_pricer_players_adjust_amount_buy%";
     public static final String PRICER_PLAYERS_ADJUST_AMOUNT_SELL = "%product_pricer_players_adjust_amount_sell%";
     public static final String PRICER_PLAYERS_ADJUST_STEP        = "%product_pricer_players_adjust_step%";
@@ -227,6 +232,23 @@ public class Placeholders extends su.nightexpress.nightcore.util.Placeholders {
     public static final String CATEGORY_ID   = "%category_id%";
     public static final String CATEGORY_NAME = "%category_name%";
 
+    public static final String SYNC_QUEUE_SIZE          = "%sync_queue_size%";
+    public static final String SYNC_QUEUE_CAPACITY      = "%sync_queue_capacity%";
+    public static final String SYNC_MESSAGES_PER_SECOND = "%sync_messages_per_second%";
+    public static final String SYNC_LATENCY_AVG         = "%sync_latency_avg%";
+    public static final String SYNC_LATENCY_MAX         = "%sync_latency_max%";
+    public static final String SYNC_SENT                = "%sync_sent%";
+    public static final String SYNC_FAILED              = "%sync_failed%";
+    public static final String SYNC_DROPPED             = "%sync_dropped%";
+    public static final String SYNC_COALESCED           = "%sync_coalesced%";
+    public static final String SYNC_CIRCUIT             = "%sync_circuit%";
+    public static final String SYNC_UPSERTS_APPLIED     = "%sync_upserts_applied%";
+    public static final String SYNC_UPSERTS_DROPPED     = "%sync_upserts_dropped%";
+    public static final String SYNC_IS_LEADER           = "%sync_is_leader%";
+    public static final String SYNC_LEADER              = "%sync_leader%";
+    public static final String SYNC_LAG_MAX             = "%sync_lag_max%";
+    public static final String SYNC_LAGS                = "%sync_lags%";
+
     public record ProductPOV<T extends Product>(@NotNull T product, @Nullable Player player){
 
         @Nullable
@@ -244,6 +266,28 @@ public class Placeholders extends su.nightexpress.nightcore.util.Placeholders {
         .add(GENERIC_ITEM, transaction -> ShopUtils.getProductLogName(transaction.getProduct()))
     );
 
+    @NotNull
+    public static final PlaceholderList<RedisSyncManager> SYNC = PlaceholderList.create(list -> list
+        .add(SYNC_QUEUE_SIZE, manager -> NumberUtil.format(manager.getPublisherStats().queueSize()))
+        .add(SYNC_QUEUE_CAPACITY, manager -> NumberUtil.format(manager.getPublisherStats().queueCapacity()))
+        .add(SYNC_MESSAGES_PER_SECOND, manager -> NumberUtil.format(manager.getPublisherStats().messagesPerSecond()))
+        .add(SYNC_LATENCY_AVG, manager -> NumberUtil.format(manager.getPublisherStats().averageLatencyMillis()))
+        .add(SYNC_LATENCY_MAX, manager -> NumberUtil.format(manager.getPublisherStats().maxLatencyMillis()))
+        .add(SYNC_SENT, manager -> NumberUtil.format(manager.getPublisherStats().sentMessages()))
+        .add(SYNC_FAILED, manager -> NumberUtil.format(manager.getPublisherStats().failedJobs()))
+        .add(SYNC_DROPPED, manager -> NumberUtil.format(manager.getPublisherStats().droppedJobs()))
+        .add(SYNC_COALESCED, manager -> NumberUtil.format(manager.getPublisherStats().coalescedJobs()))
+        .add(SYNC_CIRCUIT, manager -> manager.getPublisherStats().circuitState().name())
+        .add(SYNC_UPSERTS_APPLIED, manager -> NumberUtil.format(manager.getAppliedUpserts()))
+        .add(SYNC_UPSERTS_DROPPED, manager -> NumberUtil.format(manager.getDroppedUpserts()))
+        .add(SYNC_IS_LEADER, manager -> CoreLang.STATE_YES_NO.get(manager.isLeader()))
+        .add(SYNC_LEADER, manager -> manager.getLeaderLease().map(RedisLeaderLease::getLeaderId).orElse("-"))
+        .add(SYNC_LAG_MAX, manager -> NumberUtil.format(manager.getStreamLags().values().stream().mapToLong(Long::longValue).max().orElse(0L)))
+        .add(SYNC_LAGS, manager -> manager.getStreamLags().entrySet().stream()
+            .map(entry -> entry.getKey() + ": " + NumberUtil.format(entry.getValue()))
+            .collect(Collectors.joining(", ")))
+    );
+
     // ------------------------------
     // Shops
     // ------------------------------
@@ -504,6 +548,11 @@ public class Placeholders extends su.nightexpress.nightcore.util.Placeholders {
         .add(PRICER_DYNAMIC_STEP_SELL, pricer -> NumberUtil.format(pricer.getStep(TradeType.SELL)))
     );
 
+    public static final PlaceholderList<DemandPricer> DEMAND_PRICER = PlaceholderList.create(list -> list
+        .add(DYNAMIC_PRICER)
+        .add(PRICER_DEMAND_HALF_LIFE, pricer -> TimeFormats.toLiteral(pricer.getHalfLife() * 1000L))
+    );
+
     public static final PlaceholderList<PlayersPricer> PLAYERS_PRICER = PlaceholderList.create(list -> list
         .add(RANGED_PRICER)
         .add(PRICER_DYNAMIC_INITIAL_BUY, pricer -> NumberUtil.format(pricer.getInitial(TradeType.BUY)))
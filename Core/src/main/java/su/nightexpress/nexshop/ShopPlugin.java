@@ -11,6 +11,7 @@ import su.nightexpress.nexshop.config.Lang;
 import su.nightexpress.nexshop.config.Perms;
 import su.nightexpress.nexshop.data.DataHandler;
 import su.nightexpress.nexshop.data.DataManager;
+import su.nightexpress.nexshop.data.purge.DataPurger;
 import su.nightexpress.nexshop.hook.HookId;
 import su.nightexpress.nexshop.hook.PlaceholderHook;
 import su.nightexpress.nexshop.module.ModuleId;
@@ -31,11 +32,13 @@ import su.nightexpress.nightcore.command.experimental.node.ChainedNode;
 =======
 import su.nightexpress.nightcore.commands.Commands;
 import su.nightexpress.nightcore.commands.command.NightCommand;
+import su.nightexpress.nightcore.commands.context.CommandContext;
 import su.nightexpress.nightcore.config.ConfigValue;
 >>>>>>> 23ae6d0 (v4.21.0)
 import su.nightexpress.nightcore.config.FileConfig;
 import su.nightexpress.nightcore.config.PluginDetails;
 import su.nightexpress.nightcore.core.config.CoreLang;
+import su.nightexpress.nightcore.util.NumberUtil;
 import su.nightexpress.nightcore.util.Plugins;
 
 import java.io.File;
@@ -179,9 +182,69 @@ public class ShopPlugin extends NightPlugin {
                     return true;
                 })
             );
+
+            builder.branch(Commands.hub("purge")
+                .description(Lang.COMMAND_PURGE_DESC)
+                .permission(Perms.COMMAND_PURGE)
+                .branch(Commands.literal("status")
+                    .description(Lang.COMMAND_PURGE_STATUS_DESC)
+                    .executes((context, arguments) -> this.showPurgeStatus(context))
+                )
+                .branch(Commands.literal("pause")
+                    .description(Lang.COMMAND_PURGE_PAUSE_DESC)
+                    .executes((context, arguments) -> {
+                        if (!this.dataHandler.getPurger().pause()) return this.showPurgeStatus(context);
+
+                        context.send(Lang.COMMAND_PURGE_PAUSED);
+                        return true;
+                    })
+                )
+                .branch(Commands.literal("resume")
+                    .description(Lang.COMMAND_PURGE_RESUME_DESC)
+                    .executes((context, arguments) -> {
+                        if (!this.dataHandler.getPurger().resume()) return this.showPurgeStatus(context);
+
+                        context.send(Lang.COMMAND_PURGE_RESUMED);
+                        return true;
+                    })
+                )
+            );
+
+            builder.branch(Commands.literal("sync")
+                .description(Lang.COMMAND_SYNC_DESC)
+                .permission(Perms.COMMAND_SYNC)
+                .executes((context, arguments) -> this.showSyncStatus(context))
+            );
         });
     }
 
+    private boolean showPurgeStatus(@NotNull CommandContext context) {
+        DataPurger.Progress progress = this.dataHandler.getPurger().getProgress();
+        if (!progress.running()) {
+            context.send(Lang.COMMAND_PURGE_NOT_RUNNING);
+            return true;
+        }
+
+        context.send(Lang.COMMAND_PURGE_STATUS, replacer -> replacer
+            .replace(Placeholders.GENERIC_TYPE, progress.paused() ? "paused" : "running")
+            .replace(Placeholders.GENERIC_NAME, String.valueOf(progress.table()))
+            .replace(Placeholders.GENERIC_AMOUNT, NumberUtil.format(progress.tableDeleted()))
+            .replace(Placeholders.GENERIC_TOTAL, NumberUtil.format(progress.totalDeleted()))
+        );
+        return true;
+    }
+
+    private boolean showSyncStatus(@NotNull CommandContext context) {
+        su.nightexpress.nexshop.sync.RedisSyncManager manager = this.redisSyncManager;
+        if (manager == null || !manager.isActive()) {
+            context.send(Lang.COMMAND_SYNC_DISABLED);
+            return true;
+        }
+
+        context.send(Lang.COMMAND_SYNC_STATUS, replacer -> replacer.replace(manager, Placeholders.SYNC));
+        return true;
+    }
+
     @NotNull
     public DataHandler getDataHandler() {
         return this.dataHandler;
@@ -207,6 +270,13 @@ public class ShopPlugin extends NightPlugin {
         return java.util.Optional.ofNullable(this.redisSyncManager);
     }
 
+    /**
+     * @return Whether this server rolls random prices and rotates shops, see {@link su.nightexpress.nexshop.sync.RedisSyncManager#isLeader()}.
+     */
+    public boolean isSyncLeader() {
+        return this.redisSyncManager == null || this.redisSyncManager.isLeader();
+    }
+
     @Nullable
     public VirtualShopModule getVirtualShop() {
         return this.getModule(VirtualShopModule.class).orElse(null);
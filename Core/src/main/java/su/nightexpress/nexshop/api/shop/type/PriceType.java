@@ -1,5 +1,5 @@
 package su.nightexpress.nexshop.api.shop.type;
 
 public enum PriceType {
-    FLAT, FLOAT, DYNAMIC, PLAYER_AMOUNT
+    FLAT, FLOAT, DYNAMIC, PLAYER_AMOUNT, DEMAND
 }
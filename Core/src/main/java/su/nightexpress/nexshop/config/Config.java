@@ -3,6 +3,9 @@ package su.nightexpress.nexshop.config;
 import org.bukkit.event.inventory.ClickType;
 import su.nightexpress.nexshop.api.shop.type.ShopClickAction;
 import su.nightexpress.nexshop.module.ModuleConfig;
+import su.nightexpress.nexshop.sync.SyncOverflowPolicy;
+import su.nightexpress.nexshop.sync.codec.SyncCodecMode;
+import su.nightexpress.nexshop.sync.transport.SyncTransportType;
 import su.nightexpress.nexshop.util.ShopUtils;
 import su.nightexpress.nightcore.config.ConfigValue;
 import su.nightexpress.nightcore.util.Lists;
@@ -37,6 +40,14 @@ public class Config {
         "[Default is 60 seconds]"
     );
 
+    public static final ConfigValue<Integer> SHOP_UPDATE_THREADS = ConfigValue.create("General.Shop_Update_Threads",
+        0,
+        "Sets how many threads are used to calculate product prices.",
+        "Shops are split between the threads, so prices of large amounts of shops are updated faster.",
+        "Set to 0 to use the amount of available processors.",
+        "[Default is 0]"
+    );
+
     public static final ConfigValue<Boolean> GENERAL_BUY_WITH_FULL_INVENTORY = ConfigValue.create("General.Buy_With_Full_Inventory",
         false,
         "Sets wheter players can purchase items from shop with full inventory."
@@ -86,6 +97,46 @@ public class Config {
         "[*] You can disable it if you're on SQLite or don't care about syncing across multiple servers."
     );
 
+    public static final ConfigValue<Integer> DATA_BATCH_SIZE = ConfigValue.create("Data.BatchSize",
+        500,
+        "Sets max. amount of rows written to the database in a single batch statement.",
+        "Inserts and updates of each save interval are collected and sent as a few batches instead of per-row queries.",
+        "[*] If a batch fails, its rows are written one by one."
+    );
+
+    public static final ConfigValue<Boolean> DATA_JOURNAL_ENABLED = ConfigValue.create("Data.Journal.Enabled",
+        true,
+        "When enabled, every price & stock change is also written to a local journal file until it's saved to the database.",
+        "On server crash, unsaved changes are restored from the journal on the next startup.",
+        "[*] Journal is cleared after each successful save."
+    );
+
+    public static final ConfigValue<Integer> DATA_PLAYER_STOCKS_EVICT_DELAY = ConfigValue.create("Data.PlayerStocks.EvictDelay",
+        300,
+        "Sets for how long (in seconds) player's stock & limit datas are kept in memory after the player left the server.",
+        "Player datas are loaded when player joins the server, global stock datas are always kept loaded.",
+        "[*] Datas with unsaved changes are kept until they are saved."
+    );
+
+    public static final ConfigValue<Integer> DATA_PLAYER_STOCKS_MAX_OFFLINE = ConfigValue.create("Data.PlayerStocks.MaxOfflineCached",
+        1000,
+        "Sets max. amount of offline players whose stock & limit datas can be kept in memory.",
+        "When exceeded, datas of players with the oldest access are removed first."
+    );
+
+    public static final ConfigValue<Integer> DATA_PURGE_CHUNK_SIZE = ConfigValue.create("Data.Purge.ChunkSize",
+        500,
+        "Sets max. amount of outdated rows deleted by a single query when database purge is enabled.",
+        "Smaller chunks hold table locks for a shorter time."
+    );
+
+    public static final ConfigValue<Integer> DATA_PURGE_ROWS_PER_SECOND = ConfigValue.create("Data.Purge.RowsPerSecond",
+        2000,
+        "Sets max. amount of outdated rows deleted per second when database purge is enabled.",
+        "Purge runs in background and can be paused with the '/shop purge pause' command.",
+        "[*] Set to 0 or below to disable the limit."
+    );
+
     public static final ConfigValue<String> DATA_PRICE_TABLE = ConfigValue.create("Data.PriceTable",
         "price_data"
     );
@@ -133,6 +184,94 @@ public class Config {
         "Optional node identifier. If empty, a random UUID is used at runtime."
     );
 
+    public static final ConfigValue<SyncTransportType> REDIS_TRANSPORT = ConfigValue.create("Redis.Transport",
+        SyncTransportType.class, SyncTransportType.PUBSUB,
+        "Sets how sync messages are delivered.",
+        "PUBSUB = Redis pub/sub. Messages sent while a server is disconnected from Redis are lost for it.",
+        "STREAMS = Redis stream with a consumer group per server. Servers continue from the last read message after reconnect or restart.",
+        "[*] All servers must use the same transport.",
+        "[*] STREAMS requires a fixed 'Redis.NodeId' per server to resume after restart."
+    );
+
+    public static final ConfigValue<Integer> REDIS_STREAM_MAX_LENGTH = ConfigValue.create("Redis.Streams.Max_Length",
+        10000,
+        "Sets max. amount of messages kept in the sync stream. Older messages are trimmed.",
+        "A server that was away long enough to miss trimmed messages reloads all data from the database instead."
+    );
+
+    public static final ConfigValue<Integer> REDIS_STREAM_MAX_BACKOFF_SECONDS = ConfigValue.create("Redis.Streams.Max_Reconnect_Delay",
+        30,
+        "Sets max. delay (in seconds) between reconnect attempts of the stream reader. Delay doubles after each failed attempt."
+    );
+
+    public static final ConfigValue<Integer> REDIS_PUBLISH_MAX_MESSAGE_SIZE = ConfigValue.create("Redis.Publish.Max_Message_Size",
+        65536,
+        "Max. size (in characters) of a single batch message published on data save.",
+        "Changes of each save are sent as a few batch messages over one connection, bigger batches are split into several messages.",
+        "[*] Min. value is 1024."
+    );
+
+    public static final ConfigValue<Integer> REDIS_PUBLISHER_QUEUE_CAPACITY = ConfigValue.create("Redis.Publish.Queue_Capacity",
+        10000,
+        "Sets max. amount of sync messages and cache changes waiting to be sent to Redis.",
+        "Changes are sent by a single background thread. Newer changes of the same price, stock or rotation replace queued ones."
+    );
+
+    public static final ConfigValue<SyncOverflowPolicy> REDIS_PUBLISHER_OVERFLOW_POLICY = ConfigValue.create("Redis.Publish.Overflow_Policy",
+        SyncOverflowPolicy.class, SyncOverflowPolicy.DROP_OLDEST,
+        "Sets which change is dropped when the publish queue is full.",
+        "DROP_OLDEST = Oldest queued change is dropped.",
+        "DROP_NEWEST = New change is dropped."
+    );
+
+    public static final ConfigValue<Integer> REDIS_PUBLISHER_FAILURE_THRESHOLD = ConfigValue.create("Redis.Publish.Circuit_Breaker.Failure_Threshold",
+        5,
+        "Sets after how many failed sends in a row publishing to Redis is paused.",
+        "Changes are still queued while paused and sent once Redis is reachable again."
+    );
+
+    public static final ConfigValue<Integer> REDIS_PUBLISHER_OPEN_SECONDS = ConfigValue.create("Redis.Publish.Circuit_Breaker.Pause_Seconds",
+        10,
+        "Sets for how long (in seconds) publishing is paused before a single send checks if Redis is reachable again."
+    );
+
+    public static final ConfigValue<SyncCodecMode> REDIS_CODEC_MODE = ConfigValue.create("Redis.Codec.Mode",
+        SyncCodecMode.class, SyncCodecMode.AUTO,
+        "Sets format of the sync messages.",
+        "AUTO = Compact binary format once all servers heard from recently support it, JSON otherwise.",
+        "JSON = Always JSON. Use it if some servers run an older plugin version without binary format support.",
+        "LATEST = Always the latest binary format.",
+        "[*] Older plugin versions announce themselves only when they send messages, so use JSON mode in mixed setups to be safe."
+    );
+
+    public static final ConfigValue<Integer> REDIS_CODEC_COMPRESS_THRESHOLD = ConfigValue.create("Redis.Codec.Compression_Threshold",
+        512,
+        "Strings (such as auction item data) of this length or longer are compressed in binary sync messages.",
+        "[*] Set to 0 to disable compression."
+    );
+
+    public static final ConfigValue<Boolean> REDIS_STOCK_AUTHORITATIVE = ConfigValue.create("Redis.Stock.Authoritative",
+        false,
+        "When enabled, global stock of Virtual Shop products is kept in Redis and changed by atomic scripts,",
+        "so servers can never sell more units than there are in stock altogether.",
+        "Stock is checked and taken before each trade, which costs one Redis round trip per trade.",
+        "[*] Trades are denied while Redis is not available.",
+        "[*] Player limits are not affected."
+    );
+
+    public static final ConfigValue<Boolean> REDIS_LEADER_ENABLED = ConfigValue.create("Redis.Leader.Enabled",
+        true,
+        "When enabled, only one server (the leader) rolls Float prices and rotates shops, other servers get the results by sync.",
+        "Leader is elected by a lease key in Redis. When the leader goes offline, another server takes over once the lease expires.",
+        "[*] Prices and rotations forced by admins are still applied on the server where they were requested."
+    );
+
+    public static final ConfigValue<Integer> REDIS_LEADER_LEASE_SECONDS = ConfigValue.create("Redis.Leader.Lease_Seconds",
+        15,
+        "Sets for how long (in seconds) leadership is kept without a renew. Leader renews it 4 times per lease.",
+        "Smaller values mean faster takeover, but more Redis calls."
+    );
+
     public static boolean isRedisEnabled() {
         return REDIS_ENABLED.get();
     }
@@ -151,4 +290,17 @@ public class Config {
         900,
         "TTL (seconds) for cached stock data. 0 or negative disables TTL."
     );
+
+    public static final ConfigValue<Integer> REDIS_CACHE_MISS_TTL_SECONDS = ConfigValue.create("Redis.Cache.Miss_TTL_Seconds",
+        10,
+        "Sets for how long (in seconds) a cache entry that was not found is not looked up again.",
+        "Cache lookups never block the server: default data is used right away and cached data is merged in when it arrives.",
+        "[*] Set to 0 to disable."
+    );
+
+    public static final ConfigValue<Integer> REDIS_CACHE_SCAN_COUNT = ConfigValue.create("Redis.Cache.Scan_Batch_Size",
+        500,
+        "Amount of keys Redis checks per SCAN/HSCAN call when cleaning up cache entries by pattern.",
+        "Smaller values keep each call shorter on a busy Redis server."
+    );
 }
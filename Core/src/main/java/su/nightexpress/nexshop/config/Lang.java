@@ -30,6 +30,36 @@ public final class Lang implements LangContainer {
 
     public static final TextLocale MODULE_COMMAND_RELOAD_DESC = LangEntry.builder("Module.Command.Reload.Desc").text("Reload the module.");
 
+    public static final TextLocale COMMAND_PURGE_DESC        = LangEntry.builder("Command.Purge.Desc").text("Manage database purge.");
+    public static final TextLocale COMMAND_PURGE_STATUS_DESC = LangEntry.builder("Command.Purge.Status.Desc").text("Show database purge progress.");
+    public static final TextLocale COMMAND_PURGE_PAUSE_DESC  = LangEntry.builder("Command.Purge.Pause.Desc").text("Pause database purge.");
+    public static final TextLocale COMMAND_PURGE_RESUME_DESC = LangEntry.builder("Command.Purge.Resume.Desc").text("Resume database purge.");
+
+    public static final MessageLocale COMMAND_PURGE_STATUS = LangEntry.builder("Command.Purge.Status").chatMessage(
+        GRAY.wrap("Purge is " + SOFT_YELLOW.wrap(GENERIC_TYPE) + ": " + GREEN.wrap(GENERIC_AMOUNT) + " rows deleted from " + GREEN.wrap(GENERIC_NAME) + ", " + GREEN.wrap(GENERIC_TOTAL) + " in total."));
+
+    public static final MessageLocale COMMAND_PURGE_NOT_RUNNING = LangEntry.builder("Command.Purge.NotRunning").chatMessage(
+        GRAY.wrap("Database purge is not running."));
+
+    public static final MessageLocale COMMAND_PURGE_PAUSED = LangEntry.builder("Command.Purge.Paused").chatMessage(
+        GRAY.wrap("Database purge " + SOFT_YELLOW.wrap("paused") + "."));
+
+    public static final MessageLocale COMMAND_PURGE_RESUMED = LangEntry.builder("Command.Purge.Resumed").chatMessage(
+        GRAY.wrap("Database purge " + GREEN.wrap("resumed") + "."));
+
+    public static final TextLocale COMMAND_SYNC_DESC = LangEntry.builder("Command.Sync.Desc").text("Show Redis sync status.");
+
+    public static final MessageLocale COMMAND_SYNC_STATUS = LangEntry.builder("Command.Sync.Status").chatMessage(
+        GRAY.wrap("Publish queue: " + GREEN.wrap(SYNC_QUEUE_SIZE) + "/" + GREEN.wrap(SYNC_QUEUE_CAPACITY) + ", circuit " + SOFT_YELLOW.wrap(SYNC_CIRCUIT)),
+        GRAY.wrap("Sent: " + GREEN.wrap(SYNC_SENT) + " messages (" + GREEN.wrap(SYNC_MESSAGES_PER_SECOND) + "/s), latency avg " + GREEN.wrap(SYNC_LATENCY_AVG) + "ms, max " + GREEN.wrap(SYNC_LATENCY_MAX) + "ms"),
+        GRAY.wrap("Failed: " + SOFT_RED.wrap(SYNC_FAILED) + ", dropped: " + SOFT_RED.wrap(SYNC_DROPPED) + ", coalesced: " + GREEN.wrap(SYNC_COALESCED)),
+        GRAY.wrap("Received upserts applied: " + GREEN.wrap(SYNC_UPSERTS_APPLIED) + ", outdated: " + SOFT_YELLOW.wrap(SYNC_UPSERTS_DROPPED)),
+        GRAY.wrap("Leader: " + GREEN.wrap(SYNC_LEADER) + " (this server: " + SOFT_YELLOW.wrap(SYNC_IS_LEADER) + ")"),
+        GRAY.wrap("Stream lags: " + GREEN.wrap(SYNC_LAGS)));
+
+    public static final MessageLocale COMMAND_SYNC_DISABLED = LangEntry.builder("Command.Sync.Disabled").chatMessage(
+        GRAY.wrap("Redis sync is not enabled."));
+
     public static final MessageLocale SHOP_PRODUCT_ERROR_INVALID_CART_UI = LangEntry.builder("Shop.Product.Error.InvalidCartUI").chatMessage(
         Sound.ENTITY_VILLAGER_NO,
         SOFT_RED.wrap("Could not open purchase menu: Cart UI not found."));
@@ -209,6 +239,12 @@ public final class Lang implements LangContainer {
         .rightClick("change sell")
         .build();
 
+    public static final LangUIButton PRODUCT_EDIT_PRICE_DEMAND_HALF_LIFE = LangUIButton.builder("Editor.Product.Price.Demand.HalfLife", "Demand Half-Life")
+        .current(PRICER_DEMAND_HALF_LIFE)
+        .description("Demand halves over this time (in seconds),", "so prices return to initial values.", "Set 0 to never decay.")
+        .click("change")
+        .build();
+
     public static final LangUIButton PRODUCT_EDIT_PRICE_PLAYERS_INITIAL = LangUIButton.builder("Editor.Product.Price.Players.Initial", "Initial Values")
         .current("Buy", PRICER_DYNAMIC_INITIAL_BUY)
         .current("Sell", PRICER_DYNAMIC_INITIAL_SELL)
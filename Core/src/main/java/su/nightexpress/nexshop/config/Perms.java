@@ -19,6 +19,8 @@ public class Perms {
     public static final UniPermission COMMAND_FLAGS = new UniPermission(PREFIX_COMMAND + "flags", "Allows to use flags in commands.");
 
     public static final UniPermission COMMAND_RELOAD          = new UniPermission(PREFIX_COMMAND + "reload");
+    public static final UniPermission COMMAND_PURGE           = new UniPermission(PREFIX_COMMAND + "purge");
+    public static final UniPermission COMMAND_SYNC            = new UniPermission(PREFIX_COMMAND + "sync");
 
     static {
         PLUGIN.addChildren(
@@ -29,7 +31,9 @@ public class Perms {
         );
 
         COMMAND.addChildren(
-            COMMAND_RELOAD
+            COMMAND_RELOAD,
+            COMMAND_PURGE,
+            COMMAND_SYNC
         );
     }
 }
@@ -4,17 +4,21 @@ import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.reflect.TypeToken;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import su.nightexpress.nexshop.ShopPlugin;
 import su.nightexpress.nexshop.api.shop.Shop;
 import su.nightexpress.nexshop.api.shop.product.Product;
 import su.nightexpress.nexshop.api.shop.type.TradeType;
 import su.nightexpress.nexshop.config.Config;
+import su.nightexpress.nexshop.data.batch.BatchWriter;
 import su.nightexpress.nexshop.data.key.ProductKey;
 import su.nightexpress.nexshop.data.legacy.LegacyStockAmount;
 import su.nightexpress.nexshop.data.legacy.LegacyStockAmountSerializer;
 import su.nightexpress.nexshop.data.legacy.LegacyStockData;
 import su.nightexpress.nexshop.data.product.PriceData;
 import su.nightexpress.nexshop.data.product.StockData;
+import su.nightexpress.nexshop.data.purge.DataPurger;
+import su.nightexpress.nexshop.data.schema.SchemaMigrator;
 import su.nightexpress.nexshop.data.serialize.ItemTagSerializer;
 import su.nightexpress.nexshop.data.shop.RotationData;
 import su.nightexpress.nexshop.shop.chest.ChestShopModule;
@@ -25,20 +29,25 @@ import su.nightexpress.nexshop.shop.virtual.impl.VirtualShop;
 import su.nightexpress.nexshop.user.ShopUser;
 import su.nightexpress.nexshop.user.UserSettings;
 import su.nightexpress.nightcore.db.AbstractUserDataManager;
+import su.nightexpress.nightcore.db.config.DatabaseType;
 import su.nightexpress.nightcore.db.sql.column.Column;
 import su.nightexpress.nightcore.db.sql.column.ColumnType;
 import su.nightexpress.nightcore.db.sql.query.SQLQueries;
 import su.nightexpress.nightcore.db.sql.query.impl.DeleteQuery;
 import su.nightexpress.nightcore.db.sql.query.impl.SelectQuery;
+import su.nightexpress.nightcore.db.sql.query.impl.UpdateQuery;
 import su.nightexpress.nightcore.db.sql.query.type.ValuedQuery;
 import su.nightexpress.nightcore.db.sql.util.WhereOperator;
 import su.nightexpress.nightcore.util.Lists;
 import su.nightexpress.nightcore.util.TimeUtil;
 
+import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.function.Consumer;
 import java.util.function.Function;
 
 public class DataHandler extends AbstractUserDataManager<ShopPlugin, ShopUser> {
@@ -48,6 +57,10 @@ public class DataHandler extends AbstractUserDataManager<ShopPlugin, ShopUser> {
         .registerTypeAdapter(ItemTagSerializer.class, new ItemTagSerializer())
         .create();
 
+    private static final int KEY_LENGTH        = 128;
+    private static final int STREAM_FETCH_SIZE = 1000;
+
+    public static final Column COLUMN_GEN_ID         = Column.of("id", ColumnType.INTEGER);
     public static final Column COLUMN_GEN_SHOP_ID    = Column.of("shopId", ColumnType.STRING);
     public static final Column COLUMN_GEN_PRODUCT_ID = Column.of("productId", ColumnType.STRING);
     public static final Column COLUMN_GEN_HOLDER_ID  = Column.of("holderId", ColumnType.STRING);
@@ -62,6 +75,7 @@ public class DataHandler extends AbstractUserDataManager<ShopPlugin, ShopUser> {
     public static final Column COLUMN_PRICE_EXPIRE_DATE  = Column.of("expireDate", ColumnType.LONG);
     public static final Column COLUMN_PRICE_PURCHASES    = Column.of("purchases", ColumnType.INTEGER);
     public static final Column COLUMN_PRICE_SALES        = Column.of("sales", ColumnType.INTEGER);
+    public static final Column COLUMN_PRICE_DEMAND       = Column.of("demand", ColumnType.DOUBLE);
 
     public static final Column COLUMN_ROTATE_PRODUCTS      = Column.of("products", ColumnType.STRING);
     public static final Column COLUMN_ROTATE_NEXT_ROTATION = Column.of("nextRotation", ColumnType.LONG);
@@ -76,12 +90,32 @@ public class DataHandler extends AbstractUserDataManager<ShopPlugin, ShopUser> {
     private final String tableRotationData;
     private final String tableChestBank;
 
+    private final BatchWriter<PriceData, PriceData.Snapshot>       priceWriter;
+    private final BatchWriter<StockData, StockData.Snapshot>       stockWriter;
+    private final BatchWriter<RotationData, RotationData.Snapshot> rotationWriter;
+    private final DataPurger                                       purger;
+
+    private boolean upsertSupported;
+
     public DataHandler(@NotNull ShopPlugin plugin) {
         super(plugin);
         this.tablePriceData = this.getTablePrefix() + "_" + Config.DATA_PRICE_TABLE.get();
         this.tableStockData = this.getTablePrefix() + "_" + Config.DATA_STOCKS_TABLE.get();
         this.tableRotationData = this.getTablePrefix() + "_" + Config.DATA_ROTATIONS_TABLE.get();
         this.tableChestBank = this.getTablePrefix() + "_chestshop_bank";
+
+        this.priceWriter = DataQueries.priceWriter(plugin, this.tablePriceData);
+        this.stockWriter = DataQueries.stockWriter(plugin, this.tableStockData);
+        this.rotationWriter = DataQueries.rotationWriter(plugin, this.tableRotationData);
+
+        // Deleted rows are dropped from memory as well, so wait until datas are loaded.
+        this.purger = new DataPurger(plugin, this.connector, COLUMN_GEN_ID, () -> plugin.getDataManager() != null && plugin.getDataManager().isLoaded())
+            .target(this.tablePriceData, COLUMN_PRICE_LAST_UPDATED, Lists.newList(COLUMN_GEN_SHOP_ID, COLUMN_GEN_PRODUCT_ID),
+                (row, deadline) -> plugin.getDataManager().removePurgedPriceData(row.key(0), row.key(1), deadline))
+            .target(this.tableStockData, COLUMN_STOCK_RESTOCK_DATE, Lists.newList(COLUMN_GEN_SHOP_ID, COLUMN_GEN_PRODUCT_ID, COLUMN_GEN_HOLDER_ID),
+                (row, deadline) -> plugin.getDataManager().removePurgedStockData(row.key(0), row.key(1), row.key(2), deadline))
+            .target(this.tableRotationData, COLUMN_ROTATE_NEXT_ROTATION, Lists.newList(COLUMN_GEN_SHOP_ID, COLUMN_GEN_HOLDER_ID),
+                (row, deadline) -> plugin.getDataManager().removePurgedRotationData(row.key(0), row.key(1), deadline));
     }
 
     @Override
@@ -99,20 +133,22 @@ public class DataHandler extends AbstractUserDataManager<ShopPlugin, ShopUser> {
 
         // TODO ChestShop bank purge
 
-        if (SQLQueries.hasTable(this.connector, this.tablePriceData)) {
-            DeleteQuery<Long> query = new DeleteQuery<Long>().where(DataHandler.COLUMN_PRICE_LAST_UPDATED, WhereOperator.SMALLER, String::valueOf);
-            this.delete(this.tablePriceData, query, deadlineMs);
-        }
-        if (SQLQueries.hasTable(this.connector, this.tableStockData)) {
-            DeleteQuery<Long> query = new DeleteQuery<Long>().where(DataHandler.COLUMN_STOCK_RESTOCK_DATE, WhereOperator.SMALLER, String::valueOf);
-            this.delete(this.tableStockData, query, deadlineMs);
-        }
-        if (SQLQueries.hasTable(this.connector, this.tableRotationData)) {
-            DeleteQuery<Long> query = new DeleteQuery<Long>().where(DataHandler.COLUMN_ROTATE_NEXT_ROTATION, WhereOperator.SMALLER, String::valueOf);
-            this.delete(this.tableRotationData, query, deadlineMs);
+        if (!this.purger.start(deadlineMs, Config.DATA_PURGE_CHUNK_SIZE.get(), Config.DATA_PURGE_ROWS_PER_SECOND.get())) {
+            this.plugin.warn("Data purge is already running.");
         }
     }
 
+    @Override
+    protected void onShutdown() {
+        this.purger.stop();
+        super.onShutdown();
+    }
+
+    @NotNull
+    public DataPurger getPurger() {
+        return this.purger;
+    }
+
     @Override
     protected void onInitialize() {
         super.onInitialize();
@@ -134,7 +170,8 @@ public class DataHandler extends AbstractUserDataManager<ShopPlugin, ShopUser> {
             COLUMN_PRICE_LAST_UPDATED,
             COLUMN_PRICE_EXPIRE_DATE,
             COLUMN_PRICE_PURCHASES,
-            COLUMN_PRICE_SALES
+            COLUMN_PRICE_SALES,
+            COLUMN_PRICE_DEMAND
         ));
 
         this.createTable(this.tableRotationData, Lists.newList(
@@ -148,6 +185,40 @@ public class DataHandler extends AbstractUserDataManager<ShopPlugin, ShopUser> {
             COLUMN_BANK_HOLDER,
             COLUMN_BANK_BALANCE
         ));
+
+        this.migrateSchema();
+    }
+
+    private void migrateSchema() {
+        int version = new SchemaMigrator(this.plugin, this.connector, this.getStorageType(), this.getTablePrefix() + "_schema", "data")
+            .register(1, "unique keys for data tables", (connection, type) -> {
+                SchemaMigrator.deduplicate(connection, this.tablePriceData, "lastUpdated", "shopId", "productId");
+                SchemaMigrator.addUniqueKey(connection, type, this.tablePriceData, this.tablePriceData + "_key", KEY_LENGTH, "shopId", "productId");
+
+                SchemaMigrator.deduplicate(connection, this.tableStockData, "restockDate", "shopId", "productId", "holderId");
+                SchemaMigrator.addUniqueKey(connection, type, this.tableStockData, this.tableStockData + "_key", KEY_LENGTH, "shopId", "productId", "holderId");
+
+                SchemaMigrator.deduplicate(connection, this.tableRotationData, "nextRotation", "shopId", "holderId");
+                SchemaMigrator.addUniqueKey(connection, type, this.tableRotationData, this.tableRotationData + "_key", KEY_LENGTH, "shopId", "holderId");
+
+                SchemaMigrator.deduplicate(connection, this.tableChestBank, null, "holder");
+                SchemaMigrator.addUniqueKey(connection, type, this.tableChestBank, this.tableChestBank + "_key", KEY_LENGTH, "holder");
+            })
+            .register(2, "purge indexes", (connection, type) -> {
+                SchemaMigrator.addIndex(connection, type, this.tablePriceData, this.tablePriceData + "_updated", "lastUpdated");
+                SchemaMigrator.addIndex(connection, type, this.tableStockData, this.tableStockData + "_restock", "restockDate");
+                SchemaMigrator.addIndex(connection, type, this.tableRotationData, this.tableRotationData + "_next", "nextRotation");
+            })
+            .register(3, "player stock index", (connection, type) -> {
+                SchemaMigrator.addIndex(connection, type, this.tableStockData, this.tableStockData + "_holder", "holderId");
+            })
+            .register(4, "price demand column", (connection, type) -> {
+                SchemaMigrator.addColumn(connection, this.tablePriceData, "demand", "DOUBLE NOT NULL DEFAULT 0");
+            })
+            .migrate();
+
+        // Upserts rely on the unique keys, otherwise they would insert duplicated rows.
+        this.upsertSupported = version >= 1;
     }
 
     @Override
@@ -253,56 +324,119 @@ public class DataHandler extends AbstractUserDataManager<ShopPlugin, ShopUser> {
 
 
 
-    @NotNull
-    public List<StockData> loadStockDatas() {
-        return this.select(this.tableStockData, DataQueries.STOCK_DATA_LOADER, SelectQuery::all);
+    public void streamGlobalStockDatas(@NotNull Consumer<StockData> consumer) {
+        // Global stock rows use shop id as holder id, per-player rows are loaded on demand.
+        String where = COLUMN_GEN_HOLDER_ID.getNameEscaped() + " = " + COLUMN_GEN_SHOP_ID.getNameEscaped();
+        this.stream(this.tableStockData, where, DataQueries.STOCK_DATA_LOADER, consumer);
     }
 
     @NotNull
-    public List<PriceData> loadPriceDatas() {
-        return this.select(this.tablePriceData, DataQueries.PRICE_DATA_LOADER, SelectQuery::all);
+    public List<StockData> loadPlayerStockDatas(@NotNull UUID playerId) {
+        return this.select(this.tableStockData, DataQueries.STOCK_DATA_LOADER,
+            query -> query.all().where(COLUMN_GEN_HOLDER_ID, WhereOperator.EQUAL, playerId.toString())
+        );
     }
 
-    @NotNull
-    public List<RotationData> loadRotationDatas() {
-        return this.select(this.tableRotationData, DataQueries.ROTATION_DATA_LOADER, SelectQuery::all);
+    public void expireStockDatas(@NotNull Set<Product> products, long restockDate) {
+        UpdateQuery<Product> query = new UpdateQuery<Product>()
+            .setValue(COLUMN_STOCK_RESTOCK_DATE, product -> String.valueOf(restockDate))
+            .where(COLUMN_GEN_SHOP_ID, WhereOperator.EQUAL, product -> product.getShop().getId().toLowerCase())
+            .where(COLUMN_GEN_PRODUCT_ID, WhereOperator.EQUAL, product -> product.getId().toLowerCase());
+
+        this.update(this.tableStockData, query, products);
+    }
+
+    public void streamPriceDatas(@NotNull Consumer<PriceData> consumer) {
+        this.stream(this.tablePriceData, null, DataQueries.PRICE_DATA_LOADER, consumer);
+    }
+
+    public void streamRotationDatas(@NotNull Consumer<RotationData> consumer) {
+        this.stream(this.tableRotationData, null, DataQueries.ROTATION_DATA_LOADER, consumer);
+    }
+
+    /**
+     * Reads table rows ordered by shop id and passes them to the consumer as they arrive, without collecting the whole result first.
+     *
+     * @throws IllegalStateException If the table could not be read to the end.
+     */
+    private <T> void stream(@NotNull String table, @Nullable String where, @NotNull Function<ResultSet, T> loader, @NotNull Consumer<T> consumer) {
+        String sql = "SELECT * FROM " + table + (where == null ? "" : " WHERE " + where) + " ORDER BY " + COLUMN_GEN_SHOP_ID.getNameEscaped();
+
+        try (Connection connection = this.connector.getConnection();
+             Statement statement = connection.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+
+            // MySQL driver reads the whole result into memory unless the fetch size is MIN_VALUE.
+            statement.setFetchSize(this.getStorageType() == DatabaseType.MYSQL ? Integer.MIN_VALUE : STREAM_FETCH_SIZE);
+
+            try (ResultSet resultSet = statement.executeQuery(sql)) {
+                while (resultSet.next()) {
+                    T data = loader.apply(resultSet);
+                    if (data != null) consumer.accept(data);
+                }
+            }
+        }
+        catch (SQLException exception) {
+            // Callers must know the table is incomplete, or missing rows would be created again with default values.
+            throw new IllegalStateException("Could not read '" + table + "' table", exception);
+        }
     }
 
     public void insertStockData(@NotNull StockData data) {
-        this.insert(this.tableStockData, DataQueries.STOCK_DATA_INSERT, data);
+        this.stockWriter.queueInsert(data);
     }
 
     public void insertPriceData(@NotNull PriceData data) {
-        this.insert(this.tablePriceData, DataQueries.PRICE_DATA_INSERT, data);
+        this.priceWriter.queueInsert(data);
     }
 
     public void insertRotationData(@NotNull RotationData rotationData) {
-        this.insert(this.tableRotationData, DataQueries.ROTATION_DATA_INSERT, rotationData);
+        this.rotationWriter.queueInsert(rotationData);
     }
 
     public void updateStockDatas(@NotNull Set<StockData> dataSet) {
-        this.update(this.tableStockData, DataQueries.STOCK_DATA_UPDATE, dataSet);
+        dataSet.forEach(data -> {
+            if (data.isChanged()) this.stockWriter.queueUpdate(data);
+        });
+        this.flushWrites(this.stockWriter);
     }
 
     public void updatePriceDatas(@NotNull Set<PriceData> dataSet) {
-        this.update(this.tablePriceData, DataQueries.PRICE_DATA_UPDATE, dataSet);
+        dataSet.forEach(data -> {
+            if (data.isChanged()) this.priceWriter.queueUpdate(data);
+        });
+        this.flushWrites(this.priceWriter);
     }
 
     public void updateRotationDatas(@NotNull Set<RotationData> dataSet) {
-        this.update(this.tableRotationData, DataQueries.ROTATION_DATA_UPDATE, dataSet);
+        this.rotationWriter.queueUpdates(dataSet);
+        this.flushWrites(this.rotationWriter);
+    }
+
+    public void flushWrites() {
+        this.flushWrites(this.priceWriter);
+        this.flushWrites(this.stockWriter);
+        this.flushWrites(this.rotationWriter);
+    }
+
+    private void flushWrites(@NotNull BatchWriter<?, ?> writer) {
+        writer.flush(this.connector, this.getStorageType(), Config.DATA_BATCH_SIZE.get(), this.upsertSupported);
     }
 
     public void deleteRotationData(@NotNull VirtualShop shop) {
+        this.rotationWriter.discard(data -> data.getShopId().equalsIgnoreCase(shop.getId()));
         this.delete(this.tableRotationData, DataQueries.ROTATION_DATA_DELETE_BY_SHOP, shop);
     }
 
     public void deleteRotationData(@NotNull Rotation rotation) {
+        this.rotationWriter.discard(data -> data.getShopId().equalsIgnoreCase(rotation.getShop().getId()) && data.getRotationId().equalsIgnoreCase(rotation.getId()));
         this.delete(this.tableRotationData, DataQueries.ROTATION_DATA_DELETE_BY_SELF, rotation);
     }
 
     public void deleteStockData(@NotNull Shop shop) {
+        this.stockWriter.discard(data -> data.getShopId().equalsIgnoreCase(shop.getId()));
+
         DeleteQuery<Shop> query = new DeleteQuery<>();
-        query.whereIgnoreCase(DataHandler.COLUMN_GEN_SHOP_ID, WhereOperator.EQUAL, Shop::getId);
+        query.where(DataHandler.COLUMN_GEN_SHOP_ID, WhereOperator.EQUAL, shop -> shop.getId().toLowerCase());
         this.delete(this.tableStockData, query, shop);
     }
 
@@ -311,9 +445,11 @@ public class DataHandler extends AbstractUserDataManager<ShopPlugin, ShopUser> {
     }
 
     public void deleteStockDatas(@NotNull Set<Product> products) {
+        products.forEach(product -> this.stockWriter.discard(data -> data.getShopId().equalsIgnoreCase(product.getShop().getId()) && data.getProductId().equalsIgnoreCase(product.getId())));
+
         DeleteQuery<Product> query = new DeleteQuery<>();
-        query.whereIgnoreCase(DataHandler.COLUMN_GEN_SHOP_ID, WhereOperator.EQUAL, p -> p.getShop().getId());
-        query.whereIgnoreCase(DataHandler.COLUMN_GEN_PRODUCT_ID, WhereOperator.EQUAL, Product::getId);
+        query.where(DataHandler.COLUMN_GEN_SHOP_ID, WhereOperator.EQUAL, p -> p.getShop().getId().toLowerCase());
+        query.where(DataHandler.COLUMN_GEN_PRODUCT_ID, WhereOperator.EQUAL, p -> p.getId().toLowerCase());
         this.delete(this.tableStockData, query, products);
     }
 
@@ -324,8 +460,10 @@ public class DataHandler extends AbstractUserDataManager<ShopPlugin, ShopUser> {
     }
 
     public void deletePriceData(@NotNull String shopId) {
+        this.priceWriter.discard(data -> data.getShopId().equalsIgnoreCase(shopId));
+
         DeleteQuery<String> query = new DeleteQuery<>();
-        query.whereIgnoreCase(DataHandler.COLUMN_GEN_SHOP_ID, WhereOperator.EQUAL, id -> shopId);
+        query.where(DataHandler.COLUMN_GEN_SHOP_ID, WhereOperator.EQUAL, id -> shopId.toLowerCase());
         this.delete(this.tablePriceData, query, shopId);
     }
 
@@ -334,9 +472,11 @@ public class DataHandler extends AbstractUserDataManager<ShopPlugin, ShopUser> {
     }
 
     public void deletePriceDatas(@NotNull Set<Product> products) {
+        products.forEach(product -> this.priceWriter.discard(data -> data.getShopId().equalsIgnoreCase(product.getShop().getId()) && data.getProductId().equalsIgnoreCase(product.getId())));
+
         DeleteQuery<Product> query = new DeleteQuery<>();
-        query.whereIgnoreCase(DataHandler.COLUMN_GEN_SHOP_ID, WhereOperator.EQUAL, p -> p.getShop().getId());
-        query.whereIgnoreCase(DataHandler.COLUMN_GEN_PRODUCT_ID, WhereOperator.EQUAL, Product::getId);
+        query.where(DataHandler.COLUMN_GEN_SHOP_ID, WhereOperator.EQUAL, p -> p.getShop().getId().toLowerCase());
+        query.where(DataHandler.COLUMN_GEN_PRODUCT_ID, WhereOperator.EQUAL, p -> p.getId().toLowerCase());
         this.delete(this.tablePriceData, query, products);
     }
 
@@ -0,0 +1,128 @@
+package su.nightexpress.nexshop.data;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import su.nightexpress.nexshop.data.key.ProductKey;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Product datas stored in a flat map for key lookups, and in shop -> product -> holder maps,
+ * so shop and product scoped operations only touch the affected datas.
+ * Reads are lock-free, writes are synchronized to keep both views consistent.
+ */
+public class DataIndex<V> {
+
+    private final Map<ProductKey, V>                       datas;
+    private final Map<String, Map<String, Map<String, V>>> shops;
+
+    public DataIndex() {
+        this.datas = new ConcurrentHashMap<>();
+        this.shops = new ConcurrentHashMap<>();
+    }
+
+    @Nullable
+    public V get(@NotNull ProductKey key) {
+        return this.datas.get(key);
+    }
+
+    public synchronized void put(@NotNull ProductKey key, @NotNull V value) {
+        this.datas.put(key, value);
+        this.shops.computeIfAbsent(key.getShopId(), k -> new ConcurrentHashMap<>())
+            .computeIfAbsent(key.getProductId(), k -> new ConcurrentHashMap<>())
+            .put(key.getHolderId(), value);
+    }
+
+    @Nullable
+    public synchronized V remove(@NotNull ProductKey key) {
+        V removed = this.datas.remove(key);
+        if (removed == null) return null;
+
+        Map<String, Map<String, V>> products = this.shops.get(key.getShopId());
+        Map<String, V> holders = products == null ? null : products.get(key.getProductId());
+        if (holders != null) {
+            holders.remove(key.getHolderId());
+            if (holders.isEmpty()) products.remove(key.getProductId());
+            if (products.isEmpty()) this.shops.remove(key.getShopId());
+        }
+        return removed;
+    }
+
+    /**
+     * Removes value of the key only if it matches the predicate, checked under the index lock.
+     */
+    @Nullable
+    public synchronized V removeIf(@NotNull ProductKey key, @NotNull Predicate<V> predicate) {
+        V value = this.datas.get(key);
+        if (value == null || !predicate.test(value)) return null;
+
+        return this.remove(key);
+    }
+
+    public synchronized void removeShop(@NotNull String shopId, @NotNull Consumer<V> onRemove) {
+        String shopKey = shopId.toLowerCase();
+        Map<String, Map<String, V>> products = this.shops.remove(shopKey);
+        if (products == null) return;
+
+        products.forEach((productId, holders) -> this.removeAll(shopKey, productId, holders, onRemove));
+    }
+
+    public synchronized void removeProduct(@NotNull String shopId, @NotNull String productId, @NotNull Consumer<V> onRemove) {
+        String shopKey = shopId.toLowerCase();
+        String productKey = productId.toLowerCase();
+
+        Map<String, Map<String, V>> products = this.shops.get(shopKey);
+        if (products == null) return;
+
+        Map<String, V> holders = products.remove(productKey);
+        if (holders == null) return;
+        if (products.isEmpty()) this.shops.remove(shopKey);
+
+        this.removeAll(shopKey, productKey, holders, onRemove);
+    }
+
+    private void removeAll(@NotNull String shopId, @NotNull String productId, @NotNull Map<String, V> holders, @NotNull Consumer<V> onRemove) {
+        holders.forEach((holderId, value) -> {
+            this.datas.remove(new ProductKey(shopId, productId, holderId));
+            onRemove.accept(value);
+        });
+    }
+
+    public void forEachInProduct(@NotNull String shopId, @NotNull String productId, @NotNull Consumer<V> consumer) {
+        Map<String, Map<String, V>> products = this.shops.get(shopId.toLowerCase());
+        if (products == null) return;
+
+        Map<String, V> holders = products.get(productId.toLowerCase());
+        if (holders == null) return;
+
+        holders.values().forEach(consumer);
+    }
+
+    public synchronized void clear() {
+        this.datas.clear();
+        this.shops.clear();
+    }
+
+    public boolean isEmpty() {
+        return this.datas.isEmpty();
+    }
+
+    public int size() {
+        return this.datas.size();
+    }
+
+    @NotNull
+    public Collection<V> values() {
+        return this.datas.values();
+    }
+
+    @NotNull
+    public Map<ProductKey, V> asMap() {
+        return Collections.unmodifiableMap(this.datas);
+    }
+}
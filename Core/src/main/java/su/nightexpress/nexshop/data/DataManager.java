@@ -9,59 +9,187 @@ import su.nightexpress.nexshop.api.shop.Shop;
 import su.nightexpress.nexshop.api.shop.product.Product;
 import su.nightexpress.nexshop.api.shop.stock.StockValues;
 import su.nightexpress.nexshop.config.Config;
+import su.nightexpress.nexshop.data.journal.DataJournal;
 import su.nightexpress.nexshop.data.key.ProductKey;
 import su.nightexpress.nexshop.data.key.RotationKey;
+import su.nightexpress.nexshop.data.listener.DataListener;
+import su.nightexpress.nexshop.data.product.AbstractData;
 import su.nightexpress.nexshop.data.product.PriceData;
 import su.nightexpress.nexshop.data.product.StockData;
 import su.nightexpress.nexshop.data.shop.RotationData;
+import su.nightexpress.nexshop.shop.ShopManager;
 import su.nightexpress.nexshop.shop.virtual.impl.Rotation;
 import su.nightexpress.nexshop.shop.virtual.impl.VirtualProduct;
 import su.nightexpress.nexshop.shop.virtual.impl.VirtualShop;
+import su.nightexpress.nexshop.sync.RedisSyncManager;
+import su.nightexpress.nexshop.sync.SyncBatch;
+import su.nightexpress.nexshop.sync.SyncStamp;
 import su.nightexpress.nightcore.manager.AbstractManager;
 import su.nightexpress.nightcore.util.Lists;
 
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.function.BiConsumer;
-import java.util.stream.Collectors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
 
 public class DataManager extends AbstractManager<ShopPlugin> {
 
-    private final Map<ProductKey, PriceData>     priceDataMap;
-    private final Map<ProductKey, StockData>     stockDataMap;
+    /** Delay (in ticks) before tables that failed to load are read again. */
+    private static final long LOAD_RETRY_DELAY = 100L;
+
+    private final DataIndex<PriceData>           priceDataIndex;
+    private final DataIndex<StockData>           stockDataIndex;
     private final Map<RotationKey, RotationData> rotationDataMap;
+    private final PlayerStockCache               playerStockCache;
+    private final ShopLoadTracker                shopLoadTracker;
+    private final DeadlineQueue<PriceData>       priceDeadlines;
+    private final DeadlineQueue<StockData>       restockDeadlines;
+
+    private final SaveQueue<PriceData>    priceSaveQueue;
+    private final SaveQueue<StockData>    stockSaveQueue;
+    private final SaveQueue<RotationData> rotationSaveQueue;
 
-    private boolean loaded;
+    private final Map<String, List<AbstractData>> recoveredDatas;
+    private final AtomicInteger                   loadGeneration;
+
+    private DataJournal      journal;
+    private volatile boolean loaded;
 
     public DataManager(@NotNull ShopPlugin plugin) {
         super(plugin);
-        this.priceDataMap = new ConcurrentHashMap<>();
-        this.stockDataMap = new ConcurrentHashMap<>();
+        this.priceDataIndex = new DataIndex<>();
+        this.stockDataIndex = new DataIndex<>();
         this.rotationDataMap = new ConcurrentHashMap<>();
+        this.playerStockCache = new PlayerStockCache(
+            plugin,
+            playerId -> this.plugin.getDataHandler().loadPlayerStockDatas(playerId),
+            this::bindStockData,
+            Config.DATA_PLAYER_STOCKS_EVICT_DELAY.get() * 1000L
+        );
+        this.shopLoadTracker = new ShopLoadTracker(this::onShopDataLoaded);
+        this.priceDeadlines = new DeadlineQueue<>();
+        this.restockDeadlines = new DeadlineQueue<>();
+        this.priceSaveQueue = new SaveQueue<>();
+        this.stockSaveQueue = new SaveQueue<>();
+        this.rotationSaveQueue = new SaveQueue<>();
+        this.recoveredDatas = new ConcurrentHashMap<>();
+        this.loadGeneration = new AtomicInteger();
     }
 
     @Override
     protected void onLoad() {
+        if (Config.DATA_JOURNAL_ENABLED.get()) {
+            this.openJournal();
+        }
+
         this.plugin.runTaskAsync(task -> {
-            this.loadAllData(); // Load all price & stock datas for all products, then update prices.
+            this.loadAllData(); // Load all price & stock datas for all products, prices are updated per shop once its datas are loaded.
         });
 
         this.addAsyncTask(this::saveScheduledDatas, Config.DATA_SAVE_INTERVAL.get());
+        this.addAsyncTask(this::evictPlayerStocks, 30);
+        this.addListener(new DataListener(this.plugin, this));
     }
 
     @Override
     protected void onShutdown() {
         this.saveScheduledDatas();
         this.clear();
+
+        if (this.journal != null) {
+            this.journal.close();
+            this.journal = null;
+        }
+    }
+
+    private void openJournal() {
+        DataJournal journal = new DataJournal(this.plugin, this.plugin.getDataFolder().toPath().resolve("data.journal"));
+        try {
+            List<AbstractData> recovered = journal.open();
+            recovered.forEach(data -> {
+                this.recoveredDatas.computeIfAbsent(data.getShopId(), k -> new ArrayList<>()).add(data);
+                this.shopLoadTracker.whenReady(data.getShopId()); // Make sure the shop gets its ready callback.
+            });
+            if (!recovered.isEmpty()) {
+                this.plugin.warn("Found " + recovered.size() + " unsaved data changes in the journal. They will be restored once shop datas are loaded.");
+            }
+            this.journal = journal;
+        }
+        catch (IOException exception) {
+            this.plugin.error("Could not open data journal: " + exception.getMessage());
+            journal.close();
+        }
+    }
+
+    private void recoverDatas(@NotNull String shopId) {
+        List<AbstractData> datas = this.recoveredDatas.remove(shopId);
+        if (datas == null) return;
+
+        datas.forEach(data -> {
+            if (data instanceof PriceData priceData) this.recoverPriceData(priceData);
+            else if (data instanceof StockData stockData) this.recoverStockData(stockData);
+        });
+    }
+
+    private void recoverPriceData(@NotNull PriceData recovered) {
+        PriceData data = this.priceDataIndex.get(ProductKey.global(recovered.getShopId(), recovered.getProductId()));
+        if (data == null) {
+            this.loadPriceData(recovered);
+            this.plugin.getDataHandler().insertPriceData(recovered);
+            data = recovered;
+        }
+        else {
+            PriceData.Snapshot values = recovered.getSnapshot();
+            data.update(snapshot -> snapshot.withValues(values));
+        }
+        data.setSaveRequired(true);
+    }
+
+    private void recoverStockData(@NotNull StockData recovered) {
+        boolean global = recovered.getHolder().equalsIgnoreCase(recovered.getShopId());
+        UUID playerId = global ? null : getPlayerId(recovered);
+        if (!global && playerId == null) return;
+
+        ProductKey key = ProductKey.global(recovered.getShopId(), recovered.getProductId()).withHolder(playerId);
+        StockData data = playerId == null ? this.stockDataIndex.get(key) : this.playerStockCache.get(playerId, key);
+        if (data == null) {
+            if (playerId == null) {
+                this.loadStockData(recovered);
+            }
+            else this.playerStockCache.put(playerId, recovered);
+            this.plugin.getDataHandler().insertStockData(recovered);
+            data = recovered;
+        }
+        else {
+            StockData.Snapshot values = recovered.getSnapshot();
+            data.update(snapshot -> snapshot.withValues(values));
+        }
+        data.setSaveRequired(true);
     }
 
     public void clear() {
-        this.priceDataMap.clear();
-        this.stockDataMap.clear();
+        this.priceDataIndex.clear();
+        this.stockDataIndex.clear();
         this.rotationDataMap.clear();
+        this.playerStockCache.clear();
+        this.shopLoadTracker.reset();
+        this.priceDeadlines.clear();
+        this.restockDeadlines.clear();
+        this.priceSaveQueue.clear();
+        this.stockSaveQueue.clear();
+        this.rotationSaveQueue.clear();
+        this.loadGeneration.incrementAndGet();
         this.loaded = false;
     }
 
@@ -78,148 +206,519 @@ public class DataManager extends AbstractManager<ShopPlugin> {
         this.loadAllData();
     }
 
+    /**
+     * Loads all tables in parallel and waits for them to finish. Shops become ready for trading as soon as their own datas are loaded.
+     * Tables that fail to load are retried, shops with unread datas stay not ready until then.
+     */
     public void loadAllData() {
-        this.loadPriceDatas();
-        this.loadStockDatas();
-        this.loadRotationDatas();
+        this.loadTables(ShopLoadTracker.ALL_TABLES, this.loadGeneration.get());
+    }
+
+    private void loadTables(int tables, int generation) {
+        DataHandler dataHandler = this.plugin.getDataHandler();
+
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[3];
+        if ((tables & (1 << ShopLoadTracker.PRICE)) != 0) {
+            futures[ShopLoadTracker.PRICE] = this.loadTableAsync(ShopLoadTracker.PRICE, "price", dataHandler::streamPriceDatas, this::loadPriceData, PriceData::getShopId);
+        }
+        if ((tables & (1 << ShopLoadTracker.STOCK)) != 0) {
+            futures[ShopLoadTracker.STOCK] = this.loadTableAsync(ShopLoadTracker.STOCK, "stock", dataHandler::streamGlobalStockDatas, this::loadStockData, StockData::getShopId);
+        }
+        if ((tables & (1 << ShopLoadTracker.ROTATION)) != 0) {
+            futures[ShopLoadTracker.ROTATION] = this.loadTableAsync(ShopLoadTracker.ROTATION, "rotation", dataHandler::streamRotationDatas, this::loadRotationData, RotationData::getShopId);
+        }
+
+        int failed = 0;
+        for (int table = 0; table < futures.length; table++) {
+            if (futures[table] == null) continue;
+            try {
+                futures[table].join();
+            }
+            catch (CompletionException exception) {
+                failed |= 1 << table;
+            }
+        }
+
+        if (failed != 0) {
+            int retryTables = failed;
+            this.plugin.error("Shops with unread datas are closed for trading until they are loaded. Retrying in " + LOAD_RETRY_DELAY / 20 + " seconds...");
+            this.plugin.runTaskLaterAsync(task -> {
+                if (this.loadGeneration.get() == generation) this.loadTables(retryTables, generation); // Not cleared or reloaded meanwhile.
+            }, LOAD_RETRY_DELAY);
+            return;
+        }
+
+        this.plugin.getServer().getOnlinePlayers().forEach(player -> this.loadPlayerStocks(player.getUniqueId()));
         this.loaded = true;
-        this.plugin.getShopManager().getShops().forEach(shop -> shop.updatePrices(false)); // Update prices in the same thread to prevent data duplications.
+        this.plugin.debug("Loaded " + this.priceDataIndex.size() + " price, " + this.stockDataIndex.size() + " stock and " + this.rotationDataMap.size() + " rotation datas.");
     }
 
+    @NotNull
+    private <T> CompletableFuture<Void> loadTableAsync(int table,
+                                                       @NotNull String name,
+                                                       @NotNull Consumer<Consumer<T>> streamer,
+                                                       @NotNull Consumer<T> loader,
+                                                       @NotNull Function<T, String> shopIdFunction) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
 
-    private void loadPriceDatas() {
-        this.plugin.getDataHandler().loadPriceDatas().forEach(this::loadPriceData);
-        //this.plugin.debug("Loaded " + priceDataMap.size() + " product price datas.");
+        this.plugin.runTaskAsync(task -> {
+            AtomicReference<String> lastShopId = new AtomicReference<>();
+            try {
+                streamer.accept(data -> {
+                    String shopId = shopIdFunction.apply(data);
+                    String previous = lastShopId.getAndSet(shopId);
+
+                    // Rows are ordered by shop id, so the previous shop has no more rows in this table.
+                    if (previous != null && !previous.equalsIgnoreCase(shopId)) {
+                        this.shopLoadTracker.markLoaded(previous, table);
+                    }
+                    // Shops read completely by a failed attempt might be in use already.
+                    if (this.shopLoadTracker.isLoaded(shopId, table)) return;
+
+                    loader.accept(data);
+                });
+                this.shopLoadTracker.finishTable(table);
+                future.complete(null);
+            }
+            catch (Exception exception) {
+                // Shop of the last row and the shops after it are not complete, so they stay not ready.
+                this.plugin.error("Could not load " + name + " datas: " + exception.getMessage());
+                future.completeExceptionally(exception);
+            }
+        });
+
+        return future;
     }
 
-    private void loadPriceData(@NotNull PriceData data) {
-        ProductKey key = new ProductKey(data.getShopId(), data.getProductId(), data.getShopId());
-        this.priceDataMap.put(key, data);
+    private void onShopDataLoaded(@NotNull String shopId) {
+        this.recoverDatas(shopId);
+
+        ShopManager shopManager = this.plugin.getShopManager();
+        Shop shop = shopManager == null ? null : shopManager.getShopById(shopId);
+        if (shop == null) return; // Shops loaded after their datas update prices on their own load.
+
+        shop.updatePrices(false);
+    }
+
+    public boolean isShopReady(@NotNull Shop shop) {
+        return this.isShopReady(shop.getId());
     }
 
+    public boolean isShopReady(@NotNull String shopId) {
+        return this.shopLoadTracker.isReady(shopId);
+    }
 
-    private void loadStockDatas() {
-        this.plugin.getDataHandler().loadStockDatas().forEach(this::loadStockData);
-        //this.plugin.debug("Loaded " + stockDataMap.size() + " product stock datas.");
+    @NotNull
+    public CompletableFuture<Void> whenShopReady(@NotNull Shop shop) {
+        return this.shopLoadTracker.whenReady(shop.getId());
     }
 
+    private void loadPriceData(@NotNull PriceData data) {
+        ProductKey key = ProductKey.global(data.getShopId(), data.getProductId());
+        data.setSaveHook(() -> this.priceSaveQueue.offer(data));
+        data.setChangeHook(this.changeHook(data::setSyncStamp, () -> this.schedulePriceUpdate(data)));
+        data.setJournalHook(this.journalHook(journal -> journal.append(data)));
+        data.setDeadlineHook(() -> this.schedulePriceUpdate(data));
+        this.priceDataIndex.put(key, data);
+        this.schedulePriceUpdate(data);
+    }
+
+
     private void loadStockData(@NotNull StockData data) {
-        ProductKey key = new ProductKey(data.getShopId(), data.getProductId(), data.getHolder());
-        this.stockDataMap.put(key, data);
+        if (data.getHolder().equalsIgnoreCase(data.getShopId())) {
+            this.bindStockData(data);
+            data.setChangeHook(this.changeHook(data::setSyncStamp, () -> this.scheduleRestock(data)));
+            data.setDeadlineHook(() -> this.scheduleRestock(data));
+            this.stockDataIndex.put(ProductKey.global(data.getShopId(), data.getProductId()), data);
+            this.scheduleRestock(data);
+            return;
+        }
+
+        UUID playerId = getPlayerId(data);
+        if (playerId == null) return; // Invalid holder.
+
+        this.playerStockCache.putIfLoaded(playerId, data);
+    }
+
+    private void bindStockData(@NotNull StockData data) {
+        data.setSaveHook(() -> this.stockSaveQueue.offer(data));
+        data.setChangeHook(this.changeHook(data::setSyncStamp));
+        data.setJournalHook(this.journalHook(journal -> journal.append(data)));
+    }
+
+    /**
+     * Stamps every local change with a new cross-server version, so newer changes of other servers are not rolled back by older ones.
+     */
+    @NotNull
+    private Runnable changeHook(@NotNull Consumer<SyncStamp> stamper) {
+        return () -> this.plugin.getRedisSyncManager().ifPresent(sync -> stamper.accept(sync.nextStamp()));
     }
 
+    /**
+     * Also checks the data again after every change, in case it was dropped from the deadline queue before.
+     */
+    @NotNull
+    private Runnable changeHook(@NotNull Consumer<SyncStamp> stamper, @NotNull Runnable scheduler) {
+        Runnable hook = this.changeHook(stamper);
+        return () -> {
+            hook.run();
+            scheduler.run();
+        };
+    }
+
+    @Nullable
+    private Runnable journalHook(@NotNull Consumer<DataJournal> action) {
+        DataJournal journal = this.journal;
+        return journal == null ? null : () -> action.accept(journal);
+    }
+
+    // =========================
+    // Deadlines
+    // =========================
+    // Prices are due once expired (expire date passed, negative dates never expire), global stocks once restock date passed (0 = no restock pending).
+    // Due datas that can not be updated (no product, fixed prices, no restock, not the sync leader) are dropped from the queues,
+    // and scheduled again on data change, on shop load, on pricer change and when this server becomes the sync leader.
+
+    private void schedulePriceUpdate(@NotNull PriceData data) {
+        long expireDate = data.getExpireDate();
+        this.priceDeadlines.schedule(data, expireDate < 0L ? -1L : expireDate + 1L);
+    }
+
+    private void scheduleRestock(@NotNull StockData data) {
+        long restockDate = data.getRestockDate();
+        this.restockDeadlines.schedule(data, restockDate <= 0L ? -1L : restockDate + 1L);
+    }
+
+    /**
+     * Schedules checks of the product's global datas by their current dates.
+     */
+    public void scheduleDeadlines(@NotNull Product product) {
+        ProductKey key = ProductKey.global(product);
+
+        PriceData priceData = this.priceDataIndex.get(key);
+        if (priceData != null) this.schedulePriceUpdate(priceData);
+
+        StockData stockData = this.stockDataIndex.get(key);
+        if (stockData != null) this.scheduleRestock(stockData);
+    }
+
+    public void scheduleDeadlines(@NotNull Shop shop) {
+        shop.getProducts().forEach(this::scheduleDeadlines);
+    }
+
+    /**
+     * Schedules checks of all price datas by their current expire dates.
+     */
+    public void schedulePriceUpdates() {
+        this.priceDataIndex.values().forEach(this::schedulePriceUpdate);
+    }
+
+    /**
+     * Checks the price data again at the given time, if it was due while its shop was still loading.
+     */
+    public void retryPriceUpdate(@NotNull PriceData data, long dueAt) {
+        this.priceDeadlines.schedule(data, dueAt);
+    }
+
+    /**
+     * Checks the stock data again at the given time, if it was due while its shop was still loading.
+     */
+    public void retryRestock(@NotNull StockData data, long dueAt) {
+        this.restockDeadlines.schedule(data, dueAt);
+    }
+
+    /**
+     * @return Price datas expired since the last call, only those still in use. Each data is returned once per expire date.
+     */
+    @NotNull
+    public List<PriceData> pollExpiredPriceDatas(long now) {
+        return this.priceDeadlines.pollDue(now).stream()
+            .filter(data -> this.priceDataIndex.get(ProductKey.global(data.getShopId(), data.getProductId())) == data)
+            .toList();
+    }
+
+    /**
+     * @return Global stock datas due for restock since the last call, only those still in use. Each data is returned once per restock date.
+     */
+    @NotNull
+    public List<StockData> pollRestockStockDatas(long now) {
+        return this.restockDeadlines.pollDue(now).stream()
+            .filter(data -> this.stockDataIndex.get(ProductKey.global(data.getShopId(), data.getProductId())) == data)
+            .toList();
+    }
+
+    @Nullable
+    private static UUID getPlayerId(@NotNull StockData data) {
+        try {
+            return UUID.fromString(data.getHolder());
+        }
+        catch (IllegalArgumentException exception) {
+            return null;
+        }
+    }
+
+    /**
+     * Loads stock & limit datas of the player in the current thread. Does nothing if already loaded.
+     */
+    public void loadPlayerStocks(@NotNull UUID playerId) {
+        this.playerStockCache.load(playerId);
+    }
+
+    public void handlePlayerJoin(@NotNull UUID playerId) {
+        this.playerStockCache.markOnline(playerId);
+        this.playerStockCache.loadAsync(playerId);
+    }
+
+    /**
+     * @return False while stock & limit datas of the player are being loaded, see {@link #getStockDataOrCreate(VirtualProduct, UUID)}.
+     */
+    public boolean isPlayerStocksLoaded(@NotNull UUID playerId) {
+        return this.playerStockCache.isLoaded(playerId);
+    }
 
-    private void loadRotationDatas() {
-        this.plugin.getDataHandler().loadRotationDatas().forEach(this::loadRotationData);
-        //this.plugin.debug("Loaded " + this.rotationDataMap.size() + " rotation datas.");
+    public void handlePlayerQuit(@NotNull UUID playerId) {
+        this.playerStockCache.markOffline(playerId);
     }
 
+    public void evictPlayerStocks() {
+        int evicted = this.playerStockCache.evict(Config.DATA_PLAYER_STOCKS_MAX_OFFLINE.get());
+        if (evicted > 0) this.plugin.debug("Evicted stock datas of " + evicted + " players.");
+    }
+
+
     private void loadRotationData(@NotNull RotationData data) {
+        data.setSaveHook(() -> this.rotationSaveQueue.offer(data));
+        data.setChangeHook(this.changeHook(data::setSyncStamp));
         this.rotationDataMap.put(new RotationKey(data.getShopId(), data.getRotationId()), data);
     }
 
     // =========================
     // External sync apply (Redis)
     // =========================
-    public void applyExternalPriceData(@NotNull PriceData data) {
-        this.priceDataMap.put(new ProductKey(data.getShopId(), data.getProductId(), data.getShopId()), data);
+    // External upserts are applied to the current datas in place, only if they are newer (see SyncStamp).
+    // Records of nodes without versioning have no stamp and are always applied.
+
+    /**
+     * @return False if the data is older than the current one and was dropped.
+     */
+    public boolean applyExternalPriceData(@NotNull PriceData data) {
+        PriceData current = this.priceDataIndex.get(ProductKey.global(data.getShopId(), data.getProductId()));
+        if (current == null) {
+            this.loadPriceData(data);
+            return true;
+        }
+        if (!isNewer(data.getSyncStamp(), current.getSyncStamp())) return false;
+
+        current.update(snapshot -> snapshot.withValues(data.getSnapshot()));
+        current.setSyncStamp(data.getSyncStamp());
+        return true;
+    }
+
+    private static boolean isNewer(@NotNull SyncStamp stamp, @NotNull SyncStamp current) {
+        return stamp.isNone() || stamp.isNewerThan(current);
     }
 
     public void applyExternalDeletePriceDataByShop(@NotNull String shopId) {
-        this.priceDataMap.keySet().removeIf(k -> k.getShopId().equalsIgnoreCase(shopId));
+        this.priceDataIndex.removeShop(shopId, PriceData::discard);
     }
 
     public void applyExternalDeletePriceDataByProduct(@NotNull String shopId, @NotNull String productId) {
-        this.priceDataMap.keySet().removeIf(k -> k.getShopId().equalsIgnoreCase(shopId) && k.getProductId().equalsIgnoreCase(productId));
+        this.priceDataIndex.removeProduct(shopId, productId, PriceData::discard);
     }
 
-    public void applyExternalStockData(@NotNull StockData data) {
-        this.stockDataMap.put(new ProductKey(data.getShopId(), data.getProductId(), data.getHolder()), data);
+    /**
+     * @return False if the data is older than the current one and was dropped.
+     */
+    public boolean applyExternalStockData(@NotNull StockData data) {
+        StockData current;
+        if (data.getHolder().equalsIgnoreCase(data.getShopId())) {
+            current = this.stockDataIndex.get(ProductKey.global(data.getShopId(), data.getProductId()));
+        }
+        else {
+            UUID playerId = getPlayerId(data);
+            if (playerId == null) return false; // Invalid holder.
+
+            current = this.playerStockCache.getIfLoaded(playerId, ProductKey.global(data.getShopId(), data.getProductId()).withHolder(playerId));
+        }
+
+        if (current == null) {
+            this.loadStockData(data);
+            return true;
+        }
+        if (!isNewer(data.getSyncStamp(), current.getSyncStamp())) return false;
+
+        current.update(snapshot -> snapshot.withValues(data.getSnapshot()));
+        current.setSyncStamp(data.getSyncStamp());
+        return true;
     }
 
     public void applyExternalDeleteStockDataByShop(@NotNull String shopId) {
-        this.stockDataMap.keySet().removeIf(k -> k.getShopId().equalsIgnoreCase(shopId));
+        this.stockDataIndex.removeShop(shopId, StockData::discard);
+        this.playerStockCache.removeShop(shopId, StockData::discard);
     }
 
     public void applyExternalDeleteStockDataByProduct(@NotNull String shopId, @NotNull String productId) {
-        this.stockDataMap.keySet().removeIf(k -> k.getShopId().equalsIgnoreCase(shopId) && k.getProductId().equalsIgnoreCase(productId));
+        this.stockDataIndex.removeProduct(shopId, productId, StockData::discard);
+        this.playerStockCache.removeProduct(shopId, productId, StockData::discard);
     }
 
-    public void applyExternalRotationData(@NotNull RotationData data) {
-        this.rotationDataMap.put(new RotationKey(data.getShopId(), data.getRotationId()), data);
+    /**
+     * @return False if the data is older than the current one and was dropped.
+     */
+    public boolean applyExternalRotationData(@NotNull RotationData data) {
+        RotationData current = this.rotationDataMap.get(new RotationKey(data.getShopId(), data.getRotationId()));
+        if (current == null) {
+            this.loadRotationData(data);
+            return true;
+        }
+        if (!isNewer(data.getSyncStamp(), current.getSyncStamp())) return false;
+
+        current.setProducts(data.getProducts());
+        current.setNextRotationDate(data.getNextRotationDate());
+        current.setSyncStamp(data.getSyncStamp());
+        return true;
     }
 
     public void applyExternalDeleteRotationDataByShop(@NotNull String shopId) {
-        this.rotationDataMap.keySet().removeIf(k -> k.getShopId().equalsIgnoreCase(shopId));
+        removeIf(this.rotationDataMap, k -> k.getShopId().equalsIgnoreCase(shopId), RotationData::discard);
     }
 
     public void applyExternalDeleteRotationDataByRotation(@NotNull String shopId, @NotNull String rotationId) {
-        this.rotationDataMap.keySet().removeIf(k -> k.getShopId().equalsIgnoreCase(shopId) && k.getRotationId().equalsIgnoreCase(rotationId));
+        removeIf(this.rotationDataMap, k -> k.getShopId().equalsIgnoreCase(shopId) && k.getRotationId().equalsIgnoreCase(rotationId), RotationData::discard);
     }
 
 
-    public void saveScheduledDatas() {
-        this.saveScheduledPriceDatas();
-        this.saveScheduledStockDatas();
-        this.saveScheduledRotationDatas();
+    // =========================
+    // Purge
+    // =========================
+    // Datas changed since the purge selected their rows are kept, they will be written back with the next save.
+    public void removePurgedPriceData(@NotNull String shopId, @NotNull String productId, long deadline) {
+        PriceData removed = this.priceDataIndex.removeIf(ProductKey.global(shopId, productId), data -> !data.isSaveRequired() && data.getLatestUpdateDate() < deadline);
+        if (removed != null) removed.discard();
     }
 
-    public void saveScheduledPriceDatas() {
-        Set<PriceData> toSave = this.getPriceDatas().stream()
-            .filter(PriceData::isSaveRequired)
-            .peek(d -> d.setSaveRequired(false))
-            .collect(java.util.stream.Collectors.toSet());
-        if (toSave.isEmpty()) return;
+    public void removePurgedStockData(@NotNull String shopId, @NotNull String productId, @NotNull String holderId, long deadline) {
+        ProductKey key;
+        try {
+            key = new ProductKey(shopId, productId, holderId);
+        }
+        catch (IllegalArgumentException exception) {
+            return; // Invalid holder, never loaded.
+        }
 
-        this.plugin.getFoliaScheduler().runAsync(() -> {
-            try {
-                this.plugin.getDataHandler().updatePriceDatas(toSave);
-                this.plugin.getRedisSyncManager().ifPresent(sync -> toSave.forEach(d -> {
-                    sync.publishPriceData(d);
-                    sync.cachePriceData(d);
-                }));
-            } catch (Exception e) {
-                this.plugin.error("Error saving scheduled price data: " + e.getMessage());
-            }
+        Predicate<StockData> predicate = data -> !data.isSaveRequired() && data.getRestockDate() < deadline;
+        UUID playerId = key.getPlayerId();
+        if (playerId == null) {
+            StockData removed = this.stockDataIndex.removeIf(key, predicate);
+            if (removed != null) removed.discard();
+        }
+        else this.playerStockCache.removeIf(playerId, key, predicate, StockData::discard);
+    }
+
+    public void removePurgedRotationData(@NotNull String shopId, @NotNull String rotationId, long deadline) {
+        RotationKey key = new RotationKey(shopId, rotationId);
+        this.rotationDataMap.computeIfPresent(key, (k, data) -> {
+            if (data.isSaveRequired() || data.getNextRotationDate() >= deadline) return data;
+
+            data.discard();
+            return null;
         });
     }
 
-    public void saveScheduledStockDatas() {
-        Set<StockData> toSave = this.getStockDatas().stream()
-            .filter(StockData::isSaveRequired)
-            .peek(d -> d.setSaveRequired(false))
-            .collect(java.util.stream.Collectors.toSet());
-        if (toSave.isEmpty()) return;
 
-        this.plugin.getFoliaScheduler().runAsync(() -> {
-            try {
-                this.plugin.getDataHandler().updateStockDatas(toSave);
-                this.plugin.getRedisSyncManager().ifPresent(sync -> toSave.forEach(d -> {
-                    sync.publishStockData(d);
-                    sync.cacheStockData(d);
-                }));
-            } catch (Exception e) {
-                this.plugin.error("Error saving scheduled stock data: " + e.getMessage());
-            }
+    private static <K, V> void removeIf(@NotNull Map<K, V> map, @NotNull Predicate<K> predicate, @NotNull Consumer<V> onRemove) {
+        map.entrySet().removeIf(entry -> {
+            if (!predicate.test(entry.getKey())) return false;
+
+            onRemove.accept(entry.getValue());
+            return true;
         });
     }
 
-    public void saveScheduledRotationDatas() {
-        Set<RotationData> toSave = this.getRotationDatas().stream()
-            .filter(RotationData::isSaveRequired)
-            .peek(d -> d.setSaveRequired(false))
-            .collect(java.util.stream.Collectors.toSet());
-        if (toSave.isEmpty()) return;
-        this.plugin.getDataHandler().updateRotationDatas(toSave);
-        this.plugin.getRedisSyncManager().ifPresent(sync -> toSave.forEach(sync::publishRotationData));
+    private static <K, V> void remove(@NotNull Map<K, V> map, @NotNull K key, @NotNull Consumer<V> onRemove) {
+        V removed = map.remove(key);
+        if (removed != null) onRemove.accept(removed);
     }
 
-    private <T extends Saveable> void saveScheduledDatas(@NotNull Set<T> originDatas, @NotNull BiConsumer<DataHandler, Set<T>> consumer, @NotNull String name) {
-        Set<T> filteredDatas = originDatas.stream().filter(Saveable::isSaveRequired).peek(data -> data.setSaveRequired(false)).collect(Collectors.toSet());
-        if (filteredDatas.isEmpty()) return;
 
-        consumer.accept(this.plugin.getDataHandler(), filteredDatas);
-        //this.plugin.debug("Saved " + filteredDatas.size() + " " + name + " datas");
+    public synchronized void saveScheduledDatas() {
+        DataJournal journal = this.journal;
+        int mark = journal == null ? 0 : journal.mark();
+
+        boolean saved = this.saveScheduledPriceDatas();
+        saved &= this.saveScheduledStockDatas();
+        saved &= this.saveScheduledRotationDatas();
+        try {
+            this.plugin.getDataHandler().flushWrites(); // Write remaining inserts of new datas.
+        }
+        catch (Exception exception) {
+            this.plugin.error("Error writing pending data rows: " + exception.getMessage());
+            saved = false;
+        }
+
+        // Datas are marked dirty before they are journaled, so every change journaled before the mark was drained above.
+        // Compact only when all of them are confirmed written, failed rows are retried and keep their records.
+        if (saved && journal != null) journal.compact(mark);
+    }
+
+    public synchronized boolean saveScheduledPriceDatas() {
+        return this.flushQueue(this.priceSaveQueue, "price", toSave -> {
+            this.plugin.getDataHandler().updatePriceDatas(toSave);
+            this.plugin.getRedisSyncManager().ifPresent(sync -> {
+                SyncBatch batch = sync.newBatch();
+                toSave.forEach(batch::priceData);
+                sync.submit(batch);
+            });
+        });
+    }
+
+    public synchronized boolean saveScheduledStockDatas() {
+        return this.flushQueue(this.stockSaveQueue, "stock", toSave -> {
+            this.plugin.getDataHandler().updateStockDatas(toSave);
+            this.plugin.getRedisSyncManager().ifPresent(sync -> {
+                SyncBatch batch = sync.newBatch();
+                toSave.forEach(batch::stockData);
+                sync.submit(batch);
+            });
+        });
+    }
+
+    public synchronized boolean saveScheduledRotationDatas() {
+        return this.flushQueue(this.rotationSaveQueue, "rotation", toSave -> {
+            this.plugin.getDataHandler().updateRotationDatas(toSave);
+            this.plugin.getRedisSyncManager().ifPresent(sync -> {
+                SyncBatch batch = sync.newBatch();
+                toSave.forEach(batch::rotationData);
+                sync.submit(batch);
+            });
+        });
+    }
+
+    private <T extends Saveable> boolean flushQueue(@NotNull SaveQueue<T> queue, @NotNull String name, @NotNull Consumer<Set<T>> writer) {
+        try {
+            FlushStats stats = queue.flush(writer);
+            if (stats.drained() > 0) this.plugin.debug("Saved " + stats.drained() + " " + name + " datas in " + stats.durationMillis() + "ms.");
+            return true;
+        }
+        catch (Exception exception) {
+            this.plugin.error("Error saving scheduled " + name + " data: " + exception.getMessage());
+            return false;
+        }
+    }
+
+    @NotNull
+    public SaveQueue<PriceData> getPriceSaveQueue() {
+        return this.priceSaveQueue;
+    }
+
+    @NotNull
+    public SaveQueue<StockData> getStockSaveQueue() {
+        return this.stockSaveQueue;
+    }
+
+    @NotNull
+    public SaveQueue<RotationData> getRotationSaveQueue() {
+        return this.rotationSaveQueue;
     }
 
 
@@ -232,18 +731,18 @@ public class DataManager extends AbstractManager<ShopPlugin> {
             this.plugin.getDataHandler().deleteStockData(shop);
 
             // Now clean up memory (so no duplicates can be created during the deletion process).
-            this.rotationDataMap.keySet().removeIf(key -> key.isShop(shop));
-            this.priceDataMap.keySet().removeIf(key -> key.isShop(shop));
-            this.stockDataMap.keySet().removeIf(key -> key.isShop(shop));
+            removeIf(this.rotationDataMap, key -> key.isShop(shop), RotationData::discard);
+            this.priceDataIndex.removeShop(shop.getId(), PriceData::discard);
+            this.stockDataIndex.removeShop(shop.getId(), StockData::discard);
+            this.playerStockCache.removeShop(shop.getId(), StockData::discard);
 
             this.plugin.getRedisSyncManager().ifPresent(sync -> {
                 String shopId = shop.getId();
-                sync.publishRotationDataDeleteByShop(shopId);
-                sync.publishPriceDataDeleteByShop(shopId);
-                sync.publishStockDataDeleteByShop(shopId);
-                // Local cache eviction
-                sync.evictPriceDataByShop(shopId);
-                sync.evictStockDataByShop(shopId);
+                sync.submit(sync.newBatch() // Cache is evicted by the batch as well.
+                    .rotationDataDeleteByShop(shopId)
+                    .priceDataDeleteByShop(shopId)
+                    .stockDataDeleteByShop(shopId));
+                sync.getStockAuthority().ifPresent(authority -> authority.delete(shopId));
             });
         });
     }
@@ -272,7 +771,7 @@ public class DataManager extends AbstractManager<ShopPlugin> {
 
         RotationData data = new RotationData(rotation.getShop().getId(), rotation.getId());
         this.loadRotationData(data);
-        this.plugin.runTaskAsync(task -> plugin.getDataHandler().insertRotationData(data));
+        this.plugin.getDataHandler().insertRotationData(data); // Queued until the next flush.
         this.plugin.getRedisSyncManager().ifPresent(sync -> sync.publishRotationData(data));
         return data;
     }
@@ -280,33 +779,24 @@ public class DataManager extends AbstractManager<ShopPlugin> {
     public void deleteRotationData(@NotNull Rotation rotation) {
         this.plugin.runTaskAsync(task -> {
             this.plugin.getDataHandler().deleteRotationData(rotation); // First remove from the database.
-            this.rotationDataMap.remove(RotationKey.from(rotation)); // Now clean up memory (so no duplicates can be created during the deletion process).
+            remove(this.rotationDataMap, RotationKey.from(rotation), RotationData::discard); // Now clean up memory (so no duplicates can be created during the deletion process).
             this.plugin.getRedisSyncManager().ifPresent(sync -> sync.publishRotationDataDeleteByRotation(rotation.getShop().getId(), rotation.getId()));
         });
     }
 
-//    public void deleteRotationData(@NotNull VirtualShop shop) {
-//        this.plugin.runTaskAsync(task -> {
-//            this.plugin.getDataHandler().deleteRotationData(shop); // First remove from the database.
-//            this.rotationDataMap.keySet().removeIf(key -> key.isShop(shop)); // Now clean up memory (so no duplicates can be created during the deletion process).
-//        });
-//    }
-
-
-
     @NotNull
     public Map<ProductKey, PriceData> getPriceDataMap() {
-        return this.priceDataMap;
+        return this.priceDataIndex.asMap();
     }
 
     @NotNull
     public Set<PriceData> getPriceDatas() {
-        return new HashSet<>(this.priceDataMap.values());
+        return new HashSet<>(this.priceDataIndex.values());
     }
 
     @Nullable
     public PriceData getPriceData(@NotNull Product product) {
-        return this.priceDataMap.get(ProductKey.global(product));
+        return this.priceDataIndex.get(ProductKey.global(product));
     }
 
     @NotNull
@@ -314,21 +804,47 @@ public class DataManager extends AbstractManager<ShopPlugin> {
         PriceData data = this.getPriceData(product);
         if (data != null) return data;
 
-        // Try Redis cache first
-        this.plugin.getRedisSyncManager().flatMap(sync ->
-            sync.getCachedPriceData(product.getShop().getId(), product.getId())
-        ).ifPresent(this::loadPriceData);
-
-        data = this.getPriceData(product);
-        if (data != null) return data;
+        // Stored data might be not read yet, default one must not be saved over it.
+        if (!this.shopLoadTracker.isReady(product.getShop().getId())) return PriceData.create(product);
 
+        // Default data is returned right away, data cached by other servers is merged in when it arrives.
         PriceData fresh = PriceData.create(product);
+        ProductKey key = ProductKey.global(product);
         this.loadPriceData(fresh);
-        this.plugin.runTaskAsync(task -> this.plugin.getDataHandler().insertPriceData(fresh));
-        this.plugin.getRedisSyncManager().ifPresent(sync -> { sync.publishPriceData(fresh); sync.cachePriceData(fresh); });
+
+        RedisSyncManager sync = this.plugin.getRedisSyncManager().orElse(null);
+        if (sync == null) {
+            this.plugin.getDataHandler().insertPriceData(fresh); // Queued until the next flush.
+            return fresh;
+        }
+
+        sync.fetchCachedPriceData(product.getShop().getId(), product.getId(), cached -> {
+            if (this.priceDataIndex.get(key) != fresh) return; // Removed or replaced meanwhile.
+
+            if (cached.isPresent()) {
+                this.changePriceData(product, () -> {
+                    if (isCachedNewer(cached.get(), fresh)) {
+                        fresh.update(snapshot -> snapshot.withValues(cached.get().getSnapshot()));
+                        fresh.setSyncStamp(cached.get().getSyncStamp());
+                    }
+                });
+                return;
+            }
+
+            this.plugin.getDataHandler().insertPriceData(fresh); // Queued until the next flush.
+            sync.publishPriceData(fresh);
+            sync.cachePriceData(fresh);
+        });
         return fresh;
     }
 
+    /**
+     * Cached data replaces data created while it was looked up, unless there were local changes made after it.
+     */
+    private static boolean isCachedNewer(@NotNull AbstractData cached, @NotNull AbstractData created) {
+        return created.getSyncStamp().isNone() || cached.getSyncStamp().isNewerThan(created.getSyncStamp());
+    }
+
     public void savePriceData(@NotNull Product product) {
         PriceData data = this.getPriceData(product);
         if (data == null) return;
@@ -339,7 +855,7 @@ public class DataManager extends AbstractManager<ShopPlugin> {
     public void deletePriceData(@NotNull Product product) {
         this.plugin.runTaskAsync(task -> {
             this.plugin.getDataHandler().deletePriceData(product); // First remove from the database.
-            this.priceDataMap.remove(ProductKey.global(product)); // Now clean up memory (so no duplicates can be created during the deletion process).
+            this.priceDataIndex.removeProduct(product.getShop().getId(), product.getId(), PriceData::discard); // Now clean up memory (so no duplicates can be created during the deletion process).
             this.plugin.getRedisSyncManager().ifPresent(sync -> {
                 sync.publishPriceDataDeleteByProduct(product.getShop().getId(), product.getId());
                 sync.evictPriceDataByProduct(product.getShop().getId(), product.getId());
@@ -347,21 +863,6 @@ public class DataManager extends AbstractManager<ShopPlugin> {
         });
     }
 
-//    public void deletePriceDatas(@NotNull Set<Product> products) {
-//        products.forEach(product -> this.priceDataMap.remove(ProductKey.global(product)));
-//
-//        this.plugin.runTaskAsync(task -> {
-//            this.plugin.getDataHandler().deletePriceDatas(products);
-//        });
-//    }
-
-//    public void deletePriceDatas(@NotNull Shop shop) {
-//        this.plugin.runTaskAsync(task -> {
-//            this.plugin.getDataHandler().deletePriceData(shop);  // First remove from the database.
-//            this.priceDataMap.keySet().removeIf(key -> key.isShop(shop)); // Now clean up memory (so no duplicates can be created during the deletion process).
-//        });
-//    }
-
     public void resetPriceDatas(@NotNull Shop shop) {
         this.resetPriceDatas(new HashSet<>(shop.getValidProducts()));
     }
@@ -375,26 +876,45 @@ public class DataManager extends AbstractManager<ShopPlugin> {
             PriceData data = this.getPriceData(product);
             if (data == null) return;
 
-            data.reset();
-            data.setSaveRequired(true);
+            this.changePriceData(product, () -> {
+                data.reset();
+                data.setSaveRequired(true);
+            });
         });
     }
 
+    /**
+     * Price datas are changed by the price engine only, so changes never interleave with price calculations.
+     */
+    private void changePriceData(@NotNull Product product, @NotNull Runnable change) {
+        ShopManager shopManager = this.plugin.getShopManager();
+        if (shopManager == null) {
+            change.run();
+            return;
+        }
+        shopManager.getPriceEngine().change(product, change);
+    }
+
 
 
     @NotNull
     public Map<ProductKey, StockData> getStockDataMap() {
-        return this.stockDataMap;
+        return this.stockDataIndex.asMap();
+    }
+
+    @NotNull
+    public PlayerStockCache getPlayerStockCache() {
+        return this.playerStockCache;
     }
 
     @NotNull
     public Set<StockData> getStockDatas() {
-        return new HashSet<>(this.stockDataMap.values());
+        return new HashSet<>(this.stockDataIndex.values());
     }
 
     @Nullable
     public StockData getStockData(@NotNull Product product) {
-        return this.stockDataMap.get(ProductKey.global(product));
+        return this.stockDataIndex.get(ProductKey.global(product));
     }
 
     @Nullable
@@ -404,7 +924,10 @@ public class DataManager extends AbstractManager<ShopPlugin> {
 
     @Nullable
     public StockData getStockData(@NotNull VirtualProduct product, @Nullable UUID playerId) {
-        return this.stockDataMap.get(ProductKey.globalOrPerosnal(product, playerId));
+        if (playerId == null) return this.getStockData(product);
+
+        // Players datas are loaded on join, the server thread gets null until they are ready, other threads load them if needed.
+        return this.playerStockCache.get(playerId, ProductKey.personal(product, playerId));
     }
 
     @NotNull
@@ -412,11 +935,20 @@ public class DataManager extends AbstractManager<ShopPlugin> {
         return this.getStockDataOrCreate(product, player == null ? null : player.getUniqueId());
     }
 
+    /**
+     * Returns detached default data while player datas or datas of the shop are being loaded, it is neither stored nor saved.
+     */
     @NotNull
     public StockData getStockDataOrCreate(@NotNull VirtualProduct product, @Nullable UUID playerId) {
         StockValues values = product.getStocksOrLimits(playerId);
 
         StockData data = this.getStockData(product, playerId);
+        if (data == null && playerId != null && !this.playerStockCache.isLoaded(playerId)) {
+            return StockData.create(product, values, playerId);
+        }
+        if (data == null && playerId == null && !this.shopLoadTracker.isReady(product.getShop().getId())) {
+            return StockData.create(product, values, null);
+        }
         if (data != null) {
             if (data.isRestockTime()) {
                 data.restock(values);
@@ -425,49 +957,53 @@ public class DataManager extends AbstractManager<ShopPlugin> {
             return data;
         }
 
-        // Try Redis cache first
-        String holder = playerId == null ? product.getShop().getId() : playerId.toString();
-        this.plugin.getRedisSyncManager().flatMap(sync ->
-            sync.getCachedStockData(product.getShop().getId(), product.getId(), holder)
-        ).ifPresent(this::loadStockData);
+        // Default data is returned right away, data cached by other servers is merged in when it arrives.
+        StockData fresh = StockData.create(product, values, playerId);
+        if (playerId == null) {
+            this.loadStockData(fresh);
+        }
+        else this.playerStockCache.put(playerId, fresh);
 
-        data = this.getStockData(product, playerId);
-        if (data != null) {
-            if (data.isRestockTime()) {
-                data.restock(values);
-                data.setSaveRequired(true);
-            }
-            return data;
+        RedisSyncManager sync = this.plugin.getRedisSyncManager().orElse(null);
+        if (sync == null) {
+            this.plugin.getDataHandler().insertStockData(fresh); // Queued until the next flush.
+            return fresh;
         }
 
-        StockData fresh = StockData.create(product, values, playerId);
-        this.loadStockData(fresh);
-        this.plugin.runTaskAsync(task -> plugin.getDataHandler().insertStockData(fresh));
-        this.plugin.getRedisSyncManager().ifPresent(sync -> { sync.publishStockData(fresh); sync.cacheStockData(fresh); });
+        ProductKey key = ProductKey.globalOrPerosnal(product, playerId);
+        sync.fetchCachedStockData(product.getShop().getId(), product.getId(), fresh.getHolder(), cached -> {
+            StockData current = playerId == null ? this.stockDataIndex.get(key) : this.playerStockCache.getIfLoaded(playerId, key);
+            if (current != fresh) return; // Removed or replaced meanwhile.
+
+            if (cached.isPresent()) {
+                if (isCachedNewer(cached.get(), fresh)) {
+                    fresh.update(snapshot -> snapshot.withValues(cached.get().getSnapshot()));
+                    fresh.setSyncStamp(cached.get().getSyncStamp());
+                    if (fresh.isRestockTime()) {
+                        fresh.restock(product.getStocksOrLimits(playerId));
+                        fresh.setSaveRequired(true);
+                    }
+                }
+                return;
+            }
+
+            this.plugin.getDataHandler().insertStockData(fresh); // Queued until the next flush.
+            sync.publishStockData(fresh);
+            sync.cacheStockData(fresh);
+        });
         return fresh;
     }
 
     public void deleteStockData(@NotNull VirtualProduct product) {
         this.plugin.runTaskAsync(task -> {
             this.plugin.getDataHandler().deleteStockData(product);  // First remove from the database.
-            this.stockDataMap.remove(ProductKey.global(product)); // Now clean up memory (so no duplicates can be created during the deletion process).
+            this.stockDataIndex.removeProduct(product.getShop().getId(), product.getId(), StockData::discard); // Now clean up memory (so no duplicates can be created during the deletion process).
+            this.playerStockCache.removeProduct(product.getShop().getId(), product.getId(), StockData::discard);
             this.plugin.getRedisSyncManager().ifPresent(sync -> { sync.publishStockDataDeleteByProduct(product.getShop().getId(), product.getId()); sync.evictStockDataByProduct(product.getShop().getId(), product.getId()); });
+            this.plugin.getRedisSyncManager().flatMap(RedisSyncManager::getStockAuthority).ifPresent(authority -> authority.delete(product.getShop().getId(), product.getId()));
         });
     }
 
-//    public void deleteStockDatas(@NotNull Set<Product> products) {
-//        products.forEach(product -> this.stockDataMap.remove(ProductKey.global(product)));
-//
-//        this.plugin.runTaskAsync(task -> plugin.getDataHandler().deleteStockDatas(products));
-//    }
-
-//    public void deleteStockDatas(@NotNull VirtualShop shop) {
-//        this.plugin.runTaskAsync(task -> {
-//            this.plugin.getDataHandler().deleteStockData(shop);  // First remove from the database.
-//            this.stockDataMap.keySet().removeIf(key -> key.isShop(shop)); // Now clean up memory (so no duplicates can be created during the deletion process).
-//        });
-//    }
-
     public void resetStockDatas(@NotNull Product product) {
         this.resetStockDatas(Lists.newSet(product));
     }
@@ -477,11 +1013,22 @@ public class DataManager extends AbstractManager<ShopPlugin> {
     }
 
     public void resetStockDatas(@NotNull Set<Product> products) {
+        Consumer<StockData> expire = data -> {
+            data.setExpired();
+            data.setSaveRequired(true);
+        };
+
         products.forEach(product -> {
-            this.stockDataMap.entrySet().stream().filter(e -> e.getKey().isProduct(product)).map(Map.Entry::getValue).forEach(data -> {
-                data.setExpired();
-                data.setSaveRequired(true);
-            });
+            this.stockDataIndex.forEachInProduct(product.getShop().getId(), product.getId(), expire);
+            this.playerStockCache.forEachInProduct(product.getShop().getId(), product.getId(), expire);
         });
+
+        this.plugin.getRedisSyncManager().flatMap(RedisSyncManager::getStockAuthority).ifPresent(authority -> {
+            products.forEach(product -> authority.expire(product.getShop().getId(), product.getId()));
+        });
+
+        // Datas of players that are not in memory.
+        long restockDate = System.currentTimeMillis() - 1000L;
+        this.plugin.runTaskAsync(task -> this.plugin.getDataHandler().expireStockDatas(products, restockDate));
     }
 }
@@ -1,8 +1,11 @@
 package su.nightexpress.nexshop.data;
 
 import com.google.gson.reflect.TypeToken;
+import org.jetbrains.annotations.NotNull;
+import su.nightexpress.nexshop.ShopPlugin;
 import su.nightexpress.nexshop.api.shop.Shop;
 import su.nightexpress.nexshop.api.shop.type.TradeType;
+import su.nightexpress.nexshop.data.batch.BatchWriter;
 import su.nightexpress.nexshop.data.legacy.LegacyStockAmount;
 import su.nightexpress.nexshop.data.legacy.LegacyStockData;
 import su.nightexpress.nexshop.data.product.PriceData;
@@ -55,8 +58,9 @@ public class DataQueries {
             long expireDate = resultSet.getLong(DataHandler.COLUMN_PRICE_EXPIRE_DATE.getName());
             int purchases = resultSet.getInt(DataHandler.COLUMN_PRICE_PURCHASES.getName());
             int sales = resultSet.getInt(DataHandler.COLUMN_PRICE_SALES.getName());
+            double demand = resultSet.getDouble(DataHandler.COLUMN_PRICE_DEMAND.getName());
 
-            return new PriceData(shopId, productId, lastBuyPrice, lastSellPrice, lastUpdated, expireDate, purchases, sales);
+            return new PriceData(shopId, productId, lastBuyPrice, lastSellPrice, lastUpdated, expireDate, purchases, sales, demand);
         }
         catch (SQLException exception) {
             exception.printStackTrace();
@@ -94,9 +98,9 @@ public class DataQueries {
         .setValue(DataHandler.COLUMN_STOCK_BUY_STOCK, data -> String.valueOf(data.getBuyStock()))
         .setValue(DataHandler.COLUMN_STOCK_SELL_STOCK, data -> String.valueOf(data.getSellStock()))
         .setValue(DataHandler.COLUMN_STOCK_RESTOCK_DATE, data -> String.valueOf(data.getRestockDate()))
-        .whereIgnoreCase(DataHandler.COLUMN_GEN_SHOP_ID, WhereOperator.EQUAL, StockData::getShopId)
-        .whereIgnoreCase(DataHandler.COLUMN_GEN_PRODUCT_ID, WhereOperator.EQUAL, StockData::getProductId)
-        .whereIgnoreCase(DataHandler.COLUMN_GEN_HOLDER_ID, WhereOperator.EQUAL, StockData::getHolder);
+        .where(DataHandler.COLUMN_GEN_SHOP_ID, WhereOperator.EQUAL, data -> data.getShopId().toLowerCase())
+        .where(DataHandler.COLUMN_GEN_PRODUCT_ID, WhereOperator.EQUAL, data -> data.getProductId().toLowerCase())
+        .where(DataHandler.COLUMN_GEN_HOLDER_ID, WhereOperator.EQUAL, data -> data.getHolder().toLowerCase());
 
 
     public static final InsertQuery<PriceData> PRICE_DATA_INSERT = new InsertQuery<PriceData>()
@@ -107,7 +111,8 @@ public class DataQueries {
         .setValue(DataHandler.COLUMN_PRICE_LAST_UPDATED, d -> String.valueOf(d.getLatestUpdateDate()))
         .setValue(DataHandler.COLUMN_PRICE_EXPIRE_DATE, d -> String.valueOf(d.getExpireDate()))
         .setValue(DataHandler.COLUMN_PRICE_PURCHASES, d -> String.valueOf(d.getPurchases()))
-        .setValue(DataHandler.COLUMN_PRICE_SALES, d -> String.valueOf(d.getSales()));
+        .setValue(DataHandler.COLUMN_PRICE_SALES, d -> String.valueOf(d.getSales()))
+        .setValue(DataHandler.COLUMN_PRICE_DEMAND, d -> String.valueOf(d.getDemand()));
 
     public static final UpdateQuery<PriceData> PRICE_DATA_UPDATE = new UpdateQuery<PriceData>()
         .setValue(DataHandler.COLUMN_PRICE_LAST_BUY, d -> String.valueOf(d.getLatestBuyPrice()))
@@ -116,8 +121,44 @@ public class DataQueries {
         .setValue(DataHandler.COLUMN_PRICE_EXPIRE_DATE, d -> String.valueOf(d.getExpireDate()))
         .setValue(DataHandler.COLUMN_PRICE_PURCHASES, d -> String.valueOf(d.getPurchases()))
         .setValue(DataHandler.COLUMN_PRICE_SALES, d -> String.valueOf(d.getSales()))
-        .whereIgnoreCase(DataHandler.COLUMN_GEN_SHOP_ID, WhereOperator.EQUAL, PriceData::getShopId)
-        .whereIgnoreCase(DataHandler.COLUMN_GEN_PRODUCT_ID, WhereOperator.EQUAL, PriceData::getProductId);
+        .setValue(DataHandler.COLUMN_PRICE_DEMAND, d -> String.valueOf(d.getDemand()))
+        .where(DataHandler.COLUMN_GEN_SHOP_ID, WhereOperator.EQUAL, data -> data.getShopId().toLowerCase())
+        .where(DataHandler.COLUMN_GEN_PRODUCT_ID, WhereOperator.EQUAL, data -> data.getProductId().toLowerCase());
+
+
+    @NotNull
+    public static BatchWriter<StockData, StockData.Snapshot> stockWriter(@NotNull ShopPlugin plugin, @NotNull String table) {
+        return new BatchWriter<StockData, StockData.Snapshot>(plugin, table, StockData::getSnapshot, (data, snapshot) -> data.markSaved(snapshot.version()))
+            .key(DataHandler.COLUMN_GEN_SHOP_ID, StockData::getShopId)
+            .key(DataHandler.COLUMN_GEN_PRODUCT_ID, StockData::getProductId)
+            .key(DataHandler.COLUMN_GEN_HOLDER_ID, StockData::getHolder)
+            .value(DataHandler.COLUMN_STOCK_BUY_STOCK, snapshot -> String.valueOf(snapshot.buyStock()))
+            .value(DataHandler.COLUMN_STOCK_SELL_STOCK, snapshot -> String.valueOf(snapshot.sellStock()))
+            .value(DataHandler.COLUMN_STOCK_RESTOCK_DATE, snapshot -> String.valueOf(snapshot.restockDate()));
+    }
+
+    @NotNull
+    public static BatchWriter<PriceData, PriceData.Snapshot> priceWriter(@NotNull ShopPlugin plugin, @NotNull String table) {
+        return new BatchWriter<PriceData, PriceData.Snapshot>(plugin, table, PriceData::getSnapshot, (data, snapshot) -> data.markSaved(snapshot.version()))
+            .key(DataHandler.COLUMN_GEN_SHOP_ID, PriceData::getShopId)
+            .key(DataHandler.COLUMN_GEN_PRODUCT_ID, PriceData::getProductId)
+            .value(DataHandler.COLUMN_PRICE_LAST_BUY, s -> String.valueOf(s.latestBuyPrice()))
+            .value(DataHandler.COLUMN_PRICE_LAST_SELL, s -> String.valueOf(s.latestSellPrice()))
+            .value(DataHandler.COLUMN_PRICE_LAST_UPDATED, s -> String.valueOf(s.latestUpdateDate()))
+            .value(DataHandler.COLUMN_PRICE_EXPIRE_DATE, s -> String.valueOf(s.expireDate()))
+            .value(DataHandler.COLUMN_PRICE_PURCHASES, s -> String.valueOf(s.purchases()))
+            .value(DataHandler.COLUMN_PRICE_SALES, s -> String.valueOf(s.sales()))
+            .value(DataHandler.COLUMN_PRICE_DEMAND, s -> String.valueOf(s.demand()));
+    }
+
+    @NotNull
+    public static BatchWriter<RotationData, RotationData.Snapshot> rotationWriter(@NotNull ShopPlugin plugin, @NotNull String table) {
+        return new BatchWriter<RotationData, RotationData.Snapshot>(plugin, table, RotationData::getSnapshot, (data, snapshot) -> {})
+            .key(DataHandler.COLUMN_GEN_SHOP_ID, RotationData::getShopId)
+            .key(DataHandler.COLUMN_GEN_HOLDER_ID, RotationData::getRotationId)
+            .value(DataHandler.COLUMN_ROTATE_NEXT_ROTATION, snapshot -> String.valueOf(snapshot.nextRotationDate()))
+            .value(DataHandler.COLUMN_ROTATE_PRODUCTS, snapshot -> DataHandler.GSON.toJson(snapshot.products()));
+    }
 
 
     public static final Function<ResultSet, RotationData> ROTATION_DATA_LOADER = resultSet -> {
@@ -144,15 +185,15 @@ public class DataQueries {
     public static final UpdateQuery<RotationData> ROTATION_DATA_UPDATE = new UpdateQuery<RotationData>()
         .setValue(DataHandler.COLUMN_ROTATE_NEXT_ROTATION, data -> String.valueOf(data.getNextRotationDate()))
         .setValue(DataHandler.COLUMN_ROTATE_PRODUCTS, data -> DataHandler.GSON.toJson(data.getProducts()))
-        .whereIgnoreCase(DataHandler.COLUMN_GEN_SHOP_ID, WhereOperator.EQUAL, RotationData::getShopId)
-        .whereIgnoreCase(DataHandler.COLUMN_GEN_HOLDER_ID, WhereOperator.EQUAL, RotationData::getRotationId);
+        .where(DataHandler.COLUMN_GEN_SHOP_ID, WhereOperator.EQUAL, data -> data.getShopId().toLowerCase())
+        .where(DataHandler.COLUMN_GEN_HOLDER_ID, WhereOperator.EQUAL, data -> data.getRotationId().toLowerCase());
 
     public static final DeleteQuery<Rotation> ROTATION_DATA_DELETE_BY_SELF = new DeleteQuery<Rotation>()
-        .whereIgnoreCase(DataHandler.COLUMN_GEN_SHOP_ID, WhereOperator.EQUAL, rotation -> rotation.getShop().getId())
-        .whereIgnoreCase(DataHandler.COLUMN_GEN_HOLDER_ID, WhereOperator.EQUAL, Rotation::getId);
+        .where(DataHandler.COLUMN_GEN_SHOP_ID, WhereOperator.EQUAL, rotation -> rotation.getShop().getId().toLowerCase())
+        .where(DataHandler.COLUMN_GEN_HOLDER_ID, WhereOperator.EQUAL, rotation -> rotation.getId().toLowerCase());
 
     public static final DeleteQuery<VirtualShop> ROTATION_DATA_DELETE_BY_SHOP = new DeleteQuery<VirtualShop>()
-        .whereIgnoreCase(DataHandler.COLUMN_GEN_SHOP_ID, WhereOperator.EQUAL, Shop::getId);
+        .where(DataHandler.COLUMN_GEN_SHOP_ID, WhereOperator.EQUAL, shop -> shop.getId().toLowerCase());
 
 
 
@@ -0,0 +1,85 @@
+package su.nightexpress.nexshop.data;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.*;
+
+/**
+ * Items ordered by the time they are due at, so periodic checks only touch the due items instead of walking all of them.
+ * <p>
+ * Rescheduled and cancelled items are not searched in the heap, their outdated entries are skipped when polled.
+ * Heap is rebuilt once outdated entries outnumber the scheduled ones.
+ */
+public class DeadlineQueue<T> {
+
+    private static final int MIN_COMPACT_SIZE = 64;
+
+    private record Entry<T>(long dueAt, T item) {
+
+    }
+
+    private final PriorityQueue<Entry<T>> heap;
+    private final Map<T, Long>            dueTimes;
+
+    public DeadlineQueue() {
+        this.heap = new PriorityQueue<>(Comparator.comparingLong(Entry::dueAt));
+        this.dueTimes = new IdentityHashMap<>();
+    }
+
+    /**
+     * @param dueAt Time (in millis) the item is due at, negative if never.
+     */
+    public synchronized void schedule(@NotNull T item, long dueAt) {
+        if (dueAt < 0L) {
+            this.dueTimes.remove(item);
+            return;
+        }
+
+        Long current = this.dueTimes.put(item, dueAt);
+        if (current != null && current == dueAt) return;
+
+        this.heap.add(new Entry<>(dueAt, item));
+        if (this.heap.size() > MIN_COMPACT_SIZE && this.heap.size() > this.dueTimes.size() * 2) {
+            this.compact();
+        }
+    }
+
+    public synchronized void cancel(@NotNull T item) {
+        this.dueTimes.remove(item);
+    }
+
+    /**
+     * Removes and returns items due at the given time or earlier, the earliest first.
+     */
+    @NotNull
+    public synchronized List<T> pollDue(long now) {
+        List<T> due = new ArrayList<>();
+
+        Entry<T> entry;
+        while ((entry = this.heap.peek()) != null && entry.dueAt() <= now) {
+            this.heap.poll();
+
+            Long dueAt = this.dueTimes.get(entry.item());
+            if (dueAt == null || dueAt != entry.dueAt()) continue; // Rescheduled or cancelled.
+
+            this.dueTimes.remove(entry.item());
+            due.add(entry.item());
+        }
+
+        return due;
+    }
+
+    public synchronized int size() {
+        return this.dueTimes.size();
+    }
+
+    public synchronized void clear() {
+        this.heap.clear();
+        this.dueTimes.clear();
+    }
+
+    private void compact() {
+        this.heap.clear();
+        this.dueTimes.forEach((item, dueAt) -> this.heap.add(new Entry<>(dueAt, item)));
+    }
+}
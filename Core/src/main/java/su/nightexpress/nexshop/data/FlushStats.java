@@ -0,0 +1,12 @@
+package su.nightexpress.nexshop.data;
+
+import java.util.concurrent.TimeUnit;
+
+public record FlushStats(int drained, long durationNanos, long timestamp) {
+
+    public static final FlushStats EMPTY = new FlushStats(0, 0L, 0L);
+
+    public long durationMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(this.durationNanos);
+    }
+}
@@ -0,0 +1,243 @@
+package su.nightexpress.nexshop.data;
+
+import org.bukkit.Bukkit;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import su.nightexpress.nexshop.ShopPlugin;
+import su.nightexpress.nexshop.data.key.ProductKey;
+import su.nightexpress.nexshop.data.product.StockData;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Holds per-player stock datas of online and recently active players.
+ * Datas are loaded once per player, on join or first access, and evicted after a grace period when player is offline.
+ * The server thread never waits for a load, it gets no datas until they are ready.
+ */
+public class PlayerStockCache {
+
+    private final ShopPlugin                            plugin;
+    private final Function<UUID, Collection<StockData>> loader;
+    private final Consumer<StockData>                   binder;
+    private final Map<UUID, Holder>                     holders;
+    private final long                                  evictDelay;
+
+    public PlayerStockCache(@NotNull ShopPlugin plugin, @NotNull Function<UUID, Collection<StockData>> loader, @NotNull Consumer<StockData> binder, long evictDelay) {
+        this.plugin = plugin;
+        this.loader = loader;
+        this.binder = binder;
+        this.evictDelay = evictDelay;
+        this.holders = new ConcurrentHashMap<>();
+    }
+
+    private static class Holder {
+
+        private final CompletableFuture<DataIndex<StockData>> datas = new CompletableFuture<>();
+
+        private volatile long lastAccess;
+        private volatile long evictDate;
+
+        private boolean hasUnsaved() {
+            return this.datas.isDone() && this.datas.join().values().stream().anyMatch(StockData::isSaveRequired);
+        }
+    }
+
+    public void clear() {
+        this.holders.clear();
+    }
+
+    public int size() {
+        return this.holders.size();
+    }
+
+    public boolean isLoaded(@NotNull UUID playerId) {
+        Holder holder = this.holders.get(playerId);
+        return holder != null && holder.datas.isDone();
+    }
+
+    /**
+     * Returns loaded datas of the player, or null if they are not ready.
+     * On the server thread datas are never loaded or waited for, the load is started in background instead.
+     * In other threads datas are loaded in the current thread, or, when the same player is being loaded by another thread,
+     * waits for it instead of querying the database twice.
+     */
+    @Nullable
+    private DataIndex<StockData> getDatas(@NotNull UUID playerId) {
+        Holder holder = this.holders.get(playerId);
+        if (holder == null || !holder.datas.isDone()) {
+            if (Bukkit.isPrimaryThread()) {
+                this.loadAsync(playerId);
+                return null;
+            }
+            holder = this.getOrLoad(playerId);
+        }
+
+        holder.lastAccess = System.currentTimeMillis();
+        try {
+            return holder.datas.join();
+        }
+        catch (CompletionException exception) {
+            return null; // Load failed, already reported and will be retried on the next access.
+        }
+    }
+
+    @NotNull
+    private Holder getOrLoad(@NotNull UUID playerId) {
+        Holder created = new Holder();
+        Holder holder = this.holders.putIfAbsent(playerId, created);
+        if (holder != null) return holder;
+
+        // Online players are kept until they quit, others until the grace period ends.
+        created.evictDate = Bukkit.getPlayer(playerId) != null ? 0L : System.currentTimeMillis() + this.evictDelay;
+
+        DataIndex<StockData> datas = new DataIndex<>();
+        try {
+            this.loader.apply(playerId).forEach(data -> {
+                this.binder.accept(data);
+                datas.put(keyOf(data), data);
+            });
+            created.datas.complete(datas);
+        }
+        catch (RuntimeException exception) {
+            this.holders.remove(playerId, created);
+            created.datas.completeExceptionally(exception);
+            this.plugin.error("Could not load stock datas of player '" + playerId + "': " + exception.getMessage());
+        }
+        return created;
+    }
+
+    /**
+     * Loads player datas in the current thread, if not loaded yet.
+     */
+    public void load(@NotNull UUID playerId) {
+        this.getOrLoad(playerId).lastAccess = System.currentTimeMillis();
+    }
+
+    public void loadAsync(@NotNull UUID playerId) {
+        if (this.holders.containsKey(playerId)) return; // Loaded or being loaded.
+
+        this.plugin.runTaskAsync(task -> this.load(playerId));
+    }
+
+    /**
+     * @return Data of the player, or null if there is no such data or player datas are not loaded yet, see {@link #isLoaded(UUID)}.
+     */
+    @Nullable
+    public StockData get(@NotNull UUID playerId, @NotNull ProductKey key) {
+        DataIndex<StockData> datas = this.getDatas(playerId);
+        return datas == null ? null : datas.get(key);
+    }
+
+    /**
+     * Returns data only for players that are already in cache, never loads them.
+     */
+    @Nullable
+    public StockData getIfLoaded(@NotNull UUID playerId, @NotNull ProductKey key) {
+        if (!this.isLoaded(playerId)) return null;
+
+        return this.get(playerId, key);
+    }
+
+    /**
+     * @return False if player datas are not loaded yet, so the data was not stored.
+     */
+    public boolean put(@NotNull UUID playerId, @NotNull StockData data) {
+        DataIndex<StockData> datas = this.getDatas(playerId);
+        if (datas == null) return false;
+
+        this.binder.accept(data);
+        datas.put(keyOf(data), data);
+        return true;
+    }
+
+    /**
+     * Replaces data only for players that are already in cache, so external updates can not load datas of random players.
+     */
+    public void putIfLoaded(@NotNull UUID playerId, @NotNull StockData data) {
+        if (!this.isLoaded(playerId)) return;
+
+        this.put(playerId, data);
+    }
+
+    public void markOnline(@NotNull UUID playerId) {
+        Holder holder = this.holders.get(playerId);
+        if (holder != null) holder.evictDate = 0L;
+    }
+
+    public void markOffline(@NotNull UUID playerId) {
+        Holder holder = this.holders.get(playerId);
+        if (holder != null) holder.evictDate = System.currentTimeMillis() + this.evictDelay;
+    }
+
+    public void forEachInProduct(@NotNull String shopId, @NotNull String productId, @NotNull Consumer<StockData> consumer) {
+        this.forEachLoaded(datas -> datas.forEachInProduct(shopId, productId, consumer));
+    }
+
+    public void removeShop(@NotNull String shopId, @NotNull Consumer<StockData> onRemove) {
+        this.forEachLoaded(datas -> datas.removeShop(shopId, onRemove));
+    }
+
+    public void removeProduct(@NotNull String shopId, @NotNull String productId, @NotNull Consumer<StockData> onRemove) {
+        this.forEachLoaded(datas -> datas.removeProduct(shopId, productId, onRemove));
+    }
+
+    /**
+     * Removes data of a loaded player if it matches the predicate. Datas of players not in cache are not loaded.
+     */
+    public void removeIf(@NotNull UUID playerId, @NotNull ProductKey key, @NotNull Predicate<StockData> predicate, @NotNull Consumer<StockData> onRemove) {
+        Holder holder = this.holders.get(playerId);
+        if (holder == null || !holder.datas.isDone()) return;
+
+        StockData removed = holder.datas.join().removeIf(key, predicate);
+        if (removed != null) onRemove.accept(removed);
+    }
+
+    private void forEachLoaded(@NotNull Consumer<DataIndex<StockData>> consumer) {
+        this.holders.values().forEach(holder -> {
+            if (holder.datas.isDone()) consumer.accept(holder.datas.join());
+        });
+    }
+
+    /**
+     * Removes datas of players whose grace period has passed, then trims offline players down to the limit, oldest access first.
+     * Players with unsaved changes are kept until the next call.
+     * @return Amount of evicted players.
+     */
+    public int evict(int maxOffline) {
+        long now = System.currentTimeMillis();
+        int evicted = 0;
+
+        List<Map.Entry<UUID, Holder>> offline = new ArrayList<>();
+        for (Map.Entry<UUID, Holder> entry : this.holders.entrySet()) {
+            Holder holder = entry.getValue();
+            if (holder.evictDate == 0L || !holder.datas.isDone() || holder.hasUnsaved()) continue;
+
+            if (holder.evictDate <= now) {
+                if (this.holders.remove(entry.getKey(), holder)) evicted++;
+            }
+            else offline.add(entry);
+        }
+
+        int excess = offline.size() - Math.max(0, maxOffline);
+        if (excess > 0) {
+            offline.sort(Comparator.comparingLong(entry -> entry.getValue().lastAccess));
+            for (int index = 0; index < excess; index++) {
+                Map.Entry<UUID, Holder> entry = offline.get(index);
+                if (this.holders.remove(entry.getKey(), entry.getValue())) evicted++;
+            }
+        }
+
+        return evicted;
+    }
+
+    @NotNull
+    private static ProductKey keyOf(@NotNull StockData data) {
+        return new ProductKey(data.getShopId(), data.getProductId(), data.getHolder());
+    }
+}
@@ -0,0 +1,89 @@
+package su.nightexpress.nexshop.data;
+
+import org.jetbrains.annotations.NotNull;
+import su.nightexpress.nexshop.api.data.Saveable;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Concurrent queue of datas that were marked as 'save required'.
+ * Datas register themselves here once they become dirty, so a flush only needs to drain the changed records.
+ */
+public class SaveQueue<T extends Saveable> {
+
+    private final Queue<T>      queue;
+    private final AtomicInteger size;
+
+    private volatile FlushStats lastFlush;
+
+    public SaveQueue() {
+        this.queue = new ConcurrentLinkedQueue<>();
+        this.size = new AtomicInteger();
+        this.lastFlush = FlushStats.EMPTY;
+    }
+
+    public void offer(@NotNull T data) {
+        this.queue.add(data);
+        this.size.incrementAndGet();
+    }
+
+    @NotNull
+    public Set<T> drain() {
+        Set<T> datas = new HashSet<>();
+
+        T data;
+        while ((data = this.queue.poll()) != null) {
+            this.size.decrementAndGet();
+            if (!data.isSaveRequired()) continue; // Already saved or discarded.
+
+            data.setSaveRequired(false);
+            datas.add(data);
+        }
+
+        return datas;
+    }
+
+    @NotNull
+    public FlushStats flush(@NotNull Consumer<Set<T>> writer) {
+        long start = System.nanoTime();
+
+        Set<T> datas = this.drain();
+        if (!datas.isEmpty()) {
+            try {
+                writer.accept(datas);
+            }
+            catch (RuntimeException exception) {
+                this.requeue(datas); // Mark them dirty again, so they will be saved on the next flush.
+                throw exception;
+            }
+        }
+
+        FlushStats stats = new FlushStats(datas.size(), System.nanoTime() - start, System.currentTimeMillis());
+        this.lastFlush = stats;
+        return stats;
+    }
+
+    public void requeue(@NotNull Collection<T> datas) {
+        datas.forEach(data -> data.setSaveRequired(true));
+    }
+
+    public void clear() {
+        this.queue.clear();
+        this.size.set(0);
+    }
+
+    public int size() {
+        return this.size.get();
+    }
+
+    @NotNull
+    public FlushStats getLastFlush() {
+        return this.lastFlush;
+    }
+}
@@ -0,0 +1,97 @@
+package su.nightexpress.nexshop.data;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Tracks which shops have their datas loaded during (re)load of the data tables.
+ * Tables are streamed ordered by shop id, so a shop is complete for a table once the table moves on to the next shop, or is finished.
+ * Shop is ready when it's complete for all tables.
+ */
+public class ShopLoadTracker {
+
+    public static final int PRICE    = 0;
+    public static final int STOCK    = 1;
+    public static final int ROTATION = 2;
+
+    public static final int ALL_TABLES = (1 << PRICE) | (1 << STOCK) | (1 << ROTATION);
+
+    private final Consumer<String>   onReady;
+    private final Map<String, Entry> entries;
+    private final AtomicInteger      finishedTables;
+
+    public ShopLoadTracker(@NotNull Consumer<String> onReady) {
+        this.onReady = onReady;
+        this.entries = new ConcurrentHashMap<>();
+        this.finishedTables = new AtomicInteger();
+    }
+
+    private record Entry(@NotNull AtomicInteger tables, @NotNull AtomicBoolean notified, @NotNull CompletableFuture<Void> future) {}
+
+    public void reset() {
+        this.entries.clear();
+        this.finishedTables.set(0);
+    }
+
+    public boolean isReady(@NotNull String shopId) {
+        Entry entry = this.entries.get(shopId.toLowerCase());
+        if (entry != null) return entry.future().isDone();
+
+        return this.finishedTables.get() == ALL_TABLES;
+    }
+
+    @NotNull
+    public CompletableFuture<Void> whenReady(@NotNull String shopId) {
+        String id = shopId.toLowerCase();
+        Entry entry = this.getEntry(id);
+        this.check(id, entry);
+        return entry.future();
+    }
+
+    /**
+     * @return True if all datas of the shop are read from the given table.
+     */
+    public boolean isLoaded(@NotNull String shopId, int table) {
+        if ((this.finishedTables.get() & (1 << table)) != 0) return true;
+
+        Entry entry = this.entries.get(shopId.toLowerCase());
+        return entry != null && (entry.tables().get() & (1 << table)) != 0;
+    }
+
+    public void markLoaded(@NotNull String shopId, int table) {
+        String id = shopId.toLowerCase();
+        Entry entry = this.getEntry(id);
+        entry.tables().getAndUpdate(tables -> tables | (1 << table));
+        this.check(id, entry);
+    }
+
+    public void finishTable(int table) {
+        this.finishedTables.getAndUpdate(tables -> tables | (1 << table));
+        this.entries.forEach(this::check);
+    }
+
+    @NotNull
+    private Entry getEntry(@NotNull String shopId) {
+        return this.entries.computeIfAbsent(shopId, k -> new Entry(new AtomicInteger(), new AtomicBoolean(), new CompletableFuture<>()));
+    }
+
+    private void check(@NotNull String shopId, @NotNull Entry entry) {
+        if ((entry.tables().get() | this.finishedTables.get()) != ALL_TABLES) return;
+
+        if (!entry.notified().compareAndSet(false, true)) return;
+
+        // Callback goes first, so the shop is not available until it's done.
+        try {
+            this.onReady.accept(shopId);
+        }
+        finally {
+            entry.future().complete(null);
+        }
+    }
+}
@@ -0,0 +1,374 @@
+package su.nightexpress.nexshop.data.batch;
+
+import org.jetbrains.annotations.NotNull;
+import su.nightexpress.nexshop.ShopPlugin;
+import su.nightexpress.nightcore.db.config.DatabaseType;
+import su.nightexpress.nightcore.db.connection.AbstractConnector;
+import su.nightexpress.nightcore.db.sql.column.Column;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * Collects pending inserts and updates of a table and writes them in batched statements.
+ * With upserts enabled, both are merged into multi-row INSERT ... ON DUPLICATE KEY UPDATE (MySQL) / ON CONFLICT (SQLite) statements.
+ * When a batch fails, its rows are written one by one, so a single bad row can not drop the whole batch.
+ * Rows that still fail are queued again and the flush reports the failure, so the datas are not treated as saved.
+ * <p>
+ * Without upserts (tables without unique keys), a row is inserted only if an update finds no row to change,
+ * except for the first batch insert of new datas. So rows of a partly applied batch and retried rows are never inserted twice.
+ * <p>
+ * Rows are written from snapshots captured at queue time, so every row holds values of the same change, never a mix of two.
+ * Keys are read from the data itself, values from its snapshot.
+ */
+public class BatchWriter<T, S> {
+
+    private static final int SQLITE_MAX_PARAMS = 999;
+
+    private final ShopPlugin          plugin;
+    private final String              table;
+    private final Function<T, S>      snapshot;
+    private final BiConsumer<T, S>    onWritten;
+    private final List<BatchValue<T>> keys;
+    private final List<BatchValue<S>> values;
+    private final Map<T, S>           pendingInserts;
+    private final Map<T, S>           pendingUpdates;
+
+    /**
+     * @param snapshot Captures immutable state of the data to write.
+     * @param onWritten Called for every row successfully written, with the snapshot it was written from.
+     */
+    public BatchWriter(@NotNull ShopPlugin plugin, @NotNull String table, @NotNull Function<T, S> snapshot, @NotNull BiConsumer<T, S> onWritten) {
+        this.plugin = plugin;
+        this.table = table;
+        this.snapshot = snapshot;
+        this.onWritten = onWritten;
+        this.keys = new ArrayList<>();
+        this.values = new ArrayList<>();
+        this.pendingInserts = new ConcurrentHashMap<>();
+        this.pendingUpdates = new ConcurrentHashMap<>();
+    }
+
+    private record BatchValue<V>(@NotNull Column column, @NotNull Function<V, String> function) {}
+
+    private record Row<T, S>(@NotNull T data, @NotNull S snapshot) {}
+
+    @NotNull
+    public BatchWriter<T, S> key(@NotNull Column column, @NotNull Function<T, String> function) {
+        this.keys.add(new BatchValue<>(column, function));
+        return this;
+    }
+
+    @NotNull
+    public BatchWriter<T, S> value(@NotNull Column column, @NotNull Function<S, String> function) {
+        this.values.add(new BatchValue<>(column, function));
+        return this;
+    }
+
+    public void queueInsert(@NotNull T data) {
+        this.pendingInserts.put(data, this.snapshot.apply(data));
+    }
+
+    public void queueUpdate(@NotNull T data) {
+        this.pendingUpdates.put(data, this.snapshot.apply(data));
+    }
+
+    public void queueUpdates(@NotNull Collection<T> datas) {
+        datas.forEach(this::queueUpdate);
+    }
+
+    public void discard(@NotNull Predicate<T> predicate) {
+        this.pendingInserts.keySet().removeIf(predicate);
+        this.pendingUpdates.keySet().removeIf(predicate);
+    }
+
+    public boolean hasPending() {
+        return !this.pendingInserts.isEmpty() || !this.pendingUpdates.isEmpty();
+    }
+
+    public int countPending() {
+        return this.pendingInserts.size() + this.pendingUpdates.size();
+    }
+
+    @NotNull
+    private List<Row<T, S>> drain(@NotNull Map<T, S> pending) {
+        List<Row<T, S>> drained = new ArrayList<>();
+        for (Map.Entry<T, S> entry : pending.entrySet()) {
+            // Skip if re-queued with a newer snapshot meanwhile, it will go with the next flush.
+            if (pending.remove(entry.getKey(), entry.getValue())) {
+                drained.add(new Row<>(entry.getKey(), entry.getValue()));
+            }
+        }
+        return drained;
+    }
+
+    /**
+     * Writes all pending rows. Rows that could not be written are queued again, unless a newer snapshot was queued meanwhile.
+     * @return Amount of rows sent to the database.
+     * @throws IllegalStateException If any row could not be written.
+     */
+    public synchronized int flush(@NotNull AbstractConnector connector, @NotNull DatabaseType type, int maxBatchSize, boolean upsert) {
+        if (!this.hasPending()) return 0;
+
+        List<Row<T, S>> inserts = this.drain(this.pendingInserts);
+        List<Row<T, S>> updates = this.drain(this.pendingUpdates);
+
+        int sent;
+        int failed;
+        if (upsert) {
+            // A row queued for both insert and update is written once, with the update snapshot which is never older.
+            Map<T, Row<T, S>> merged = new IdentityHashMap<>();
+            inserts.forEach(row -> merged.put(row.data(), row));
+            updates.forEach(row -> merged.put(row.data(), row));
+
+            List<Row<T, S>> rows = new ArrayList<>(merged.values());
+            sent = rows.size();
+            failed = this.writeChunked(connector, type, rows, maxBatchSize, true, this.pendingUpdates);
+        }
+        else {
+            // Inserts go first, so updates of the same window never miss their row.
+            // Failed inserts may still have been written, so they are retried as updates, which insert rows only if missing.
+            sent = inserts.size() + updates.size();
+            failed = this.writeChunked(connector, type, inserts, maxBatchSize, false, this.pendingUpdates);
+            failed += this.writeUpdates(connector, type, updates, maxBatchSize);
+        }
+
+        if (failed > 0) {
+            throw new IllegalStateException("Could not write " + failed + "/" + sent + " rows to '" + this.table + "', they will be retried with the next flush.");
+        }
+        return sent;
+    }
+
+    /**
+     * @return Amount of rows that failed and were queued again.
+     */
+    private int writeChunked(@NotNull AbstractConnector connector, @NotNull DatabaseType type, @NotNull List<Row<T, S>> rows, int maxBatchSize, boolean upsert, @NotNull Map<T, S> retryTo) {
+        if (rows.isEmpty()) return 0;
+
+        int columns = this.keys.size() + this.values.size();
+        int chunkSize = Math.max(1, maxBatchSize);
+        if (type == DatabaseType.SQLITE) {
+            chunkSize = Math.min(chunkSize, Math.max(1, SQLITE_MAX_PARAMS / columns));
+        }
+
+        int failed = 0;
+        for (int index = 0; index < rows.size(); index += chunkSize) {
+            List<Row<T, S>> chunk = rows.subList(index, Math.min(rows.size(), index + chunkSize));
+
+            try (Connection connection = connector.getConnection();
+                 PreparedStatement statement = connection.prepareStatement(this.buildInsert(type, chunk.size(), upsert))) {
+
+                int param = 1;
+                for (Row<T, S> row : chunk) {
+                    param = this.bindRow(statement, param, row);
+                }
+                statement.executeUpdate();
+                this.written(chunk);
+            }
+            catch (SQLException exception) {
+                this.plugin.warn("Batch write to '" + this.table + "' failed (" + exception.getMessage() + "). Falling back to per-row statements.");
+                failed += this.writeSingles(connector, type, chunk, upsert, retryTo);
+            }
+        }
+        return failed;
+    }
+
+    private int writeSingles(@NotNull AbstractConnector connector, @NotNull DatabaseType type, @NotNull List<Row<T, S>> rows, boolean upsert, @NotNull Map<T, S> retryTo) {
+        String insertSql = this.buildInsert(type, 1, upsert);
+        String updateSql = this.buildUpdate();
+
+        int failed = 0;
+        int index = 0;
+        try (Connection connection = connector.getConnection()) {
+            for (; index < rows.size(); index++) {
+                Row<T, S> row = rows.get(index);
+                try {
+                    // Without upserts, some rows of the failed batch may be in the table already.
+                    if (upsert || !this.updateRow(connection, updateSql, row)) {
+                        this.insertRow(connection, insertSql, row);
+                    }
+                    this.written(row);
+                }
+                catch (SQLException exception) {
+                    this.plugin.error("Could not write row to '" + this.table + "': " + exception.getMessage());
+                    failed += this.retry(retryTo, List.of(row));
+                }
+            }
+        }
+        catch (SQLException exception) {
+            this.plugin.error("Could not write rows to '" + this.table + "': " + exception.getMessage());
+            failed += this.retry(retryTo, rows.subList(index, rows.size()));
+        }
+        return failed;
+    }
+
+    private int writeUpdates(@NotNull AbstractConnector connector, @NotNull DatabaseType type, @NotNull List<Row<T, S>> rows, int maxBatchSize) {
+        if (rows.isEmpty()) return 0;
+
+        String sql = this.buildUpdate();
+        String insertSql = this.buildInsert(type, 1, false);
+        int chunkSize = Math.max(1, maxBatchSize);
+
+        int failed = 0;
+        int index = 0;
+        try (Connection connection = connector.getConnection()) {
+            boolean autoCommit = connection.getAutoCommit();
+
+            for (; index < rows.size(); index += chunkSize) {
+                List<Row<T, S>> chunk = rows.subList(index, Math.min(rows.size(), index + chunkSize));
+
+                try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                    connection.setAutoCommit(false);
+                    for (Row<T, S> row : chunk) {
+                        this.bindUpdate(statement, row);
+                        statement.addBatch();
+                    }
+                    int[] counts = statement.executeBatch();
+
+                    // Rows of failed inserts that were not written after all.
+                    for (int row = 0; row < counts.length; row++) {
+                        if (counts[row] == 0) this.insertRow(connection, insertSql, chunk.get(row));
+                    }
+                    connection.commit();
+                    this.written(chunk);
+                }
+                catch (SQLException exception) {
+                    this.plugin.warn("Batch update of '" + this.table + "' failed (" + exception.getMessage() + "). Falling back to per-row statements.");
+                    this.rollback(connection);
+                    failed += this.updateSingles(connection, sql, insertSql, chunk);
+                }
+                finally {
+                    connection.setAutoCommit(autoCommit);
+                }
+            }
+        }
+        catch (SQLException exception) {
+            // Connection is lost, rows of the current chunk may be queued again even if written, which is harmless.
+            this.plugin.error("Could not update rows in '" + this.table + "': " + exception.getMessage());
+            failed += this.retry(this.pendingUpdates, rows.subList(index, rows.size()));
+        }
+        return failed;
+    }
+
+    private void rollback(@NotNull Connection connection) {
+        try {
+            connection.rollback();
+            connection.setAutoCommit(true);
+        }
+        catch (SQLException exception) {
+            this.plugin.warn("Could not roll back batch update of '" + this.table + "': " + exception.getMessage());
+        }
+    }
+
+    private int updateSingles(@NotNull Connection connection, @NotNull String sql, @NotNull String insertSql, @NotNull List<Row<T, S>> rows) {
+        int failed = 0;
+        for (Row<T, S> row : rows) {
+            try {
+                if (!this.updateRow(connection, sql, row)) {
+                    this.insertRow(connection, insertSql, row);
+                }
+                this.written(row);
+            }
+            catch (SQLException exception) {
+                this.plugin.error("Could not update row in '" + this.table + "': " + exception.getMessage());
+                failed += this.retry(this.pendingUpdates, List.of(row));
+            }
+        }
+        return failed;
+    }
+
+    /**
+     * @return False if there is no row with the keys of the given one. MySQL drivers count matched rows by default, not only changed ones.
+     */
+    private boolean updateRow(@NotNull Connection connection, @NotNull String sql, @NotNull Row<T, S> row) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            this.bindUpdate(statement, row);
+            return statement.executeUpdate() != 0;
+        }
+    }
+
+    private void insertRow(@NotNull Connection connection, @NotNull String sql, @NotNull Row<T, S> row) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            this.bindRow(statement, 1, row);
+            statement.executeUpdate();
+        }
+    }
+
+    /**
+     * Queues failed rows again. A newer snapshot queued meanwhile wins over the failed one.
+     * @return Amount of the failed rows.
+     */
+    private int retry(@NotNull Map<T, S> pending, @NotNull List<Row<T, S>> rows) {
+        rows.forEach(row -> pending.putIfAbsent(row.data(), row.snapshot()));
+        return rows.size();
+    }
+
+    private int bindRow(@NotNull PreparedStatement statement, int param, @NotNull Row<T, S> row) throws SQLException {
+        for (BatchValue<T> key : this.keys) {
+            statement.setString(param++, key.function().apply(row.data()));
+        }
+        for (BatchValue<S> value : this.values) {
+            statement.setString(param++, value.function().apply(row.snapshot()));
+        }
+        return param;
+    }
+
+    private void bindUpdate(@NotNull PreparedStatement statement, @NotNull Row<T, S> row) throws SQLException {
+        int param = 1;
+        for (BatchValue<S> value : this.values) {
+            statement.setString(param++, value.function().apply(row.snapshot()));
+        }
+        for (BatchValue<T> key : this.keys) {
+            statement.setString(param++, key.function().apply(row.data()));
+        }
+    }
+
+    private void written(@NotNull List<Row<T, S>> rows) {
+        rows.forEach(this::written);
+    }
+
+    private void written(@NotNull Row<T, S> row) {
+        this.onWritten.accept(row.data(), row.snapshot());
+    }
+
+    @NotNull
+    private String buildInsert(@NotNull DatabaseType type, int rows, boolean upsert) {
+        List<Column> all = new ArrayList<>();
+        this.keys.forEach(key -> all.add(key.column()));
+        this.values.forEach(value -> all.add(value.column()));
+
+        String columns = all.stream().map(Column::getNameEscaped).collect(Collectors.joining(","));
+        String placeholders = "(" + all.stream().map(column -> "?").collect(Collectors.joining(",")) + ")";
+        String rowsSql = String.join(",", Collections.nCopies(rows, placeholders));
+
+        StringBuilder sql = new StringBuilder("INSERT INTO ").append(this.table).append(" (").append(columns).append(") VALUES ").append(rowsSql);
+        if (!upsert || this.values.isEmpty()) return sql.toString();
+
+        if (type == DatabaseType.SQLITE) {
+            String conflict = this.keys.stream().map(key -> key.column().getNameEscaped()).collect(Collectors.joining(","));
+            String set = this.values.stream().map(value -> value.column().getNameEscaped() + " = excluded." + value.column().getNameEscaped()).collect(Collectors.joining(", "));
+            sql.append(" ON CONFLICT(").append(conflict).append(") DO UPDATE SET ").append(set);
+        }
+        else {
+            String set = this.values.stream().map(value -> value.column().getNameEscaped() + " = VALUES(" + value.column().getNameEscaped() + ")").collect(Collectors.joining(", "));
+            sql.append(" ON DUPLICATE KEY UPDATE ").append(set);
+        }
+
+        return sql.toString();
+    }
+
+    @NotNull
+    private String buildUpdate() {
+        String set = this.values.stream().map(value -> value.column().getNameEscaped() + " = ?").collect(Collectors.joining(", "));
+        String where = this.keys.stream().map(key -> key.column().getNameEscaped() + " = ?").collect(Collectors.joining(" AND "));
+
+        return "UPDATE " + this.table + " SET " + set + " WHERE " + where;
+    }
+}
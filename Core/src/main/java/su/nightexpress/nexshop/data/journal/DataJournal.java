@@ -0,0 +1,295 @@
+package su.nightexpress.nexshop.data.journal;
+
+import org.jetbrains.annotations.NotNull;
+import su.nightexpress.nexshop.ShopPlugin;
+import su.nightexpress.nexshop.data.product.AbstractData;
+import su.nightexpress.nexshop.data.product.PriceData;
+import su.nightexpress.nexshop.data.product.StockData;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only, memory-mapped journal of price and stock changes made since the last successful database flush.
+ * Each record holds full state of the changed data, so replay only needs to apply the records in order.
+ * <p>
+ * Record layout: [int length][long sequence][byte type][shop][product][holder][values][int crc32], zero length marks the end.
+ * Appends are plain writes to the mapped memory, which survive a crash of the server process.
+ */
+public class DataJournal {
+
+    private static final int  MAGIC        = 0x45534A31;
+    private static final int  HEADER_SIZE  = 8;
+    private static final int  INITIAL_SIZE = 1024 * 1024;
+    private static final int  MAX_RECORD   = 1024;
+    private static final byte TYPE_PRICE   = 1;
+    private static final byte TYPE_STOCK   = 2;
+    private static final int  FIXED_SIZE   = Long.BYTES + 1 + Short.BYTES * 3; // Sequence, type and length prefixes of the ids.
+    private static final int  PRICE_VALUES = Double.BYTES * 2 + Long.BYTES * 2 + Integer.BYTES * 2 + Double.BYTES;
+    private static final int  STOCK_VALUES = Integer.BYTES * 2 + Long.BYTES;
+
+    private final ShopPlugin plugin;
+    private final Path       path;
+    private final ByteBuffer scratch;
+    private final CRC32      crc;
+
+    private FileChannel      channel;
+    private MappedByteBuffer buffer;
+    private long             sequence;
+
+    private volatile boolean growing;
+
+    public DataJournal(@NotNull ShopPlugin plugin, @NotNull Path path) {
+        this.plugin = plugin;
+        this.path = path;
+        this.scratch = ByteBuffer.allocate(MAX_RECORD);
+        this.crc = new CRC32();
+    }
+
+    /**
+     * Opens the journal file and reads records left from the previous run.
+     * Recovered records stay in the journal until the next successful flush, new records are appended after them.
+     * @return Recovered datas in the order they were written.
+     */
+    @NotNull
+    public synchronized List<AbstractData> open() throws IOException {
+        Files.createDirectories(this.path.getParent());
+
+        this.channel = FileChannel.open(this.path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.buffer = this.channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(INITIAL_SIZE, this.channel.size()));
+
+        List<AbstractData> recovered = new ArrayList<>();
+        this.buffer.position(HEADER_SIZE);
+        if (this.buffer.getInt(0) == MAGIC) {
+            this.readRecords(recovered);
+        }
+        else this.buffer.putInt(0, MAGIC);
+
+        this.buffer.putInt(this.buffer.position(), 0);
+        return recovered;
+    }
+
+    private void readRecords(@NotNull List<AbstractData> recovered) {
+        while (this.buffer.remaining() >= 4 + 4) { // Keep room for the end marker.
+            int start = this.buffer.position();
+            int length = this.buffer.getInt(start);
+            if (length <= 0 || length > MAX_RECORD || this.buffer.remaining() < 4 + length + 4) return;
+
+            ByteBuffer body = this.buffer.slice(start + 4, length);
+            this.crc.reset();
+            this.crc.update(body.duplicate());
+            if ((int) this.crc.getValue() != this.buffer.getInt(start + 4 + length)) {
+                this.plugin.warn("Data journal is corrupted after " + recovered.size() + " records, the rest is skipped.");
+                return;
+            }
+
+            try {
+                this.sequence = body.getLong();
+                byte type = body.get();
+                String shopId = readString(body);
+                String productId = readString(body);
+                String holderId = readString(body);
+
+                if (type == TYPE_PRICE) {
+                    double buyPrice = body.getDouble();
+                    double sellPrice = body.getDouble();
+                    long updateDate = body.getLong();
+                    long expireDate = body.getLong();
+                    int purchases = body.getInt();
+                    int sales = body.getInt();
+                    double demand = body.remaining() >= Double.BYTES ? body.getDouble() : 0D; // Not written by older versions.
+                    recovered.add(new PriceData(shopId, productId, buyPrice, sellPrice, updateDate, expireDate, purchases, sales, demand));
+                }
+                else if (type == TYPE_STOCK) {
+                    recovered.add(new StockData(shopId, productId, holderId, body.getInt(), body.getInt(), body.getLong()));
+                }
+            }
+            catch (BufferUnderflowException exception) {
+                this.plugin.warn("Invalid data journal record: " + exception.getMessage());
+            }
+
+            this.buffer.position(start + 4 + length + 4);
+        }
+    }
+
+    public void append(@NotNull PriceData data) {
+        PriceData.Snapshot snapshot = data.getSnapshot();
+        this.write(TYPE_PRICE, data, data.getShopId(), PRICE_VALUES, body -> body
+            .putDouble(snapshot.latestBuyPrice())
+            .putDouble(snapshot.latestSellPrice())
+            .putLong(snapshot.latestUpdateDate())
+            .putLong(snapshot.expireDate())
+            .putInt(snapshot.purchases())
+            .putInt(snapshot.sales())
+            .putDouble(snapshot.demand())
+        );
+    }
+
+    public void append(@NotNull StockData data) {
+        StockData.Snapshot snapshot = data.getSnapshot();
+        this.write(TYPE_STOCK, data, data.getHolder(), STOCK_VALUES, body -> body
+            .putInt(snapshot.buyStock())
+            .putInt(snapshot.sellStock())
+            .putLong(snapshot.restockDate())
+        );
+    }
+
+    private synchronized void write(byte type, @NotNull AbstractData data, @NotNull String holderId, int valuesSize, @NotNull Consumer<ByteBuffer> values) {
+        if (this.buffer == null) return;
+
+        byte[] shopId = data.getShopId().getBytes(StandardCharsets.UTF_8);
+        byte[] productId = data.getProductId().getBytes(StandardCharsets.UTF_8);
+        byte[] holder = holderId.getBytes(StandardCharsets.UTF_8);
+        if (FIXED_SIZE + shopId.length + productId.length + holder.length + valuesSize > MAX_RECORD) {
+            this.plugin.warn("Data of '" + data.getShopId() + "' / '" + data.getProductId() + "' is not journaled: ids are too long.");
+            return;
+        }
+
+        ByteBuffer body = this.scratch.clear();
+        body.putLong(++this.sequence).put(type);
+        writeString(body, shopId);
+        writeString(body, productId);
+        writeString(body, holder);
+        values.accept(body);
+        body.flip();
+
+        int length = body.remaining();
+        try {
+            this.ensureCapacity(4 + length + 4 + 4);
+        }
+        catch (IOException exception) {
+            this.plugin.error("Could not grow data journal: " + exception.getMessage());
+            return;
+        }
+
+        this.crc.reset();
+        this.crc.update(body.duplicate());
+
+        this.buffer.putInt(length);
+        this.buffer.put(body);
+        this.buffer.putInt((int) this.crc.getValue());
+        this.buffer.putInt(this.buffer.position(), 0); // End marker, overwritten by the next record.
+
+        if (this.buffer.remaining() < this.buffer.capacity() / 4) {
+            this.growAsync();
+        }
+    }
+
+    /**
+     * Grows the journal in place when the background growth did not keep up.
+     */
+    private void ensureCapacity(int bytes) throws IOException {
+        if (this.buffer.remaining() >= bytes) return;
+
+        int position = this.buffer.position();
+        long size = Math.max((long) this.buffer.capacity() * 2, position + bytes);
+        this.buffer = this.channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        this.buffer.position(position);
+    }
+
+    /**
+     * Maps a larger region of the file without holding the lock, so appends are not blocked while the file grows.
+     * Both mappings share the same file pages, so records appended to the old one meanwhile are kept.
+     */
+    private void growAsync() {
+        if (this.growing) return;
+
+        this.growing = true;
+        FileChannel channel = this.channel;
+        long size = (long) this.buffer.capacity() * 2;
+
+        this.plugin.runTaskAsync(task -> {
+            try {
+                if (!channel.isOpen()) return; // Closed meanwhile.
+
+                MappedByteBuffer grown = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+                synchronized (this) {
+                    if (this.buffer != null && grown.capacity() > this.buffer.capacity()) {
+                        grown.position(this.buffer.position());
+                        this.buffer = grown;
+                    }
+                }
+            }
+            catch (IOException exception) {
+                this.plugin.error("Could not grow data journal: " + exception.getMessage());
+            }
+            finally {
+                this.growing = false;
+            }
+        });
+    }
+
+    /**
+     * Marks current end of the journal and forces it to disk.
+     * The disk write is done outside the lock, so appends of other threads do not wait for it.
+     * @return Position to pass to {@link #compact(int)} once datas changed before this call are saved.
+     */
+    public int mark() {
+        MappedByteBuffer buffer;
+        int position;
+        synchronized (this) {
+            if (this.buffer == null) return HEADER_SIZE;
+
+            buffer = this.buffer;
+            position = buffer.position();
+        }
+
+        buffer.force(0, position);
+        return position;
+    }
+
+    /**
+     * Removes records written before the mark, keeping the ones appended while the flush was running.
+     */
+    public synchronized void compact(int mark) {
+        if (this.buffer == null) return;
+
+        int end = this.buffer.position();
+        int tail = end - mark;
+        if (tail > 0) {
+            this.buffer.put(HEADER_SIZE, this.buffer, mark, tail);
+        }
+
+        int position = HEADER_SIZE + Math.max(0, tail);
+        this.buffer.position(position);
+        this.buffer.putInt(position, 0);
+    }
+
+    public synchronized void close() {
+        if (this.buffer != null) {
+            this.buffer.force();
+            this.buffer = null;
+        }
+
+        try {
+            if (this.channel != null) this.channel.close();
+        }
+        catch (IOException exception) {
+            exception.printStackTrace();
+        }
+        this.channel = null;
+    }
+
+    private static void writeString(@NotNull ByteBuffer buffer, byte[] bytes) {
+        buffer.putShort((short) bytes.length);
+        buffer.put(bytes);
+    }
+
+    @NotNull
+    private static String readString(@NotNull ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getShort()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
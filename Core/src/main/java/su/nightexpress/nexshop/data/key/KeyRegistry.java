@@ -0,0 +1,69 @@
+package su.nightexpress.nexshop.data.key;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Maps string ids (lower cased) to small sequential ints and back.
+ * Ids are never removed: there are only as many of them (and their spellings) as shops and products ever configured.
+ */
+public class KeyRegistry {
+
+    public static final KeyRegistry SHOPS    = new KeyRegistry();
+    public static final KeyRegistry PRODUCTS = new KeyRegistry();
+
+    private final Map<String, Integer> indexes;
+
+    private volatile String[] names;
+    private int size;
+
+    private KeyRegistry() {
+        this.indexes = new ConcurrentHashMap<>();
+        this.names = new String[64];
+    }
+
+    public int intern(@NotNull String id) {
+        Integer index = this.indexes.get(id);
+        if (index != null) return index;
+
+        return this.register(id);
+    }
+
+    // Other spellings of an id are indexed as well, so lookups with the id as configured never get here again.
+    private synchronized int register(@NotNull String spelling) {
+        Integer index = this.indexes.get(spelling);
+        if (index != null) return index;
+
+        String id = spelling.toLowerCase();
+        index = this.indexes.get(id);
+        if (index != null) {
+            this.indexes.put(spelling, index);
+            return index;
+        }
+
+        String[] names = this.names;
+        if (this.size == names.length) {
+            String[] grown = new String[names.length * 2];
+            System.arraycopy(names, 0, grown, 0, names.length);
+            names = grown;
+        }
+
+        int created = this.size++;
+        names[created] = id;
+        this.names = names; // Publish after the slot is written.
+        this.indexes.put(id, created);
+        if (!id.equals(spelling)) this.indexes.put(spelling, created);
+        return created;
+    }
+
+    @NotNull
+    public String getName(int index) {
+        return this.names[index];
+    }
+
+    public int size() {
+        return this.size;
+    }
+}
@@ -4,36 +4,53 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import su.nightexpress.nexshop.api.shop.Shop;
 import su.nightexpress.nexshop.api.shop.product.Product;
+import su.nightexpress.nexshop.shop.impl.AbstractProduct;
 
 import java.util.Objects;
 import java.util.UUID;
 
-public class ProductKey {
-
-    private final String shopId;
-    private final String productId;
-    private final String holderId;
+/**
+ * Immutable data key. Shop and product ids are stored as interned indexes (see {@link KeyRegistry}),
+ * player holder as UUID, so keys are small and compared without string checks.
+ * Global keys are cached on products, see {@link AbstractProduct#getDataKey()}.
+ */
+public final class ProductKey {
+
+    private final int  shopIndex;
+    private final int  productIndex;
+    private final UUID playerId; // null for global (shop) holder.
+    private final int  hash;
+
+    private ProductKey(int shopIndex, int productIndex, @Nullable UUID playerId) {
+        this.shopIndex = shopIndex;
+        this.productIndex = productIndex;
+        this.playerId = playerId;
+        this.hash = 31 * (31 * shopIndex + productIndex) + (playerId == null ? 0 : playerId.hashCode());
+    }
 
+    /**
+     * @param holderId Shop id for global datas, player's UUID for personal ones.
+     * @throws IllegalArgumentException if holder is neither shop id nor UUID.
+     */
     public ProductKey(@NotNull String shopId, @NotNull String productId, @NotNull String holderId) {
-        this.shopId = shopId.toLowerCase();
-        this.productId = productId.toLowerCase();
-        this.holderId = holderId.toLowerCase();
+        this(KeyRegistry.SHOPS.intern(shopId), KeyRegistry.PRODUCTS.intern(productId), holderId.equalsIgnoreCase(shopId) ? null : UUID.fromString(holderId));
+    }
+
+    @NotNull
+    public static ProductKey global(@NotNull String shopId, @NotNull String productId) {
+        return new ProductKey(KeyRegistry.SHOPS.intern(shopId), KeyRegistry.PRODUCTS.intern(productId), null);
     }
 
     @NotNull
     public static ProductKey global(@NotNull Product product) {
-        String shopId = product.getShop().getId();
-        String productId = product.getId();
+        if (product instanceof AbstractProduct<?> abstractProduct) return abstractProduct.getDataKey();
 
-        return new ProductKey(shopId, productId, shopId);
+        return global(product.getShop().getId(), product.getId());
     }
 
     @NotNull
     public static ProductKey personal(@NotNull Product product, @NotNull UUID playerId) {
-        String shopId = product.getShop().getId();
-        String productId = product.getId();
-
-        return new ProductKey(shopId, productId, playerId.toString());
+        return global(product).withHolder(playerId);
     }
 
     @NotNull
@@ -41,8 +58,16 @@ public class ProductKey {
         return playerId == null ? global(product) : personal(product, playerId);
     }
 
+    @NotNull
+    public ProductKey withHolder(@Nullable UUID playerId) {
+        if (Objects.equals(this.playerId, playerId)) return this;
+
+        return new ProductKey(this.shopIndex, this.productIndex, playerId);
+    }
+
     public boolean isProduct(@NotNull Product product) {
-        return this.isShop(product.getShop()) && this.productId.equalsIgnoreCase(product.getId());
+        ProductKey key = global(product);
+        return this.shopIndex == key.shopIndex && this.productIndex == key.productIndex;
     }
 
     public boolean isShop(@NotNull Shop shop) {
@@ -50,46 +75,55 @@ public class ProductKey {
     }
 
     public boolean isShop(@NotNull String shopId) {
-        return this.shopId.equalsIgnoreCase(shopId);
+        return this.getShopId().equalsIgnoreCase(shopId);
     }
 
     public boolean isHolder(@NotNull UUID playerId) {
-        return this.holderId.equalsIgnoreCase(playerId.toString());
+        return playerId.equals(this.playerId);
+    }
+
+    public boolean isGlobal() {
+        return this.playerId == null;
     }
 
     @NotNull
     public String getShopId() {
-        return this.shopId;
+        return KeyRegistry.SHOPS.getName(this.shopIndex);
     }
 
     @NotNull
     public String getProductId() {
-        return this.productId;
+        return KeyRegistry.PRODUCTS.getName(this.productIndex);
     }
 
     @NotNull
     public String getHolderId() {
-        return this.holderId;
+        return this.playerId == null ? this.getShopId() : this.playerId.toString();
+    }
+
+    @Nullable
+    public UUID getPlayerId() {
+        return this.playerId;
     }
 
     @Override
     public boolean equals(Object object) {
         if (this == object) return true;
         if (!(object instanceof ProductKey key)) return false;
-        return Objects.equals(shopId, key.shopId) && Objects.equals(productId, key.productId) && Objects.equals(holderId, key.holderId);
+        return this.hash == key.hash && this.shopIndex == key.shopIndex && this.productIndex == key.productIndex && Objects.equals(this.playerId, key.playerId);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(shopId, productId, holderId);
+        return this.hash;
     }
 
     @Override
     public String toString() {
         return "ProductKey{" +
-            "shopId='" + shopId + '\'' +
-            ", productId='" + productId + '\'' +
-            ", holderId='" + holderId + '\'' +
+            "shopId='" + this.getShopId() + '\'' +
+            ", productId='" + this.getProductId() + '\'' +
+            ", holderId='" + this.getHolderId() + '\'' +
             '}';
     }
 }
@@ -0,0 +1,40 @@
+package su.nightexpress.nexshop.data.listener;
+
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.player.AsyncPlayerPreLoginEvent;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.jetbrains.annotations.NotNull;
+import su.nightexpress.nexshop.ShopPlugin;
+import su.nightexpress.nexshop.data.DataManager;
+import su.nightexpress.nightcore.manager.AbstractListener;
+
+public class DataListener extends AbstractListener<ShopPlugin> {
+
+    private final DataManager dataManager;
+
+    public DataListener(@NotNull ShopPlugin plugin, @NotNull DataManager dataManager) {
+        super(plugin);
+        this.dataManager = dataManager;
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPreLogin(AsyncPlayerPreLoginEvent event) {
+        if (event.getLoginResult() != AsyncPlayerPreLoginEvent.Result.ALLOWED) return;
+        if (!this.dataManager.isLoaded()) return;
+
+        // Already async, so datas are ready before player is able to trade.
+        this.dataManager.loadPlayerStocks(event.getUniqueId());
+    }
+
+    @EventHandler(priority = EventPriority.LOWEST)
+    public void onJoin(PlayerJoinEvent event) {
+        this.dataManager.handlePlayerJoin(event.getPlayer().getUniqueId());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onQuit(PlayerQuitEvent event) {
+        this.dataManager.handlePlayerQuit(event.getPlayer().getUniqueId());
+    }
+}
@@ -1,18 +1,31 @@
 package su.nightexpress.nexshop.data.product;
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import su.nightexpress.nexshop.api.data.Saveable;
+import su.nightexpress.nexshop.sync.SyncStamp;
+
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public abstract class AbstractData implements Saveable {
 
     protected final String shopId;
     protected final String productId;
 
-    private boolean saveRequired;
+    private final AtomicBoolean saveRequired;
+
+    private volatile Runnable  saveHook;
+    private volatile Runnable  changeHook;
+    private volatile Runnable  journalHook;
+    private volatile Runnable  deadlineHook;
+    private volatile long      savedVersion;
+    private volatile SyncStamp syncStamp;
 
     public AbstractData(@NotNull String shopId, @NotNull String productId) {
         this.shopId = shopId.toLowerCase();
         this.productId = productId.toLowerCase();
+        this.saveRequired = new AtomicBoolean(false);
+        this.syncStamp = SyncStamp.NONE;
     }
 
     @NotNull
@@ -25,13 +38,103 @@ public abstract class AbstractData implements Saveable {
         return this.productId;
     }
 
+    /**
+     * @return Version of the current state, increased on every change.
+     */
+    public abstract long getVersion();
+
+    /**
+     * @return Whether current state differs from the last one written to the database.
+     */
+    public boolean isChanged() {
+        return this.getVersion() != this.savedVersion;
+    }
+
+    /**
+     * Called once state of the given version is written to the database. Older versions never overwrite newer ones.
+     */
+    public void markSaved(long version) {
+        synchronized (this) {
+            if (version > this.savedVersion) this.savedVersion = version;
+        }
+    }
+
+    /**
+     * @return Cross-server version of the last change, see {@link SyncStamp}.
+     */
+    @NotNull
+    public SyncStamp getSyncStamp() {
+        return this.syncStamp;
+    }
+
+    public void setSyncStamp(@NotNull SyncStamp syncStamp) {
+        this.syncStamp = syncStamp;
+    }
+
+    public void setSaveHook(@Nullable Runnable saveHook) {
+        this.saveHook = saveHook;
+    }
+
+    /**
+     * Sets hook called on every change (every 'save required' mark), unlike the save hook which is called once per dirty state.
+     */
+    public void setChangeHook(@Nullable Runnable changeHook) {
+        this.changeHook = changeHook;
+    }
+
+    /**
+     * Sets hook called on every change after the data is marked as 'save required',
+     * so a flush that does not see this change yet always keeps its journal record.
+     */
+    public void setJournalHook(@Nullable Runnable journalHook) {
+        this.journalHook = journalHook;
+    }
+
+    /**
+     * Sets hook called when the date this data is due for an update at (price expire or restock date) changes.
+     */
+    public void setDeadlineHook(@Nullable Runnable deadlineHook) {
+        this.deadlineHook = deadlineHook;
+    }
+
+    protected void onDeadlineChange() {
+        Runnable hook = this.deadlineHook;
+        if (hook != null) hook.run();
+    }
+
+    /**
+     * Detaches this data from its save queue, so removed data will not be written back to the database.
+     */
+    public void discard() {
+        this.saveHook = null;
+        this.changeHook = null;
+        this.journalHook = null;
+        this.deadlineHook = null;
+        this.saveRequired.set(false);
+    }
+
     @Override
     public boolean isSaveRequired() {
-        return this.saveRequired;
+        return this.saveRequired.get();
     }
 
     @Override
     public void setSaveRequired(boolean saveRequired) {
-        this.saveRequired = saveRequired;
+        if (!saveRequired) {
+            this.saveRequired.set(false);
+            return;
+        }
+
+        Runnable onChange = this.changeHook;
+        if (onChange != null) onChange.run();
+
+        // Notify the hook only once per dirty state, so the data is queued once until the next flush.
+        if (this.saveRequired.compareAndSet(false, true)) {
+            Runnable hook = this.saveHook;
+            if (hook != null) hook.run();
+        }
+
+        Runnable onJournal = this.journalHook;
+        if (onJournal != null) onJournal.run();
     }
 }
@@ -5,14 +5,72 @@ import su.nightexpress.nexshop.api.shop.product.Product;
 import su.nightexpress.nexshop.api.shop.type.TradeType;
 import su.nightexpress.nightcore.util.TimeUtil;
 
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.UnaryOperator;
+
 public class PriceData extends AbstractData {
 
-    private double latestBuyPrice;
-    private double latestSellPrice;
-    private long   latestUpdateDate;
-    private long   expireDate;
-    private int    purchases;
-    private int    sales;
+    private final AtomicReference<Snapshot> snapshot;
+
+    /**
+     * Immutable state of the price data. Every change publishes a new snapshot with the next version,
+     * so readers (database flush, journal) always see values of the same change.
+     */
+    public record Snapshot(long version, double latestBuyPrice, double latestSellPrice, long latestUpdateDate, long expireDate, int purchases, int sales, double demand) {
+
+        public Snapshot {
+            purchases = Math.max(0, purchases);
+            sales = Math.max(0, sales);
+        }
+
+        @NotNull
+        public Snapshot withPrices(double buyPrice, double sellPrice, long updateDate, long expireDate) {
+            return new Snapshot(this.version, buyPrice, sellPrice, updateDate, expireDate, this.purchases, this.sales, this.demand);
+        }
+
+        @NotNull
+        public Snapshot withLatestBuyPrice(double latestBuyPrice) {
+            return new Snapshot(this.version, latestBuyPrice, this.latestSellPrice, this.latestUpdateDate, this.expireDate, this.purchases, this.sales, this.demand);
+        }
+
+        @NotNull
+        public Snapshot withLatestSellPrice(double latestSellPrice) {
+            return new Snapshot(this.version, this.latestBuyPrice, latestSellPrice, this.latestUpdateDate, this.expireDate, this.purchases, this.sales, this.demand);
+        }
+
+        @NotNull
+        public Snapshot withLatestUpdateDate(long latestUpdateDate) {
+            return new Snapshot(this.version, this.latestBuyPrice, this.latestSellPrice, latestUpdateDate, this.expireDate, this.purchases, this.sales, this.demand);
+        }
+
+        @NotNull
+        public Snapshot withExpireDate(long expireDate) {
+            return new Snapshot(this.version, this.latestBuyPrice, this.latestSellPrice, this.latestUpdateDate, expireDate, this.purchases, this.sales, this.demand);
+        }
+
+        @NotNull
+        public Snapshot withTransactions(int purchases, int sales) {
+            return new Snapshot(this.version, this.latestBuyPrice, this.latestSellPrice, this.latestUpdateDate, this.expireDate, purchases, sales, this.demand);
+        }
+
+        /**
+         * @param demand Demand value as of the latest update date, see DemandPricer.
+         */
+        @NotNull
+        public Snapshot withDemand(double demand) {
+            return new Snapshot(this.version, this.latestBuyPrice, this.latestSellPrice, this.latestUpdateDate, this.expireDate, this.purchases, this.sales, demand);
+        }
+
+        @NotNull
+        public Snapshot withValues(@NotNull Snapshot other) {
+            return new Snapshot(this.version, other.latestBuyPrice, other.latestSellPrice, other.latestUpdateDate, other.expireDate, other.purchases, other.sales, other.demand);
+        }
+
+        @NotNull
+        private Snapshot withVersion(long version) {
+            return new Snapshot(version, this.latestBuyPrice, this.latestSellPrice, this.latestUpdateDate, this.expireDate, this.purchases, this.sales, this.demand);
+        }
+    }
 
     @NotNull
     public static PriceData create(@NotNull Product product) {
@@ -24,8 +82,9 @@ public class PriceData extends AbstractData {
         long expireDate = 0L; // Will trigger isExpired to update values.
         int purchases = 0;
         int sales = 0;
+        double demand = 0D;
 
-        return new PriceData(shopId, productId, buyPrice, sellPrice, latestUpdated, expireDate, purchases, sales);
+        return new PriceData(shopId, productId, buyPrice, sellPrice, latestUpdated, expireDate, purchases, sales, demand);
     }
 
     public PriceData(@NotNull String shopId,
@@ -35,33 +94,50 @@ public class PriceData extends AbstractData {
                      long latestUpdateDate,
                      long expireDate,
                      int purchases,
-                     int sales) {
+                     int sales,
+                     double demand) {
         super(shopId, productId);
-        this.setLatestBuyPrice(latestBuyPrice);
-        this.setLatestSellPrice(latestSellPrice);
-        this.setLatestUpdateDate(latestUpdateDate);
-        this.setExpireDate(expireDate);
-        this.setPurchases(purchases);
-        this.setSales(sales);
+        this.snapshot = new AtomicReference<>(new Snapshot(0L, latestBuyPrice, latestSellPrice, latestUpdateDate, expireDate, purchases, sales, demand));
+    }
+
+    /**
+     * Atomically applies the function to the current state and publishes the result as a new version.
+     * Function may be called more than once under contention, so it must have no side effects.
+     * Returning the same snapshot leaves the version unchanged.
+     */
+    public void update(@NotNull UnaryOperator<Snapshot> function) {
+        Snapshot previous = this.snapshot.getAndUpdate(current -> {
+            Snapshot next = function.apply(current);
+            return next == current ? current : next.withVersion(current.version() + 1);
+        });
+        if (previous.expireDate() != this.getExpireDate()) this.onDeadlineChange();
+    }
+
+    @NotNull
+    public Snapshot getSnapshot() {
+        return this.snapshot.get();
+    }
+
+    @Override
+    public long getVersion() {
+        return this.snapshot.get().version();
     }
 
     public void countTransaction(@NotNull TradeType tradeType, int amount) {
         if (tradeType == TradeType.BUY) {
-            this.setPurchases(this.purchases + amount);
+            this.update(snapshot -> snapshot.withTransactions(snapshot.purchases() + amount, snapshot.sales()));
         }
         else {
-            this.setSales(this.sales + amount);
+            this.update(snapshot -> snapshot.withTransactions(snapshot.purchases(), snapshot.sales() + amount));
         }
     }
 
     public void reset() {
-        this.setPurchases(0);
-        this.setSales(0);
-        this.setExpired();
+        this.update(snapshot -> snapshot.withTransactions(0, 0).withDemand(0D).withExpireDate(0L));
     }
 
     public boolean isExpired() {
-        return TimeUtil.isPassed(this.expireDate);
+        return TimeUtil.isPassed(this.getExpireDate());
     }
 
     public void setExpired() {
@@ -69,62 +145,61 @@ public class PriceData extends AbstractData {
     }
 
     public double getLatestBuyPrice() {
-        return this.latestBuyPrice;
+        return this.snapshot.get().latestBuyPrice();
     }
 
     public void setLatestBuyPrice(double latestBuyPrice) {
-        this.latestBuyPrice = latestBuyPrice;
+        this.update(snapshot -> snapshot.withLatestBuyPrice(latestBuyPrice));
     }
 
     public double getLatestSellPrice() {
-        return this.latestSellPrice;
+        return this.snapshot.get().latestSellPrice();
     }
 
     public void setLatestSellPrice(double latestSellPrice) {
-        this.latestSellPrice = latestSellPrice;
+        this.update(snapshot -> snapshot.withLatestSellPrice(latestSellPrice));
     }
 
     public long getLatestUpdateDate() {
-        return this.latestUpdateDate;
+        return this.snapshot.get().latestUpdateDate();
     }
 
     public void setLatestUpdateDate(long latestUpdateDate) {
-        this.latestUpdateDate = latestUpdateDate;
+        this.update(snapshot -> snapshot.withLatestUpdateDate(latestUpdateDate));
     }
 
     public long getExpireDate() {
-        return this.expireDate;
+        return this.snapshot.get().expireDate();
     }
 
     public void setExpireDate(long expireDate) {
-        this.expireDate = expireDate;
+        this.update(snapshot -> snapshot.withExpireDate(expireDate));
     }
 
     public int getPurchases() {
-        return this.purchases;
+        return this.snapshot.get().purchases();
     }
 
     public void setPurchases(int purchases) {
-        this.purchases = Math.max(0, purchases);
+        this.update(snapshot -> snapshot.withTransactions(purchases, snapshot.sales()));
     }
 
     public int getSales() {
-        return this.sales;
+        return this.snapshot.get().sales();
     }
 
     public void setSales(int sales) {
-        this.sales = Math.max(0, sales);
+        this.update(snapshot -> snapshot.withTransactions(snapshot.purchases(), sales));
+    }
+
+    public double getDemand() {
+        return this.snapshot.get().demand();
     }
 
     @Override
     public String toString() {
         return "PriceData{" +
-            "latestBuyPrice=" + latestBuyPrice +
-            ", latestSellPrice=" + latestSellPrice +
-            ", latestUpdateDate=" + latestUpdateDate +
-            ", expireDate=" + expireDate +
-            ", purchases=" + purchases +
-            ", sales=" + sales +
+            "snapshot=" + this.snapshot.get() +
             '}';
     }
 }
@@ -8,14 +8,54 @@ import su.nightexpress.nexshop.api.shop.type.TradeType;
 import su.nightexpress.nightcore.util.TimeUtil;
 
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.UnaryOperator;
 
 public class StockData extends AbstractData {
 
     private final String holder;
 
-    private int buyStock;
-    private int sellStock;
-    private long restockDate;
+    private final AtomicReference<Snapshot> snapshot;
+
+    /**
+     * Immutable state of the stock data, see {@link PriceData.Snapshot}.
+     */
+    public record Snapshot(long version, int buyStock, int sellStock, long restockDate) {
+
+        public int countStock(@NotNull TradeType type) {
+            return type == TradeType.BUY ? this.buyStock : this.sellStock;
+        }
+
+        @NotNull
+        public Snapshot withStock(@NotNull TradeType type, int amount) {
+            return type == TradeType.BUY ? this.withBuyStock(amount) : this.withSellStock(amount);
+        }
+
+        @NotNull
+        public Snapshot withBuyStock(int buyStock) {
+            return new Snapshot(this.version, Math.max(0, buyStock), this.sellStock, this.restockDate);
+        }
+
+        @NotNull
+        public Snapshot withSellStock(int sellStock) {
+            return new Snapshot(this.version, this.buyStock, Math.max(0, sellStock), this.restockDate);
+        }
+
+        @NotNull
+        public Snapshot withRestockDate(long restockDate) {
+            return new Snapshot(this.version, this.buyStock, this.sellStock, restockDate);
+        }
+
+        @NotNull
+        public Snapshot withValues(@NotNull Snapshot other) {
+            return new Snapshot(this.version, other.buyStock, other.sellStock, other.restockDate);
+        }
+
+        @NotNull
+        private Snapshot withVersion(long version) {
+            return new Snapshot(version, this.buyStock, this.sellStock, this.restockDate);
+        }
+    }
 
     public StockData(@NotNull String shopId,
                      @NotNull String productId,
@@ -25,9 +65,7 @@ public class StockData extends AbstractData {
                      long restockDate) {
         super(shopId, productId);
         this.holder = holder.toLowerCase();
-        this.buyStock = buyStock;
-        this.sellStock = sellStock;
-        this.restockDate = restockDate;
+        this.snapshot = new AtomicReference<>(new Snapshot(0L, buyStock, sellStock, restockDate));
     }
 
     @NotNull
@@ -43,13 +81,36 @@ public class StockData extends AbstractData {
         return new StockData(shopId, productId, holder, buyStock, sellStock, restockDate);
     }
 
+    /**
+     * Atomically applies the function to the current state and publishes the result as a new version.
+     * @see PriceData#update(UnaryOperator)
+     */
+    public void update(@NotNull UnaryOperator<Snapshot> function) {
+        Snapshot previous = this.snapshot.getAndUpdate(current -> {
+            Snapshot next = function.apply(current);
+            return next == current ? current : next.withVersion(current.version() + 1);
+        });
+        if (previous.restockDate() != this.getRestockDate()) this.onDeadlineChange();
+    }
+
+    @NotNull
+    public Snapshot getSnapshot() {
+        return this.snapshot.get();
+    }
+
+    @Override
+    public long getVersion() {
+        return this.snapshot.get().version();
+    }
+
     public boolean isRestockTime() {
-        return !this.isAwaiting() && TimeUtil.isPassed(this.restockDate);
+        long restockDate = this.getRestockDate();
+        return restockDate != 0L && TimeUtil.isPassed(restockDate);
         //return this.restockDate > 0 && System.currentTimeMillis() >= this.restockDate;
     }
 
     public boolean isAwaiting() {
-        return this.restockDate == 0L;
+        return this.getRestockDate() == 0L;
     }
 
     public void setExpired() {
@@ -63,46 +124,34 @@ public class StockData extends AbstractData {
 //    }
 
     public void restock(@NotNull StockValues values) {
-        this.setBuyStock(values.getBuyAmount());
-        this.setSellStock(values.getSellAmount());
-        this.restockDate = 0L;
+        this.update(snapshot -> snapshot.withBuyStock(values.getBuyAmount()).withSellStock(values.getSellAmount()).withRestockDate(0L));
     }
 
     public void startRestockIfAbsent(@NotNull StockValues values) {
         if (!this.isAwaiting()) return;
 
-        this.updateRestockDate(values);
+        long restockDate = generateRestockDate(values);
+        this.update(snapshot -> snapshot.restockDate() == 0L ? snapshot.withRestockDate(restockDate) : snapshot);
     }
 
     public void updateRestockDate(@NotNull StockValues values) {
-        if (values.isRestockable()) {
-            this.restockDate = values.generateRestockTimestamp();
-        }
-        else {
-            this.restockDate = -1L;
-        }
+        this.setRestockDate(generateRestockDate(values));
+    }
+
+    public static long generateRestockDate(@NotNull StockValues values) {
+        return values.isRestockable() ? values.generateRestockTimestamp() : -1L;
     }
 
     public int countStock(@NotNull TradeType type) {
-        return type == TradeType.BUY ? this.buyStock : this.sellStock;
+        return this.snapshot.get().countStock(type);
     }
 
     public void consumeStock(@NotNull TradeType type, int amount) {
-        if (type == TradeType.BUY) {
-            this.setBuyStock(this.buyStock - amount);
-        }
-        else {
-            this.setSellStock(this.sellStock - amount);
-        }
+        this.update(snapshot -> snapshot.withStock(type, snapshot.countStock(type) - amount));
     }
 
     public void fillStock(@NotNull TradeType type, int amount) {
-        if (type == TradeType.BUY) {
-            this.setBuyStock(this.buyStock + amount);
-        }
-        else {
-            this.setSellStock(this.sellStock + amount);
-        }
+        this.update(snapshot -> snapshot.withStock(type, snapshot.countStock(type) + amount));
     }
 
     @NotNull
@@ -111,26 +160,26 @@ public class StockData extends AbstractData {
     }
 
     public int getBuyStock() {
-        return this.buyStock;
+        return this.snapshot.get().buyStock();
     }
 
     public void setBuyStock(int buyStock) {
-        this.buyStock = Math.max(0, buyStock);
+        this.update(snapshot -> snapshot.withBuyStock(buyStock));
     }
 
     public int getSellStock() {
-        return this.sellStock;
+        return this.snapshot.get().sellStock();
     }
 
     public void setSellStock(int sellStock) {
-        this.sellStock = Math.max(0, sellStock);
+        this.update(snapshot -> snapshot.withSellStock(sellStock));
     }
 
     public long getRestockDate() {
-        return this.restockDate;
+        return this.snapshot.get().restockDate();
     }
 
     public void setRestockDate(long restockDate) {
-        this.restockDate = restockDate;
+        this.update(snapshot -> snapshot.withRestockDate(restockDate));
     }
 }
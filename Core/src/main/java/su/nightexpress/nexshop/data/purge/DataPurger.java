@@ -0,0 +1,259 @@
+package su.nightexpress.nexshop.data.purge;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import su.nightexpress.nexshop.ShopPlugin;
+import su.nightexpress.nightcore.db.connection.AbstractConnector;
+import su.nightexpress.nightcore.db.sql.column.Column;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Deletes outdated rows in small chunks walking the primary key, instead of a single DELETE over the whole table,
+ * so the tables are never locked for long. Chunks are spread in time to fit the rows per second budget.
+ * <p>
+ * The job can be paused and resumed, deleted rows are passed to the table callback to drop matching in-memory datas.
+ */
+public class DataPurger {
+
+    private static final long TICK_MILLIS     = 50L;
+    private static final long REPORT_INTERVAL = 30_000L;
+
+    private final ShopPlugin        plugin;
+    private final AbstractConnector connector;
+    private final Column            idColumn;
+    private final BooleanSupplier   ready;
+    private final List<Target>      targets;
+
+    private boolean running;
+    private boolean paused;
+    private boolean scheduled;
+
+    private long deadline;
+    private int  chunkSize;
+    private int  rowsPerSecond;
+
+    // Written by the chunk task only, chunks never run concurrently.
+    private volatile int  targetIndex;
+    private volatile long lastId;
+    private volatile long tableDeleted;
+    private volatile long totalDeleted;
+    private volatile long startDate;
+    private long          reportDate;
+
+    public DataPurger(@NotNull ShopPlugin plugin, @NotNull AbstractConnector connector, @NotNull Column idColumn, @NotNull BooleanSupplier ready) {
+        this.plugin = plugin;
+        this.connector = connector;
+        this.idColumn = idColumn;
+        this.ready = ready;
+        this.targets = new ArrayList<>();
+    }
+
+    /**
+     * Deleted row with values of the target key columns, in the order they were defined.
+     */
+    public record Row(long id, @NotNull List<String> keys) {
+
+        @NotNull
+        public String key(int index) {
+            return this.keys.get(index);
+        }
+    }
+
+    private record Target(@NotNull String table, @NotNull Column dateColumn, @NotNull List<Column> keys, @NotNull BiConsumer<Row, Long> onDelete) {}
+
+    public record Progress(boolean running, boolean paused, @Nullable String table, int tableIndex, int tables, long tableDeleted, long totalDeleted, long startDate) {}
+
+    /**
+     * @param keys Columns to read from deleted rows, see {@link Row#key(int)}.
+     * @param onDelete Called for every deleted row with the purge deadline.
+     */
+    @NotNull
+    public DataPurger target(@NotNull String table, @NotNull Column dateColumn, @NotNull List<Column> keys, @NotNull BiConsumer<Row, Long> onDelete) {
+        this.targets.add(new Target(table, dateColumn, keys, onDelete));
+        return this;
+    }
+
+    /**
+     * Starts purge of rows with date column value older than the deadline.
+     * @return False if purge is already running.
+     */
+    public synchronized boolean start(long deadline, int chunkSize, int rowsPerSecond) {
+        if (this.running || this.targets.isEmpty()) return false;
+
+        this.deadline = deadline;
+        this.chunkSize = Math.max(1, chunkSize);
+        this.rowsPerSecond = rowsPerSecond;
+        this.targetIndex = 0;
+        this.lastId = 0L;
+        this.tableDeleted = 0L;
+        this.totalDeleted = 0L;
+        this.startDate = System.currentTimeMillis();
+        this.reportDate = this.startDate;
+        this.running = true;
+        this.paused = false;
+        if (!this.scheduled) this.schedule(0L); // Otherwise pending task of the stopped run picks it up.
+        return true;
+    }
+
+    public synchronized boolean pause() {
+        if (!this.running || this.paused) return false;
+
+        this.paused = true;
+        return true;
+    }
+
+    public synchronized boolean resume() {
+        if (!this.running || !this.paused) return false;
+
+        this.paused = false;
+        if (!this.scheduled) this.schedule(0L);
+        return true;
+    }
+
+    public synchronized void stop() {
+        this.running = false;
+    }
+
+    @NotNull
+    public synchronized Progress getProgress() {
+        int index = this.targetIndex;
+        String table = this.running && index < this.targets.size() ? this.targets.get(index).table() : null;
+        return new Progress(this.running, this.paused, table, index, this.targets.size(), this.tableDeleted, this.totalDeleted, this.startDate);
+    }
+
+    private void schedule(long delayMillis) {
+        this.scheduled = true;
+        this.plugin.runTaskLaterAsync(task -> this.runChunk(), Math.max(1L, (delayMillis + TICK_MILLIS - 1) / TICK_MILLIS));
+    }
+
+    private synchronized boolean canRun() {
+        if (this.running && !this.paused) return true;
+
+        this.scheduled = false;
+        return false;
+    }
+
+    private synchronized void next(long delayMillis) {
+        if (!this.canRun()) return;
+
+        this.schedule(delayMillis);
+    }
+
+    private void runChunk() {
+        if (!this.canRun()) return;
+
+        // Wait until datas are loaded, so deleted rows can be dropped from memory as well.
+        if (!this.ready.getAsBoolean()) {
+            this.next(1000L);
+            return;
+        }
+
+        Target target = this.targets.get(this.targetIndex);
+        long started = System.currentTimeMillis();
+
+        List<Row> rows;
+        try {
+            rows = this.selectChunk(target);
+            if (!rows.isEmpty()) this.deleteChunk(target, rows);
+        }
+        catch (SQLException exception) {
+            this.plugin.error("Could not purge '" + target.table() + "' table: " + exception.getMessage() + ". Purge is paused.");
+            this.pause();
+            this.next(0L);
+            return;
+        }
+
+        rows.forEach(row -> target.onDelete().accept(row, this.deadline));
+        this.tableDeleted += rows.size();
+        this.totalDeleted += rows.size();
+
+        if (started - this.reportDate >= REPORT_INTERVAL) {
+            this.reportDate = started;
+            this.plugin.info("Purging '" + target.table() + "' table: " + this.tableDeleted + " rows deleted, " + this.totalDeleted + " in total.");
+        }
+
+        if (rows.size() < this.chunkSize) {
+            this.plugin.info("Purged " + this.tableDeleted + " outdated rows from the '" + target.table() + "' table.");
+            this.tableDeleted = 0L;
+            this.lastId = 0L;
+
+            if (this.targetIndex + 1 >= this.targets.size()) {
+                this.finish();
+                return;
+            }
+            this.targetIndex++;
+        }
+        else this.lastId = rows.getLast().id();
+
+        // Spread chunks in time to keep deletion rate under the budget.
+        long budget = this.rowsPerSecond <= 0 ? 0L : rows.size() * 1000L / this.rowsPerSecond;
+        long elapsed = System.currentTimeMillis() - started;
+        this.next(Math.max(0L, budget - elapsed));
+    }
+
+    private synchronized void finish() {
+        long time = System.currentTimeMillis() - this.startDate;
+        this.plugin.info("Data purge completed: " + this.totalDeleted + " rows deleted in " + (time / 1000L) + "s.");
+        this.running = false;
+        this.scheduled = false;
+    }
+
+    @NotNull
+    private List<Row> selectChunk(@NotNull Target target) throws SQLException {
+        List<String> columns = new ArrayList<>();
+        columns.add(this.idColumn.getNameEscaped());
+        target.keys().forEach(column -> columns.add(column.getNameEscaped()));
+
+        String id = this.idColumn.getNameEscaped();
+        String sql = "SELECT " + String.join(",", columns) + " FROM " + target.table() +
+            " WHERE " + id + " > ? AND " + target.dateColumn().getNameEscaped() + " < ?" +
+            " ORDER BY " + id + " LIMIT " + this.chunkSize;
+
+        List<Row> rows = new ArrayList<>();
+        try (Connection connection = this.connector.getConnection();
+             PreparedStatement statement = connection.prepareStatement(sql)) {
+
+            statement.setLong(1, this.lastId);
+            statement.setLong(2, this.deadline);
+
+            try (ResultSet resultSet = statement.executeQuery()) {
+                int keyCount = target.keys().size();
+                while (resultSet.next()) {
+                    List<String> keys = new ArrayList<>(keyCount);
+                    for (int index = 0; index < keyCount; index++) {
+                        keys.add(resultSet.getString(index + 2));
+                    }
+                    rows.add(new Row(resultSet.getLong(1), keys));
+                }
+            }
+        }
+        return rows;
+    }
+
+    private void deleteChunk(@NotNull Target target, @NotNull List<Row> rows) throws SQLException {
+        // Date check is repeated, so rows updated since the select are kept.
+        String sql = "DELETE FROM " + target.table() +
+            " WHERE " + this.idColumn.getNameEscaped() + " IN (" + String.join(",", Collections.nCopies(rows.size(), "?")) + ")" +
+            " AND " + target.dateColumn().getNameEscaped() + " < ?";
+
+        try (Connection connection = this.connector.getConnection();
+             PreparedStatement statement = connection.prepareStatement(sql)) {
+
+            int param = 1;
+            for (Row row : rows) {
+                statement.setLong(param++, row.id());
+            }
+            statement.setLong(param, this.deadline);
+            statement.executeUpdate();
+        }
+    }
+}
@@ -0,0 +1,268 @@
+package su.nightexpress.nexshop.data.schema;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import su.nightexpress.nexshop.ShopPlugin;
+import su.nightexpress.nightcore.db.config.DatabaseType;
+import su.nightexpress.nightcore.db.connection.AbstractConnector;
+
+import java.sql.*;
+import java.util.*;
+
+/**
+ * Applies versioned schema changes to the plugin tables.
+ * Current version is stored in a separate table, so every migration runs exactly once per database.
+ * <p>
+ * Every migration and its version update run in one transaction, where the database supports them.
+ * MySQL commits implicitly on DDL statements (ALTER TABLE, CREATE INDEX), so migrations that change tables there are not atomic:
+ * a failed migration keeps its already applied changes and runs again from the start on the next launch.
+ * Such migrations must be safe to re-run, as the helpers below are.
+ */
+public class SchemaMigrator {
+
+    private static final int DELETE_BATCH_SIZE = 500;
+
+    private final ShopPlugin        plugin;
+    private final AbstractConnector connector;
+    private final DatabaseType      databaseType;
+    private final String            versionTable;
+    private final String            schemaName;
+    private final List<Migration>   migrations;
+
+    public SchemaMigrator(@NotNull ShopPlugin plugin,
+                          @NotNull AbstractConnector connector,
+                          @NotNull DatabaseType databaseType,
+                          @NotNull String versionTable,
+                          @NotNull String schemaName) {
+        this.plugin = plugin;
+        this.connector = connector;
+        this.databaseType = databaseType;
+        this.versionTable = versionTable;
+        this.schemaName = schemaName;
+        this.migrations = new ArrayList<>();
+    }
+
+    @FunctionalInterface
+    public interface MigrationStep {
+
+        void apply(@NotNull Connection connection, @NotNull DatabaseType type) throws SQLException;
+    }
+
+    public record Migration(int version, @NotNull String description, @NotNull MigrationStep step) {}
+
+    @NotNull
+    public SchemaMigrator register(int version, @NotNull String description, @NotNull MigrationStep step) {
+        this.migrations.add(new Migration(version, description, step));
+        return this;
+    }
+
+    /**
+     * Runs all pending migrations in version order and stops on the first failure.
+     * @return Schema version after the migration.
+     */
+    public int migrate() {
+        this.migrations.sort(Comparator.comparingInt(Migration::version));
+
+        try (Connection connection = this.connector.getConnection()) {
+            this.createVersionTable(connection);
+
+            int current = this.readVersion(connection);
+            boolean hasRow = this.hasVersionRow(connection);
+            boolean transactional = connection.getMetaData().supportsTransactions();
+            boolean autoCommit = connection.getAutoCommit();
+
+            for (Migration migration : this.migrations) {
+                if (migration.version() <= current) continue;
+
+                this.plugin.info("Migrating '" + this.schemaName + "' schema to v" + migration.version() + ": " + migration.description() + "...");
+                try {
+                    if (transactional) connection.setAutoCommit(false);
+
+                    migration.step().apply(connection, this.databaseType);
+                    this.writeVersion(connection, migration.version(), !hasRow);
+
+                    if (transactional) connection.commit();
+                }
+                catch (SQLException exception) {
+                    if (transactional) this.rollback(connection);
+                    this.plugin.error("Schema migration to v" + migration.version() + " failed: " + exception.getMessage());
+                    exception.printStackTrace();
+                    return current;
+                }
+                finally {
+                    if (transactional) connection.setAutoCommit(autoCommit);
+                }
+
+                hasRow = true;
+                current = migration.version();
+            }
+            return current;
+        }
+        catch (SQLException exception) {
+            exception.printStackTrace();
+            return 0;
+        }
+    }
+
+    private void rollback(@NotNull Connection connection) {
+        try {
+            connection.rollback();
+        }
+        catch (SQLException exception) {
+            this.plugin.error("Could not roll back failed schema migration: " + exception.getMessage());
+        }
+    }
+
+    private void createVersionTable(@NotNull Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate("CREATE TABLE IF NOT EXISTS " + this.versionTable + " (`name` VARCHAR(64) NOT NULL PRIMARY KEY, `version` INTEGER NOT NULL)");
+        }
+    }
+
+    private boolean hasVersionRow(@NotNull Connection connection) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("SELECT 1 FROM " + this.versionTable + " WHERE `name` = ?")) {
+            statement.setString(1, this.schemaName);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next();
+            }
+        }
+    }
+
+    private int readVersion(@NotNull Connection connection) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("SELECT `version` FROM " + this.versionTable + " WHERE `name` = ?")) {
+            statement.setString(1, this.schemaName);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next() ? resultSet.getInt(1) : 0;
+            }
+        }
+    }
+
+    private void writeVersion(@NotNull Connection connection, int version, boolean insert) throws SQLException {
+        String sql = insert ?
+            "INSERT INTO " + this.versionTable + " (`version`, `name`) VALUES (?, ?)" :
+            "UPDATE " + this.versionTable + " SET `version` = ? WHERE `name` = ?";
+
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setInt(1, version);
+            statement.setString(2, this.schemaName);
+            statement.executeUpdate();
+        }
+    }
+
+    /*
+     * Common migration helpers.
+     */
+
+    public static void execute(@NotNull Connection connection, @NotNull String sql) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate(sql);
+        }
+    }
+
+    /**
+     * Removes rows with duplicated (case-insensitive) keys, keeping the most recently updated one,
+     * then stores the key columns in lower case.
+     * @param dateColumn Column with the row's update date, the row with the greatest one is kept. Rows of equal dates (or without this column)
+     *                   are told apart by id, the most recently inserted one is kept.
+     */
+    public static void deduplicate(@NotNull Connection connection, @NotNull String table, @Nullable String dateColumn, @NotNull String... keyColumns) throws SQLException {
+        List<String> lowered = new ArrayList<>();
+        List<String> assigns = new ArrayList<>();
+        for (String column : keyColumns) {
+            lowered.add("LOWER(`" + column + "`)");
+            assigns.add("`" + column + "` = LOWER(`" + column + "`)");
+        }
+
+        // Keepers are picked here, as MySQL has no window functions before 8.0 and can not delete with a subquery on the same table.
+        String order = String.join(", ", lowered) + (dateColumn == null ? "" : ", `" + dateColumn + "` DESC") + ", `id` DESC";
+        List<Long> duplicates = new ArrayList<>();
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT `id`, " + String.join(", ", lowered) + " FROM " + table + " ORDER BY " + order)) {
+
+            // The first row of every key is the one to keep.
+            Set<List<String>> keys = new HashSet<>();
+            while (resultSet.next()) {
+                List<String> key = new ArrayList<>();
+                for (int index = 0; index < keyColumns.length; index++) {
+                    key.add(resultSet.getString(index + 2));
+                }
+                if (!keys.add(key)) duplicates.add(resultSet.getLong(1));
+            }
+        }
+
+        try (PreparedStatement statement = connection.prepareStatement("DELETE FROM " + table + " WHERE `id` = ?")) {
+            for (int index = 0; index < duplicates.size(); index++) {
+                statement.setLong(1, duplicates.get(index));
+                statement.addBatch();
+                if ((index + 1) % DELETE_BATCH_SIZE == 0) statement.executeBatch();
+            }
+            statement.executeBatch();
+        }
+        execute(connection, "UPDATE " + table + " SET " + String.join(", ", assigns));
+    }
+
+    /**
+     * Adds unique key for the given columns.
+     * MySQL can not index TEXT columns, so they are converted to VARCHAR first.
+     */
+    public static void addUniqueKey(@NotNull Connection connection, @NotNull DatabaseType type, @NotNull String table, @NotNull String name, int keyLength, @NotNull String... keyColumns) throws SQLException {
+        List<String> escaped = new ArrayList<>();
+        List<String> modify = new ArrayList<>();
+        for (String column : keyColumns) {
+            escaped.add("`" + column + "`");
+            modify.add("MODIFY `" + column + "` VARCHAR(" + keyLength + ") NOT NULL");
+        }
+
+        if (type == DatabaseType.SQLITE) {
+            execute(connection, "CREATE UNIQUE INDEX IF NOT EXISTS " + name + " ON " + table + " (" + String.join(", ", escaped) + ")");
+        }
+        else {
+            if (hasIndex(connection, table, name)) return;
+
+            execute(connection, "ALTER TABLE " + table + " " + String.join(", ", modify));
+            execute(connection, "ALTER TABLE " + table + " ADD UNIQUE INDEX " + name + " (" + String.join(", ", escaped) + ")");
+        }
+    }
+
+    /**
+     * Adds column unless it's already there, as tables created by the current version have it from the start.
+     */
+    public static void addColumn(@NotNull Connection connection, @NotNull String table, @NotNull String column, @NotNull String definition) throws SQLException {
+        try (Statement statement = connection.createStatement(); ResultSet resultSet = statement.executeQuery("SELECT * FROM " + table + " LIMIT 0")) {
+            ResultSetMetaData metaData = resultSet.getMetaData();
+            for (int index = 1; index <= metaData.getColumnCount(); index++) {
+                if (metaData.getColumnName(index).equalsIgnoreCase(column)) return;
+            }
+        }
+
+        execute(connection, "ALTER TABLE " + table + " ADD COLUMN `" + column + "` " + definition);
+    }
+
+    public static void addIndex(@NotNull Connection connection, @NotNull DatabaseType type, @NotNull String table, @NotNull String name, @NotNull String... columns) throws SQLException {
+        List<String> escaped = new ArrayList<>();
+        for (String column : columns) {
+            escaped.add("`" + column + "`");
+        }
+
+        if (type == DatabaseType.SQLITE) {
+            execute(connection, "CREATE INDEX IF NOT EXISTS " + name + " ON " + table + " (" + String.join(", ", escaped) + ")");
+        }
+        else if (!hasIndex(connection, table, name)) {
+            execute(connection, "ALTER TABLE " + table + " ADD INDEX " + name + " (" + String.join(", ", escaped) + ")");
+        }
+    }
+
+    /**
+     * MySQL has no IF NOT EXISTS for indexes, so they are looked up first to keep re-runs of a migration safe.
+     */
+    private static boolean hasIndex(@NotNull Connection connection, @NotNull String table, @NotNull String name) throws SQLException {
+        String sql = "SELECT 1 FROM information_schema.statistics WHERE table_schema = DATABASE() AND table_name = ? AND index_name = ? LIMIT 1";
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setString(1, table.replace("`", ""));
+            statement.setString(2, name.replace("`", ""));
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next();
+            }
+        }
+    }
+}
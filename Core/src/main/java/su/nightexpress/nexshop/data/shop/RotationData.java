@@ -1,10 +1,13 @@
 package su.nightexpress.nexshop.data.shop;
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import su.nightexpress.nexshop.api.data.Saveable;
+import su.nightexpress.nexshop.sync.SyncStamp;
 import su.nightexpress.nightcore.util.TimeUtil;
 
 import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class RotationData implements Saveable {
 
@@ -13,8 +16,18 @@ public class RotationData implements Saveable {
 
     private Map<Integer, List<String>> products;
 
-    private long    nextRotationDate;
-    private boolean saveRequired;
+    private final AtomicBoolean saveRequired;
+
+    private long nextRotationDate;
+
+    private volatile Runnable  saveHook;
+    private volatile Runnable  changeHook;
+    private volatile SyncStamp syncStamp;
+
+    /**
+     * Values to write to the database, with own copy of products, so later rotations do not change rows queued before them.
+     */
+    public record Snapshot(long nextRotationDate, @NotNull Map<Integer, List<String>> products) {}
 
     public RotationData(@NotNull String shopId, @NotNull String rotationId) {
         this(shopId, rotationId, 0L, new HashMap<>());
@@ -23,18 +36,63 @@ public class RotationData implements Saveable {
     public RotationData(@NotNull String shopId, @NotNull String rotationId, long nextRotationDate, @NotNull Map<Integer, List<String>> products) {
         this.shopId = shopId.toLowerCase();
         this.rotationId = rotationId.toLowerCase();
+        this.saveRequired = new AtomicBoolean(false);
+        this.syncStamp = SyncStamp.NONE;
         this.setProducts(products);
         this.setNextRotationDate(nextRotationDate);
     }
 
+    public void setSaveHook(@Nullable Runnable saveHook) {
+        this.saveHook = saveHook;
+    }
+
+    /**
+     * Sets hook called on every change (every 'save required' mark).
+     */
+    public void setChangeHook(@Nullable Runnable changeHook) {
+        this.changeHook = changeHook;
+    }
+
+    /**
+     * @return Cross-server version of the last change, see {@link SyncStamp}.
+     */
+    @NotNull
+    public SyncStamp getSyncStamp() {
+        return this.syncStamp;
+    }
+
+    public void setSyncStamp(@NotNull SyncStamp syncStamp) {
+        this.syncStamp = syncStamp;
+    }
+
+    /**
+     * Detaches this data from its save queue, so removed data will not be written back to the database.
+     */
+    public void discard() {
+        this.saveHook = null;
+        this.changeHook = null;
+        this.saveRequired.set(false);
+    }
+
     @Override
     public boolean isSaveRequired() {
-        return this.saveRequired;
+        return this.saveRequired.get();
     }
 
     @Override
     public void setSaveRequired(boolean saveRequired) {
-        this.saveRequired = saveRequired;
+        if (!saveRequired) {
+            this.saveRequired.set(false);
+            return;
+        }
+
+        Runnable onChange = this.changeHook;
+        if (onChange != null) onChange.run();
+
+        if (this.saveRequired.compareAndSet(false, true)) {
+            Runnable hook = this.saveHook;
+            if (hook != null) hook.run();
+        }
     }
 
     public void reset() {
@@ -76,4 +134,11 @@ public class RotationData implements Saveable {
     public void setProducts(@NotNull Map<Integer, List<String>> products) {
         this.products = new HashMap<>(products);
     }
+
+    @NotNull
+    public Snapshot getSnapshot() {
+        Map<Integer, List<String>> products = new HashMap<>();
+        this.products.forEach((slot, productIds) -> products.put(slot, new ArrayList<>(productIds)));
+        return new Snapshot(this.nextRotationDate, products);
+    }
 }
@@ -6,12 +6,14 @@ import org.jetbrains.annotations.NotNull;
 
 import su.nightexpress.economybridge.EconomyBridge;
 import su.nightexpress.economybridge.api.Currency;
+import su.nightexpress.nexshop.Placeholders;
 import su.nightexpress.nexshop.ShopPlugin;
 import su.nightexpress.nexshop.auction.AuctionManager;
 import su.nightexpress.nexshop.auction.listing.CompletedListing;
 import su.nightexpress.nexshop.shop.chest.ChestShopModule;
 import su.nightexpress.nexshop.shop.chest.ChestUtils;
 import su.nightexpress.nexshop.shop.virtual.VirtualShopModule;
+import su.nightexpress.nexshop.sync.RedisSyncManager;
 import su.nightexpress.nightcore.util.NumberUtil;
 
 public class PlaceholderHook {
@@ -133,6 +135,20 @@ public class PlaceholderHook {
                 }
             }
 
+            if (params.startsWith("sync_")) {
+                RedisSyncManager manager = this.plugin.getRedisSyncManager().filter(RedisSyncManager::isActive).orElse(null);
+                if (manager == null) return null;
+
+                if (params.startsWith("sync_lag_") && !params.equalsIgnoreCase("sync_lag_max")) {
+                    Long lag = manager.getStreamLags().get(params.substring("sync_lag_".length()));
+                    return lag == null ? null : NumberUtil.format(lag);
+                }
+
+                String placeholder = "%" + params.toLowerCase() + "%";
+                String result = Placeholders.SYNC.apply(placeholder, manager);
+                return result.equals(placeholder) ? null : result;
+            }
+
             if (player == null) return null;
 
             if (params.startsWith("chestshop_")) {
@@ -3,26 +3,41 @@ package su.nightexpress.nexshop.product.price;
 import org.jetbrains.annotations.NotNull;
 import su.nightexpress.nexshop.api.shop.type.PriceType;
 import su.nightexpress.nexshop.api.shop.type.TradeType;
+import su.nightexpress.nexshop.product.price.impl.DemandPricer;
 import su.nightexpress.nexshop.product.price.impl.DynamicPricer;
 import su.nightexpress.nexshop.product.price.impl.FlatPricer;
 import su.nightexpress.nexshop.product.price.impl.FloatPricer;
 import su.nightexpress.nexshop.product.price.impl.PlayersPricer;
 import su.nightexpress.nightcore.config.FileConfig;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.UnaryOperator;
 
 public abstract class AbstractProductPricer {
 
-    protected final PriceType              type;
-    protected final Map<TradeType, Double> priceCurrent;
+    protected final PriceType               type;
+    protected final AtomicReference<Prices> prices;
+
+    /**
+     * Current buy and sell prices, replaced as a whole, so readers never see a half-updated pair.
+     */
+    public record Prices(double buy, double sell) {
+
+        public static final Prices NONE = new Prices(-1D, -1D);
+
+        public double get(@NotNull TradeType tradeType) {
+            return tradeType == TradeType.BUY ? this.buy : this.sell;
+        }
+
+        @NotNull
+        public Prices with(@NotNull TradeType tradeType, double price) {
+            return tradeType == TradeType.BUY ? new Prices(price, this.sell) : new Prices(this.buy, price);
+        }
+    }
 
     public AbstractProductPricer(@NotNull PriceType type) {
         this.type = type;
-        this.priceCurrent = new HashMap<>();
-        this.setPrice(TradeType.BUY, -1D);
-        this.setPrice(TradeType.SELL, -1D);
+        this.prices = new AtomicReference<>(Prices.NONE);
     }
 
     @NotNull
@@ -34,6 +49,7 @@ public abstract class AbstractProductPricer {
             case FLOAT -> FloatPricer.read(config, path);
             case DYNAMIC -> DynamicPricer.read(config, path);
             case PLAYER_AMOUNT -> PlayersPricer.read(config, path);
+            case DEMAND -> DemandPricer.read(config, path);
         };
     }
 
@@ -44,6 +60,7 @@ public abstract class AbstractProductPricer {
             case FLOAT -> new FloatPricer();
             case DYNAMIC -> new DynamicPricer();
             case PLAYER_AMOUNT -> new PlayersPricer();
+            case DEMAND -> new DemandPricer();
         };
     }
 
@@ -62,12 +79,21 @@ public abstract class AbstractProductPricer {
         return this.type;
     }
 
+    @NotNull
+    public Prices getPrices() {
+        return this.prices.get();
+    }
+
     public double getPrice(@NotNull TradeType tradeType) {
-        return this.priceCurrent.computeIfAbsent(tradeType, b -> -1D);
+        return this.prices.get().get(tradeType);
     }
 
     public void setPrice(@NotNull TradeType tradeType, double price) {
-        this.priceCurrent.put(tradeType, price);
+        this.prices.updateAndGet(current -> current.with(tradeType, price));
+    }
+
+    public void setPrices(double buyPrice, double sellPrice) {
+        this.prices.set(new Prices(buyPrice, sellPrice));
     }
 
     public double getBuyPrice() {
@@ -0,0 +1,81 @@
+package su.nightexpress.nexshop.product.price.impl;
+
+import org.jetbrains.annotations.NotNull;
+import su.nightexpress.nexshop.Placeholders;
+import su.nightexpress.nexshop.api.shop.type.PriceType;
+import su.nightexpress.nightcore.config.FileConfig;
+
+import java.util.function.UnaryOperator;
+
+/**
+ * Dynamic pricer that adjusts prices by demand instead of total purchases and sales.
+ * Demand grows on purchases, drops on sales and fades to zero over time, halving every half-life period,
+ * so prices return to the initial values on their own when trading stops.
+ */
+public class DemandPricer extends DynamicPricer {
+
+    /** Demand closer to zero than this is treated as gone and is not refreshed anymore. */
+    private static final double MIN_DEMAND = 0.01D;
+    /** Prices are refreshed this many times per half-life while there is demand. */
+    private static final int  REFRESHES_PER_HALF_LIFE = 8;
+    private static final long MIN_REFRESH_INTERVAL    = 60_000L;
+
+    private long halfLife;
+
+    public DemandPricer() {
+        super(PriceType.DEMAND);
+        this.setHalfLife(86400L);
+    }
+
+    @NotNull
+    public static DemandPricer read(@NotNull FileConfig cfg, @NotNull String path) {
+        DemandPricer pricer = new DemandPricer();
+        pricer.readValues(cfg, path);
+        pricer.setHalfLife(cfg.getLong(path + ".Half_Life", 86400L));
+        return pricer;
+    }
+
+    @Override
+    protected void writeAdditional(@NotNull FileConfig cfg, @NotNull String path) {
+        super.writeAdditional(cfg, path);
+        cfg.set(path + ".Half_Life", this.halfLife);
+    }
+
+    @Override
+    @NotNull
+    public UnaryOperator<String> replacePlaceholders() {
+        return Placeholders.DEMAND_PRICER.replacer(this);
+    }
+
+    /**
+     * @param demand Demand value as of the update date.
+     * @return Demand value decayed from the update date to the given time.
+     */
+    public double getDemand(double demand, long updateDate, long now) {
+        if (this.halfLife <= 0L || now <= updateDate) return demand;
+
+        double halfLives = (now - updateDate) / (this.halfLife * 1000D);
+        double decayed = demand * Math.pow(0.5D, halfLives);
+        return Math.abs(decayed) < MIN_DEMAND ? 0D : decayed;
+    }
+
+    /**
+     * @return Date to refresh prices at for the demand decay to show up, or -1 if prices will not change anymore.
+     */
+    public long getRefreshDate(double demand, long now) {
+        if (this.halfLife <= 0L || Math.abs(demand) < MIN_DEMAND) return -1L;
+
+        return now + Math.max(MIN_REFRESH_INTERVAL, this.halfLife * 1000L / REFRESHES_PER_HALF_LIFE);
+    }
+
+    /**
+     * @return Half-life period of the demand (in seconds), zero or below to never decay.
+     */
+    public long getHalfLife() {
+        return this.halfLife;
+    }
+
+    public void setHalfLife(long halfLife) {
+        this.halfLife = halfLife;
+    }
+}
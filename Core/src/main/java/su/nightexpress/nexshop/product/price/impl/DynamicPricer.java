@@ -17,7 +17,11 @@ public class DynamicPricer extends RangedPricer {
     private final Map<TradeType, Double> priceStep;
 
     public DynamicPricer() {
-        super(PriceType.DYNAMIC);
+        this(PriceType.DYNAMIC);
+    }
+
+    protected DynamicPricer(@NotNull PriceType type) {
+        super(type);
         this.priceInitial = new HashMap<>();
         this.priceStep = new HashMap<>();
     }
@@ -25,15 +29,19 @@ public class DynamicPricer extends RangedPricer {
     @NotNull
     public static DynamicPricer read(@NotNull FileConfig cfg, @NotNull String path) {
         DynamicPricer pricer = new DynamicPricer();
+        pricer.readValues(cfg, path);
+        return pricer;
+    }
+
+    protected void readValues(@NotNull FileConfig cfg, @NotNull String path) {
         for (TradeType tradeType : TradeType.values()) {
             UniDouble price = UniDouble.read(cfg, path + "." + tradeType.name());
             double init = cfg.getDouble(path + "." + tradeType.name() + ".Initial", 0D);
             double step = cfg.getDouble(path + "." + tradeType.name() + ".Step", 0D);
-            pricer.setPriceRange(tradeType, price);
-            pricer.setInitial(tradeType, init);
-            pricer.setStep(tradeType, step);
+            this.setPriceRange(tradeType, price);
+            this.setInitial(tradeType, init);
+            this.setStep(tradeType, step);
         }
-        return pricer;
     }
 
     @Override
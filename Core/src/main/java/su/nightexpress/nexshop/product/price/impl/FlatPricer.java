@@ -25,7 +25,9 @@ public class FlatPricer extends AbstractProductPricer {
 
     @Override
     protected void writeAdditional(@NotNull FileConfig cfg, @NotNull String path) {
-        this.priceCurrent.forEach(((tradeType, amount) -> cfg.set(path + "." + tradeType.name(), amount)));
+        for (TradeType tradeType : TradeType.values()) {
+            cfg.set(path + "." + tradeType.name(), this.getPrice(tradeType));
+        }
     }
 
     @Override
@@ -1,154 +1,107 @@
 package su.nightexpress.nexshop.shop;
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import su.nightexpress.nexshop.ShopPlugin;
 import su.nightexpress.nexshop.api.shop.Shop;
 import su.nightexpress.nexshop.api.shop.product.Product;
-import su.nightexpress.nexshop.product.price.impl.DynamicPricer;
-import su.nightexpress.nexshop.product.price.impl.FloatPricer;
 import su.nightexpress.nexshop.api.shop.type.PriceType;
-import su.nightexpress.nexshop.api.shop.stock.StockValues;
-import su.nightexpress.nexshop.api.shop.type.TradeType;
 import su.nightexpress.nexshop.data.product.PriceData;
 import su.nightexpress.nexshop.data.product.StockData;
+import su.nightexpress.nexshop.shop.virtual.impl.VirtualProduct;
+import su.nightexpress.nexshop.shop.virtual.impl.VirtualShop;
 
-import java.util.HashSet;
-import java.util.Set;
+import java.util.ArrayList;
+import java.util.List;
 
 public class AsyncShopProcessor {
     
+    private static final long RETRY_DELAY = 5000L;
+    
     private final ShopPlugin plugin;
     
     public AsyncShopProcessor(@NotNull ShopPlugin plugin) {
         this.plugin = plugin;
     }
     
+    // Only datas with passed expire/restock dates are polled from the data manager, so the work depends on the amount of due products, not on the catalog size.
+    // Polling and checks are cheap, so they are done here, and price calculations are spread between the price engine mailboxes by shops.
+    
     @NotNull
     public AsyncShopUpdate processShopsAsync() {
+        long now = System.currentTimeMillis();
         AsyncShopUpdate update = new AsyncShopUpdate();
         
-        this.processShopUpdatesAsync(update);
-        this.processPriceCalculationsAsync(update);
-        this.processStockUpdatesAsync(update);
-        this.processDataSavingAsync(update);
+        this.getShopsToRotate().forEach(update::addShopRotation);
+        this.processPriceCalculationsAsync(plugin.getDataManager().pollExpiredPriceDatas(now), now);
+        this.processStockUpdatesAsync(plugin.getDataManager().pollRestockStockDatas(now), update, now);
         
         return update;
     }
     
-    private void processShopUpdatesAsync(@NotNull AsyncShopUpdate update) {
+    @NotNull
+    private List<VirtualShop> getShopsToRotate() {
+        List<VirtualShop> shops = new ArrayList<>();
+        if (!plugin.isSyncLeader()) return shops;
+        
         try {
-            Set<Shop> shopsToCheck = new HashSet<>(plugin.getShopManager().getShops());
-            
-            for (Shop shop : shopsToCheck) {
-                if (shouldUpdateShop(shop)) {
-                    update.addShopUpdate(shop);
+            for (VirtualShop shop : plugin.getShopManager().getRegistry().getVirtualShops()) {
+                if (!shop.getRotations().isEmpty()) {
+                    shops.add(shop);
                 }
             }
         } catch (Exception e) {
-            plugin.error("Error processing shop updates: " + e.getMessage());
+            plugin.error("Error processing shop rotations: " + e.getMessage());
         }
+        return shops;
     }
     
-    private void processPriceCalculationsAsync(@NotNull AsyncShopUpdate update) {
-        try {
-            Set<Shop> shops = new HashSet<>(plugin.getShopManager().getShops());
-            
-            for (Shop shop : shops) {
-                for (Product product : shop.getProducts()) {
-                    if (shouldUpdatePrice(product)) {
-                        calculatePriceAsync(product, update);
-                        update.addPriceUpdate(product);
-                    }
-                }
-            }
-        } catch (Exception e) {
-            plugin.error("Error processing price calculations: " + e.getMessage());
-        }
-    }
+    // Polled datas leave the deadline queue. Only datas of shops that are still loading are checked again later,
+    // others that can not be updated now are dropped and scheduled again by the data manager once something changes for them.
     
-    private void processStockUpdatesAsync(@NotNull AsyncShopUpdate update) {
-        try {
-            Set<Shop> shops = new HashSet<>(plugin.getShopManager().getShops());
-            
-            for (Shop shop : shops) {
-                for (Product product : shop.getProducts()) {
-                    long restockDate = product.getRestockDate(null);
-                    if (restockDate > 0 && System.currentTimeMillis() >= restockDate) {
-                        update.addProductRestock(product);
-                    }
+    private void processPriceCalculationsAsync(@NotNull List<PriceData> priceDatas, long now) {
+        for (PriceData priceData : priceDatas) {
+            try {
+                if (!plugin.getDataManager().isShopReady(priceData.getShopId())) {
+                    plugin.getDataManager().retryPriceUpdate(priceData, now + RETRY_DELAY);
+                    continue;
                 }
+                
+                Product product = this.getProduct(priceData.getShopId(), priceData.getProductId());
+                if (product == null || !PriceEngine.isUpdatable(product)) continue; // Scheduled again on shop load or pricer change.
+                
+                // Rolled by the leader, scheduled again when this server becomes the leader.
+                if (product.getPricer().getType() == PriceType.FLOAT && !plugin.isSyncLeader()) continue;
+                
+                plugin.getShopManager().getPriceEngine().update(product, false);
+            } catch (Exception e) {
+                plugin.error("Error processing price calculation of '" + priceData.getShopId() + "/" + priceData.getProductId() + "': " + e.getMessage());
             }
-        } catch (Exception e) {
-            plugin.error("Error processing stock updates: " + e.getMessage());
         }
     }
     
-    private void processDataSavingAsync(@NotNull AsyncShopUpdate update) {
-        try {
-            Set<PriceData> priceDataToSave = plugin.getDataManager().getPriceDatas().stream()
-                .filter(PriceData::isSaveRequired)
-                .collect(HashSet::new, Set::add, Set::addAll);
-            
-            priceDataToSave.forEach(update::addPriceDataSave);
-            
-            Set<StockData> stockDataToSave = plugin.getDataManager().getStockDatas().stream()
-                .filter(StockData::isSaveRequired)
-                .collect(HashSet::new, Set::add, Set::addAll);
-            
-            stockDataToSave.forEach(update::addStockDataSave);
-            
-        } catch (Exception e) {
-            plugin.error("Error processing data saving: " + e.getMessage());
-        }
-    }
-    
-    private boolean shouldUpdateShop(@NotNull Shop shop) {
-        return shop.getProducts().stream().anyMatch(this::shouldUpdatePrice);
-    }
-    
-    private boolean shouldUpdatePrice(@NotNull Product product) {
-        if (product.getPricer().getType() == PriceType.FLAT) return false;
-        if (product.getPricer().getType() == PriceType.PLAYER_AMOUNT) return false;
-        
-        PriceData priceData = plugin.getDataManager().getPriceData(product);
-        return priceData != null && priceData.isExpired();
-    }
-    
-    private void calculatePriceAsync(@NotNull Product product, @NotNull AsyncShopUpdate update) {
-        try {
-            PriceData priceData = plugin.getDataManager().getPriceDataOrCreate(product);
-            
-            if (priceData.isExpired()) {
-                double buyPrice = priceData.getLatestBuyPrice();
-                double sellPrice = priceData.getLatestSellPrice();
-                long expireDate = priceData.getExpireDate();
-                
-                if (product.getPricer() instanceof FloatPricer floatPricer) {
-                    buyPrice = floatPricer.rollPrice(TradeType.BUY);
-                    sellPrice = floatPricer.rollPrice(TradeType.SELL);
-                    expireDate = floatPricer.getClosestTimestamp();
-                }
-                else if (product.getPricer() instanceof DynamicPricer dynamicPricer) {
-                    double difference = priceData.getPurchases() - priceData.getSales();
-                    buyPrice = dynamicPricer.getAdjustedPrice(TradeType.BUY, difference);
-                    sellPrice = dynamicPricer.getAdjustedPrice(TradeType.SELL, difference);
-                    expireDate = -1L;
-                }
-                
-                if (sellPrice > buyPrice && buyPrice >= 0) {
-                    sellPrice = buyPrice;
+    private void processStockUpdatesAsync(@NotNull List<StockData> stockDatas, @NotNull AsyncShopUpdate update, long now) {
+        for (StockData stockData : stockDatas) {
+            try {
+                if (!plugin.getDataManager().isShopReady(stockData.getShopId())) {
+                    plugin.getDataManager().retryRestock(stockData, now + RETRY_DELAY);
+                    continue;
                 }
                 
-                priceData.setLatestBuyPrice(buyPrice);
-                priceData.setLatestSellPrice(sellPrice);
-                priceData.setExpireDate(expireDate);
-                priceData.setLatestUpdateDate(System.currentTimeMillis());
-                priceData.setSaveRequired(true);
+                // Scheduled again on shop load or data change.
+                if (!(this.getProduct(stockData.getShopId(), stockData.getProductId()) instanceof VirtualProduct product)) continue;
+                if (product.getStockValues().getRestockTime() == 0L) continue;
                 
-                update.addPriceDataSave(priceData);
+                update.addProductRestock(product);
+            } catch (Exception e) {
+                plugin.error("Error processing stock update of '" + stockData.getShopId() + "/" + stockData.getProductId() + "': " + e.getMessage());
             }
-        } catch (Exception e) {
-            plugin.error("Error calculating price for product " + product.getId() + ": " + e.getMessage());
         }
     }
+    
+    @Nullable
+    private Product getProduct(@NotNull String shopId, @NotNull String productId) {
+        Shop shop = plugin.getShopManager().getShopById(shopId);
+        return shop == null ? null : shop.getProductById(productId);
+    }
 }
@@ -1,41 +1,24 @@
 package su.nightexpress.nexshop.shop;
 
 import org.jetbrains.annotations.NotNull;
-import su.nightexpress.nexshop.api.shop.Shop;
 import su.nightexpress.nexshop.api.shop.product.Product;
 import su.nightexpress.nexshop.api.shop.type.TradeType;
-import su.nightexpress.nexshop.data.product.PriceData;
 import su.nightexpress.nexshop.data.product.StockData;
+import su.nightexpress.nexshop.shop.virtual.impl.VirtualShop;
 
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
 public class AsyncShopUpdate {
     
-    private final Set<Shop> shopsToUpdate;
-    private final Set<Product> productsToUpdatePrice;
-    private final Set<PriceData> priceDataToSave;
     private final Set<StockData> stockDataToSave;
     private final Set<Product> productsToRestock;
+    private final Set<VirtualShop> shopsToRotate;
     
     public AsyncShopUpdate() {
-        this.shopsToUpdate = ConcurrentHashMap.newKeySet();
-        this.productsToUpdatePrice = ConcurrentHashMap.newKeySet();
-        this.priceDataToSave = ConcurrentHashMap.newKeySet();
         this.stockDataToSave = ConcurrentHashMap.newKeySet();
         this.productsToRestock = ConcurrentHashMap.newKeySet();
-    }
-    
-    public void addShopUpdate(@NotNull Shop shop) {
-        this.shopsToUpdate.add(shop);
-    }
-    
-    public void addPriceUpdate(@NotNull Product product) {
-        this.productsToUpdatePrice.add(product);
-    }
-    
-    public void addPriceDataSave(@NotNull PriceData priceData) {
-        this.priceDataToSave.add(priceData);
+        this.shopsToRotate = ConcurrentHashMap.newKeySet();
     }
     
     public void addStockDataSave(@NotNull StockData stockData) {
@@ -46,26 +29,20 @@ public class AsyncShopUpdate {
         this.productsToRestock.add(product);
     }
     
+    public void addShopRotation(@NotNull VirtualShop shop) {
+        this.shopsToRotate.add(shop);
+    }
+    
     public boolean hasUpdates() {
-        return !shopsToUpdate.isEmpty() || !productsToUpdatePrice.isEmpty() || 
-               !priceDataToSave.isEmpty() || !stockDataToSave.isEmpty() || 
-               !productsToRestock.isEmpty();
+        return !stockDataToSave.isEmpty() || !productsToRestock.isEmpty() || !shopsToRotate.isEmpty();
     }
     
     public void applyToMainThread() {
-        for (Shop shop : shopsToUpdate) {
+        for (VirtualShop shop : shopsToRotate) {
             try {
-                shop.updatePrices(false);
+                shop.tryRotate();
             } catch (Exception e) {
-                // Handle shop update errors gracefully
-            }
-        }
-        
-        for (Product product : productsToUpdatePrice) {
-            try {
-                product.updatePrice(false);
-            } catch (Exception e) {
-                // Handle price update errors gracefully
+                // Handle rotation errors gracefully
             }
         }
         
@@ -81,28 +58,10 @@ public class AsyncShopUpdate {
     }
     
     public void applyDatabaseOperations() {
-        if (!priceDataToSave.isEmpty()) {
-        }
-        
         if (!stockDataToSave.isEmpty()) {
         }
     }
     
-    @NotNull
-    public Set<Shop> getShopsToUpdate() {
-        return Set.copyOf(shopsToUpdate);
-    }
-    
-    @NotNull
-    public Set<Product> getProductsToUpdatePrice() {
-        return Set.copyOf(productsToUpdatePrice);
-    }
-    
-    @NotNull
-    public Set<PriceData> getPriceDataToSave() {
-        return Set.copyOf(priceDataToSave);
-    }
-    
     @NotNull
     public Set<StockData> getStockDataToSave() {
         return Set.copyOf(stockDataToSave);
@@ -112,4 +71,9 @@ public class AsyncShopUpdate {
     public Set<Product> getProductsToRestock() {
         return Set.copyOf(productsToRestock);
     }
+    
+    @NotNull
+    public Set<VirtualShop> getShopsToRotate() {
+        return Set.copyOf(shopsToRotate);
+    }
 }
@@ -0,0 +1,235 @@
+package su.nightexpress.nexshop.shop;
+
+import org.jetbrains.annotations.NotNull;
+import su.nightexpress.nexshop.ShopPlugin;
+import su.nightexpress.nexshop.api.shop.Shop;
+import su.nightexpress.nexshop.api.shop.product.Product;
+import su.nightexpress.nexshop.api.shop.type.PriceType;
+import su.nightexpress.nexshop.api.shop.type.TradeType;
+import su.nightexpress.nexshop.data.product.PriceData;
+import su.nightexpress.nexshop.product.price.AbstractProductPricer;
+import su.nightexpress.nexshop.product.price.impl.DemandPricer;
+import su.nightexpress.nexshop.product.price.impl.DynamicPricer;
+import su.nightexpress.nexshop.product.price.impl.FloatPricer;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * The only writer of product prices. Rolls, trade counts and synced price datas are applied one by one on the mailbox thread
+ * of the product's shop, then the resulting prices are published to the product's pricer, which is read by menus and trades without locks.
+ * Every shop always uses the same mailbox, so prices of different shops are calculated in parallel.
+ */
+public class PriceEngine {
+
+    private static final long SHUTDOWN_TIMEOUT = 5000L;
+
+    private final ShopPlugin        plugin;
+    private final ExecutorService[] mailboxes;
+
+    /**
+     * @param threads Amount of mailbox threads, 0 or below to use the amount of available processors.
+     */
+    public PriceEngine(@NotNull ShopPlugin plugin, int threads) {
+        this.plugin = plugin;
+        this.mailboxes = new ExecutorService[threads > 0 ? threads : Runtime.getRuntime().availableProcessors()];
+
+        for (int index = 0; index < this.mailboxes.length; index++) {
+            String name = plugin.getName() + "-PriceEngine-" + index;
+            this.mailboxes[index] = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, name);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * Waits for the queued changes, so they are saved along with the other datas.
+     */
+    public void shutdown() {
+        for (ExecutorService mailbox : this.mailboxes) {
+            mailbox.shutdown();
+        }
+
+        long deadline = System.currentTimeMillis() + SHUTDOWN_TIMEOUT;
+        try {
+            for (ExecutorService mailbox : this.mailboxes) {
+                long timeout = Math.max(0L, deadline - System.currentTimeMillis());
+                if (!mailbox.awaitTermination(timeout, TimeUnit.MILLISECONDS)) {
+                    this.plugin.warn("Price engine did not finish queued price changes in time.");
+                    return;
+                }
+            }
+        }
+        catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return Index of the mailbox that handles prices of the given shop.
+     */
+    public int indexOf(@NotNull String shopId) {
+        return indexOf(shopId, this.mailboxes.length);
+    }
+
+    public static int indexOf(@NotNull String shopId, int mailboxes) {
+        // Price datas store lowercase shop ids, so both ways to get the id end up in the same mailbox.
+        return Math.floorMod(shopId.toLowerCase().hashCode(), mailboxes);
+    }
+
+    public static boolean isUpdatable(@NotNull Product product) {
+        PriceType type = product.getPricer().getType();
+        return type != PriceType.FLAT && type != PriceType.PLAYER_AMOUNT;
+    }
+
+    /**
+     * Calculates new prices if the current ones are expired (or if forced) and publishes them to the product.
+     */
+    public void update(@NotNull Product product, boolean force) {
+        this.execute(product.getShop().getId(), () -> this.calculate(product, force));
+    }
+
+    public void countTransaction(@NotNull Product product, @NotNull TradeType tradeType, int units) {
+        this.execute(product.getShop().getId(), () -> {
+            if (!isUpdatable(product)) return;
+
+            PriceData priceData = this.plugin.getDataManager().getPriceDataOrCreate(product);
+            priceData.countTransaction(tradeType, units);
+
+            if (product.getPricer() instanceof DemandPricer demandPricer) {
+                // Demand is decayed up to now first, so the trade is added to the current value.
+                long now = System.currentTimeMillis();
+                double change = tradeType == TradeType.BUY ? units : -units;
+                priceData.update(snapshot -> snapshot
+                    .withDemand(demandPricer.getDemand(snapshot.demand(), snapshot.latestUpdateDate(), now) + change)
+                    .withLatestUpdateDate(now)
+                );
+            }
+            priceData.setSaveRequired(true);
+
+            if (product.getPricer() instanceof DynamicPricer) {
+                priceData.setExpired(); // To trigger isExpired in update.
+            }
+
+            this.calculate(product, false);
+        });
+    }
+
+    /**
+     * Runs other changes of the product's price data (such as reset or merge of cached values) and publishes the result.
+     */
+    public void change(@NotNull Product product, @NotNull Runnable change) {
+        this.execute(product.getShop().getId(), () -> {
+            change.run();
+            this.publish(product);
+        });
+    }
+
+    /**
+     * @param callback Accepts false if the data is older than the current one and was dropped.
+     */
+    public void applyExternal(@NotNull PriceData data, @NotNull Consumer<Boolean> callback) {
+        this.execute(data.getShopId(), () -> {
+            boolean applied = this.plugin.getDataManager().applyExternalPriceData(data);
+            if (applied) {
+                Shop shop = this.plugin.getShopManager().getShopById(data.getShopId());
+                Product product = shop == null ? null : shop.getProductById(data.getProductId());
+                if (product != null) this.publish(product);
+            }
+            callback.accept(applied);
+        });
+    }
+
+    private void execute(@NotNull String shopId, @NotNull Runnable task) {
+        Runnable safeTask = () -> {
+            try {
+                task.run();
+            }
+            catch (Exception exception) {
+                this.plugin.error("Could not update product prices: " + exception.getMessage());
+                exception.printStackTrace();
+            }
+        };
+
+        try {
+            this.mailboxes[this.indexOf(shopId)].execute(safeTask);
+        }
+        catch (RejectedExecutionException exception) {
+            safeTask.run(); // Shut down, so there is nothing left to run concurrently with.
+        }
+    }
+
+    private void calculate(@NotNull Product product, boolean force) {
+        if (!isUpdatable(product)) return;
+
+        PriceData priceData = this.plugin.getDataManager().getPriceDataOrCreate(product);
+
+        // Float prices are random, so only the sync leader rolls them, other servers get the result by sync.
+        boolean canRoll = !(product.getPricer() instanceof FloatPricer) || this.plugin.isSyncLeader();
+
+        if ((priceData.isExpired() && canRoll) || force) {
+            recalculate(product.getPricer(), priceData, System.currentTimeMillis());
+        }
+
+        this.publish(product, priceData);
+    }
+
+    /**
+     * Calculates new prices of the pricer's type and writes them to the price data. Must be called on the shop's mailbox thread.
+     */
+    public static void recalculate(@NotNull AbstractProductPricer pricer, @NotNull PriceData priceData, long updateDate) {
+        double buyPrice = priceData.getLatestBuyPrice();
+        double sellPrice = priceData.getLatestSellPrice();
+        long expireDate = priceData.getExpireDate();
+        double demand = priceData.getDemand();
+
+        if (pricer instanceof FloatPricer floatPricer) {
+            buyPrice = floatPricer.rollPrice(TradeType.BUY);
+            sellPrice = floatPricer.rollPrice(TradeType.SELL);
+            expireDate = floatPricer.getClosestTimestamp();
+        }
+        else if (pricer instanceof DemandPricer demandPricer) {
+            demand = demandPricer.getDemand(demand, priceData.getLatestUpdateDate(), updateDate);
+            buyPrice = demandPricer.getAdjustedPrice(TradeType.BUY, demand);
+            sellPrice = demandPricer.getAdjustedPrice(TradeType.SELL, demand);
+            expireDate = demandPricer.getRefreshDate(demand, updateDate);
+        }
+        else if (pricer instanceof DynamicPricer dynamicPricer) {
+            double difference = priceData.getPurchases() - priceData.getSales();
+            buyPrice = dynamicPricer.getAdjustedPrice(TradeType.BUY, difference);
+            sellPrice = dynamicPricer.getAdjustedPrice(TradeType.SELL, difference);
+            expireDate = -1L;
+        }
+
+        if (sellPrice > buyPrice && buyPrice >= 0) {
+            sellPrice = buyPrice;
+        }
+
+        double newBuyPrice = buyPrice;
+        double newSellPrice = sellPrice;
+        long newExpireDate = expireDate;
+        double newDemand = demand;
+        priceData.update(snapshot -> snapshot.withPrices(newBuyPrice, newSellPrice, updateDate, newExpireDate).withDemand(newDemand));
+        priceData.setSaveRequired(true);
+    }
+
+    private void publish(@NotNull Product product) {
+        if (!isUpdatable(product)) return; // Prices of other types are set from the product config.
+
+        PriceData priceData = this.plugin.getDataManager().getPriceData(product);
+        if (priceData == null) return;
+
+        this.publish(product, priceData);
+    }
+
+    private void publish(@NotNull Product product, @NotNull PriceData priceData) {
+        double buyPrice = product.getCurrency().fineValue(priceData.getLatestBuyPrice());
+        double sellPrice = product.getCurrency().fineValue(priceData.getLatestSellPrice());
+        product.getPricer().setPrices(buyPrice, sellPrice);
+    }
+}
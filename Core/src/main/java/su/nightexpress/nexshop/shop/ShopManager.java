@@ -14,10 +14,8 @@ import su.nightexpress.nexshop.api.shop.type.TradeType;
 import su.nightexpress.nexshop.config.Config;
 import su.nightexpress.nexshop.config.Lang;
 import su.nightexpress.nexshop.config.Perms;
-import su.nightexpress.nexshop.shop.chest.ChestShopModule;
 import su.nightexpress.nexshop.shop.chest.impl.ChestShop;
 import su.nightexpress.nexshop.shop.menu.*;
-import su.nightexpress.nexshop.shop.virtual.VirtualShopModule;
 import su.nightexpress.nexshop.util.ShopUtils;
 import su.nightexpress.nightcore.config.FileConfig;
 import su.nightexpress.nightcore.core.config.CoreLang;
@@ -31,14 +29,15 @@ import su.nightexpress.nightcore.util.ItemUtil;
 
 import java.io.File;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
 public class ShopManager extends AbstractManager<ShopPlugin> {
 
     private final Map<String, CartMenu> cartMenuMap;
     private final AsyncShopProcessor asyncProcessor;
+    private final PriceEngine        priceEngine;
+    private final ShopRegistry       registry;
 
     private ConfirmMenu confirmMenu;
     private PurchaseOptionMenu purchaseOptionMenu;
@@ -47,6 +46,8 @@ public class ShopManager extends AbstractManager<ShopPlugin> {
         super(plugin);
         this.cartMenuMap = new HashMap<>();
         this.asyncProcessor = new AsyncShopProcessor(plugin);
+        this.priceEngine = new PriceEngine(plugin, Config.SHOP_UPDATE_THREADS.get());
+        this.registry = new ShopRegistry();
     }
 
     @Override
@@ -65,6 +66,8 @@ public class ShopManager extends AbstractManager<ShopPlugin> {
 
         this.cartMenuMap.values().forEach(Menu::clear);
         this.cartMenuMap.clear();
+
+        this.priceEngine.shutdown();
     }
 
     private void loadUI() {
@@ -105,20 +108,18 @@ public class ShopManager extends AbstractManager<ShopPlugin> {
     }
 
     @NotNull
-    public Set<Shop> getShops() {
-        Set<Shop> shops = new HashSet<>();
-
-        VirtualShopModule virtualShopModule = plugin.getVirtualShop();
-        if (virtualShopModule != null) {
-            shops.addAll(virtualShopModule.getShops());
-        }
+    public ShopRegistry getRegistry() {
+        return this.registry;
+    }
 
-        ChestShopModule chestShopModule = plugin.getChestShop();
-        if (chestShopModule != null) {
-            shops.addAll(chestShopModule.lookup().getAll());
-        }
+    @NotNull
+    public List<Shop> getShops() {
+        return this.registry.getShops();
+    }
 
-        return shops;
+    @Nullable
+    public Shop getShopById(@NotNull String id) {
+        return this.registry.getShopById(id);
     }
 
     private void startAsyncShopUpdater() {
@@ -160,31 +161,17 @@ public class ShopManager extends AbstractManager<ShopPlugin> {
     }
 
     private void saveBatchedData(@NotNull AsyncShopUpdate update) {
-        if (!update.getPriceDataToSave().isEmpty()) {
-            this.plugin.getDataHandler().updatePriceDatas(update.getPriceDataToSave());
-
-            this.plugin.getRedisSyncManager().ifPresent(sync -> {
-                update.getPriceDataToSave().forEach(data -> {
-                    sync.publishPriceData(data);
-                    sync.cachePriceData(data);
-                    data.setSaveRequired(false);
-                });
-            });
-        }
-
+        // Calculated datas are already queued as 'save required', so just flush the dirty queues.
         if (!update.getStockDataToSave().isEmpty()) {
-            this.plugin.getDataHandler().updateStockDatas(update.getStockDataToSave());
-
-            this.plugin.getRedisSyncManager().ifPresent(sync -> {
-                update.getStockDataToSave().forEach(data -> {
-                    sync.publishStockData(data);
-                    sync.cacheStockData(data);
-                    data.setSaveRequired(false);
-                });
-            });
+            this.plugin.getDataManager().saveScheduledStockDatas();
         }
     }
 
+    @NotNull
+    public PriceEngine getPriceEngine() {
+        return this.priceEngine;
+    }
+
     public void updateShops() {
         this.processShopsAsync();
     }
@@ -0,0 +1,112 @@
+package su.nightexpress.nexshop.shop;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import su.nightexpress.nexshop.api.shop.Shop;
+import su.nightexpress.nexshop.shop.chest.impl.ChestShop;
+import su.nightexpress.nexshop.shop.virtual.impl.VirtualShop;
+
+import java.util.*;
+
+/**
+ * Shops of all modules. Readers get an immutable snapshot that is shared until a shop is added or removed,
+ * so it can be iterated by any thread without copies.
+ */
+public class ShopRegistry {
+
+    private record Snapshot(long version,
+                            List<Shop> shops,
+                            List<VirtualShop> virtualShops,
+                            List<ChestShop> chestShops,
+                            Map<String, Shop> shopById) {
+
+        static final Snapshot EMPTY = new Snapshot(0L, List.of(), List.of(), List.of(), Map.of());
+    }
+
+    private final Set<Shop> shops;
+
+    private volatile long     version;
+    private volatile Snapshot snapshot;
+
+    public ShopRegistry() {
+        this.shops = new LinkedHashSet<>();
+        this.snapshot = Snapshot.EMPTY;
+    }
+
+    public synchronized void register(@NotNull Shop shop) {
+        if (this.shops.add(shop)) this.version++;
+    }
+
+    public synchronized void unregister(@NotNull Shop shop) {
+        if (this.shops.remove(shop)) this.version++;
+    }
+
+    /**
+     * @return Number that changes every time a shop is added or removed.
+     */
+    public long getVersion() {
+        return this.version;
+    }
+
+    @NotNull
+    public List<Shop> getShops() {
+        return this.snapshot().shops();
+    }
+
+    @NotNull
+    public List<VirtualShop> getVirtualShops() {
+        return this.snapshot().virtualShops();
+    }
+
+    @NotNull
+    public List<ChestShop> getChestShops() {
+        return this.snapshot().chestShops();
+    }
+
+    /**
+     * Virtual shops take precedence over chest shops with the same id.
+     */
+    @Nullable
+    public Shop getShopById(@NotNull String id) {
+        return this.snapshot().shopById().get(id.toLowerCase());
+    }
+
+    @NotNull
+    private Snapshot snapshot() {
+        Snapshot snapshot = this.snapshot;
+        if (snapshot.version() == this.version) return snapshot;
+
+        synchronized (this) {
+            if (this.snapshot.version() != this.version) {
+                this.snapshot = this.createSnapshot();
+            }
+            return this.snapshot;
+        }
+    }
+
+    @NotNull
+    private Snapshot createSnapshot() {
+        Shop[] shops = this.shops.toArray(new Shop[0]);
+        List<VirtualShop> virtualShops = new ArrayList<>();
+        List<ChestShop> chestShops = new ArrayList<>();
+        Map<String, Shop> shopById = new HashMap<>();
+
+        for (Shop shop : shops) {
+            if (shop instanceof VirtualShop virtualShop) {
+                virtualShops.add(virtualShop);
+                shopById.put(shop.getId(), shop);
+            }
+            else {
+                if (shop instanceof ChestShop chestShop) chestShops.add(chestShop);
+                shopById.putIfAbsent(shop.getId(), shop);
+            }
+        }
+
+        return new Snapshot(this.version,
+            Collections.unmodifiableList(Arrays.asList(shops)),
+            Collections.unmodifiableList(virtualShops),
+            Collections.unmodifiableList(chestShops),
+            Collections.unmodifiableMap(shopById)
+        );
+    }
+}
@@ -297,11 +297,14 @@ public class ChestShopModule extends AbstractModule implements ShopModule, Playe
         }
 
         this.lookup.put(shop);
+        this.plugin.getShopManager().getRegistry().register(shop);
+        this.plugin.getDataManager().scheduleDeadlines(shop);
     }
 
     public void unloadShop(@NotNull ChestShop shop) {
         this.deactivateShop(shop);
         this.lookup.remove(shop);
+        this.plugin.getShopManager().getRegistry().unregister(shop);
     }
 
     @Override
@@ -527,7 +530,7 @@ public class ChestShopModule extends AbstractModule implements ShopModule, Playe
     }
 
     public boolean openShop(@NotNull Player player, @NotNull ChestShop shop, int page, boolean force) {
-        if (!this.plugin.getDataManager().isLoaded()) return false;
+        if (!this.plugin.getDataManager().isShopReady(shop)) return false;
 
         if (!force) {
             if (!shop.canAccess(player, true)) return false;
@@ -800,6 +803,7 @@ public class ChestShopModule extends AbstractModule implements ShopModule, Playe
         shop.markDirty();
 
         this.lookup.put(shop);
+        this.plugin.getShopManager().getRegistry().register(shop);
         this.activateShop(shop, world);
 
         this.getPrefixed(ChestLang.SHOP_CREATION_INFO_DONE).send(player);
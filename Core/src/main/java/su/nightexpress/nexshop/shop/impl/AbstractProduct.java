@@ -12,11 +12,9 @@ import su.nightexpress.nexshop.api.shop.product.typing.PhysicalTyping;
 import su.nightexpress.nexshop.api.shop.product.typing.ProductTyping;
 import su.nightexpress.nexshop.api.shop.type.PriceType;
 import su.nightexpress.nexshop.api.shop.type.TradeType;
-import su.nightexpress.nexshop.data.product.PriceData;
+import su.nightexpress.nexshop.data.key.ProductKey;
 import su.nightexpress.nexshop.product.price.AbstractProductPricer;
-import su.nightexpress.nexshop.product.price.impl.DynamicPricer;
 import su.nightexpress.nexshop.product.price.impl.FlatPricer;
-import su.nightexpress.nexshop.product.price.impl.FloatPricer;
 import su.nightexpress.nexshop.util.UnitUtils;
 
 import java.util.function.UnaryOperator;
@@ -30,6 +28,8 @@ public abstract class AbstractProduct<S extends AbstractShop<?>> implements Prod
     protected Currency              currency;
     protected AbstractProductPricer pricer;
 
+    private ProductKey dataKey;
+
     public AbstractProduct(@NotNull String id, @NotNull S shop, @NotNull Currency currency, @NotNull ProductTyping type) {
         this.id = id.toLowerCase();
         this.shop = shop;
@@ -72,39 +72,7 @@ public abstract class AbstractProduct<S extends AbstractShop<?>> implements Prod
         if (this.pricer.getType() == PriceType.FLAT) return;
         if (this.pricer.getType() == PriceType.PLAYER_AMOUNT) return;
 
-        PriceData priceData = ShopAPI.getDataManager().getPriceDataOrCreate(this);
-
-        if (priceData.isExpired() || force) {
-            //plugin.debug("Flush prices for " + this.getId() + " product of " + shop.getId() + " shop.");
-            double buyPrice = priceData.getLatestBuyPrice();
-            double sellPrice = priceData.getLatestSellPrice();
-            long expireDate = priceData.getExpireDate();
-
-            if (this.pricer instanceof FloatPricer floatPricer) {
-                buyPrice = floatPricer.rollPrice(TradeType.BUY);
-                sellPrice = floatPricer.rollPrice(TradeType.SELL);
-                expireDate = floatPricer.getClosestTimestamp();
-            }
-            else if (this.pricer instanceof DynamicPricer dynamicPricer) {
-                double difference = priceData.getPurchases() - priceData.getSales();
-                buyPrice = dynamicPricer.getAdjustedPrice(TradeType.BUY, difference);
-                sellPrice = dynamicPricer.getAdjustedPrice(TradeType.SELL, difference);
-                expireDate = -1L;
-            }
-
-            if (sellPrice > buyPrice && buyPrice >= 0) {
-                sellPrice = buyPrice;
-            }
-
-            priceData.setLatestBuyPrice(buyPrice);
-            priceData.setLatestSellPrice(sellPrice);
-            priceData.setLatestUpdateDate(System.currentTimeMillis());
-            priceData.setExpireDate(expireDate);
-            priceData.setSaveRequired(true);
-        }
-
-        this.setPrice(TradeType.BUY, priceData.getLatestBuyPrice());
-        this.setPrice(TradeType.SELL, priceData.getLatestSellPrice());
+        ShopAPI.getPlugin().getShopManager().getPriceEngine().update(this, force);
     }
 
     @Override
@@ -273,6 +241,17 @@ public abstract class AbstractProduct<S extends AbstractShop<?>> implements Prod
         return this.id;
     }
 
+    /**
+     * @return Cached key of product's global datas. Product and shop ids never change, so the key is created once.
+     */
+    @NotNull
+    public ProductKey getDataKey() {
+        if (this.dataKey == null) {
+            this.dataKey = ProductKey.global(this.shop.getId(), this.id);
+        }
+        return this.dataKey;
+    }
+
     @NotNull
     @Override
     public ProductTyping getType() {
@@ -298,7 +277,11 @@ public abstract class AbstractProduct<S extends AbstractShop<?>> implements Prod
 
     @Override
     public void setPricer(@NotNull AbstractProductPricer pricer) {
+        boolean changed = this.pricer != null;
         this.pricer = pricer;
+
+        // Prices that were not updatable with the previous pricer are dropped from the update schedule.
+        if (changed) ShopAPI.getPlugin().getDataManager().scheduleDeadlines(this);
     }
 
     @Override
@@ -8,7 +8,6 @@ import su.nightexpress.nexshop.api.shop.Transaction;
 import su.nightexpress.nexshop.api.shop.event.ShopTransactionEvent;
 import su.nightexpress.nexshop.api.shop.product.Product;
 import su.nightexpress.nexshop.api.shop.type.PriceType;
-import su.nightexpress.nexshop.data.product.PriceData;
 import su.nightexpress.nightcore.manager.AbstractFileData;
 
 import java.io.File;
@@ -34,15 +33,7 @@ public abstract class AbstractShop<P extends AbstractProduct<?>> extends Abstrac
         if (product.getPricer().getType() == PriceType.FLAT) return;
         if (product.getPricer().getType() == PriceType.PLAYER_AMOUNT) return;
 
-        PriceData priceData = this.plugin.getDataManager().getPriceDataOrCreate(product);
-        priceData.countTransaction(result.getTradeType(), result.getUnits());
-        priceData.setSaveRequired(true);
-
-        if (product.getPricer().getType() == PriceType.DYNAMIC) {
-            priceData.setExpired(); // To trigger isExpired in update.
-        }
-
-        product.updatePrice(false);
+        this.plugin.getShopManager().getPriceEngine().countTransaction(product, result.getTradeType(), result.getUnits());
     }
 
     @Override
@@ -147,6 +147,11 @@ public abstract class ProductPriceMenu<T extends AbstractProduct<?>> extends Lin
                 this.addRangedButtons(viewer, product, floatPricer);
                 this.addFloatButtons(viewer, floatPricer);
             }
+            case DemandPricer demandPricer -> {
+                this.addRangedButtons(viewer, product, demandPricer);
+                this.addDynamicButtons(viewer, demandPricer);
+                this.addDemandButtons(viewer, demandPricer);
+            }
             case DynamicPricer dynamicPricer -> {
                 this.addRangedButtons(viewer, product, dynamicPricer);
                 this.addDynamicButtons(viewer, dynamicPricer);
@@ -288,6 +293,16 @@ public abstract class ProductPriceMenu<T extends AbstractProduct<?>> extends Lin
         });
     }
 
+    private void addDemandButtons(@NotNull MenuViewer menuViewer, @NotNull DemandPricer pricer) {
+        this.addItem(menuViewer, NightItem.asCustomHead(SKULL_CLOCK), Lang.PRODUCT_EDIT_PRICE_DEMAND_HALF_LIFE, 32, (viewer, event, product) -> {
+            this.handleInput(Dialog.builder(viewer, Lang.EDITOR_GENERIC_ENTER_SECONDS.text(), input -> {
+                pricer.setHalfLife(input.asIntAbs(0));
+                this.save(viewer, product);
+                return true;
+            }));
+        });
+    }
+
     private void addPlayersButtons(@NotNull MenuViewer menuViewer, @NotNull PlayersPricer pricer) {
         this.addItem(menuViewer, NightItem.asCustomHead(SKULL_INITIAL), Lang.PRODUCT_EDIT_PRICE_PLAYERS_INITIAL, 31, (viewer, event, product) -> {
             this.handleInput(Dialog.builder(viewer, Lang.EDITOR_PRODUCT_ENTER_PRICE.text(), input -> {
@@ -142,6 +142,7 @@ public class VirtualShopModule extends AbstractModule implements ShopModule {
 
         this.getLayouts().forEach(ShopLayout::clear);
         this.layoutByIdMap.clear();
+        this.shopByIdMap.values().forEach(this.plugin.getShopManager().getRegistry()::unregister);
         this.shopByIdMap.clear();
 
         VirtualCommands.unload();
@@ -278,13 +279,16 @@ public class VirtualShopModule extends AbstractModule implements ShopModule {
             return;
         }
 
-        if (this.plugin.getDataManager().isLoaded()) {
+        this.plugin.getDataManager().scheduleDeadlines(shop);
+        if (this.plugin.getDataManager().isShopReady(shop)) {
             shop.updatePrices(false);
         }
 
         this.loadShopAliases(shop);
 
-        this.shopByIdMap.put(shop.getId(), shop);
+        VirtualShop previous = this.shopByIdMap.put(shop.getId(), shop);
+        if (previous != null) this.plugin.getShopManager().getRegistry().unregister(previous);
+        this.plugin.getShopManager().getRegistry().register(shop);
     }
 
     private void loadLayouts() {
@@ -523,6 +527,7 @@ public class VirtualShopModule extends AbstractModule implements ShopModule {
 
         this.plugin.getDataManager().deleteAllData(shop);
         this.shopByIdMap.remove(shop.getId());
+        this.plugin.getShopManager().getRegistry().unregister(shop);
         return true;
     }
 
@@ -633,7 +638,7 @@ public class VirtualShopModule extends AbstractModule implements ShopModule {
     }
 
     public boolean openShop(@NotNull Player player, @NotNull VirtualShop shop, int page, boolean force) {
-        if (!this.plugin.getDataManager().isLoaded()) return false;
+        if (!this.plugin.getDataManager().isShopReady(shop)) return false;
         if (!force) {
             if (!this.isAvailable(player, true)) return false;
             if (!shop.canAccess(player, true)) return false;
@@ -32,11 +32,15 @@ public class VirtualPreparedProduct extends AbstractPreparedProduct<VirtualProdu
             result = Transaction.Result.TOO_EXPENSIVE;
         }
 
+        int reserved = this.reserve(product, TradeType.BUY, this.getUnits(), result);
+        if (reserved < 0) result = Transaction.Result.OUT_OF_STOCK;
+
         // Call custom event
         Transaction transaction = new Transaction(product, TradeType.BUY, this.getUnits(), price, result);
         ShopTransactionEvent event = new ShopTransactionEvent(player, shop, transaction);
         Bukkit.getPluginManager().callEvent(event);
 
+        this.settle(product, event.getTransaction(), Math.max(0, reserved));
         result = event.getTransaction().getResult();
         transaction.sendError(player);
 
@@ -82,11 +86,15 @@ public class VirtualPreparedProduct extends AbstractPreparedProduct<VirtualProdu
             result = Transaction.Result.OUT_OF_STOCK;
         }
 
+        int reserved = this.reserve(product, TradeType.SELL, fined, result);
+        if (reserved < 0) result = Transaction.Result.OUT_OF_STOCK;
+
         // Call custom event
         Transaction transaction = new Transaction(product, TradeType.SELL, fined, price, result);
         ShopTransactionEvent event = new ShopTransactionEvent(player, shop, transaction);
         Bukkit.getPluginManager().callEvent(event);
 
+        this.settle(product, event.getTransaction(), Math.max(0, reserved));
         result = event.getTransaction().getResult();
         transaction.sendError(player);
 
@@ -102,4 +110,33 @@ public class VirtualPreparedProduct extends AbstractPreparedProduct<VirtualProdu
         }
         return transaction;
     }
+
+    /**
+     * Reserves global stock managed by Redis before the transaction event, so listeners get the final result.
+     * @return Amount of reserved units, or -1 if there are not enough of them.
+     */
+    private int reserve(@NotNull VirtualProduct product, @NotNull TradeType type, int units, @NotNull Result result) {
+        if (result != Transaction.Result.SUCCESS || !product.isStockAuthoritative()) return 0;
+
+        return product.reserveStock(type, units) ? units : -1;
+    }
+
+    /**
+     * Matches the reserved stock to the transaction after the event: gives all units back if a listener cancelled it,
+     * reserves or gives back the difference if a listener changed the units.
+     */
+    private void settle(@NotNull VirtualProduct product, @NotNull Transaction transaction, int reserved) {
+        if (!product.isStockAuthoritative()) return;
+
+        TradeType type = transaction.getTradeType();
+        int units = transaction.getResult() == Transaction.Result.SUCCESS ? transaction.getUnits() : 0;
+
+        if (units > reserved && !product.reserveStock(type, units - reserved)) {
+            transaction.setResult(Transaction.Result.OUT_OF_STOCK);
+            units = 0;
+        }
+        if (units < reserved) {
+            product.releaseStock(type, reserved - units);
+        }
+    }
 }
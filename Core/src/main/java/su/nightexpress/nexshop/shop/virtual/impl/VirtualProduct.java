@@ -14,6 +14,8 @@ import su.nightexpress.nexshop.data.product.StockData;
 import su.nightexpress.nexshop.product.price.AbstractProductPricer;
 import su.nightexpress.nexshop.shop.impl.AbstractProduct;
 import su.nightexpress.nexshop.shop.virtual.VirtualShopModule;
+import su.nightexpress.nexshop.sync.RedisStockAuthority;
+import su.nightexpress.nexshop.sync.RedisSyncManager;
 import su.nightexpress.nightcore.config.FileConfig;
 import su.nightexpress.nightcore.config.Writeable;
 import su.nightexpress.nightcore.core.config.CoreLang;
@@ -185,18 +187,71 @@ public class VirtualProduct extends AbstractProduct<VirtualShop> implements Writ
         StockValues values = this.getStocksOrLimits(playerId);
         if (values.isUnlimited(type)) return -1;
 
+        // Limits are unknown until player datas are loaded, so nothing can be traded meanwhile.
+        if (playerId != null && !ShopAPI.getDataManager().isPlayerStocksLoaded(playerId)) return 0;
+
         StockData data = this.getStockData(playerId);
         //data.restockIfReady(values);
 
         return data.countStock(type);
     }
 
+    @Nullable
+    private RedisStockAuthority getStockAuthority(@Nullable UUID playerId) {
+        if (playerId != null) return null; // Player limits are never shared between players.
+
+        return ShopAPI.getPlugin().getRedisSyncManager().flatMap(RedisSyncManager::getStockAuthority).orElse(null);
+    }
+
+    /**
+     * @return True if global stock is managed by Redis and has to be reserved before the trade, see {@link #reserveStock(TradeType, int)}.
+     */
+    public boolean isStockAuthoritative() {
+        return this.getStockAuthority(null) != null;
+    }
+
+    /**
+     * Takes units from the global stock managed by Redis before the trade is done,
+     * and populates the opposite side in the same call (see {@link VirtualShop#onTransaction}).
+     * @return False if there are not enough units left across all servers.
+     */
+    public boolean reserveStock(@NotNull TradeType type, int amount) {
+        RedisStockAuthority authority = this.getStockAuthority(null);
+        if (authority == null) return true;
+
+        StockValues values = this.stockValues;
+        boolean limited = !values.isUnlimited(type);
+        boolean refilled = !values.isUnlimited(type.getOpposite());
+        if (!limited && !refilled) return true;
+
+        // Unlimited side is never checked by the script, its amount is not used.
+        return authority.consume(this.getStockData(null), values, type, limited ? amount : 0, refilled ? amount : 0);
+    }
+
+    /**
+     * Gives back units reserved by {@link #reserveStock(TradeType, int)} for a trade that did not happen.
+     */
+    public void releaseStock(@NotNull TradeType type, int amount) {
+        RedisStockAuthority authority = this.getStockAuthority(null);
+        if (authority == null) return;
+
+        StockValues values = this.stockValues;
+        boolean limited = !values.isUnlimited(type);
+        boolean refilled = !values.isUnlimited(type.getOpposite());
+        if (!limited && !refilled) return;
+
+        authority.release(this.getStockData(null), values, type, limited ? amount : 0, refilled ? amount : 0);
+    }
+
     @Override
     public boolean consumeStock(@NotNull TradeType type, int amount, @Nullable UUID playerId) {
         StockValues values = this.getStocksOrLimits(playerId);
         if (values.isUnlimited(type)) return false;
 
         StockData data = this.getStockData(playerId);
+        RedisStockAuthority authority = this.getStockAuthority(playerId);
+        if (authority != null) return authority.consume(data, values, type, amount);
+
         //data.restockIfReady(values);
         data.consumeStock(type, amount);
         data.startRestockIfAbsent(values);
@@ -210,6 +265,12 @@ public class VirtualProduct extends AbstractProduct<VirtualShop> implements Writ
         if (values.isUnlimited(type)) return false;
 
         StockData data = this.getStockData(playerId);
+        RedisStockAuthority authority = this.getStockAuthority(playerId);
+        if (authority != null) {
+            authority.fill(data, values, type, amount);
+            return true;
+        }
+
         //data.restockIfReady(values);
         data.fillStock(type, amount);
         data.startRestockIfAbsent(values);
@@ -223,6 +284,12 @@ public class VirtualProduct extends AbstractProduct<VirtualShop> implements Writ
         if (values.isUnlimited(type)) return false;
 
         StockData data = this.getStockData(playerId);
+        RedisStockAuthority authority = this.getStockAuthority(playerId);
+        if (authority != null) {
+            authority.restock(data, values, force);
+            return true;
+        }
+
         if (force || data.isRestockTime()) {
             data.restock(values);
             data.setSaveRequired(true);
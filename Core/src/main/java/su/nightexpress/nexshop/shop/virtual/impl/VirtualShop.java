@@ -307,9 +307,12 @@ public class VirtualShop extends AbstractShop<VirtualProduct> {
         TradeType tradeType = result.getTradeType();
         int amount = result.getUnits();
 
-        product.consumeStock(tradeType, amount, null); // Consume global stock if present.
+        // Global stock managed by Redis is reserved before the trade, see VirtualProduct#reserveStock.
+        boolean reserved = product instanceof VirtualProduct virtualProduct && virtualProduct.isStockAuthoritative();
+
+        if (!reserved) product.consumeStock(tradeType, amount, null); // Consume global stock if present.
         product.consumeStock(tradeType, amount, player.getUniqueId()); // Consume player stock if present.
-        product.storeStock(tradeType.getOpposite(), amount, null); // Populate global stock if present.
+        if (!reserved) product.storeStock(tradeType.getOpposite(), amount, null); // Populate global stock if present.
     }
 
     @Override
@@ -324,7 +327,7 @@ public class VirtualShop extends AbstractShop<VirtualProduct> {
     }
 
     public boolean isDataLoaded() {
-        return this.plugin.getDataManager().isLoaded();
+        return this.plugin.getDataManager().isShopReady(this);
     }
 
     @NotNull
@@ -361,6 +364,7 @@ public class VirtualShop extends AbstractShop<VirtualProduct> {
 
     public boolean tryRotate() {
         if (!this.isDataLoaded()) return false;
+        if (!this.plugin.isSyncLeader()) return false; // Rotated by the leader, other servers get the result by sync.
 
         AtomicInteger rotated = new AtomicInteger(0);
 
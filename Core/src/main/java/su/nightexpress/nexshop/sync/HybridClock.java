@@ -0,0 +1,38 @@
+package su.nightexpress.nexshop.sync;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hybrid logical clock packed in a single long: wall time millis in the high bits and a logical counter in the low 16 bits.
+ * Stamps are strictly increasing on this node and are always ahead of any stamp received from other nodes,
+ * so ordering of causally related changes holds even with clock skew between servers.
+ */
+public class HybridClock {
+
+    private static final int LOGICAL_BITS = 16;
+
+    private final AtomicLong last;
+
+    public HybridClock() {
+        this.last = new AtomicLong();
+    }
+
+    /**
+     * @return New stamp for a local change.
+     */
+    public long tick() {
+        long physical = System.currentTimeMillis() << LOGICAL_BITS;
+        return this.last.updateAndGet(previous -> Math.max(previous + 1, physical));
+    }
+
+    /**
+     * Moves the clock past the stamp received from another node.
+     */
+    public void observe(long remote) {
+        this.last.accumulateAndGet(remote, Math::max);
+    }
+
+    public static long toMillis(long stamp) {
+        return stamp >>> LOGICAL_BITS;
+    }
+}
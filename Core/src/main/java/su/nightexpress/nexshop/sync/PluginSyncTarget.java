@@ -0,0 +1,160 @@
+package su.nightexpress.nexshop.sync;
+
+import org.jetbrains.annotations.NotNull;
+import su.nightexpress.nexshop.ShopPlugin;
+import su.nightexpress.nexshop.auction.listing.ActiveListing;
+import su.nightexpress.nexshop.auction.listing.CompletedListing;
+import su.nightexpress.nexshop.data.product.PriceData;
+import su.nightexpress.nexshop.data.product.StockData;
+import su.nightexpress.nexshop.data.shop.RotationData;
+import su.nightexpress.nexshop.shop.chest.impl.ChestBank;
+
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * Applies sync messages to the plugin datas and modules, and writes received records to the Redis cache.
+ */
+public class PluginSyncTarget implements SyncTarget {
+
+    private final ShopPlugin       plugin;
+    private final RedisSyncManager manager;
+
+    public PluginSyncTarget(@NotNull ShopPlugin plugin, @NotNull RedisSyncManager manager) {
+        this.plugin = plugin;
+        this.manager = manager;
+    }
+
+    @Override
+    public void applyPriceData(@NotNull PriceData data, @NotNull Consumer<Boolean> callback) {
+        this.plugin.getShopManager().getPriceEngine().applyExternal(data, callback);
+    }
+
+    @Override
+    public boolean applyStockData(@NotNull StockData data) {
+        return this.plugin.getDataManager().applyExternalStockData(data);
+    }
+
+    @Override
+    public boolean applyRotationData(@NotNull RotationData data) {
+        return this.plugin.getDataManager().applyExternalRotationData(data);
+    }
+
+    @Override
+    public void deletePriceDataByShop(@NotNull String shopId) {
+        this.plugin.getDataManager().applyExternalDeletePriceDataByShop(shopId);
+    }
+
+    @Override
+    public void deletePriceDataByProduct(@NotNull String shopId, @NotNull String productId) {
+        this.plugin.getDataManager().applyExternalDeletePriceDataByProduct(shopId, productId);
+    }
+
+    @Override
+    public void deleteStockDataByShop(@NotNull String shopId) {
+        this.plugin.getDataManager().applyExternalDeleteStockDataByShop(shopId);
+    }
+
+    @Override
+    public void deleteStockDataByProduct(@NotNull String shopId, @NotNull String productId) {
+        this.plugin.getDataManager().applyExternalDeleteStockDataByProduct(shopId, productId);
+    }
+
+    @Override
+    public void deleteRotationDataByShop(@NotNull String shopId) {
+        this.plugin.getDataManager().applyExternalDeleteRotationDataByShop(shopId);
+    }
+
+    @Override
+    public void deleteRotationDataByRotation(@NotNull String shopId, @NotNull String rotationId) {
+        this.plugin.getDataManager().applyExternalDeleteRotationDataByRotation(shopId, rotationId);
+    }
+
+    @Override
+    public void warn(@NotNull String message) {
+        this.plugin.warn(message);
+    }
+
+    @Override
+    public void cachePriceData(@NotNull PriceData data) {
+        this.manager.cachePriceData(data);
+    }
+
+    @Override
+    public void cacheStockData(@NotNull StockData data) {
+        this.manager.cacheStockData(data);
+    }
+
+    @Override
+    public void evictPriceDataByShop(@NotNull String shopId) {
+        this.manager.evictPriceDataByShop(shopId);
+    }
+
+    @Override
+    public void evictPriceDataByProduct(@NotNull String shopId, @NotNull String productId) {
+        this.manager.evictPriceDataByProduct(shopId, productId);
+    }
+
+    @Override
+    public void evictStockDataByShop(@NotNull String shopId) {
+        this.manager.evictStockDataByShop(shopId);
+    }
+
+    @Override
+    public void evictStockDataByProduct(@NotNull String shopId, @NotNull String productId) {
+        this.manager.evictStockDataByProduct(shopId, productId);
+    }
+
+    @Override
+    public void applyChestBank(@NotNull ChestBank bank) {
+        var module = this.plugin.getChestShop();
+        if (module != null) {
+            module.getBankMap().put(bank.getHolder(), bank);
+        }
+    }
+
+    @Override
+    public void addAuctionListing(@NotNull ActiveListing listing) {
+        var auc = this.plugin.getAuction();
+        if (auc != null) {
+            auc.getListings().add(listing);
+        }
+    }
+
+    @Override
+    public void removeAuctionListing(@NotNull UUID id) {
+        var auc = this.plugin.getAuction();
+        if (auc != null) {
+            ActiveListing existing = auc.getListings().getById(id);
+            if (existing != null) auc.getListings().remove(existing);
+        }
+    }
+
+    @Override
+    public void addCompletedListing(@NotNull CompletedListing listing) {
+        var auc = this.plugin.getAuction();
+        if (auc != null) {
+            auc.getListings().addCompleted(listing);
+        }
+    }
+
+    @Override
+    public void setCompletedListingClaimed(@NotNull UUID id, boolean claimed) {
+        var auc = this.plugin.getAuction();
+        if (auc != null) {
+            var existing = auc.getListings().getCompletedById(id);
+            if (existing != null) {
+                existing.setClaimed(claimed);
+            }
+        }
+    }
+
+    @Override
+    public void removeCompletedListing(@NotNull UUID id) {
+        var auc = this.plugin.getAuction();
+        if (auc != null) {
+            var existing = auc.getListings().getCompletedById(id);
+            if (existing != null) auc.getListings().removeCompleted(existing);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package su.nightexpress.nexshop.sync;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import su.nightexpress.nexshop.ShopPlugin;
+import su.nightexpress.nightcore.lib.redis.jedis.Jedis;
+import su.nightexpress.nightcore.lib.redis.jedis.JedisPool;
+import su.nightexpress.nightcore.lib.redis.jedis.params.SetParams;
+
+import java.util.List;
+
+/**
+ * Elects a single node to do work that must not run on every server, such as random price rolls and shop rotations.
+ * <p>
+ * Leader holds a Redis key (SET NX PX) with its node id and extends it several times per lease period.
+ * Other nodes try to take the key much more often, so when the leader stops, another one takes over
+ * within a small fraction of the lease period after it expires.
+ * Leadership is considered lost locally as soon as the lease could have expired, even if Redis is not reachable to tell it,
+ * so two nodes never act as leaders at the same time.
+ */
+public class RedisLeaderLease {
+
+    private static final String RENEW_SCRIPT   = "if redis.call('GET', KEYS[1]) == ARGV[1] then return redis.call('PEXPIRE', KEYS[1], ARGV[2]) else return 0 end";
+    private static final String RELEASE_SCRIPT = "if redis.call('GET', KEYS[1]) == ARGV[1] then return redis.call('DEL', KEYS[1]) else return 0 end";
+
+    private static final int RENEWS_PER_LEASE   = 4;
+    private static final int ATTEMPTS_PER_LEASE = 20;
+
+    private final ShopPlugin plugin;
+    private final JedisPool  pool;
+    private final String     key;
+    private final String     nodeId;
+    private final long       leaseMillis;
+
+    private volatile long   leaderUntil;
+    private volatile long   renewedAt;
+    private volatile String leaderId;
+
+    public RedisLeaderLease(@NotNull ShopPlugin plugin, @NotNull JedisPool pool, @NotNull String key, @NotNull String nodeId, long leaseMillis) {
+        this.plugin = plugin;
+        this.pool = pool;
+        this.key = key;
+        this.nodeId = nodeId;
+        this.leaseMillis = Math.max(1000L, leaseMillis);
+    }
+
+    public void start() {
+        long interval = Math.max(1L, this.leaseMillis / ATTEMPTS_PER_LEASE / 50L); // In ticks.
+        this.plugin.getFoliaScheduler().runTimerAsync(this::tick, 0L, interval);
+    }
+
+    public void release() {
+        if (!this.isLeader()) return;
+
+        this.leaderUntil = 0L;
+        try (Jedis jedis = this.pool.getResource()) {
+            jedis.eval(RELEASE_SCRIPT, List.of(this.key), List.of(this.nodeId));
+        }
+        catch (Exception ignored) {}
+    }
+
+    public boolean isLeader() {
+        return System.currentTimeMillis() < this.leaderUntil;
+    }
+
+    /**
+     * @return Id of the current leader node as of the last check, null if unknown.
+     */
+    @Nullable
+    public String getLeaderId() {
+        return this.isLeader() ? this.nodeId : this.leaderId;
+    }
+
+    private void tick() {
+        // Lease is counted from the moment the request is sent, so it never ends later locally than in Redis.
+        long sentAt = System.currentTimeMillis();
+        boolean wasLeader = this.isLeader();
+        if (wasLeader && sentAt - this.renewedAt < this.leaseMillis / RENEWS_PER_LEASE) return; // Leader renews less often than followers try.
+
+        try (Jedis jedis = this.pool.getResource()) {
+            boolean leader;
+            if (wasLeader) {
+                Object renewed = jedis.eval(RENEW_SCRIPT, List.of(this.key), List.of(this.nodeId, String.valueOf(this.leaseMillis)));
+                leader = renewed instanceof Number number && number.longValue() == 1L;
+            }
+            else {
+                leader = "OK".equals(jedis.set(this.key, this.nodeId, SetParams.setParams().nx().px(this.leaseMillis)));
+            }
+
+            if (leader) {
+                this.leaderUntil = sentAt + this.leaseMillis;
+                this.renewedAt = sentAt;
+                this.leaderId = this.nodeId;
+            }
+            else {
+                this.leaderUntil = 0L;
+                this.leaderId = jedis.get(this.key);
+            }
+
+            if (leader != wasLeader) {
+                this.plugin.info(leader ? "This node is now the sync leader." : "This node is no longer the sync leader. Current leader: " + this.leaderId);
+                if (leader) this.plugin.getDataManager().schedulePriceUpdates(); // Float prices are skipped by followers.
+            }
+        }
+        catch (Exception exception) {
+            this.plugin.warn("Could not update sync leader lease: " + exception.getMessage());
+        }
+    }
+}
@@ -0,0 +1,265 @@
+package su.nightexpress.nexshop.sync;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import su.nightexpress.nexshop.ShopPlugin;
+import su.nightexpress.nexshop.api.shop.stock.StockValues;
+import su.nightexpress.nexshop.api.shop.type.TradeType;
+import su.nightexpress.nexshop.data.product.StockData;
+import su.nightexpress.nightcore.lib.redis.jedis.Jedis;
+import su.nightexpress.nightcore.lib.redis.jedis.JedisPool;
+import su.nightexpress.nightcore.lib.redis.jedis.exceptions.JedisNoScriptException;
+
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Keeps global stock counters in Redis, so all servers trade against the same amounts.
+ * <p>
+ * Every change is a single Lua script call, which restocks when it's time, checks and updates the counters atomically,
+ * so two servers can never sell the same units. Local stock datas are kept as a read-through near cache:
+ * they are updated with the values returned by every call and are still saved to the database as usual.
+ * Counters are initialized from the local data on the first call for a product.
+ */
+public class RedisStockAuthority {
+
+    private static final String OP_CONSUME = "consume";
+    private static final String OP_FILL    = "fill";
+    private static final String OP_RELEASE = "release";
+    private static final String OP_RESTOCK = "restock";
+    private static final String OP_READ    = "read";
+    private static final String OP_EXPIRE  = "expire";
+
+    // KEYS[1] = shop hash.
+    // ARGV: product, op, side, amount, now, full buy, full sell, next restock date, local buy, local sell, local restock, opposite side refill.
+    private static final String SCRIPT = """
+        local key, product, op = KEYS[1], ARGV[1], ARGV[2]
+        local fBuy, fSell, fRestock = product .. ':buy', product .. ':sell', product .. ':restock'
+        local now = tonumber(ARGV[5])
+        if redis.call('HEXISTS', key, fBuy) == 0 then
+          if op == 'expire' then return {1, -1, -1, 0} end
+          redis.call('HSET', key, fBuy, ARGV[9], fSell, ARGV[10], fRestock, ARGV[11])
+        end
+        local buy = tonumber(redis.call('HGET', key, fBuy))
+        local sell = tonumber(redis.call('HGET', key, fSell))
+        local restock = tonumber(redis.call('HGET', key, fRestock))
+        if op == 'expire' then
+          restock = now - 1000
+        elseif op == 'restock' or (restock > 0 and restock <= now) then
+          buy, sell, restock = tonumber(ARGV[6]), tonumber(ARGV[7]), 0
+        end
+        local ok, amount = 1, tonumber(ARGV[4])
+        if op == 'release' then
+          local refill = tonumber(ARGV[12])
+          if ARGV[3] == 'buy' then buy, sell = buy + amount, math.max(0, sell - refill) else sell, buy = sell + amount, math.max(0, buy - refill) end
+        elseif op == 'consume' or op == 'fill' then
+          local current = ARGV[3] == 'buy' and buy or sell
+          if op == 'consume' then
+            if current < amount then ok = 0 else current = current - amount end
+          else
+            current = current + amount
+          end
+          if ARGV[3] == 'buy' then buy = current else sell = current end
+          if ok == 1 and op == 'consume' then
+            if ARGV[3] == 'buy' then sell = sell + tonumber(ARGV[12]) else buy = buy + tonumber(ARGV[12]) end
+          end
+          if ok == 1 and restock == 0 then restock = tonumber(ARGV[8]) end
+        end
+        redis.call('HSET', key, fBuy, buy, fSell, sell, fRestock, restock)
+        return {ok, buy, sell, restock}
+        """;
+
+    private record PendingRelease(StockData data, StockValues values, TradeType type, int amount, int refill) {}
+
+    private final ShopPlugin            plugin;
+    private final JedisPool             pool;
+    private final Queue<PendingRelease> pendingReleases;
+
+    private volatile String scriptHash;
+
+    public RedisStockAuthority(@NotNull ShopPlugin plugin, @NotNull JedisPool pool) {
+        this.plugin = plugin;
+        this.pool = pool;
+        this.pendingReleases = new ConcurrentLinkedQueue<>();
+    }
+
+    @NotNull
+    static String stockKey(@NotNull String shopId) {
+        return "exshop:stockauth:" + shopId.toLowerCase();
+    }
+
+    /**
+     * Takes units from the global stock if there are enough of them.
+     * @return False if stock is not enough or Redis is not available, so the trade must be denied.
+     */
+    public boolean consume(@NotNull StockData data, @NotNull StockValues values, @NotNull TradeType type, int amount) {
+        return this.consume(data, values, type, amount, 0);
+    }
+
+    /**
+     * Takes units from the global stock and adds the refill amount to the opposite side in the same call, as trades do.
+     * @see #consume(StockData, StockValues, TradeType, int)
+     */
+    public boolean consume(@NotNull StockData data, @NotNull StockValues values, @NotNull TradeType type, int amount, int refill) {
+        return this.call(data, values, OP_CONSUME, type, amount, refill);
+    }
+
+    /**
+     * Gives back units taken by {@link #consume(StockData, StockValues, TradeType, int, int)} for a trade that did not happen,
+     * and takes the refill back from the opposite side.
+     * If Redis is not available, the release is applied to the local data and sent again with the next successful call,
+     * otherwise the units would be lost from the global stock.
+     */
+    public void release(@NotNull StockData data, @NotNull StockValues values, @NotNull TradeType type, int amount, int refill) {
+        if (this.call(data, values, OP_RELEASE, type, amount, refill)) return;
+
+        TradeType opposite = type.getOpposite();
+        data.update(snapshot -> snapshot
+            .withStock(type, snapshot.countStock(type) + amount)
+            .withStock(opposite, Math.max(0, snapshot.countStock(opposite) - refill)));
+        data.setSaveRequired(true);
+        this.pendingReleases.add(new PendingRelease(data, values, type, amount, refill));
+    }
+
+    /**
+     * Adds units to the global stock. Applied to the local data only if Redis is not available.
+     */
+    public void fill(@NotNull StockData data, @NotNull StockValues values, @NotNull TradeType type, int amount) {
+        if (this.call(data, values, OP_FILL, type, amount, 0)) return;
+
+        data.fillStock(type, amount);
+        data.startRestockIfAbsent(values);
+        data.setSaveRequired(true);
+    }
+
+    /**
+     * @param force Restock even if it's not the time yet, otherwise only refreshes the local data.
+     */
+    public void restock(@NotNull StockData data, @NotNull StockValues values, boolean force) {
+        if (this.call(data, values, force ? OP_RESTOCK : OP_READ, TradeType.BUY, 0, 0)) return;
+
+        if (force || data.isRestockTime()) {
+            data.restock(values);
+            data.setSaveRequired(true);
+        }
+    }
+
+    /**
+     * Marks stock of the product as ready for restock, see {@link StockData#setExpired()}.
+     */
+    public void expire(@NotNull String shopId, @NotNull String productId) {
+        this.plugin.getFoliaScheduler().runAsync(() -> {
+            try (Jedis jedis = this.pool.getResource()) {
+                this.eval(jedis, shopId, List.of(productId.toLowerCase(), OP_EXPIRE, "buy", "0", String.valueOf(System.currentTimeMillis()), "0", "0", "0", "0", "0", "0", "0"));
+            }
+            catch (Exception exception) {
+                this.plugin.warn("Could not expire Redis stock of '" + shopId + "/" + productId + "': " + exception.getMessage());
+            }
+        });
+    }
+
+    public void delete(@NotNull String shopId, @NotNull String productId) {
+        String product = productId.toLowerCase();
+        this.plugin.getFoliaScheduler().runAsync(() -> {
+            try (Jedis jedis = this.pool.getResource()) {
+                jedis.hdel(stockKey(shopId), product + ":buy", product + ":sell", product + ":restock");
+            }
+            catch (Exception exception) {
+                this.plugin.warn("Could not delete Redis stock of '" + shopId + "/" + productId + "': " + exception.getMessage());
+            }
+        });
+    }
+
+    public void delete(@NotNull String shopId) {
+        this.plugin.getFoliaScheduler().runAsync(() -> {
+            try (Jedis jedis = this.pool.getResource()) {
+                jedis.del(stockKey(shopId));
+            }
+            catch (Exception exception) {
+                this.plugin.warn("Could not delete Redis stock of '" + shopId + "': " + exception.getMessage());
+            }
+        });
+    }
+
+    private boolean call(@NotNull StockData data, @NotNull StockValues values, @NotNull String op, @NotNull TradeType type, int amount, int refill) {
+        Boolean ok = this.callOnce(data, values, op, type, amount, refill);
+        if (ok == null) return false;
+
+        this.retryReleases();
+        return ok;
+    }
+
+    // Redis is reachable again, send releases that failed before. Stops at the first failure, the rest is kept for the next call.
+    private void retryReleases() {
+        PendingRelease release;
+        while ((release = this.pendingReleases.poll()) != null) {
+            if (this.callOnce(release.data(), release.values(), OP_RELEASE, release.type(), release.amount(), release.refill()) == null) {
+                this.pendingReleases.add(release);
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return Script result, or null if Redis is not available.
+     */
+    @Nullable
+    private Boolean callOnce(@NotNull StockData data, @NotNull StockValues values, @NotNull String op, @NotNull TradeType type, int amount, int refill) {
+        StockData.Snapshot local = data.getSnapshot();
+        List<String> args = List.of(
+            data.getProductId().toLowerCase(),
+            op,
+            type == TradeType.BUY ? "buy" : "sell",
+            String.valueOf(amount),
+            String.valueOf(System.currentTimeMillis()),
+            String.valueOf(values.getBuyAmount()),
+            String.valueOf(values.getSellAmount()),
+            String.valueOf(StockData.generateRestockDate(values)),
+            String.valueOf(local.buyStock()),
+            String.valueOf(local.sellStock()),
+            String.valueOf(local.restockDate()),
+            String.valueOf(refill)
+        );
+
+        List<?> result;
+        try (Jedis jedis = this.pool.getResource()) {
+            result = (List<?>) this.eval(jedis, data.getShopId(), args);
+        }
+        catch (Exception exception) {
+            this.plugin.warn("Redis stock call failed for '" + data.getShopId() + "/" + data.getProductId() + "': " + exception.getMessage());
+            return null;
+        }
+
+        int buyStock = ((Number) result.get(1)).intValue();
+        int sellStock = ((Number) result.get(2)).intValue();
+        long restockDate = ((Number) result.get(3)).longValue();
+
+        // Near cache follows the authoritative values, changed data is saved to the database as usual.
+        long version = data.getVersion();
+        data.update(snapshot -> {
+            if (snapshot.buyStock() == buyStock && snapshot.sellStock() == sellStock && snapshot.restockDate() == restockDate) return snapshot;
+            return snapshot.withValues(new StockData.Snapshot(0L, buyStock, sellStock, restockDate));
+        });
+        if (data.getVersion() != version) data.setSaveRequired(true);
+
+        return ((Number) result.get(0)).intValue() == 1;
+    }
+
+    private Object eval(@NotNull Jedis jedis, @NotNull String shopId, @NotNull List<String> args) {
+        List<String> keys = List.of(stockKey(shopId));
+
+        String hash = this.scriptHash;
+        if (hash != null) {
+            try {
+                return jedis.evalsha(hash, keys, args);
+            }
+            catch (JedisNoScriptException ignored) {
+                // Script cache was flushed, load it again.
+            }
+        }
+
+        this.scriptHash = jedis.scriptLoad(SCRIPT);
+        return jedis.evalsha(this.scriptHash, keys, args);
+    }
+}
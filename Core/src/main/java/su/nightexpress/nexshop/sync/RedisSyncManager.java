@@ -4,10 +4,8 @@ import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
-import com.google.gson.reflect.TypeToken;
 import org.jetbrains.annotations.NotNull;
-import su.nightexpress.economybridge.EconomyBridge;
-import su.nightexpress.economybridge.api.Currency;
+import org.jetbrains.annotations.Nullable;
 import su.nightexpress.nexshop.ShopPlugin;
 import su.nightexpress.nexshop.auction.data.AuctionDatabase;
 import su.nightexpress.nexshop.auction.listing.ActiveListing;
@@ -17,18 +15,27 @@ import su.nightexpress.nexshop.data.product.PriceData;
 import su.nightexpress.nexshop.data.product.StockData;
 import su.nightexpress.nexshop.data.shop.RotationData;
 import su.nightexpress.nexshop.shop.chest.impl.ChestBank;
+import su.nightexpress.nexshop.sync.codec.*;
+import su.nightexpress.nexshop.sync.transport.RedisPubSubTransport;
+import su.nightexpress.nexshop.sync.transport.RedisStreamTransport;
+import su.nightexpress.nexshop.sync.transport.RedisSyncTransport;
+import su.nightexpress.nexshop.sync.transport.SyncTransport;
+import su.nightexpress.nexshop.sync.transport.SyncTransportType;
 import su.nightexpress.nexshop.api.shop.product.ProductType;
 import su.nightexpress.nexshop.api.shop.product.typing.PhysicalTyping;
 import su.nightexpress.nightcore.lib.redis.jedis.DefaultJedisClientConfig;
 import su.nightexpress.nightcore.lib.redis.jedis.HostAndPort;
 import su.nightexpress.nightcore.lib.redis.jedis.Jedis;
 import su.nightexpress.nightcore.lib.redis.jedis.JedisPool;
-import su.nightexpress.nightcore.lib.redis.jedis.JedisPubSub;
+import su.nightexpress.nightcore.lib.redis.jedis.Pipeline;
+import su.nightexpress.nightcore.lib.redis.jedis.params.ScanParams;
+import su.nightexpress.nightcore.lib.redis.jedis.resps.ScanResult;
 import su.nightexpress.nightcore.lib.commons.pool2.impl.GenericObjectPoolConfig;
 
-import java.lang.reflect.Type;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 /**
  * Redis synchronization manager for ExcellentShop
@@ -36,28 +43,50 @@ import java.util.concurrent.ConcurrentHashMap;
  */
 public class RedisSyncManager {
 
-    private final ShopPlugin plugin;
+    static final String BATCH_SUFFIX = "_BATCH";
+
+    private static final long PEER_TIMEOUT = 90_000L; // 3x heartbeat interval.
+
+    private final ShopPlugin    plugin;
+    private final SyncTransport customTransport;
     private JedisPool pool;
-    private JedisPubSub subscriber;
-    private Thread subscriberThread;
 
     private final Gson gson;
     private final String nodeId;
+    private final boolean persistentNodeId;
+    private final HybridClock clock;
     private String channel;
+    private SyncCodecs codecs;
+    private SyncMessageHandler handler;
+    private SyncTransport transport;
+    private SyncPublisher publisher;
+    private RedisStockAuthority stockAuthority;
+    private RedisLeaderLease leaderLease;
     private volatile boolean active;
 
-    // Cross-server player names cache (optional for UX)
-    private final Set<String> crossServerPlayerNames = ConcurrentHashMap.newKeySet();
+    // Cache entries known to be absent ('key/field'), mapped to the time until they are not looked up again.
+    private final Map<String, Long> cacheMisses = new ConcurrentHashMap<>();
 
     public RedisSyncManager(@NotNull ShopPlugin plugin) {
+        this(plugin, null);
+    }
+
+    /**
+     * @param transport Transport to use instead of the configured Redis one, such as a {@link su.nightexpress.nexshop.sync.transport.LoopbackSyncTransport}.
+     * Redis is still used for the cache, stock authority and leader election.
+     */
+    public RedisSyncManager(@NotNull ShopPlugin plugin, @Nullable SyncTransport transport) {
         this.plugin = plugin;
-        this.gson = new GsonBuilder().setPrettyPrinting().create();
+        this.customTransport = transport;
+        this.gson = new GsonBuilder().create();
 
         String nid = Config.REDIS_NODE_ID.get();
+        this.persistentNodeId = nid != null && !nid.isBlank();
         if (nid == null || nid.isBlank()) {
             nid = UUID.randomUUID().toString();
         }
         this.nodeId = nid;
+        this.clock = new HybridClock();
     }
 
     public void setup() {
@@ -68,6 +97,8 @@ public class RedisSyncManager {
         String password = Config.REDIS_PASSWORD.get();
         boolean ssl = Config.REDIS_SSL.get();
         this.channel = Config.REDIS_CHANNEL.get();
+        this.codecs = new SyncCodecs(new JsonSyncCodec(this.gson), new BinarySyncCodec(Config.REDIS_CODEC_COMPRESS_THRESHOLD.get()), Config.REDIS_CODEC_MODE.get(), PEER_TIMEOUT);
+        this.handler = new SyncMessageHandler(this.nodeId, new PluginSyncTarget(this.plugin, this), this.plugin::runNextTick, this.codecs, this.clock);
 
         try {
             DefaultJedisClientConfig clientConfig = DefaultJedisClientConfig.builder()
@@ -87,10 +118,28 @@ public class RedisSyncManager {
             poolConfig.setTimeBetweenEvictionRunsMillis(30000);
 
             this.pool = new JedisPool(poolConfig, new HostAndPort(host, port), clientConfig);
+            if (Config.REDIS_STOCK_AUTHORITATIVE.get()) {
+                this.stockAuthority = new RedisStockAuthority(this.plugin, this.pool);
+            }
+            if (Config.REDIS_LEADER_ENABLED.get()) {
+                this.leaderLease = new RedisLeaderLease(this.plugin, this.pool, "exshop:leader:" + this.channel, this.nodeId, Config.REDIS_LEADER_LEASE_SECONDS.get() * 1000L);
+                this.leaderLease.start();
+            }
+            this.transport = this.customTransport != null ? this.customTransport : this.createTransport();
+            this.publisher = new SyncPublisher(this.plugin, this.transport,
+                Config.REDIS_PUBLISHER_QUEUE_CAPACITY.get(),
+                Config.REDIS_PUBLISHER_OVERFLOW_POLICY.get(),
+                Config.REDIS_PUBLISHER_FAILURE_THRESHOLD.get(),
+                Config.REDIS_PUBLISHER_OPEN_SECONDS.get() * 1000L
+            );
+            this.publisher.start();
             this.active = true;
-            this.startSubscriber();
+            this.transport.start(this.handler::handle);
+            this.startTimers();
+            this.cleanupLegacyCache();
 
-            this.plugin.info("Redis sync enabled. Channel: " + this.channel + " | NodeId: " + this.nodeId);
+            String transportName = this.customTransport != null ? this.customTransport.getClass().getSimpleName() : Config.REDIS_TRANSPORT.get().name();
+            this.plugin.info("Redis sync enabled. Channel: " + this.channel + " | Transport: " + transportName + " | NodeId: " + this.nodeId);
         }
         catch (Exception e) {
             this.plugin.error("Failed to initialize Redis: " + e.getMessage());
@@ -100,12 +149,11 @@ public class RedisSyncManager {
 
     public void shutdown() {
         this.active = false;
+        if (this.publisher != null) this.publisher.shutdown();
         try {
-            if (this.subscriber != null) this.subscriber.unsubscribe();
-        } catch (Exception ignored) {}
-        try {
-            if (this.subscriberThread != null) this.subscriberThread.interrupt();
+            if (this.transport != null) this.transport.shutdown();
         } catch (Exception ignored) {}
+        if (this.leaderLease != null) this.leaderLease.release();
         try {
             if (this.pool != null) this.pool.close();
         } catch (Exception ignored) {}
@@ -115,6 +163,35 @@ public class RedisSyncManager {
         return this.pool != null && this.active;
     }
 
+    /**
+     * @return Whether this node should roll random prices and rotate shops. Always true when leader election is disabled or Redis is not available.
+     * Other nodes get the results by sync.
+     */
+    public boolean isLeader() {
+        return !isActive() || this.leaderLease == null || this.leaderLease.isLeader();
+    }
+
+    @NotNull
+    public Optional<RedisLeaderLease> getLeaderLease() {
+        return isActive() ? Optional.ofNullable(this.leaderLease) : Optional.empty();
+    }
+
+    /**
+     * @return Queue, throughput and health stats of the publisher, empty stats if Redis is not available.
+     */
+    @NotNull
+    public SyncPublisher.Stats getPublisherStats() {
+        return isActive() && this.publisher != null ? this.publisher.getStats() : SyncPublisher.Stats.EMPTY;
+    }
+
+    /**
+     * @return Redis stock counters if authoritative stock mode is enabled.
+     */
+    @NotNull
+    public Optional<RedisStockAuthority> getStockAuthority() {
+        return isActive() ? Optional.ofNullable(this.stockAuthority) : Optional.empty();
+    }
+
     private boolean isCacheEnabled() {
         return isActive() && Config.REDIS_CACHE_ENABLED.get();
     }
@@ -122,92 +199,196 @@ public class RedisSyncManager {
     // =========================
     // Key helpers
     // =========================
-    private String priceKey(@NotNull String shopId, @NotNull String productId) {
-        return "exshop:price:" + shopId.toLowerCase() + ":" + productId.toLowerCase();
+    // Cache entries are stored in per-shop hashes, so shop eviction is a single DEL and product eviction is HDEL.
+    // Hash TTL is refreshed on every write, per-entry TTL is checked on read using the 'cachedUntil' value.
+    String priceKey(@NotNull String shopId) {
+        return "exshop:price:" + shopId.toLowerCase();
+    }
+
+    String priceField(@NotNull String productId) {
+        return productId.toLowerCase();
+    }
+
+    String stockKey(@NotNull String shopId) {
+        return "exshop:stock:" + shopId.toLowerCase();
     }
 
-    private String stockKey(@NotNull String shopId, @NotNull String productId, @NotNull String holder) {
-        return "exshop:stock:" + shopId.toLowerCase() + ":" + productId.toLowerCase() + ":" + holder.toLowerCase();
+    String stockField(@NotNull String productId, @NotNull String holder) {
+        return productId.toLowerCase() + ":" + holder.toLowerCase();
     }
 
+    @NotNull
+    private SyncBatch.CacheWrite prepareCacheEntry(@NotNull String key, @NotNull String field, @NotNull JsonObject value, int ttl) {
+        value.addProperty("cachedUntil", ttl > 0 ? System.currentTimeMillis() + ttl * 1000L : 0L);
+        this.cacheMisses.remove(key + "/" + field);
+        return new SyncBatch.CacheWrite(key, field, this.gson.toJson(value), ttl);
+    }
+
+    private void writeCacheEntry(@NotNull String key, @NotNull String field, @NotNull JsonObject value, int ttl) {
+        SyncBatch.CacheWrite write = this.prepareCacheEntry(key, field, value, ttl);
+
+        this.publisher.execute("cache:" + key + "/" + field, 0, () -> {
+            try (Jedis jedis = this.pool.getResource()) {
+                jedis.hset(write.key(), write.field(), write.value());
+                if (ttl > 0) jedis.expire(write.key(), ttl); else jedis.persist(write.key());
+            }
+        });
+    }
+
+    private <T> void fetchCacheEntry(@NotNull String key, @NotNull String field, @NotNull Function<JsonObject, T> reader, @NotNull Consumer<Optional<T>> callback) {
+        String entryKey = key + "/" + field;
+        Long missUntil = this.cacheMisses.get(entryKey);
+        // Lookups are not worth a wait for the connection timeout while publishing to Redis fails.
+        if (!isCacheEnabled() || !this.publisher.isHealthy() || (missUntil != null && missUntil > System.currentTimeMillis())) {
+            callback.accept(Optional.empty());
+            return;
+        }
+
+        this.plugin.getFoliaScheduler().runAsync(() -> {
+            T data = null;
+            try (Jedis jedis = this.pool.getResource()) {
+                JsonObject value = this.readCacheEntry(jedis, key, field);
+                if (value != null) data = reader.apply(value);
+            }
+            catch (Exception e) {
+                this.plugin.warn("Redis cache read failed: " + e.getMessage());
+            }
+
+            // Failed reads are remembered as misses too, so an unavailable Redis is not asked again on every lookup.
+            if (data == null) {
+                this.cacheMisses.put(entryKey, System.currentTimeMillis() + Math.max(0, Config.REDIS_CACHE_MISS_TTL_SECONDS.get()) * 1000L);
+            }
+
+            Optional<T> result = Optional.ofNullable(data);
+            this.plugin.runNextTick(() -> callback.accept(result));
+        });
+    }
+
+    private void purgeCacheMisses() {
+        long now = System.currentTimeMillis();
+        this.cacheMisses.values().removeIf(until -> until <= now);
+    }
+
+    private JsonObject readCacheEntry(@NotNull Jedis jedis, @NotNull String key, @NotNull String field) {
+        String raw = jedis.hget(key, field);
+        if (raw == null) return null;
+
+        JsonObject value = gson.fromJson(raw, JsonObject.class);
+        if (value == null) return null;
+
+        long cachedUntil = value.has("cachedUntil") ? value.get("cachedUntil").getAsLong() : 0L;
+        if (cachedUntil > 0L && cachedUntil < System.currentTimeMillis()) return null;
+
+        return value;
+    }
+
+    private void deleteAsync(@NotNull String... keys) {
+        if (!isCacheEnabled()) return;
+        this.publisher.execute(null, 0, () -> {
+            try (Jedis jedis = this.pool.getResource()) {
+                jedis.del(keys);
+            }
+        });
+    }
+
+    private void deleteFieldsAsync(@NotNull String key, @NotNull String... fields) {
+        if (!isCacheEnabled()) return;
+        this.publisher.execute(null, 0, () -> {
+            try (Jedis jedis = this.pool.getResource()) {
+                jedis.hdel(key, fields);
+            }
+        });
+    }
+
+    /**
+     * Removes hash fields matching the pattern walking the hash with HSCAN cursor, so Redis is never blocked by a single call.
+     */
+    private void scanAndDeleteFields(@NotNull String key, @NotNull String pattern) {
+        if (!isCacheEnabled()) return;
+        int count = Math.max(1, Config.REDIS_CACHE_SCAN_COUNT.get());
+        this.publisher.execute(null, 0, () -> {
+            try (Jedis jedis = this.pool.getResource()) {
+                this.scanAndDeleteFields(jedis, key, pattern, count);
+            }
+        });
+    }
+
+    private void scanAndDeleteFields(@NotNull Jedis jedis, @NotNull String key, @NotNull String pattern, int count) {
+        ScanParams params = new ScanParams().match(pattern).count(count);
+        String cursor = ScanParams.SCAN_POINTER_START;
+        do {
+            ScanResult<Map.Entry<String, String>> result = jedis.hscan(key, cursor, params);
+            List<String> fields = result.getResult().stream().map(Map.Entry::getKey).toList();
+            if (!fields.isEmpty()) jedis.hdel(key, fields.toArray(new String[0]));
+            cursor = result.getCursor();
+        }
+        while (!ScanParams.SCAN_POINTER_START.equals(cursor));
+    }
+
+    /**
+     * Removes keys matching the pattern walking the keyspace with SCAN cursor instead of blocking KEYS.
+     */
     private void scanAndDelete(@NotNull String pattern) {
         if (!isCacheEnabled()) return;
+        int count = Math.max(1, Config.REDIS_CACHE_SCAN_COUNT.get());
         this.plugin.getFoliaScheduler().runAsync(() -> {
             try (Jedis jedis = this.pool.getResource()) {
-                java.util.Set<String> keys = jedis.keys(pattern);
-                if (keys != null && !keys.isEmpty()) {
-                    jedis.del(keys.toArray(new String[0]));
+                ScanParams params = new ScanParams().match(pattern).count(count);
+                String cursor = ScanParams.SCAN_POINTER_START;
+                do {
+                    ScanResult<String> result = jedis.scan(cursor, params);
+                    List<String> keys = result.getResult();
+                    if (!keys.isEmpty()) jedis.unlink(keys.toArray(new String[0]));
+                    cursor = result.getCursor();
                 }
+                while (!ScanParams.SCAN_POINTER_START.equals(cursor));
             } catch (Exception e) {
                 this.plugin.warn("Redis scanAndDelete failed: " + e.getMessage());
             }
         });
     }
 
+    /**
+     * Removes per-product string keys written by older versions, which are replaced by per-shop hashes.
+     * Shop ids have no ':', so the patterns never match the new hash keys.
+     */
+    private void cleanupLegacyCache() {
+        scanAndDelete("exshop:price:*:*");
+        scanAndDelete("exshop:stock:*:*");
+    }
+
     // =========================
     // Cache API - Price
     // =========================
     public void cachePriceData(@NotNull PriceData data) {
         if (!isCacheEnabled()) return;
-        String key = priceKey(data.getShopId(), data.getProductId());
         int ttl = Math.max(0, Config.REDIS_CACHE_TTL_PRICE_SECONDS.get());
-        JsonObject d = new JsonObject();
-        d.addProperty("shopId", data.getShopId());
-        d.addProperty("productId", data.getProductId());
-        d.addProperty("latestBuyPrice", data.getLatestBuyPrice());
-        d.addProperty("latestSellPrice", data.getLatestSellPrice());
-        d.addProperty("latestUpdateDate", data.getLatestUpdateDate());
-        d.addProperty("expireDate", data.getExpireDate());
-        d.addProperty("purchases", data.getPurchases());
-        d.addProperty("sales", data.getSales());
-        String value = this.gson.toJson(d);
+        this.writeCacheEntry(priceKey(data.getShopId()), priceField(data.getProductId()), this.encodePriceData(data), ttl);
+    }
 
-        this.plugin.getFoliaScheduler().runAsync(() -> {
-            try (Jedis jedis = this.pool.getResource()) {
-                if (ttl > 0) jedis.setex(key, ttl, value); else jedis.set(key, value);
-            } catch (Exception e) {
-                this.plugin.warn("Redis cachePriceData failed: " + e.getMessage());
-            }
-        });
+    void prepareCachePriceData(@NotNull PriceData data, @NotNull JsonObject encoded, @NotNull Consumer<SyncBatch.CacheWrite> consumer) {
+        if (!isCacheEnabled()) return;
+        int ttl = Math.max(0, Config.REDIS_CACHE_TTL_PRICE_SECONDS.get());
+        consumer.accept(this.prepareCacheEntry(priceKey(data.getShopId()), priceField(data.getProductId()), encoded, ttl));
     }
 
-    @NotNull
-    public java.util.Optional<PriceData> getCachedPriceData(@NotNull String shopId, @NotNull String productId) {
-        if (!isCacheEnabled()) return java.util.Optional.empty();
-        String key = priceKey(shopId, productId);
-        try (Jedis jedis = this.pool.getResource()) {
-            String raw = jedis.get(key);
-            if (raw == null) return java.util.Optional.empty();
-            JsonObject d = gson.fromJson(raw, JsonObject.class);
-            if (d == null) return java.util.Optional.empty();
-            PriceData data = new PriceData(
-                d.get("shopId").getAsString(),
-                d.get("productId").getAsString(),
-                d.get("latestBuyPrice").getAsDouble(),
-                d.get("latestSellPrice").getAsDouble(),
-                d.get("latestUpdateDate").getAsLong(),
-                d.get("expireDate").getAsLong(),
-                d.get("purchases").getAsInt(),
-                d.get("sales").getAsInt()
-            );
-            return java.util.Optional.of(data);
-        } catch (Exception e) {
-            this.plugin.warn("Redis getCachedPriceData failed: " + e.getMessage());
-            return java.util.Optional.empty();
-        }
+    /**
+     * Looks up cached price data in background, so the calling thread is never blocked by Redis.
+     * @param callback Called on the server thread with the cached data, if there is any.
+     * Known misses are answered right away in the calling thread.
+     */
+    public void fetchCachedPriceData(@NotNull String shopId, @NotNull String productId, @NotNull Consumer<Optional<PriceData>> callback) {
+        this.fetchCacheEntry(priceKey(shopId), priceField(productId), this.handler::readPriceData, callback);
     }
 
     public void evictPriceDataByShop(@NotNull String shopId) {
         if (!isCacheEnabled()) return;
-        scanAndDelete("exshop:price:" + shopId.toLowerCase() + ":*");
+        deleteAsync(priceKey(shopId));
     }
 
     public void evictPriceDataByProduct(@NotNull String shopId, @NotNull String productId) {
         if (!isCacheEnabled()) return;
-        String key = priceKey(shopId, productId);
-        this.plugin.getFoliaScheduler().runAsync(() -> {
-            try (Jedis jedis = this.pool.getResource()) { jedis.del(key); } catch (Exception ignored) {}
-        });
+        deleteFieldsAsync(priceKey(shopId), priceField(productId));
     }
 
     // =========================
@@ -215,79 +396,128 @@ public class RedisSyncManager {
     // =========================
     public void cacheStockData(@NotNull StockData data) {
         if (!isCacheEnabled()) return;
-        String key = stockKey(data.getShopId(), data.getProductId(), data.getHolder());
         int ttl = Math.max(0, Config.REDIS_CACHE_TTL_STOCK_SECONDS.get());
-        JsonObject d = new JsonObject();
-        d.addProperty("shopId", data.getShopId());
-        d.addProperty("productId", data.getProductId());
-        d.addProperty("holder", data.getHolder());
-        d.addProperty("buyStock", data.getBuyStock());
-        d.addProperty("sellStock", data.getSellStock());
-        d.addProperty("restockDate", data.getRestockDate());
-        String value = this.gson.toJson(d);
+        this.writeCacheEntry(stockKey(data.getShopId()), stockField(data.getProductId(), data.getHolder()), this.encodeStockData(data), ttl);
+    }
 
-        this.plugin.getFoliaScheduler().runAsync(() -> {
-            try (Jedis jedis = this.pool.getResource()) {
-                if (ttl > 0) jedis.setex(key, ttl, value); else jedis.set(key, value);
-            } catch (Exception e) {
-                this.plugin.warn("Redis cacheStockData failed: " + e.getMessage());
-            }
-        });
+    void prepareCacheStockData(@NotNull StockData data, @NotNull JsonObject encoded, @NotNull Consumer<SyncBatch.CacheWrite> consumer) {
+        if (!isCacheEnabled()) return;
+        int ttl = Math.max(0, Config.REDIS_CACHE_TTL_STOCK_SECONDS.get());
+        consumer.accept(this.prepareCacheEntry(stockKey(data.getShopId()), stockField(data.getProductId(), data.getHolder()), encoded, ttl));
     }
 
-    @NotNull
-    public java.util.Optional<StockData> getCachedStockData(@NotNull String shopId, @NotNull String productId, @NotNull String holder) {
-        if (!isCacheEnabled()) return java.util.Optional.empty();
-        String key = stockKey(shopId, productId, holder);
-        try (Jedis jedis = this.pool.getResource()) {
-            String raw = jedis.get(key);
-            if (raw == null) return java.util.Optional.empty();
-            JsonObject d = gson.fromJson(raw, JsonObject.class);
-            if (d == null) return java.util.Optional.empty();
-            StockData data = new StockData(
-                d.get("shopId").getAsString(),
-                d.get("productId").getAsString(),
-                d.get("holder").getAsString(),
-                d.get("buyStock").getAsInt(),
-                d.get("sellStock").getAsInt(),
-                d.get("restockDate").getAsLong()
-            );
-            return java.util.Optional.of(data);
-        } catch (Exception e) {
-            this.plugin.warn("Redis getCachedStockData failed: " + e.getMessage());
-            return java.util.Optional.empty();
-        }
+    /**
+     * @see #fetchCachedPriceData(String, String, Consumer)
+     */
+    public void fetchCachedStockData(@NotNull String shopId, @NotNull String productId, @NotNull String holder, @NotNull Consumer<Optional<StockData>> callback) {
+        this.fetchCacheEntry(stockKey(shopId), stockField(productId, holder), this.handler::readStockData, callback);
     }
 
     public void evictStockDataByShop(@NotNull String shopId) {
         if (!isCacheEnabled()) return;
-        scanAndDelete("exshop:stock:" + shopId.toLowerCase() + ":*");
+        deleteAsync(stockKey(shopId));
     }
 
     public void evictStockDataByProduct(@NotNull String shopId, @NotNull String productId) {
         if (!isCacheEnabled()) return;
-        scanAndDelete("exshop:stock:" + shopId.toLowerCase() + ":" + productId.toLowerCase() + ":*");
+        scanAndDeleteFields(stockKey(shopId), stockField(productId, "*"));
     }
 
     @NotNull
     public String getNodeId() { return this.nodeId; }
 
+    /**
+     * @return New version for a local change of a synced record.
+     */
+    @NotNull
+    public SyncStamp nextStamp() {
+        return new SyncStamp(this.clock.tick(), this.nodeId);
+    }
+
+    /**
+     * @return Amount of received upserts applied since startup.
+     */
+    public long getAppliedUpserts() {
+        return this.handler == null ? 0L : this.handler.getAppliedUpserts();
+    }
+
+    /**
+     * @return Amount of received upserts dropped since startup, because local data was already newer.
+     */
+    public long getDroppedUpserts() {
+        return this.handler == null ? 0L : this.handler.getDroppedUpserts();
+    }
+
     /* =========================
        Publisher API
        ========================= */
 
+    /**
+     * @return New buffer to collect price, stock and rotation changes of a flush, sent with {@link #submit(SyncBatch)}.
+     */
+    @NotNull
+    public SyncBatch newBatch() {
+        return new SyncBatch(this);
+    }
+
+    /**
+     * Sends all batch messages and cache changes over a single pipelined connection.
+     */
+    public void submit(@NotNull SyncBatch batch) {
+        if (!isActive() || batch.isEmpty()) return;
+
+        boolean cache = isCacheEnabled();
+        int maxSize = Math.max(1024, Config.REDIS_PUBLISH_MAX_MESSAGE_SIZE.get());
+        int scanCount = Math.max(1, Config.REDIS_CACHE_SCAN_COUNT.get());
+        List<byte[]> messages = batch.buildMessages(this::encodeMessage, maxSize);
+
+        this.publisher.execute(null, messages.size(), () -> {
+            try (Jedis jedis = this.pool.getResource()) {
+                // Redis transports send messages in the same round trip as cache writes, others right after them.
+                RedisSyncTransport redisTransport = this.transport instanceof RedisSyncTransport redis ? redis : null;
+                Pipeline pipeline = jedis.pipelined();
+                if (cache) {
+                    if (!batch.getEvictKeys().isEmpty()) pipeline.del(batch.getEvictKeys().toArray(new String[0]));
+                    batch.getEvictFields().forEach((key, fields) -> pipeline.hdel(key, fields.toArray(new String[0])));
+
+                    Map<String, Integer> ttls = new HashMap<>();
+                    batch.getCacheWrites().forEach(write -> {
+                        pipeline.hset(write.key(), write.field(), write.value());
+                        ttls.put(write.key(), write.ttl());
+                    });
+                    ttls.forEach((key, ttl) -> {
+                        if (ttl > 0) pipeline.expire(key, ttl); else pipeline.persist(key);
+                    });
+                }
+                if (redisTransport != null) messages.forEach(message -> redisTransport.send(pipeline, message));
+                pipeline.sync();
+                if (redisTransport == null) this.transport.send(messages);
+
+                if (cache) {
+                    batch.getEvictPatterns().forEach((key, patterns) -> patterns.forEach(pattern -> this.scanAndDeleteFields(jedis, key, pattern, scanCount)));
+                }
+            }
+        });
+    }
+
+    @NotNull
+    JsonObject encodePriceData(@NotNull PriceData data) {
+        return this.handler.encodePriceData(data);
+    }
+
+    @NotNull
+    JsonObject encodeStockData(@NotNull StockData data) {
+        return this.handler.encodeStockData(data);
+    }
+
+    @NotNull
+    JsonObject encodeRotationData(@NotNull RotationData data) {
+        return this.handler.encodeRotationData(data);
+    }
+
     public void publishPriceData(@NotNull PriceData data) {
         if (!isActive()) return;
-        JsonObject d = new JsonObject();
-        d.addProperty("shopId", data.getShopId());
-        d.addProperty("productId", data.getProductId());
-        d.addProperty("latestBuyPrice", data.getLatestBuyPrice());
-        d.addProperty("latestSellPrice", data.getLatestSellPrice());
-        d.addProperty("latestUpdateDate", data.getLatestUpdateDate());
-        d.addProperty("expireDate", data.getExpireDate());
-        d.addProperty("purchases", data.getPurchases());
-        d.addProperty("sales", data.getSales());
-        publish("PRICE_DATA_UPSERT", d);
+        publish("PRICE_DATA_UPSERT", data.getShopId() + "/" + data.getProductId(), this.encodePriceData(data));
     }
 
     public void publishPriceDataDeleteByShop(@NotNull String shopId) {
@@ -307,14 +537,7 @@ public class RedisSyncManager {
 
     public void publishStockData(@NotNull StockData data) {
         if (!isActive()) return;
-        JsonObject d = new JsonObject();
-        d.addProperty("shopId", data.getShopId());
-        d.addProperty("productId", data.getProductId());
-        d.addProperty("holder", data.getHolder());
-        d.addProperty("buyStock", data.getBuyStock());
-        d.addProperty("sellStock", data.getSellStock());
-        d.addProperty("restockDate", data.getRestockDate());
-        publish("STOCK_DATA_UPSERT", d);
+        publish("STOCK_DATA_UPSERT", data.getShopId() + "/" + data.getProductId() + "/" + data.getHolder(), this.encodeStockData(data));
     }
 
     public void publishStockDataDeleteByShop(@NotNull String shopId) {
@@ -334,12 +557,7 @@ public class RedisSyncManager {
 
     public void publishRotationData(@NotNull RotationData data) {
         if (!isActive()) return;
-        JsonObject d = new JsonObject();
-        d.addProperty("shopId", data.getShopId());
-        d.addProperty("rotationId", data.getRotationId());
-        d.addProperty("nextRotationDate", data.getNextRotationDate());
-        d.add("products", gson.toJsonTree(data.getProducts()));
-        publish("ROTATION_DATA_UPSERT", d);
+        publish("ROTATION_DATA_UPSERT", data.getShopId() + "/" + data.getRotationId(), this.encodeRotationData(data));
     }
 
     public void publishRotationDataDeleteByShop(@NotNull String shopId) {
@@ -362,7 +580,7 @@ public class RedisSyncManager {
         JsonObject d = new JsonObject();
         d.addProperty("holder", bank.getHolder().toString());
         d.add("balanceMap", gson.toJsonTree(bank.getBalanceMap()));
-        publish("CHEST_BANK_UPSERT", d);
+        publish("CHEST_BANK_UPSERT", bank.getHolder().toString(), d);
     }
 
     public void publishAuctionListingAdd(@NotNull ActiveListing listing) {
@@ -438,281 +656,69 @@ public class RedisSyncManager {
         playerNames.forEach(namesArray::add);
         data.add("playerNames", namesArray);
         data.addProperty("timestamp", System.currentTimeMillis());
-        publish("PLAYER_NAMES_UPDATE", data);
+        publish("PLAYER_NAMES_UPDATE", "", data);
+    }
+
+    private byte[] encodeMessage(@NotNull String type, @NotNull JsonObject data) {
+        return this.codecs.encode(new SyncMessage(type, this.nodeId, this.codecs.getLatestVersion(), data));
     }
 
     private void publish(@NotNull String type, @NotNull JsonObject data) {
         if (!isActive()) return;
-        JsonObject root = new JsonObject();
-        root.addProperty("type", type);
-        root.addProperty("nodeId", this.nodeId);
-        root.add("data", data);
+        this.publisher.publish(null, this.encodeMessage(type, data));
+    }
 
-        this.plugin.getFoliaScheduler().runAsync(() -> {
-            try (Jedis jedis = this.pool.getResource()) {
-                jedis.publish(this.channel, this.gson.toJson(root));
-            }
-            catch (Exception e) {
-                this.plugin.warn("Redis publish failed: " + e.getMessage());
-            }
-        });
+    /**
+     * Publishes a message that replaces a not yet sent message of the same type and record.
+     * @param recordId Id of the record in the message, empty if there is one per node.
+     */
+    private void publish(@NotNull String type, @NotNull String recordId, @NotNull JsonObject data) {
+        if (!isActive()) return;
+        this.publisher.publish(type + "/" + recordId, this.encodeMessage(type, data));
     }
 
     /* =========================
-       Subscriber
+       Transport
        ========================= */
 
-    private void startSubscriber() {
-        this.subscriber = new JedisPubSub() {
-            @Override
-            public void onMessage(String channel, String message) { handleIncoming(message); }
-        };
-
-        this.subscriberThread = new Thread(() -> {
-            while (this.active) {
-                try (Jedis jedis = this.pool.getResource()) {
-                    jedis.subscribe(this.subscriber, this.channel);
-                }
-                catch (Exception e) {
-                    this.plugin.error("Redis subscriber error: " + e.getMessage());
-                    if (this.active) {
-                        this.plugin.info("Attempting to reconnect Redis subscriber in 5 seconds...");
-                        try {
-                            Thread.sleep(5000);
-                        } catch (InterruptedException ie) {
-                            Thread.currentThread().interrupt();
-                            break;
-                        }
-                    }
-                }
-            }
-        }, "ExcellentShop-RedisSubscriber");
-
-        this.subscriberThread.setDaemon(true);
-        this.subscriberThread.start();
-
-        // Periodic player names sharing (optional)
-        this.plugin.getFoliaScheduler().runTimerAsync(this::syncPlayerNames, 0L, 600L);
-    }
-
-    private void handleIncoming(@NotNull String message) {
-        try {
-            JsonObject root = gson.fromJson(message, JsonObject.class);
-            if (root == null) return;
-
-            String sourceNodeId = root.has("nodeId") && !root.get("nodeId").isJsonNull() ? root.get("nodeId").getAsString() : null;
-            if (sourceNodeId != null && sourceNodeId.equals(this.nodeId)) return;
-
-            String type = root.get("type").getAsString();
-            JsonObject data = root.getAsJsonObject("data");
-            if (type == null || data == null) return;
-
-            switch (type) {
-                case "PRICE_DATA_UPSERT" -> applyPriceDataUpsert(data);
-                case "PRICE_DATA_DELETE_BY_SHOP" -> applyPriceDataDeleteByShop(data);
-                case "PRICE_DATA_DELETE_BY_PRODUCT" -> applyPriceDataDeleteByProduct(data);
-
-                case "STOCK_DATA_UPSERT" -> applyStockDataUpsert(data);
-                case "STOCK_DATA_DELETE_BY_SHOP" -> applyStockDataDeleteByShop(data);
-                case "STOCK_DATA_DELETE_BY_PRODUCT" -> applyStockDataDeleteByProduct(data);
-
-                case "ROTATION_DATA_UPSERT" -> applyRotationDataUpsert(data);
-                case "ROTATION_DATA_DELETE_BY_SHOP" -> applyRotationDataDeleteByShop(data);
-                case "ROTATION_DATA_DELETE_BY_ROTATION" -> applyRotationDataDeleteByRotation(data);
-
-                case "CHEST_BANK_UPSERT" -> applyChestBankUpsert(data);
-
-                case "AUCTION_LISTING_ADD" -> applyAuctionListingAdd(data);
-                case "AUCTION_LISTING_DELETE" -> applyAuctionListingDelete(data);
-                case "AUCTION_COMPLETED_ADD" -> applyAuctionCompletedAdd(data);
-                case "AUCTION_COMPLETED_UPDATE" -> applyAuctionCompletedUpdate(data);
-                case "AUCTION_COMPLETED_DELETE" -> applyAuctionCompletedDelete(data);
-
-                case "PLAYER_NAMES_UPDATE" -> applyPlayerNamesUpdate(data);
-                default -> {}
-            }
-        }
-        catch (Exception e) {
-            this.plugin.warn("Failed to handle Redis message: " + e.getMessage());
+    @NotNull
+    private SyncTransport createTransport() {
+        if (Config.REDIS_TRANSPORT.get() != SyncTransportType.STREAMS) {
+            return new RedisPubSubTransport(this.plugin, this.pool, this.channel);
         }
-    }
-
-    private void applyPriceDataUpsert(@NotNull JsonObject d) {
-        String shopId = d.get("shopId").getAsString();
-        String productId = d.get("productId").getAsString();
-        double latestBuyPrice = d.get("latestBuyPrice").getAsDouble();
-        double latestSellPrice = d.get("latestSellPrice").getAsDouble();
-        long latestUpdateDate = d.get("latestUpdateDate").getAsLong();
-        long expireDate = d.get("expireDate").getAsLong();
-        int purchases = d.get("purchases").getAsInt();
-        int sales = d.get("sales").getAsInt();
-
-        PriceData data = new PriceData(shopId, productId, latestBuyPrice, latestSellPrice, latestUpdateDate, expireDate, purchases, sales);
-        this.plugin.runNextTick(() -> this.plugin.getDataManager().applyExternalPriceData(data));
-        this.cachePriceData(data);
-    }
-
-    private void applyPriceDataDeleteByShop(@NotNull JsonObject d) {
-        String shopId = d.get("shopId").getAsString();
-        this.plugin.runNextTick(() -> this.plugin.getDataManager().applyExternalDeletePriceDataByShop(shopId));
-        this.evictPriceDataByShop(shopId);
-    }
-
-    private void applyPriceDataDeleteByProduct(@NotNull JsonObject d) {
-        String shopId = d.get("shopId").getAsString();
-        String productId = d.get("productId").getAsString();
-        this.plugin.runNextTick(() -> this.plugin.getDataManager().applyExternalDeletePriceDataByProduct(shopId, productId));
-        this.evictPriceDataByProduct(shopId, productId);
-    }
-
-    private void applyStockDataUpsert(@NotNull JsonObject d) {
-        String shopId = d.get("shopId").getAsString();
-        String productId = d.get("productId").getAsString();
-        String holder = d.get("holder").getAsString();
-        int buyStock = d.get("buyStock").getAsInt();
-        int sellStock = d.get("sellStock").getAsInt();
-        long restockDate = d.get("restockDate").getAsLong();
-
-        StockData data = new StockData(shopId, productId, holder, buyStock, sellStock, restockDate);
-        this.plugin.runNextTick(() -> this.plugin.getDataManager().applyExternalStockData(data));
-        this.cacheStockData(data);
-    }
-
-    private void applyStockDataDeleteByShop(@NotNull JsonObject d) {
-        String shopId = d.get("shopId").getAsString();
-        this.plugin.runNextTick(() -> this.plugin.getDataManager().applyExternalDeleteStockDataByShop(shopId));
-        this.evictStockDataByShop(shopId);
-    }
-
-    private void applyStockDataDeleteByProduct(@NotNull JsonObject d) {
-        String shopId = d.get("shopId").getAsString();
-        String productId = d.get("productId").getAsString();
-        this.plugin.runNextTick(() -> this.plugin.getDataManager().applyExternalDeleteStockDataByProduct(shopId, productId));
-        this.evictStockDataByProduct(shopId, productId);
-    }
-
-    private void applyRotationDataUpsert(@NotNull JsonObject d) {
-        String shopId = d.get("shopId").getAsString();
-        String rotationId = d.get("rotationId").getAsString();
-        long nextRotationDate = d.get("nextRotationDate").getAsLong();
-        Type mapType = new TypeToken<Map<Integer, List<String>>>(){}.getType();
-        Map<Integer, List<String>> products = gson.fromJson(d.get("products"), mapType);
-        if (products == null) products = new HashMap<>();
-        RotationData data = new RotationData(shopId, rotationId, nextRotationDate, products);
-        RotationData finalData = data;
-        this.plugin.runNextTick(() -> this.plugin.getDataManager().applyExternalRotationData(finalData));
-    }
-
-    private void applyRotationDataDeleteByShop(@NotNull JsonObject d) {
-        String shopId = d.get("shopId").getAsString();
-        this.plugin.runNextTick(() -> this.plugin.getDataManager().applyExternalDeleteRotationDataByShop(shopId));
-    }
-
-    private void applyRotationDataDeleteByRotation(@NotNull JsonObject d) {
-        String shopId = d.get("shopId").getAsString();
-        String rotationId = d.get("rotationId").getAsString();
-        this.plugin.runNextTick(() -> this.plugin.getDataManager().applyExternalDeleteRotationDataByRotation(shopId, rotationId));
-    }
-
-    private void applyChestBankUpsert(@NotNull JsonObject d) {
-        UUID holder = UUID.fromString(d.get("holder").getAsString());
-        Type mapType = new TypeToken<Map<String, Double>>() {}.getType();
-        Map<String, Double> balances = gson.fromJson(d.get("balanceMap"), mapType);
-        if (balances == null) balances = new HashMap<>();
-        ChestBank bank = new ChestBank(holder, balances);
-        this.plugin.runNextTick(() -> {
-            var module = this.plugin.getChestShop();
-            if (module != null) {
-                module.getBankMap().put(holder, bank);
-            }
-        });
-    }
-
-    private void applyAuctionListingAdd(@NotNull JsonObject d) {
-        try {
-            UUID id = UUID.fromString(d.get("id").getAsString());
-            UUID owner = UUID.fromString(d.get("owner").getAsString());
-            String ownerName = d.get("ownerName").getAsString();
-            String typingType = d.get("typingType").getAsString();
-            String typingData = d.get("typingData").getAsString();
-            ProductType productType = ProductType.valueOf(typingType);
-            PhysicalTyping typing = (PhysicalTyping) AuctionDatabase.typingFromJson(productType, typingData);
-            Currency currency = EconomyBridge.getCurrencyOrDummy(d.get("currency").getAsString());
-            double price = d.get("price").getAsDouble();
-            long creationDate = d.get("creationDate").getAsLong();
-            long expireDate = d.get("expireDate").getAsLong();
-            long deletionDate = d.get("deletionDate").getAsLong();
-
-            ActiveListing listing = new ActiveListing(id, owner, ownerName, typing, currency, price, creationDate, expireDate, deletionDate);
-            this.plugin.runNextTick(() -> {
-                var auc = this.plugin.getAuction();
-                if (auc != null) {
-                    auc.getListings().add(listing);
-                }
-            });
-        } catch (Exception ignored) {}
-    }
 
-    private void applyAuctionListingDelete(@NotNull JsonObject d) {
-        UUID id = UUID.fromString(d.get("id").getAsString());
-        this.plugin.runNextTick(() -> {
-            var auc = this.plugin.getAuction();
-            if (auc != null) {
-                ActiveListing existing = auc.getListings().getById(id);
-                if (existing != null) auc.getListings().remove(existing);
-            }
-        });
-    }
+        if (!this.persistentNodeId) {
+            this.plugin.warn("Redis.NodeId is not set: this node gets a new id on every start and can not resume reading the sync stream after restart.");
+        }
 
-    private void applyAuctionCompletedAdd(@NotNull JsonObject d) {
-        try {
-            UUID id = UUID.fromString(d.get("id").getAsString());
-            UUID owner = UUID.fromString(d.get("owner").getAsString());
-            String ownerName = d.get("ownerName").getAsString();
-            String buyerName = d.get("buyerName").getAsString();
-            ProductType productType = ProductType.valueOf(d.get("typingType").getAsString());
-            String typingData = d.get("typingData").getAsString();
-            PhysicalTyping typing = (PhysicalTyping) AuctionDatabase.typingFromJson(productType, typingData);
-            Currency currency = EconomyBridge.getCurrencyOrDummy(d.get("currency").getAsString());
-            double price = d.get("price").getAsDouble();
-            long creationDate = d.get("creationDate").getAsLong();
-            long buyDate = d.get("buyDate").getAsLong();
-            long deletionDate = d.get("deletionDate").getAsLong();
-            boolean claimed = d.get("claimed").getAsBoolean();
-
-            CompletedListing listing = new CompletedListing(id, owner, ownerName, buyerName, typing, currency, price, creationDate, buyDate, deletionDate, claimed);
-            this.plugin.runNextTick(() -> {
-                var auc = this.plugin.getAuction();
-                if (auc != null) {
-                    auc.getListings().addCompleted(listing);
-                }
-            });
-        } catch (Exception ignored) {}
+        RedisStreamTransport streamTransport = new RedisStreamTransport(this.plugin, this.pool, this.channel + ":stream", this.nodeId,
+            Config.REDIS_STREAM_MAX_LENGTH.get(),
+            Config.REDIS_STREAM_MAX_BACKOFF_SECONDS.get() * 1000L,
+            !this.persistentNodeId,
+            // Messages are lost for this node, so reload everything like on a database synchronization.
+            () -> this.plugin.getFoliaScheduler().runAsync(() -> this.plugin.getDataManager().handleSynchronization())
+        );
+        this.plugin.getFoliaScheduler().runTimerAsync(streamTransport::refreshLags, 100L, 200L);
+        return streamTransport;
+    }
+
+    /**
+     * @return Node id to amount of sync messages it has not read yet, empty if the stream transport is not used.
+     * @see RedisStreamTransport#getLags()
+     */
+    @NotNull
+    public Map<String, Long> getStreamLags() {
+        return this.transport instanceof RedisStreamTransport streamTransport ? streamTransport.getLags() : Collections.emptyMap();
     }
 
-    private void applyAuctionCompletedUpdate(@NotNull JsonObject d) {
-        UUID id = UUID.fromString(d.get("id").getAsString());
-        boolean claimed = d.get("claimed").getAsBoolean();
-        this.plugin.runNextTick(() -> {
-            var auc = this.plugin.getAuction();
-            if (auc != null) {
-                var existing = auc.getListings().getCompletedById(id);
-                if (existing != null) {
-                    existing.setClaimed(claimed);
-                }
-            }
-        });
-    }
+    private void startTimers() {
+        // Periodic player names sharing (optional)
+        this.plugin.getFoliaScheduler().runTimerAsync(this::syncPlayerNames, 0L, 600L);
 
-    private void applyAuctionCompletedDelete(@NotNull JsonObject d) {
-        UUID id = UUID.fromString(d.get("id").getAsString());
-        this.plugin.runNextTick(() -> {
-            var auc = this.plugin.getAuction();
-            if (auc != null) {
-                var existing = auc.getListings().getCompletedById(id);
-                if (existing != null) auc.getListings().removeCompleted(existing);
-            }
-        });
+        // Lets other nodes know the codec versions this node can read, even with no players online.
+        this.plugin.getFoliaScheduler().runTimerAsync(() -> publish("NODE_HEARTBEAT", "", new JsonObject()), 0L, 600L);
+        this.plugin.getFoliaScheduler().runTimerAsync(this::purgeCacheMisses, 600L, 600L);
+        this.plugin.getFoliaScheduler().runTimerAsync(this.publisher::sample, 100L, 100L);
     }
 
     private void syncPlayerNames() {
@@ -722,21 +728,11 @@ public class RedisSyncManager {
         if (!local.isEmpty()) publishPlayerNames(local);
     }
 
-    private void applyPlayerNamesUpdate(@NotNull JsonObject data) {
-        JsonArray namesArray = data.getAsJsonArray("playerNames");
-        synchronized (this.crossServerPlayerNames) {
-            this.crossServerPlayerNames.clear();
-            for (int i = 0; i < namesArray.size(); i++) {
-                this.crossServerPlayerNames.add(namesArray.get(i).getAsString());
-            }
-        }
-    }
-
     @NotNull
     public Set<String> getAllPlayerNames() {
         Set<String> all = new HashSet<>();
         this.plugin.getServer().getOnlinePlayers().forEach(p -> all.add(p.getName()));
-        synchronized (this.crossServerPlayerNames) { all.addAll(this.crossServerPlayerNames); }
+        if (this.handler != null) all.addAll(this.handler.getCrossServerPlayerNames());
         return all;
     }
 }
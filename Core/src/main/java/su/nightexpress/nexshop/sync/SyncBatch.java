@@ -0,0 +1,229 @@
+package su.nightexpress.nexshop.sync;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import org.jetbrains.annotations.NotNull;
+import su.nightexpress.nexshop.data.product.PriceData;
+import su.nightexpress.nexshop.data.product.StockData;
+import su.nightexpress.nexshop.data.shop.RotationData;
+
+import java.util.*;
+import java.util.function.BiFunction;
+
+/**
+ * Collects sync upserts, deletes and cache writes of a single flush, so they are sent as a few '*_BATCH' messages
+ * over a single pipelined connection instead of a separate task and connection per record.
+ * <p>
+ * Entries are built on the calling thread from data snapshots, see {@link RedisSyncManager#submit(SyncBatch)}.
+ */
+public class SyncBatch {
+
+    private static final int MAX_NUMBER_LENGTH = 24; // Longest decimal form of a double, such as -1.2345678901234567E-308.
+
+    private final RedisSyncManager         manager;
+    private final Map<String, List<Entry>>  entries; // Message type to entries, in order of first use.
+    private final List<CacheWrite>          cacheWrites;
+    private final Set<String>               evictKeys;
+    private final Map<String, Set<String>>  evictFields;
+    private final Map<String, Set<String>>  evictPatterns;
+
+    SyncBatch(@NotNull RedisSyncManager manager) {
+        this.manager = manager;
+        this.entries = new LinkedHashMap<>();
+        this.cacheWrites = new ArrayList<>();
+        this.evictKeys = new LinkedHashSet<>();
+        this.evictFields = new LinkedHashMap<>();
+        this.evictPatterns = new LinkedHashMap<>();
+    }
+
+    private record Entry(@NotNull JsonObject data, int size) {}
+
+    record CacheWrite(@NotNull String key, @NotNull String field, @NotNull String value, int ttl) {}
+
+    @NotNull
+    public SyncBatch priceData(@NotNull PriceData data) {
+        JsonObject d = this.manager.encodePriceData(data);
+        this.add("PRICE_DATA_UPSERT", d);
+        this.manager.prepareCachePriceData(data, d.deepCopy(), this.cacheWrites::add);
+        return this;
+    }
+
+    @NotNull
+    public SyncBatch priceDataDeleteByShop(@NotNull String shopId) {
+        this.add("PRICE_DATA_DELETE_BY_SHOP", this.shopEntry(shopId));
+        this.evictKeys.add(this.manager.priceKey(shopId));
+        return this;
+    }
+
+    @NotNull
+    public SyncBatch priceDataDeleteByProduct(@NotNull String shopId, @NotNull String productId) {
+        JsonObject d = this.shopEntry(shopId);
+        d.addProperty("productId", productId);
+        this.add("PRICE_DATA_DELETE_BY_PRODUCT", d);
+        this.evictFields.computeIfAbsent(this.manager.priceKey(shopId), k -> new LinkedHashSet<>()).add(this.manager.priceField(productId));
+        return this;
+    }
+
+    @NotNull
+    public SyncBatch stockData(@NotNull StockData data) {
+        JsonObject d = this.manager.encodeStockData(data);
+        this.add("STOCK_DATA_UPSERT", d);
+        this.manager.prepareCacheStockData(data, d.deepCopy(), this.cacheWrites::add);
+        return this;
+    }
+
+    @NotNull
+    public SyncBatch stockDataDeleteByShop(@NotNull String shopId) {
+        this.add("STOCK_DATA_DELETE_BY_SHOP", this.shopEntry(shopId));
+        this.evictKeys.add(this.manager.stockKey(shopId));
+        return this;
+    }
+
+    @NotNull
+    public SyncBatch stockDataDeleteByProduct(@NotNull String shopId, @NotNull String productId) {
+        JsonObject d = this.shopEntry(shopId);
+        d.addProperty("productId", productId);
+        this.add("STOCK_DATA_DELETE_BY_PRODUCT", d);
+        this.evictPatterns.computeIfAbsent(this.manager.stockKey(shopId), k -> new LinkedHashSet<>()).add(this.manager.stockField(productId, "*"));
+        return this;
+    }
+
+    @NotNull
+    public SyncBatch rotationData(@NotNull RotationData data) {
+        this.add("ROTATION_DATA_UPSERT", this.manager.encodeRotationData(data));
+        return this;
+    }
+
+    @NotNull
+    public SyncBatch rotationDataDeleteByShop(@NotNull String shopId) {
+        this.add("ROTATION_DATA_DELETE_BY_SHOP", this.shopEntry(shopId));
+        return this;
+    }
+
+    @NotNull
+    public SyncBatch rotationDataDeleteByRotation(@NotNull String shopId, @NotNull String rotationId) {
+        JsonObject d = this.shopEntry(shopId);
+        d.addProperty("rotationId", rotationId);
+        this.add("ROTATION_DATA_DELETE_BY_ROTATION", d);
+        return this;
+    }
+
+    public boolean isEmpty() {
+        return this.entries.isEmpty() && this.cacheWrites.isEmpty() && this.evictKeys.isEmpty() && this.evictFields.isEmpty() && this.evictPatterns.isEmpty();
+    }
+
+    @NotNull
+    private JsonObject shopEntry(@NotNull String shopId) {
+        JsonObject d = new JsonObject();
+        d.addProperty("shopId", shopId);
+        return d;
+    }
+
+    private void add(@NotNull String type, @NotNull JsonObject entry) {
+        this.entries.computeIfAbsent(type, k -> new ArrayList<>()).add(new Entry(entry, estimateSize(entry)));
+    }
+
+    /**
+     * @return Upper bound of the entry size (in bytes) in JSON form, which is used for message splits. Binary codecs only make it smaller.
+     * Counted from the fields, so entries are not serialized twice.
+     */
+    static int estimateSize(@NotNull JsonElement element) {
+        if (element instanceof JsonObject object) {
+            int size = 2 + Math.max(0, object.size() - 1); // Braces and commas.
+            for (Map.Entry<String, JsonElement> field : object.entrySet()) {
+                size += estimateSize(field.getKey()) + 1 + estimateSize(field.getValue());
+            }
+            return size;
+        }
+        if (element instanceof JsonArray array) {
+            int size = 2 + Math.max(0, array.size() - 1);
+            for (JsonElement child : array) {
+                size += estimateSize(child);
+            }
+            return size;
+        }
+        if (element instanceof JsonPrimitive primitive) {
+            if (primitive.isString()) return estimateSize(primitive.getAsString());
+            if (primitive.isBoolean()) return 5;
+
+            Number number = primitive.getAsNumber();
+            if (number instanceof Integer || number instanceof Long || number instanceof Short || number instanceof Byte) {
+                long value = number.longValue();
+                int digits = value < 0 ? 2 : 1;
+                for (long rest = Math.abs(value / 10); rest != 0; rest /= 10) digits++;
+                return digits;
+            }
+            return MAX_NUMBER_LENGTH;
+        }
+        return 4; // null
+    }
+
+    private static int estimateSize(@NotNull String string) {
+        int size = 2; // Quotes.
+        for (int index = 0; index < string.length(); index++) {
+            char letter = string.charAt(index);
+            if (letter < 0x20 || letter == 0x2028 || letter == 0x2029 || letter == '<' || letter == '>' || letter == '&' || letter == '=' || letter == '\'') size += 6; // Unicode escapes.
+            else if (letter == '"' || letter == '\\') size += 2;
+            else if (letter < 0x80) size += 1;
+            else size += 3; // UTF-8, surrogate pairs take 4 bytes for 2 chars.
+        }
+        return size;
+    }
+
+    /**
+     * Joins entries into batch messages of the given type, each message is kept under the size limit.
+     * An entry bigger than the limit on its own is sent in a separate message.
+     * @param encoder Encodes message data of the given type.
+     */
+    @NotNull
+    List<byte[]> buildMessages(@NotNull BiFunction<String, JsonObject, byte[]> encoder, int maxSize) {
+        List<byte[]> messages = new ArrayList<>();
+
+        this.entries.forEach((type, list) -> {
+            String batchType = type + RedisSyncManager.BATCH_SUFFIX;
+            JsonArray array = new JsonArray();
+            int size = 0;
+            for (Entry entry : list) {
+                if (!array.isEmpty() && size + entry.size() + 1 > maxSize) {
+                    messages.add(encoder.apply(batchType, batchData(array)));
+                    array = new JsonArray();
+                    size = 0;
+                }
+                array.add(entry.data());
+                size += entry.size() + 1;
+            }
+            if (!array.isEmpty()) messages.add(encoder.apply(batchType, batchData(array)));
+        });
+
+        return messages;
+    }
+
+    @NotNull
+    private static JsonObject batchData(@NotNull JsonArray array) {
+        JsonObject data = new JsonObject();
+        data.add("entries", array);
+        return data;
+    }
+
+    @NotNull
+    List<CacheWrite> getCacheWrites() {
+        return this.cacheWrites;
+    }
+
+    @NotNull
+    Set<String> getEvictKeys() {
+        return this.evictKeys;
+    }
+
+    @NotNull
+    Map<String, Set<String>> getEvictFields() {
+        return this.evictFields;
+    }
+
+    @NotNull
+    Map<String, Set<String>> getEvictPatterns() {
+        return this.evictPatterns;
+    }
+}
@@ -0,0 +1,411 @@
+package su.nightexpress.nexshop.sync;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.reflect.TypeToken;
+import org.jetbrains.annotations.NotNull;
+import su.nightexpress.economybridge.EconomyBridge;
+import su.nightexpress.economybridge.api.Currency;
+import su.nightexpress.nexshop.auction.data.AuctionDatabase;
+import su.nightexpress.nexshop.auction.listing.ActiveListing;
+import su.nightexpress.nexshop.auction.listing.CompletedListing;
+import su.nightexpress.nexshop.data.product.PriceData;
+import su.nightexpress.nexshop.data.product.StockData;
+import su.nightexpress.nexshop.data.shop.RotationData;
+import su.nightexpress.nexshop.shop.chest.impl.ChestBank;
+import su.nightexpress.nexshop.sync.codec.SyncCodecs;
+import su.nightexpress.nexshop.sync.codec.SyncMessage;
+import su.nightexpress.nexshop.api.shop.product.ProductType;
+import su.nightexpress.nexshop.api.shop.product.typing.PhysicalTyping;
+
+import java.lang.reflect.Type;
+import java.util.*;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Reads and writes synced records, and applies sync messages of other nodes to the {@link SyncTarget}.
+ * Knows nothing about the transport they came with, see {@link su.nightexpress.nexshop.sync.transport.SyncTransport}.
+ */
+public class SyncMessageHandler {
+
+    private final String      nodeId;
+    private final SyncTarget  target;
+    private final Executor    scheduler;
+    private final SyncCodecs  codecs;
+    private final HybridClock clock;
+    private final Gson        gson;
+    private final AtomicLong  appliedUpserts;
+    private final AtomicLong  droppedUpserts;
+
+    // Cross-server player names cache (optional for UX)
+    private volatile Set<String> crossServerPlayerNames;
+
+    /**
+     * @param scheduler Runs changes of the target, such as the server thread.
+     */
+    public SyncMessageHandler(@NotNull String nodeId, @NotNull SyncTarget target, @NotNull Executor scheduler, @NotNull SyncCodecs codecs, @NotNull HybridClock clock) {
+        this.nodeId = nodeId;
+        this.target = target;
+        this.scheduler = scheduler;
+        this.codecs = codecs;
+        this.clock = clock;
+        this.gson = new GsonBuilder().create();
+        this.appliedUpserts = new AtomicLong();
+        this.droppedUpserts = new AtomicLong();
+        this.crossServerPlayerNames = Collections.emptySet();
+    }
+
+    public long getAppliedUpserts() {
+        return this.appliedUpserts.get();
+    }
+
+    public long getDroppedUpserts() {
+        return this.droppedUpserts.get();
+    }
+
+    @NotNull
+    public Set<String> getCrossServerPlayerNames() {
+        return this.crossServerPlayerNames;
+    }
+
+    private boolean countApply(boolean applied) {
+        (applied ? this.appliedUpserts : this.droppedUpserts).incrementAndGet();
+        return applied;
+    }
+
+    /**
+     * Reads version of the record and moves local clock past it. Records of nodes without versioning get no stamp.
+     */
+    @NotNull
+    private SyncStamp readStamp(@NotNull JsonObject d) {
+        if (!d.has("hlc")) return SyncStamp.NONE;
+
+        long stamp = d.get("hlc").getAsLong();
+        this.clock.observe(stamp);
+        return new SyncStamp(stamp, d.has("origin") ? d.get("origin").getAsString() : "");
+    }
+
+    private void writeStamp(@NotNull JsonObject d, @NotNull SyncStamp stamp) {
+        d.addProperty("hlc", stamp.clock());
+        d.addProperty("origin", stamp.origin());
+    }
+
+    /**
+     * Datas never changed on this node get a stamp when sent, so they are ordered against other versions as well.
+     */
+    @NotNull
+    private SyncStamp stampOf(@NotNull SyncStamp current, @NotNull Consumer<SyncStamp> setter) {
+        if (!current.isNone()) return current;
+
+        SyncStamp stamp = new SyncStamp(this.clock.tick(), this.nodeId);
+        setter.accept(stamp);
+        return stamp;
+    }
+
+    @NotNull
+    JsonObject encodePriceData(@NotNull PriceData data) {
+        PriceData.Snapshot snapshot = data.getSnapshot();
+        JsonObject d = new JsonObject();
+        d.addProperty("shopId", data.getShopId());
+        d.addProperty("productId", data.getProductId());
+        d.addProperty("latestBuyPrice", snapshot.latestBuyPrice());
+        d.addProperty("latestSellPrice", snapshot.latestSellPrice());
+        d.addProperty("latestUpdateDate", snapshot.latestUpdateDate());
+        d.addProperty("expireDate", snapshot.expireDate());
+        d.addProperty("purchases", snapshot.purchases());
+        d.addProperty("sales", snapshot.sales());
+        d.addProperty("demand", snapshot.demand());
+        this.writeStamp(d, this.stampOf(data.getSyncStamp(), data::setSyncStamp));
+        return d;
+    }
+
+    @NotNull
+    JsonObject encodeStockData(@NotNull StockData data) {
+        StockData.Snapshot snapshot = data.getSnapshot();
+        JsonObject d = new JsonObject();
+        d.addProperty("shopId", data.getShopId());
+        d.addProperty("productId", data.getProductId());
+        d.addProperty("holder", data.getHolder());
+        d.addProperty("buyStock", snapshot.buyStock());
+        d.addProperty("sellStock", snapshot.sellStock());
+        d.addProperty("restockDate", snapshot.restockDate());
+        this.writeStamp(d, this.stampOf(data.getSyncStamp(), data::setSyncStamp));
+        return d;
+    }
+
+    @NotNull
+    JsonObject encodeRotationData(@NotNull RotationData data) {
+        JsonObject d = new JsonObject();
+        d.addProperty("shopId", data.getShopId());
+        d.addProperty("rotationId", data.getRotationId());
+        d.addProperty("nextRotationDate", data.getNextRotationDate());
+        d.add("products", this.gson.toJsonTree(data.getProducts()));
+        this.writeStamp(d, this.stampOf(data.getSyncStamp(), data::setSyncStamp));
+        return d;
+    }
+
+    /**
+     * Decodes and applies a message received by the transport. Messages sent by this node are skipped.
+     * Can be called from any thread, datas are changed by the scheduler.
+     */
+    public void handle(byte @NotNull [] bytes) {
+        try {
+            SyncMessage message = this.codecs.decode(bytes);
+            if (message.nodeId().equals(this.nodeId)) return;
+
+            this.codecs.onPeerMessage(message.nodeId(), message.codecVersion());
+
+            String type = message.type();
+            JsonObject data = message.data();
+
+            if (type.endsWith(RedisSyncManager.BATCH_SUFFIX)) {
+                this.applyBatch(type.substring(0, type.length() - RedisSyncManager.BATCH_SUFFIX.length()), data.getAsJsonArray("entries"));
+                return;
+            }
+            this.apply(type, data);
+        }
+        catch (Exception e) {
+            this.target.warn("Failed to handle sync message: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Upserts of a batch are applied in a single tick task. Cache is not written again, as the sender did it already.
+     */
+    private void applyBatch(@NotNull String type, @NotNull JsonArray entries) {
+        switch (type) {
+            case "PRICE_DATA_UPSERT" -> {
+                List<PriceData> datas = new ArrayList<>();
+                entries.forEach(entry -> datas.add(this.readPriceData(entry.getAsJsonObject())));
+                datas.forEach(data -> this.target.applyPriceData(data, this::countApply));
+            }
+            case "STOCK_DATA_UPSERT" -> {
+                List<StockData> datas = new ArrayList<>();
+                entries.forEach(entry -> datas.add(this.readStockData(entry.getAsJsonObject())));
+                this.scheduler.execute(() -> datas.forEach(data -> this.countApply(this.target.applyStockData(data))));
+            }
+            case "ROTATION_DATA_UPSERT" -> {
+                List<RotationData> datas = new ArrayList<>();
+                entries.forEach(entry -> datas.add(this.readRotationData(entry.getAsJsonObject())));
+                this.scheduler.execute(() -> datas.forEach(data -> this.countApply(this.target.applyRotationData(data))));
+            }
+            default -> {
+                for (JsonElement entry : entries) {
+                    this.apply(type, entry.getAsJsonObject());
+                }
+            }
+        }
+    }
+
+    private void apply(@NotNull String type, @NotNull JsonObject data) {
+        try {
+            switch (type) {
+                case "PRICE_DATA_UPSERT" -> applyPriceDataUpsert(data);
+                case "PRICE_DATA_DELETE_BY_SHOP" -> applyPriceDataDeleteByShop(data);
+                case "PRICE_DATA_DELETE_BY_PRODUCT" -> applyPriceDataDeleteByProduct(data);
+
+                case "STOCK_DATA_UPSERT" -> applyStockDataUpsert(data);
+                case "STOCK_DATA_DELETE_BY_SHOP" -> applyStockDataDeleteByShop(data);
+                case "STOCK_DATA_DELETE_BY_PRODUCT" -> applyStockDataDeleteByProduct(data);
+
+                case "ROTATION_DATA_UPSERT" -> applyRotationDataUpsert(data);
+                case "ROTATION_DATA_DELETE_BY_SHOP" -> applyRotationDataDeleteByShop(data);
+                case "ROTATION_DATA_DELETE_BY_ROTATION" -> applyRotationDataDeleteByRotation(data);
+
+                case "CHEST_BANK_UPSERT" -> applyChestBankUpsert(data);
+
+                case "AUCTION_LISTING_ADD" -> applyAuctionListingAdd(data);
+                case "AUCTION_LISTING_DELETE" -> applyAuctionListingDelete(data);
+                case "AUCTION_COMPLETED_ADD" -> applyAuctionCompletedAdd(data);
+                case "AUCTION_COMPLETED_UPDATE" -> applyAuctionCompletedUpdate(data);
+                case "AUCTION_COMPLETED_DELETE" -> applyAuctionCompletedDelete(data);
+
+                case "PLAYER_NAMES_UPDATE" -> applyPlayerNamesUpdate(data);
+                default -> {}
+            }
+        }
+        catch (Exception e) {
+            this.target.warn("Failed to handle sync message: " + e.getMessage());
+        }
+    }
+
+    private void applyPriceDataUpsert(@NotNull JsonObject d) {
+        PriceData data = this.readPriceData(d);
+        this.target.applyPriceData(data, applied -> {
+            if (this.countApply(applied)) this.target.cachePriceData(data);
+        });
+    }
+
+    @NotNull
+    PriceData readPriceData(@NotNull JsonObject d) {
+        String shopId = d.get("shopId").getAsString();
+        String productId = d.get("productId").getAsString();
+        double latestBuyPrice = d.get("latestBuyPrice").getAsDouble();
+        double latestSellPrice = d.get("latestSellPrice").getAsDouble();
+        long latestUpdateDate = d.get("latestUpdateDate").getAsLong();
+        long expireDate = d.get("expireDate").getAsLong();
+        int purchases = d.get("purchases").getAsInt();
+        int sales = d.get("sales").getAsInt();
+        double demand = d.has("demand") ? d.get("demand").getAsDouble() : 0D; // Not sent by older versions.
+
+        PriceData data = new PriceData(shopId, productId, latestBuyPrice, latestSellPrice, latestUpdateDate, expireDate, purchases, sales, demand);
+        data.setSyncStamp(this.readStamp(d));
+        return data;
+    }
+
+    private void applyPriceDataDeleteByShop(@NotNull JsonObject d) {
+        String shopId = d.get("shopId").getAsString();
+        this.scheduler.execute(() -> this.target.deletePriceDataByShop(shopId));
+        this.target.evictPriceDataByShop(shopId);
+    }
+
+    private void applyPriceDataDeleteByProduct(@NotNull JsonObject d) {
+        String shopId = d.get("shopId").getAsString();
+        String productId = d.get("productId").getAsString();
+        this.scheduler.execute(() -> this.target.deletePriceDataByProduct(shopId, productId));
+        this.target.evictPriceDataByProduct(shopId, productId);
+    }
+
+    private void applyStockDataUpsert(@NotNull JsonObject d) {
+        StockData data = this.readStockData(d);
+        this.scheduler.execute(() -> {
+            if (this.countApply(this.target.applyStockData(data))) this.target.cacheStockData(data);
+        });
+    }
+
+    @NotNull
+    StockData readStockData(@NotNull JsonObject d) {
+        String shopId = d.get("shopId").getAsString();
+        String productId = d.get("productId").getAsString();
+        String holder = d.get("holder").getAsString();
+        int buyStock = d.get("buyStock").getAsInt();
+        int sellStock = d.get("sellStock").getAsInt();
+        long restockDate = d.get("restockDate").getAsLong();
+
+        StockData data = new StockData(shopId, productId, holder, buyStock, sellStock, restockDate);
+        data.setSyncStamp(this.readStamp(d));
+        return data;
+    }
+
+    private void applyStockDataDeleteByShop(@NotNull JsonObject d) {
+        String shopId = d.get("shopId").getAsString();
+        this.scheduler.execute(() -> this.target.deleteStockDataByShop(shopId));
+        this.target.evictStockDataByShop(shopId);
+    }
+
+    private void applyStockDataDeleteByProduct(@NotNull JsonObject d) {
+        String shopId = d.get("shopId").getAsString();
+        String productId = d.get("productId").getAsString();
+        this.scheduler.execute(() -> this.target.deleteStockDataByProduct(shopId, productId));
+        this.target.evictStockDataByProduct(shopId, productId);
+    }
+
+    private void applyRotationDataUpsert(@NotNull JsonObject d) {
+        RotationData data = this.readRotationData(d);
+        this.scheduler.execute(() -> this.countApply(this.target.applyRotationData(data)));
+    }
+
+    @NotNull
+    private RotationData readRotationData(@NotNull JsonObject d) {
+        String shopId = d.get("shopId").getAsString();
+        String rotationId = d.get("rotationId").getAsString();
+        long nextRotationDate = d.get("nextRotationDate").getAsLong();
+        Type mapType = new TypeToken<Map<Integer, List<String>>>(){}.getType();
+        Map<Integer, List<String>> products = this.gson.fromJson(d.get("products"), mapType);
+        if (products == null) products = new HashMap<>();
+        RotationData data = new RotationData(shopId, rotationId, nextRotationDate, products);
+        data.setSyncStamp(this.readStamp(d));
+        return data;
+    }
+
+    private void applyRotationDataDeleteByShop(@NotNull JsonObject d) {
+        String shopId = d.get("shopId").getAsString();
+        this.scheduler.execute(() -> this.target.deleteRotationDataByShop(shopId));
+    }
+
+    private void applyRotationDataDeleteByRotation(@NotNull JsonObject d) {
+        String shopId = d.get("shopId").getAsString();
+        String rotationId = d.get("rotationId").getAsString();
+        this.scheduler.execute(() -> this.target.deleteRotationDataByRotation(shopId, rotationId));
+    }
+
+    private void applyChestBankUpsert(@NotNull JsonObject d) {
+        UUID holder = UUID.fromString(d.get("holder").getAsString());
+        Type mapType = new TypeToken<Map<String, Double>>() {}.getType();
+        Map<String, Double> balances = this.gson.fromJson(d.get("balanceMap"), mapType);
+        if (balances == null) balances = new HashMap<>();
+        ChestBank bank = new ChestBank(holder, balances);
+        this.scheduler.execute(() -> this.target.applyChestBank(bank));
+    }
+
+    private void applyAuctionListingAdd(@NotNull JsonObject d) {
+        try {
+            UUID id = UUID.fromString(d.get("id").getAsString());
+            UUID owner = UUID.fromString(d.get("owner").getAsString());
+            String ownerName = d.get("ownerName").getAsString();
+            String typingType = d.get("typingType").getAsString();
+            String typingData = d.get("typingData").getAsString();
+            ProductType productType = ProductType.valueOf(typingType);
+            PhysicalTyping typing = (PhysicalTyping) AuctionDatabase.typingFromJson(productType, typingData);
+            Currency currency = EconomyBridge.getCurrencyOrDummy(d.get("currency").getAsString());
+            double price = d.get("price").getAsDouble();
+            long creationDate = d.get("creationDate").getAsLong();
+            long expireDate = d.get("expireDate").getAsLong();
+            long deletionDate = d.get("deletionDate").getAsLong();
+
+            ActiveListing listing = new ActiveListing(id, owner, ownerName, typing, currency, price, creationDate, expireDate, deletionDate);
+            this.scheduler.execute(() -> this.target.addAuctionListing(listing));
+        } catch (Exception ignored) {}
+    }
+
+    private void applyAuctionListingDelete(@NotNull JsonObject d) {
+        UUID id = UUID.fromString(d.get("id").getAsString());
+        this.scheduler.execute(() -> this.target.removeAuctionListing(id));
+    }
+
+    private void applyAuctionCompletedAdd(@NotNull JsonObject d) {
+        try {
+            UUID id = UUID.fromString(d.get("id").getAsString());
+            UUID owner = UUID.fromString(d.get("owner").getAsString());
+            String ownerName = d.get("ownerName").getAsString();
+            String buyerName = d.get("buyerName").getAsString();
+            ProductType productType = ProductType.valueOf(d.get("typingType").getAsString());
+            String typingData = d.get("typingData").getAsString();
+            PhysicalTyping typing = (PhysicalTyping) AuctionDatabase.typingFromJson(productType, typingData);
+            Currency currency = EconomyBridge.getCurrencyOrDummy(d.get("currency").getAsString());
+            double price = d.get("price").getAsDouble();
+            long creationDate = d.get("creationDate").getAsLong();
+            long buyDate = d.get("buyDate").getAsLong();
+            long deletionDate = d.get("deletionDate").getAsLong();
+            boolean claimed = d.get("claimed").getAsBoolean();
+
+            CompletedListing listing = new CompletedListing(id, owner, ownerName, buyerName, typing, currency, price, creationDate, buyDate, deletionDate, claimed);
+            this.scheduler.execute(() -> this.target.addCompletedListing(listing));
+        } catch (Exception ignored) {}
+    }
+
+    private void applyAuctionCompletedUpdate(@NotNull JsonObject d) {
+        UUID id = UUID.fromString(d.get("id").getAsString());
+        boolean claimed = d.get("claimed").getAsBoolean();
+        this.scheduler.execute(() -> this.target.setCompletedListingClaimed(id, claimed));
+    }
+
+    private void applyAuctionCompletedDelete(@NotNull JsonObject d) {
+        UUID id = UUID.fromString(d.get("id").getAsString());
+        this.scheduler.execute(() -> this.target.removeCompletedListing(id));
+    }
+
+    private void applyPlayerNamesUpdate(@NotNull JsonObject data) {
+        JsonArray namesArray = data.getAsJsonArray("playerNames");
+        Set<String> names = new HashSet<>();
+        for (int i = 0; i < namesArray.size(); i++) {
+            names.add(namesArray.get(i).getAsString());
+        }
+        this.crossServerPlayerNames = names;
+    }
+}
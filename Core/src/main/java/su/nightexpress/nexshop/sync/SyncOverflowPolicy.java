@@ -0,0 +1,8 @@
+package su.nightexpress.nexshop.sync;
+
+public enum SyncOverflowPolicy {
+    /** Oldest queued job is dropped to make room for the new one. */
+    DROP_OLDEST,
+    /** New job is dropped, queued jobs are kept. */
+    DROP_NEWEST,
+}
@@ -0,0 +1,401 @@
+package su.nightexpress.nexshop.sync;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import su.nightexpress.nexshop.ShopPlugin;
+import su.nightexpress.nexshop.sync.transport.SyncTransport;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Sends sync messages and cache changes from a single background thread, so a slow or unavailable Redis
+ * never floods the shared async scheduler with blocked tasks.
+ * <p>
+ * Jobs wait in a bounded queue. A job with a coalesce key replaces the queued job with the same key, so only the latest
+ * state of a record is sent. Jobs without a key are barriers: keyed jobs queued after them never replace jobs queued before,
+ * so deletes and upserts of the same record are sent in order. When the queue is full, {@link SyncOverflowPolicy} decides which job is dropped.
+ * <p>
+ * After several failed sends in a row the circuit opens: nothing is sent until the retry time, then a single job probes the connection.
+ * Jobs are still queued (and coalesced) meanwhile, so the latest changes go out once Redis is back.
+ * Failed jobs are not retried, nodes that miss them catch up by the next change of the record or by the stream gap reload.
+ */
+public class SyncPublisher {
+
+    public enum CircuitState {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    public interface Job {
+
+        void run() throws Exception;
+    }
+
+    public record Stats(int queueSize,
+                        int queueCapacity,
+                        long sentMessages,
+                        long failedJobs,
+                        long droppedJobs,
+                        long coalescedJobs,
+                        double messagesPerSecond,
+                        double averageLatencyMillis,
+                        long maxLatencyMillis,
+                        @NotNull CircuitState circuitState) {
+
+        public static final Stats EMPTY = new Stats(0, 0, 0L, 0L, 0L, 0L, 0D, 0D, 0L, CircuitState.CLOSED);
+    }
+
+    private static final int  MAX_MESSAGES_PER_SEND = 256;
+    private static final long SHUTDOWN_DRAIN_MILLIS = 3000L;
+    private static final long IDLE_WAIT_MILLIS      = 1000L;
+
+    private static class Entry {
+
+        private final String key;
+        private final long   queuedAt;
+
+        // Either a plain message to send, or a job.
+        private byte[] message;
+        private Job    job;
+        private int    messages;
+
+        private Entry(@Nullable String key) {
+            this.key = key;
+            this.queuedAt = System.currentTimeMillis();
+        }
+
+        private void set(byte[] message, Job job, int messages) {
+            this.message = message;
+            this.job = job;
+            this.messages = messages;
+        }
+    }
+
+    private final ShopPlugin         plugin;
+    private final SyncTransport      transport;
+    private final int                capacity;
+    private final SyncOverflowPolicy overflowPolicy;
+    private final int                failureThreshold;
+    private final long               openMillis;
+
+    private final ReentrantLock      lock;
+    private final Condition          signal;
+    private final ArrayDeque<Entry>  queue;
+    private final Map<String, Entry> queuedByKey;
+    private final Thread             worker;
+
+    private volatile CircuitState circuitState;
+    private volatile long         retryAt;
+    private int                   failuresInRow;
+    private boolean               closing;
+    private long                  drainDeadline;
+
+    private final AtomicLong sentMessages;
+    private final AtomicLong failedJobs;
+    private final AtomicLong droppedJobs;
+    private final AtomicLong coalescedJobs;
+    private final AtomicLong windowLatencySum;
+    private final AtomicLong windowLatencyCount;
+    private final AtomicLong windowLatencyMax;
+
+    private long           lastSampleTime;
+    private long           lastSampleSent;
+    private volatile Stats stats;
+
+    public SyncPublisher(@NotNull ShopPlugin plugin,
+                         @NotNull SyncTransport transport,
+                         int capacity,
+                         @NotNull SyncOverflowPolicy overflowPolicy,
+                         int failureThreshold,
+                         long openMillis) {
+        this.plugin = plugin;
+        this.transport = transport;
+        this.capacity = Math.max(1, capacity);
+        this.overflowPolicy = overflowPolicy;
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openMillis = Math.max(100L, openMillis);
+
+        this.lock = new ReentrantLock();
+        this.signal = this.lock.newCondition();
+        this.queue = new ArrayDeque<>();
+        this.queuedByKey = new HashMap<>();
+        this.circuitState = CircuitState.CLOSED;
+
+        this.sentMessages = new AtomicLong();
+        this.failedJobs = new AtomicLong();
+        this.droppedJobs = new AtomicLong();
+        this.coalescedJobs = new AtomicLong();
+        this.windowLatencySum = new AtomicLong();
+        this.windowLatencyCount = new AtomicLong();
+        this.windowLatencyMax = new AtomicLong();
+        this.lastSampleTime = System.currentTimeMillis();
+        this.stats = new Stats(0, this.capacity, 0L, 0L, 0L, 0L, 0D, 0D, 0L, CircuitState.CLOSED);
+
+        this.worker = new Thread(this::work, plugin.getName() + "-SyncPublisher");
+        this.worker.setDaemon(true);
+    }
+
+    public void start() {
+        this.worker.start();
+    }
+
+    /**
+     * Stops accepting jobs and gives the worker a short time to send the queued ones. Jobs left after that are dropped.
+     */
+    public void shutdown() {
+        this.lock.lock();
+        try {
+            this.closing = true;
+            this.drainDeadline = System.currentTimeMillis() + SHUTDOWN_DRAIN_MILLIS;
+            this.signal.signalAll();
+        }
+        finally {
+            this.lock.unlock();
+        }
+
+        try {
+            this.worker.join(SHUTDOWN_DRAIN_MILLIS + 1000L);
+        }
+        catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+        this.worker.interrupt();
+    }
+
+    /**
+     * Queues a message to be sent through the transport.
+     * @param key Coalesce key, null if the message must never be replaced by a newer one.
+     */
+    public void publish(@Nullable String key, byte[] message) {
+        this.offer(key, message, null, 1);
+    }
+
+    /**
+     * Queues a job to be run on the publisher thread.
+     * @param key Coalesce key, null if the job must never be replaced by a newer one.
+     * @param messages Amount of sync messages the job sends, for stats.
+     */
+    public void execute(@Nullable String key, int messages, @NotNull Job job) {
+        this.offer(key, null, job, messages);
+    }
+
+    /**
+     * @return False while the circuit is open, so callers can skip Redis calls that would fail anyway.
+     */
+    public boolean isHealthy() {
+        return this.circuitState != CircuitState.OPEN || System.currentTimeMillis() >= this.retryAt;
+    }
+
+    @NotNull
+    public CircuitState getCircuitState() {
+        return this.circuitState;
+    }
+
+    public int getQueueSize() {
+        this.lock.lock();
+        try {
+            return this.queue.size();
+        }
+        finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * @return Stats as of the last {@link #sample()} call, with current counters and queue size.
+     */
+    @NotNull
+    public Stats getStats() {
+        Stats last = this.stats;
+        return new Stats(this.getQueueSize(), this.capacity,
+            this.sentMessages.get(), this.failedJobs.get(), this.droppedJobs.get(), this.coalescedJobs.get(),
+            last.messagesPerSecond(), last.averageLatencyMillis(), last.maxLatencyMillis(), this.circuitState);
+    }
+
+    /**
+     * Calculates send rate and latency since the previous call. Called periodically.
+     */
+    public void sample() {
+        long now = System.currentTimeMillis();
+        long sent = this.sentMessages.get();
+        long elapsed = Math.max(1L, now - this.lastSampleTime);
+        double rate = (sent - this.lastSampleSent) * 1000D / elapsed;
+
+        long latencySum = this.windowLatencySum.getAndSet(0L);
+        long latencyCount = this.windowLatencyCount.getAndSet(0L);
+        long latencyMax = this.windowLatencyMax.getAndSet(0L);
+        double latencyAvg = latencyCount == 0L ? 0D : (double) latencySum / latencyCount;
+
+        this.lastSampleTime = now;
+        this.lastSampleSent = sent;
+        this.stats = new Stats(0, this.capacity, sent, 0L, 0L, 0L, rate, latencyAvg, latencyMax, this.circuitState);
+    }
+
+    private void offer(@Nullable String key, byte[] message, Job job, int messages) {
+        this.lock.lock();
+        try {
+            if (this.closing) {
+                this.droppedJobs.incrementAndGet();
+                return;
+            }
+
+            if (key != null) {
+                Entry queued = this.queuedByKey.get(key);
+                if (queued != null) {
+                    queued.set(message, job, messages);
+                    this.coalescedJobs.incrementAndGet();
+                    return;
+                }
+            }
+
+            if (this.queue.size() >= this.capacity) {
+                this.droppedJobs.incrementAndGet();
+                if (this.overflowPolicy == SyncOverflowPolicy.DROP_NEWEST) return;
+
+                this.unindex(this.queue.pollFirst());
+            }
+
+            Entry entry = new Entry(key);
+            entry.set(message, job, messages);
+            this.queue.addLast(entry);
+            if (key != null) {
+                this.queuedByKey.put(key, entry);
+            }
+            else this.queuedByKey.clear(); // Barrier: nothing queued before can be replaced anymore.
+
+            this.signal.signal();
+        }
+        finally {
+            this.lock.unlock();
+        }
+    }
+
+    private void unindex(@Nullable Entry entry) {
+        if (entry != null && entry.key != null) {
+            this.queuedByKey.remove(entry.key, entry);
+        }
+    }
+
+    /**
+     * @return Millis to wait for before the next send, 0 to send now, or -1 when the worker should stop.
+     */
+    private long waitMillis() {
+        long now = System.currentTimeMillis();
+        boolean open = this.circuitState == CircuitState.OPEN && now < this.retryAt;
+
+        if (this.closing && (this.queue.isEmpty() || open || now >= this.drainDeadline)) return -1L;
+        if (this.queue.isEmpty()) return IDLE_WAIT_MILLIS;
+        if (open) return this.retryAt - now;
+        return 0L;
+    }
+
+    private void work() {
+        List<Entry> entries = new ArrayList<>();
+
+        while (true) {
+            entries.clear();
+
+            this.lock.lock();
+            try {
+                long wait;
+                while ((wait = this.waitMillis()) > 0L) {
+                    this.signal.await(wait, TimeUnit.MILLISECONDS);
+                }
+                if (wait < 0L) {
+                    this.droppedJobs.addAndGet(this.queue.size());
+                    this.queue.clear();
+                    this.queuedByKey.clear();
+                    return;
+                }
+
+                if (this.circuitState == CircuitState.OPEN) {
+                    this.circuitState = CircuitState.HALF_OPEN;
+                }
+
+                Entry first = this.queue.pollFirst();
+                this.unindex(first);
+                entries.add(first);
+
+                // Consecutive plain messages are sent in one go, but a half-open circuit is probed with a single one.
+                int messages = first.messages;
+                while (first.message != null && this.circuitState == CircuitState.CLOSED && messages < MAX_MESSAGES_PER_SEND) {
+                    Entry next = this.queue.peekFirst();
+                    if (next == null || next.message == null) break;
+
+                    this.queue.pollFirst();
+                    this.unindex(next);
+                    entries.add(next);
+                    messages++;
+                }
+            }
+            catch (InterruptedException exception) {
+                return;
+            }
+            finally {
+                this.lock.unlock();
+            }
+
+            this.send(entries);
+        }
+    }
+
+    private void send(@NotNull List<Entry> entries) {
+        Entry first = entries.getFirst();
+        int messages = 0;
+        try {
+            if (first.message != null) {
+                List<byte[]> payload = new ArrayList<>(entries.size());
+                entries.forEach(entry -> payload.add(entry.message));
+                this.transport.send(payload);
+                messages = payload.size();
+            }
+            else {
+                first.job.run();
+                messages = first.messages;
+            }
+        }
+        catch (Exception exception) {
+            this.failedJobs.addAndGet(entries.size());
+            this.onFailure(exception);
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        this.sentMessages.addAndGet(messages);
+        entries.forEach(entry -> {
+            long latency = now - entry.queuedAt;
+            this.windowLatencySum.addAndGet(latency);
+            this.windowLatencyCount.incrementAndGet();
+            this.windowLatencyMax.accumulateAndGet(latency, Math::max);
+        });
+        this.onSuccess();
+    }
+
+    private void onSuccess() {
+        if (this.circuitState != CircuitState.CLOSED) {
+            this.plugin.info("Redis is reachable again, sync publishing resumed.");
+        }
+        this.failuresInRow = 0;
+        this.circuitState = CircuitState.CLOSED;
+    }
+
+    private void onFailure(@NotNull Exception exception) {
+        this.failuresInRow++;
+
+        if (this.circuitState == CircuitState.HALF_OPEN) {
+            this.retryAt = System.currentTimeMillis() + this.openMillis;
+            this.circuitState = CircuitState.OPEN;
+            return;
+        }
+
+        this.plugin.warn("Redis publish failed: " + exception.getMessage());
+        if (this.failuresInRow >= this.failureThreshold) {
+            this.retryAt = System.currentTimeMillis() + this.openMillis;
+            this.circuitState = CircuitState.OPEN;
+            this.plugin.warn("Redis publish failed " + this.failuresInRow + " times in a row, pausing sync publishing for " + this.openMillis / 1000L + "s.");
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package su.nightexpress.nexshop.sync;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Version of a synced record: hybrid logical clock of its last change and id of the node that made it.
+ * Node id breaks ties, so all nodes agree on the newest version.
+ * @see HybridClock
+ */
+public record SyncStamp(long clock, @NotNull String origin) {
+
+    /** Stamp of datas not changed since load, and of records sent by nodes without versioning. */
+    public static final SyncStamp NONE = new SyncStamp(0L, "");
+
+    public boolean isNone() {
+        return this.clock == 0L;
+    }
+
+    public boolean isNewerThan(@NotNull SyncStamp other) {
+        if (this.clock != other.clock) return this.clock > other.clock;
+
+        return this.origin.compareTo(other.origin) > 0;
+    }
+}
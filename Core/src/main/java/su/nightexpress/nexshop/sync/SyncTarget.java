@@ -0,0 +1,74 @@
+package su.nightexpress.nexshop.sync;
+
+import org.jetbrains.annotations.NotNull;
+import su.nightexpress.nexshop.auction.listing.ActiveListing;
+import su.nightexpress.nexshop.auction.listing.CompletedListing;
+import su.nightexpress.nexshop.data.product.PriceData;
+import su.nightexpress.nexshop.data.product.StockData;
+import su.nightexpress.nexshop.data.shop.RotationData;
+import su.nightexpress.nexshop.shop.chest.impl.ChestBank;
+
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * Local state that sync messages of other nodes are applied to, see {@link SyncMessageHandler}.
+ * Methods are called on the scheduler thread given to the handler, except {@link #applyPriceData(PriceData, Consumer)}.
+ * Cache, chest bank and auction changes are ignored by default, for nodes without Redis cache or these modules.
+ */
+public interface SyncTarget {
+
+    /**
+     * Called from any thread, price datas have their own writer.
+     * @param callback Accepts false if the data is older than the current one and was dropped.
+     */
+    void applyPriceData(@NotNull PriceData data, @NotNull Consumer<Boolean> callback);
+
+    /**
+     * @return False if the data is older than the current one and was dropped.
+     */
+    boolean applyStockData(@NotNull StockData data);
+
+    /**
+     * @return False if the data is older than the current one and was dropped.
+     */
+    boolean applyRotationData(@NotNull RotationData data);
+
+    void deletePriceDataByShop(@NotNull String shopId);
+
+    void deletePriceDataByProduct(@NotNull String shopId, @NotNull String productId);
+
+    void deleteStockDataByShop(@NotNull String shopId);
+
+    void deleteStockDataByProduct(@NotNull String shopId, @NotNull String productId);
+
+    void deleteRotationDataByShop(@NotNull String shopId);
+
+    void deleteRotationDataByRotation(@NotNull String shopId, @NotNull String rotationId);
+
+    void warn(@NotNull String message);
+
+    default void cachePriceData(@NotNull PriceData data) {}
+
+    default void cacheStockData(@NotNull StockData data) {}
+
+    default void evictPriceDataByShop(@NotNull String shopId) {}
+
+    default void evictPriceDataByProduct(@NotNull String shopId, @NotNull String productId) {}
+
+    default void evictStockDataByShop(@NotNull String shopId) {}
+
+    default void evictStockDataByProduct(@NotNull String shopId, @NotNull String productId) {}
+
+    default void applyChestBank(@NotNull ChestBank bank) {}
+
+    default void addAuctionListing(@NotNull ActiveListing listing) {}
+
+    default void removeAuctionListing(@NotNull UUID id) {}
+
+    default void addCompletedListing(@NotNull CompletedListing listing) {}
+
+    default void setCompletedListingClaimed(@NotNull UUID id, boolean claimed) {}
+
+    default void removeCompletedListing(@NotNull UUID id) {}
+}
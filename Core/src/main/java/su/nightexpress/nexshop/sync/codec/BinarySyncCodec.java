@@ -0,0 +1,310 @@
+package su.nightexpress.nexshop.sync.codec;
+
+import com.google.gson.*;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compact binary encoding of the message JSON tree.
+ * <p>
+ * Numbers are written as zigzag varints when they are whole, strings (including object keys) go to a per-message string table,
+ * so repeated field names, shop and product ids are written once and referenced by index after.
+ * Strings longer than the threshold, such as serialized items, are deflated when it makes them smaller.
+ */
+public class BinarySyncCodec implements SyncCodec {
+
+    public static final int VERSION = 1;
+
+    private static final byte TAG_NULL   = 0;
+    private static final byte TAG_FALSE  = 1;
+    private static final byte TAG_TRUE   = 2;
+    private static final byte TAG_INT    = 3;
+    private static final byte TAG_DOUBLE = 4;
+    private static final byte TAG_STRING = 5;
+    private static final byte TAG_ARRAY  = 6;
+    private static final byte TAG_OBJECT = 7;
+
+    // String header: (index << 1) for table references, (length << 2) | 1 for plain literals, (length << 2) | 3 for deflated ones.
+    private static final int STRING_LITERAL = 1;
+    private static final int STRING_DEFLATE = 2;
+
+    private static final long MAX_EXACT_DOUBLE = 1L << 53;
+
+    private final int compressThreshold;
+
+    /**
+     * @param compressThreshold Min. UTF-8 length of a string to try deflate on. Zero or below disables compression.
+     */
+    public BinarySyncCodec(int compressThreshold) {
+        this.compressThreshold = compressThreshold;
+    }
+
+    @Override
+    public int getVersion() {
+        return VERSION;
+    }
+
+    @Override
+    public byte @NotNull [] encode(@NotNull SyncMessage message) {
+        Writer writer = new Writer(this.compressThreshold);
+        writer.string(message.type());
+        writer.string(message.nodeId());
+        writer.element(message.data());
+        return writer.toByteArray();
+    }
+
+    @Override
+    @NotNull
+    public SyncMessage decode(byte @NotNull [] bytes, int offset) {
+        Reader reader = new Reader(ByteBuffer.wrap(bytes, offset, bytes.length - offset));
+        String type = reader.string();
+        String nodeId = reader.string();
+        JsonElement data = reader.element();
+        if (!data.isJsonObject()) throw new IllegalArgumentException("Message data is not an object");
+
+        return new SyncMessage(type, nodeId, VERSION, data.getAsJsonObject());
+    }
+
+    private static class Writer {
+
+        private final ByteArrayOutputStream out;
+        private final Map<String, Integer>  strings;
+        private final int                   compressThreshold;
+
+        Writer(int compressThreshold) {
+            this.out = new ByteArrayOutputStream(256);
+            this.strings = new HashMap<>();
+            this.compressThreshold = compressThreshold;
+        }
+
+        byte[] toByteArray() {
+            return this.out.toByteArray();
+        }
+
+        void element(@NotNull JsonElement element) {
+            if (element.isJsonObject()) {
+                JsonObject object = element.getAsJsonObject();
+                this.out.write(TAG_OBJECT);
+                this.varint(object.size());
+                object.entrySet().forEach(entry -> {
+                    this.string(entry.getKey());
+                    this.element(entry.getValue());
+                });
+            }
+            else if (element.isJsonArray()) {
+                JsonArray array = element.getAsJsonArray();
+                this.out.write(TAG_ARRAY);
+                this.varint(array.size());
+                array.forEach(this::element);
+            }
+            else if (element.isJsonPrimitive()) {
+                JsonPrimitive primitive = element.getAsJsonPrimitive();
+                if (primitive.isBoolean()) {
+                    this.out.write(primitive.getAsBoolean() ? TAG_TRUE : TAG_FALSE);
+                }
+                else if (primitive.isNumber()) {
+                    this.number(primitive.getAsNumber());
+                }
+                else {
+                    this.out.write(TAG_STRING);
+                    this.string(primitive.getAsString());
+                }
+            }
+            else this.out.write(TAG_NULL);
+        }
+
+        private void number(@NotNull Number number) {
+            if (number instanceof Integer || number instanceof Long || number instanceof Short || number instanceof Byte) {
+                this.wholeNumber(number.longValue());
+                return;
+            }
+
+            // Lazily parsed numbers of decoded JSON.
+            if (!(number instanceof Double || number instanceof Float)) {
+                String raw = number.toString();
+                if (raw.indexOf('.') < 0 && raw.indexOf('e') < 0 && raw.indexOf('E') < 0) {
+                    try {
+                        this.wholeNumber(Long.parseLong(raw));
+                        return;
+                    }
+                    catch (NumberFormatException ignored) {}
+                }
+            }
+
+            double value = number.doubleValue();
+            if (value == Math.rint(value) && Math.abs(value) < MAX_EXACT_DOUBLE) {
+                this.wholeNumber((long) value);
+                return;
+            }
+
+            this.out.write(TAG_DOUBLE);
+            long bits = Double.doubleToRawLongBits(value);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                this.out.write((int) (bits >>> shift));
+            }
+        }
+
+        private void wholeNumber(long value) {
+            this.out.write(TAG_INT);
+            this.varint((value << 1) ^ (value >> 63));
+        }
+
+        void string(@NotNull String string) {
+            Integer index = this.strings.get(string);
+            if (index != null) {
+                this.varint((long) index << 1);
+                return;
+            }
+            this.strings.put(string, this.strings.size());
+
+            byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+            if (this.compressThreshold > 0 && bytes.length >= this.compressThreshold) {
+                byte[] deflated = deflate(bytes);
+                if (deflated.length < bytes.length) {
+                    this.varint(((long) deflated.length << 2) | STRING_LITERAL | STRING_DEFLATE);
+                    this.varint(bytes.length);
+                    this.out.write(deflated, 0, deflated.length);
+                    return;
+                }
+            }
+
+            this.varint(((long) bytes.length << 2) | STRING_LITERAL);
+            this.out.write(bytes, 0, bytes.length);
+        }
+
+        private void varint(long value) {
+            while ((value & ~0x7FL) != 0L) {
+                this.out.write((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            this.out.write((int) value);
+        }
+
+        @NotNull
+        private static byte[] deflate(byte[] bytes) {
+            Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+            try {
+                deflater.setInput(bytes);
+                deflater.finish();
+
+                ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 2);
+                byte[] chunk = new byte[1024];
+                while (!deflater.finished()) {
+                    int length = deflater.deflate(chunk);
+                    out.write(chunk, 0, length);
+                }
+                return out.toByteArray();
+            }
+            finally {
+                deflater.end();
+            }
+        }
+    }
+
+    private static class Reader {
+
+        private final ByteBuffer   buffer;
+        private final List<String> strings;
+
+        Reader(@NotNull ByteBuffer buffer) {
+            this.buffer = buffer;
+            this.strings = new ArrayList<>();
+        }
+
+        @NotNull
+        JsonElement element() {
+            byte tag = this.buffer.get();
+            return switch (tag) {
+                case TAG_NULL -> JsonNull.INSTANCE;
+                case TAG_FALSE -> new JsonPrimitive(false);
+                case TAG_TRUE -> new JsonPrimitive(true);
+                case TAG_INT -> {
+                    long raw = this.varint();
+                    yield new JsonPrimitive((raw >>> 1) ^ -(raw & 1));
+                }
+                case TAG_DOUBLE -> new JsonPrimitive(this.buffer.getDouble());
+                case TAG_STRING -> new JsonPrimitive(this.string());
+                case TAG_ARRAY -> {
+                    int size = (int) this.varint();
+                    JsonArray array = new JsonArray();
+                    for (int index = 0; index < size; index++) {
+                        array.add(this.element());
+                    }
+                    yield array;
+                }
+                case TAG_OBJECT -> {
+                    int size = (int) this.varint();
+                    JsonObject object = new JsonObject();
+                    for (int index = 0; index < size; index++) {
+                        String key = this.string();
+                        object.add(key, this.element());
+                    }
+                    yield object;
+                }
+                default -> throw new IllegalArgumentException("Unknown value tag: " + tag);
+            };
+        }
+
+        @NotNull
+        String string() {
+            long header = this.varint();
+            if ((header & STRING_LITERAL) == 0) {
+                return this.strings.get((int) (header >>> 1));
+            }
+
+            int rawLength = (header & STRING_DEFLATE) != 0 ? (int) this.varint() : -1;
+            byte[] bytes = new byte[(int) (header >>> 2)];
+            this.buffer.get(bytes);
+            if (rawLength >= 0) {
+                bytes = inflate(bytes, rawLength);
+            }
+
+            String string = new String(bytes, StandardCharsets.UTF_8);
+            this.strings.add(string);
+            return string;
+        }
+
+        private long varint() {
+            long value = 0L;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = this.buffer.get();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) return value;
+            }
+            throw new IllegalArgumentException("Malformed varint");
+        }
+
+        @NotNull
+        private static byte[] inflate(byte[] bytes, int rawLength) {
+            Inflater inflater = new Inflater(true);
+            try {
+                inflater.setInput(bytes);
+                byte[] raw = new byte[rawLength];
+                int read = 0;
+                while (read < rawLength && !inflater.finished()) {
+                    int length = inflater.inflate(raw, read, rawLength - read);
+                    if (length == 0 && (inflater.needsInput() || inflater.needsDictionary())) break;
+                    read += length;
+                }
+                if (read != rawLength) throw new IllegalArgumentException("Corrupted compressed string");
+                return raw;
+            }
+            catch (DataFormatException exception) {
+                throw new IllegalArgumentException("Corrupted compressed string", exception);
+            }
+            finally {
+                inflater.end();
+            }
+        }
+    }
+}
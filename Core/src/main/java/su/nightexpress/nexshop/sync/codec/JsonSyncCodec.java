@@ -0,0 +1,50 @@
+package su.nightexpress.nexshop.sync.codec;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Plain JSON messages, the format used before binary codecs were added. Headerless, so older nodes can read them.
+ */
+public class JsonSyncCodec implements SyncCodec {
+
+    public static final int VERSION = 0;
+
+    private final Gson gson;
+
+    public JsonSyncCodec(@NotNull Gson gson) {
+        this.gson = gson;
+    }
+
+    @Override
+    public int getVersion() {
+        return VERSION;
+    }
+
+    @Override
+    public byte @NotNull [] encode(@NotNull SyncMessage message) {
+        JsonObject root = new JsonObject();
+        root.addProperty("type", message.type());
+        root.addProperty("nodeId", message.nodeId());
+        root.addProperty("codec", message.codecVersion());
+        root.add("data", message.data());
+        return this.gson.toJson(root).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    @NotNull
+    public SyncMessage decode(byte @NotNull [] bytes, int offset) {
+        String raw = new String(bytes, offset, bytes.length - offset, StandardCharsets.UTF_8);
+        JsonObject root = this.gson.fromJson(raw, JsonObject.class);
+        if (root == null) throw new IllegalArgumentException("Empty message");
+
+        String nodeId = root.has("nodeId") && !root.get("nodeId").isJsonNull() ? root.get("nodeId").getAsString() : "";
+        int codec = root.has("codec") ? root.get("codec").getAsInt() : VERSION; // Nodes without codec support send JSON only.
+        JsonObject data = root.getAsJsonObject("data");
+
+        return new SyncMessage(root.get("type").getAsString(), nodeId, codec, data == null ? new JsonObject() : data);
+    }
+}
@@ -0,0 +1,19 @@
+package su.nightexpress.nexshop.sync.codec;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Wire format of sync messages. Codecs are identified by version, which is written in the message header by {@link SyncCodecs}.
+ */
+public interface SyncCodec {
+
+    int getVersion();
+
+    byte @NotNull [] encode(@NotNull SyncMessage message);
+
+    /**
+     * @param bytes Message body without the header.
+     * @param offset Index of the first body byte.
+     */
+    @NotNull SyncMessage decode(byte @NotNull [] bytes, int offset);
+}
@@ -0,0 +1,10 @@
+package su.nightexpress.nexshop.sync.codec;
+
+public enum SyncCodecMode {
+    /** Use the latest codec supported by all nodes seen recently. */
+    AUTO,
+    /** Always send JSON messages, readable by nodes of any version. */
+    JSON,
+    /** Always send the latest codec. */
+    LATEST,
+}
@@ -0,0 +1,101 @@
+package su.nightexpress.nexshop.sync.codec;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Frames messages with the codec header and picks the codec to send with.
+ * <p>
+ * Header: [magic][codec version][sender's latest version], JSON messages go without header for older nodes.
+ * Every node advertises its latest codec version in each message, in {@link SyncCodecMode#AUTO} mode the latest
+ * version supported by all nodes heard from recently is used, so mixed-version nodes keep working.
+ */
+public class SyncCodecs {
+
+    public static final byte MAGIC = (byte) 0xB5;
+
+    private static final int HEADER_SIZE = 3;
+
+    private final Map<Integer, SyncCodec> codecs;
+    private final Map<String, Peer>       peers;
+    private final SyncCodec               json;
+    private final SyncCodec               latest;
+    private final SyncCodecMode           mode;
+    private final long                    peerTimeout;
+
+    public SyncCodecs(@NotNull SyncCodec json, @NotNull SyncCodec latest, @NotNull SyncCodecMode mode, long peerTimeout) {
+        this.codecs = new ConcurrentHashMap<>();
+        this.peers = new ConcurrentHashMap<>();
+        this.json = json;
+        this.latest = latest;
+        this.mode = mode;
+        this.peerTimeout = peerTimeout;
+        this.register(json);
+        this.register(latest);
+    }
+
+    private record Peer(int version, long lastSeen) {}
+
+    public void register(@NotNull SyncCodec codec) {
+        this.codecs.put(codec.getVersion(), codec);
+    }
+
+    public int getLatestVersion() {
+        return this.latest.getVersion();
+    }
+
+    /**
+     * Remembers codec version advertised by another node.
+     */
+    public void onPeerMessage(@NotNull String nodeId, int version) {
+        if (nodeId.isEmpty()) return;
+
+        this.peers.put(nodeId, new Peer(version, System.currentTimeMillis()));
+    }
+
+    @NotNull
+    public SyncCodec select() {
+        return switch (this.mode) {
+            case JSON -> this.json;
+            case LATEST -> this.latest;
+            case AUTO -> {
+                long now = System.currentTimeMillis();
+                this.peers.values().removeIf(peer -> now - peer.lastSeen() > this.peerTimeout);
+
+                int version = this.latest.getVersion();
+                for (Peer peer : this.peers.values()) {
+                    version = Math.min(version, peer.version());
+                }
+                yield this.codecs.getOrDefault(version, this.json);
+            }
+        };
+    }
+
+    public byte @NotNull [] encode(@NotNull SyncMessage message) {
+        SyncCodec codec = this.select();
+        byte[] body = codec.encode(message);
+        if (codec == this.json) return body;
+
+        byte[] bytes = new byte[HEADER_SIZE + body.length];
+        bytes[0] = MAGIC;
+        bytes[1] = (byte) codec.getVersion();
+        bytes[2] = (byte) message.codecVersion();
+        System.arraycopy(body, 0, bytes, HEADER_SIZE, body.length);
+        return bytes;
+    }
+
+    @NotNull
+    public SyncMessage decode(byte @NotNull [] bytes) {
+        if (bytes.length < HEADER_SIZE || bytes[0] != MAGIC) {
+            return this.json.decode(bytes, 0);
+        }
+
+        SyncCodec codec = this.codecs.get((int) bytes[1]);
+        if (codec == null) throw new IllegalArgumentException("Unsupported codec version: " + bytes[1]);
+
+        SyncMessage message = codec.decode(bytes, HEADER_SIZE);
+        return new SyncMessage(message.type(), message.nodeId(), bytes[2], message.data());
+    }
+}
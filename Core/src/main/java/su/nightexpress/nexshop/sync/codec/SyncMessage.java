@@ -0,0 +1,12 @@
+package su.nightexpress.nexshop.sync.codec;
+
+import com.google.gson.JsonObject;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Decoded sync message.
+ * @param codecVersion Latest codec version the sender is able to decode, see {@link SyncCodecs}.
+ */
+public record SyncMessage(@NotNull String type, @NotNull String nodeId, int codecVersion, @NotNull JsonObject data) {
+
+}
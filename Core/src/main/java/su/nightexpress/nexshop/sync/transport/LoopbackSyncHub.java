@@ -0,0 +1,94 @@
+package su.nightexpress.nexshop.sync.transport;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process message bus for several simulated nodes in one JVM, so sync logic can be load tested and benchmarked without Redis.
+ * Like Redis pub/sub, every message is delivered to all connected transports, including the sender, in the order it was sent.
+ */
+public class LoopbackSyncHub {
+
+    private final List<LoopbackSyncTransport> transports;
+    private final AtomicLong                  sentMessages;
+    private final AtomicLong                  deliveredMessages;
+    private final AtomicLong                  pendingMessages;
+    private final Object                      deliveryLock;
+
+    public LoopbackSyncHub() {
+        this.transports = new CopyOnWriteArrayList<>();
+        this.sentMessages = new AtomicLong();
+        this.deliveredMessages = new AtomicLong();
+        this.pendingMessages = new AtomicLong();
+        this.deliveryLock = new Object();
+    }
+
+    /**
+     * @return New transport of a simulated node. It receives messages once started.
+     */
+    @NotNull
+    public LoopbackSyncTransport connect() {
+        return new LoopbackSyncTransport(this);
+    }
+
+    public long getSentMessages() {
+        return this.sentMessages.get();
+    }
+
+    public long getDeliveredMessages() {
+        return this.deliveredMessages.get();
+    }
+
+    public long getPendingMessages() {
+        return this.pendingMessages.get();
+    }
+
+    /**
+     * Waits until all sent messages are handled by all receivers, to measure convergence time.
+     * @return False if the timeout elapsed first.
+     */
+    public boolean awaitDelivery(long timeout, @NotNull TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (this.deliveryLock) {
+            while (this.pendingMessages.get() > 0L) {
+                long left = deadline - System.nanoTime();
+                if (left <= 0L) return false;
+
+                TimeUnit.NANOSECONDS.timedWait(this.deliveryLock, left);
+            }
+        }
+        return true;
+    }
+
+    void register(@NotNull LoopbackSyncTransport transport) {
+        this.transports.add(transport);
+    }
+
+    void unregister(@NotNull LoopbackSyncTransport transport, int droppedMessages) {
+        this.transports.remove(transport);
+        this.onHandled(droppedMessages, false);
+    }
+
+    void broadcast(@NotNull List<byte[]> messages) {
+        this.sentMessages.addAndGet(messages.size());
+        this.transports.forEach(transport -> {
+            this.pendingMessages.addAndGet(messages.size());
+            transport.enqueue(messages);
+        });
+    }
+
+    void onHandled(int amount, boolean delivered) {
+        if (amount <= 0) return;
+
+        if (delivered) this.deliveredMessages.addAndGet(amount);
+        if (this.pendingMessages.addAndGet(-amount) > 0L) return;
+
+        synchronized (this.deliveryLock) {
+            this.deliveryLock.notifyAll();
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package su.nightexpress.nexshop.sync.transport;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+
+/**
+ * Transport of a simulated node connected to a {@link LoopbackSyncHub}. Messages are handed to the receiver on a dedicated thread of the node.
+ */
+public class LoopbackSyncTransport implements SyncTransport {
+
+    private final LoopbackSyncHub hub;
+
+    private ExecutorService  executor;
+    private Consumer<byte[]> receiver;
+
+    LoopbackSyncTransport(@NotNull LoopbackSyncHub hub) {
+        this.hub = hub;
+    }
+
+    @Override
+    public void start(@NotNull Consumer<byte[]> receiver) {
+        this.receiver = receiver;
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ExcellentShop-LoopbackSync");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.hub.register(this);
+    }
+
+    @Override
+    public void shutdown() {
+        if (this.executor == null) return;
+
+        int dropped = this.executor.shutdownNow().size();
+        this.hub.unregister(this, dropped);
+    }
+
+    @Override
+    public void send(@NotNull List<byte[]> messages) {
+        this.hub.broadcast(List.copyOf(messages));
+    }
+
+    void enqueue(@NotNull List<byte[]> messages) {
+        for (byte[] message : messages) {
+            try {
+                this.executor.execute(() -> {
+                    try {
+                        this.receiver.accept(message);
+                    }
+                    finally {
+                        this.hub.onHandled(1, true);
+                    }
+                });
+            }
+            catch (RejectedExecutionException exception) {
+                this.hub.onHandled(1, false); // Shut down meanwhile.
+            }
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package su.nightexpress.nexshop.sync.transport;
+
+import org.jetbrains.annotations.NotNull;
+import su.nightexpress.nexshop.ShopPlugin;
+import su.nightexpress.nightcore.lib.redis.jedis.BinaryJedisPubSub;
+import su.nightexpress.nightcore.lib.redis.jedis.Jedis;
+import su.nightexpress.nightcore.lib.redis.jedis.JedisPool;
+import su.nightexpress.nightcore.lib.redis.jedis.Pipeline;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Redis pub/sub channel. Messages sent while a node is disconnected are lost for it.
+ */
+public class RedisPubSubTransport implements RedisSyncTransport {
+
+    private final ShopPlugin plugin;
+    private final JedisPool  pool;
+    private final byte[]     channel;
+
+    private BinaryJedisPubSub subscriber;
+    private Thread            subscriberThread;
+    private volatile boolean  active;
+
+    public RedisPubSubTransport(@NotNull ShopPlugin plugin, @NotNull JedisPool pool, @NotNull String channel) {
+        this.plugin = plugin;
+        this.pool = pool;
+        this.channel = channel.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void start(@NotNull Consumer<byte[]> receiver) {
+        this.active = true;
+        this.subscriber = new BinaryJedisPubSub() {
+            @Override
+            public void onMessage(byte[] channel, byte[] message) { receiver.accept(message); }
+        };
+
+        this.subscriberThread = new Thread(() -> {
+            while (this.active) {
+                try (Jedis jedis = this.pool.getResource()) {
+                    jedis.subscribe(this.subscriber, this.channel);
+                }
+                catch (Exception e) {
+                    this.plugin.error("Redis subscriber error: " + e.getMessage());
+                    if (this.active) {
+                        this.plugin.info("Attempting to reconnect Redis subscriber in 5 seconds...");
+                        try {
+                            Thread.sleep(5000);
+                        } catch (InterruptedException ie) {
+                            Thread.currentThread().interrupt();
+                            break;
+                        }
+                    }
+                }
+            }
+        }, "ExcellentShop-RedisSubscriber");
+
+        this.subscriberThread.setDaemon(true);
+        this.subscriberThread.start();
+    }
+
+    @Override
+    public void shutdown() {
+        this.active = false;
+        try {
+            if (this.subscriber != null) this.subscriber.unsubscribe();
+        } catch (Exception ignored) {}
+        try {
+            if (this.subscriberThread != null) this.subscriberThread.interrupt();
+        } catch (Exception ignored) {}
+    }
+
+    @Override
+    public void send(@NotNull List<byte[]> messages) {
+        try (Jedis jedis = this.pool.getResource()) {
+            if (messages.size() == 1) {
+                jedis.publish(this.channel, messages.getFirst());
+                return;
+            }
+
+            Pipeline pipeline = jedis.pipelined();
+            messages.forEach(message -> this.send(pipeline, message));
+            pipeline.sync();
+        }
+    }
+
+    @Override
+    public void send(@NotNull Pipeline pipeline, byte @NotNull [] message) {
+        pipeline.publish(this.channel, message);
+    }
+}
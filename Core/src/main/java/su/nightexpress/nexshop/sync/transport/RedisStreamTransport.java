@@ -0,0 +1,263 @@
+package su.nightexpress.nexshop.sync.transport;
+
+import org.jetbrains.annotations.NotNull;
+import su.nightexpress.nexshop.ShopPlugin;
+import su.nightexpress.nightcore.lib.redis.jedis.Jedis;
+import su.nightexpress.nightcore.lib.redis.jedis.JedisPool;
+import su.nightexpress.nightcore.lib.redis.jedis.Pipeline;
+import su.nightexpress.nightcore.lib.redis.jedis.StreamEntryID;
+import su.nightexpress.nightcore.lib.redis.jedis.exceptions.JedisDataException;
+import su.nightexpress.nightcore.lib.redis.jedis.params.XAddParams;
+import su.nightexpress.nightcore.lib.redis.jedis.params.XReadGroupParams;
+import su.nightexpress.nightcore.lib.redis.jedis.resps.StreamEntry;
+import su.nightexpress.nightcore.lib.redis.jedis.resps.StreamGroupInfo;
+import su.nightexpress.nightcore.lib.redis.jedis.resps.StreamInfo;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+
+/**
+ * Durable alternative to pub/sub: messages are appended to a Redis stream, and every node reads it with its own consumer group.
+ * <p>
+ * Read position of each group is kept by Redis, so after a reconnect or restart a node continues right after the last message it acknowledged,
+ * instead of missing everything sent meanwhile. Messages delivered but not acknowledged before a disconnect are read again first.
+ * <p>
+ * The stream is trimmed to an approximate max. length on every append. If a node was away for so long that its unread messages
+ * were trimmed, it can not catch up from the stream and the gap handler is called instead.
+ */
+public class RedisStreamTransport implements RedisSyncTransport {
+
+    private static final String GROUP_PREFIX      = "node:";
+    private static final byte[] FIELD_MESSAGE     = "m".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] ID_PENDING        = "0".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] ID_NEW            = ">".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] ID_STREAM_END     = "$".getBytes(StandardCharsets.UTF_8);
+    private static final int    READ_COUNT        = 256;
+    private static final int    READ_BLOCK_MILLIS = 2000; // Must stay below the socket timeout.
+    private static final long   MIN_BACKOFF       = 1000L;
+    private static final String MAX_DELETED_ID    = "max-deleted-entry-id"; // Redis 7+.
+
+    private final ShopPlugin       plugin;
+    private final JedisPool        pool;
+    private final String           streamKey;
+    private final byte[]           streamKeyBytes;
+    private final String           group;
+    private final byte[]           groupBytes;
+    private final byte[]           consumerBytes;
+    private final XAddParams       appendParams;
+    private final long             maxBackoff;
+    private final boolean          dropGroup;
+    private final Runnable         gapHandler;
+
+    private volatile Map<String, Long> lags; // Node id to amount of messages its group has not read yet, -1 if unknown.
+    private volatile boolean           active;
+    private Consumer<byte[]>           receiver;
+    private Thread                     readerThread;
+
+    /**
+     * @param dropGroup Whether to delete the consumer group of this node on shutdown, so it does not stay in Redis forever when node id is not persistent.
+     * @param gapHandler Called on the reader thread when messages this node has not read were already trimmed.
+     */
+    public RedisStreamTransport(@NotNull ShopPlugin plugin,
+                                @NotNull JedisPool pool,
+                                @NotNull String streamKey,
+                                @NotNull String nodeId,
+                                long maxLength,
+                                long maxBackoff,
+                                boolean dropGroup,
+                                @NotNull Runnable gapHandler) {
+        this.plugin = plugin;
+        this.pool = pool;
+        this.streamKey = streamKey;
+        this.streamKeyBytes = streamKey.getBytes(StandardCharsets.UTF_8);
+        this.group = GROUP_PREFIX + nodeId;
+        this.groupBytes = this.group.getBytes(StandardCharsets.UTF_8);
+        this.consumerBytes = nodeId.getBytes(StandardCharsets.UTF_8);
+        this.appendParams = XAddParams.xAddParams().maxLen(Math.max(1L, maxLength)).approximateTrimming();
+        this.maxBackoff = Math.max(MIN_BACKOFF, maxBackoff);
+        this.dropGroup = dropGroup;
+        this.gapHandler = gapHandler;
+        this.lags = Collections.emptyMap();
+    }
+
+    @Override
+    public void start(@NotNull Consumer<byte[]> receiver) {
+        this.receiver = receiver;
+        this.active = true;
+        this.readerThread = new Thread(this::readLoop, "ExcellentShop-RedisStreamReader");
+        this.readerThread.setDaemon(true);
+        this.readerThread.start();
+    }
+
+    @Override
+    public void shutdown() {
+        this.active = false;
+        if (this.readerThread != null) this.readerThread.interrupt();
+        if (!this.dropGroup) return;
+
+        try (Jedis jedis = this.pool.getResource()) {
+            jedis.xgroupDestroy(this.streamKeyBytes, this.groupBytes);
+        }
+        catch (Exception ignored) {}
+    }
+
+    @Override
+    public void send(@NotNull List<byte[]> messages) {
+        try (Jedis jedis = this.pool.getResource()) {
+            if (messages.size() == 1) {
+                jedis.xadd(this.streamKeyBytes, this.appendParams, Map.of(FIELD_MESSAGE, messages.getFirst()));
+                return;
+            }
+
+            Pipeline pipeline = jedis.pipelined();
+            messages.forEach(message -> this.send(pipeline, message));
+            pipeline.sync();
+        }
+    }
+
+    @Override
+    public void send(@NotNull Pipeline pipeline, byte @NotNull [] message) {
+        pipeline.xadd(this.streamKeyBytes, this.appendParams, Map.of(FIELD_MESSAGE, message));
+    }
+
+    /**
+     * @return Node id to amount of stream messages its consumer group has not read yet, as of the last {@link #refreshLags()}.
+     * Value is -1 if Redis can not tell it (versions before 7.0).
+     */
+    @NotNull
+    public Map<String, Long> getLags() {
+        return this.lags;
+    }
+
+    public void refreshLags() {
+        try (Jedis jedis = this.pool.getResource()) {
+            Map<String, Long> lags = new HashMap<>();
+            for (StreamGroupInfo info : jedis.xinfoGroups(this.streamKey)) {
+                if (!info.getName().startsWith(GROUP_PREFIX)) continue;
+
+                Object lag = info.getGroupInfo().get("lag");
+                lags.put(info.getName().substring(GROUP_PREFIX.length()), lag instanceof Number number ? number.longValue() : -1L);
+            }
+            this.lags = lags;
+        }
+        catch (Exception exception) {
+            this.plugin.warn("Could not read Redis stream lag: " + exception.getMessage());
+        }
+    }
+
+    private void readLoop() {
+        long backoff = MIN_BACKOFF;
+
+        while (this.active) {
+            try (Jedis jedis = this.pool.getResource()) {
+                this.joinGroup(jedis);
+
+                // Messages delivered before the disconnect but never acknowledged are read first, then the new ones.
+                byte[] from = ID_PENDING;
+                while (this.active) {
+                    byte[] lastId = this.read(jedis, from);
+                    if (from != ID_NEW) {
+                        from = lastId == null ? ID_NEW : lastId;
+                    }
+                    backoff = MIN_BACKOFF;
+                }
+            }
+            catch (Exception exception) {
+                if (!this.active) break;
+
+                long delay = backoff + ThreadLocalRandom.current().nextLong(backoff / 4 + 1);
+                this.plugin.error("Redis stream reader error: " + exception.getMessage() + ". Reconnecting in " + delay + " ms...");
+                try {
+                    Thread.sleep(delay);
+                }
+                catch (InterruptedException interruptedException) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+                backoff = Math.min(backoff * 2, this.maxBackoff);
+            }
+        }
+    }
+
+    private void joinGroup(@NotNull Jedis jedis) {
+        try {
+            // New nodes load everything from the database on startup, so only messages sent after that are needed.
+            jedis.xgroupCreate(this.streamKeyBytes, this.groupBytes, ID_STREAM_END, true);
+            return;
+        }
+        catch (JedisDataException exception) {
+            String error = String.valueOf(exception.getMessage());
+            if (!error.contains("BUSYGROUP")) throw exception;
+        }
+
+        StreamInfo streamInfo = jedis.xinfoStream(this.streamKey);
+        StreamEntryID lastRead = jedis.xinfoGroups(this.streamKey).stream()
+            .filter(info -> info.getName().equals(this.group))
+            .map(StreamGroupInfo::getLastDeliveredId)
+            .findFirst().orElse(null);
+
+        if (lastRead != null && hasGap(streamInfo, lastRead)) {
+            this.plugin.warn("Some sync messages were trimmed from the Redis stream before this node could read them.");
+            this.gapHandler.run();
+        }
+    }
+
+    /**
+     * Trimming also removes messages that were already read, so the last read message being gone does not mean a gap by itself.
+     * @return True if messages newer than the last read one were trimmed.
+     */
+    private static boolean hasGap(@NotNull StreamInfo streamInfo, @NotNull StreamEntryID lastRead) {
+        StreamEntry first = streamInfo.getFirstEntry();
+        if (first == null || lastRead.compareTo(first.getID()) >= 0) return false; // Only read messages could be trimmed.
+
+        // Newest trimmed message is known since Redis 7, messages are lost only if it was not read yet.
+        Object maxDeleted = streamInfo.getStreamInfo().get(MAX_DELETED_ID);
+        if (maxDeleted != null) {
+            String id = maxDeleted instanceof byte[] bytes ? new String(bytes, StandardCharsets.UTF_8) : String.valueOf(maxDeleted);
+            try {
+                return lastRead.compareTo(new StreamEntryID(id)) < 0;
+            }
+            catch (IllegalArgumentException ignored) {
+                // Unknown format, fall back to the check below.
+            }
+        }
+
+        // Older versions do not tell what was trimmed. The first message is the next one after the last read only
+        // if it was the next one generated, which can not be told from its ID, so a gap is assumed.
+        return true;
+    }
+
+    /**
+     * @return ID of the last read entry, or null if there were no entries.
+     */
+    @SuppressWarnings("unchecked")
+    private byte[] read(@NotNull Jedis jedis, byte @NotNull [] from) {
+        XReadGroupParams params = XReadGroupParams.xReadGroupParams().count(READ_COUNT).block(READ_BLOCK_MILLIS);
+        List<Object> response = jedis.xreadGroup(this.groupBytes, this.consumerBytes, params, Map.entry(this.streamKeyBytes, from));
+        if (response == null) return null; // Nothing new within the block time.
+
+        List<byte[]> ids = new ArrayList<>();
+        for (Object stream : response) {
+            List<Object> entries = (List<Object>) ((List<Object>) stream).get(1);
+            for (Object rawEntry : entries) {
+                List<Object> entry = (List<Object>) rawEntry;
+                ids.add((byte[]) entry.get(0));
+
+                List<Object> fields = (List<Object>) entry.get(1);
+                if (fields == null) continue; // Pending entry trimmed meanwhile.
+
+                for (int index = 0; index + 1 < fields.size(); index += 2) {
+                    if (Arrays.equals((byte[]) fields.get(index), FIELD_MESSAGE)) {
+                        this.receiver.accept((byte[]) fields.get(index + 1));
+                    }
+                }
+            }
+        }
+        if (ids.isEmpty()) return null;
+
+        jedis.xack(this.streamKeyBytes, this.groupBytes, ids.toArray(new byte[0][]));
+        return ids.getLast();
+    }
+}
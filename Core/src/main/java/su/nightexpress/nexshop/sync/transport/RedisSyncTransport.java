@@ -0,0 +1,12 @@
+package su.nightexpress.nexshop.sync.transport;
+
+import org.jetbrains.annotations.NotNull;
+import su.nightexpress.nightcore.lib.redis.jedis.Pipeline;
+
+/**
+ * Transport over the same Redis server as the sync cache, so messages can be sent in the same pipeline as cache writes.
+ */
+public interface RedisSyncTransport extends SyncTransport {
+
+    void send(@NotNull Pipeline pipeline, byte @NotNull [] message);
+}
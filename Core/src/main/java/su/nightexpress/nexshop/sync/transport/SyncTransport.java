@@ -0,0 +1,26 @@
+package su.nightexpress.nexshop.sync.transport;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Delivers encoded sync messages between nodes. Transports know nothing about message contents,
+ * encoding and applying are done by {@link su.nightexpress.nexshop.sync.RedisSyncManager} and {@link su.nightexpress.nexshop.sync.SyncMessageHandler}.
+ */
+public interface SyncTransport {
+
+    /**
+     * Starts delivering messages of all nodes, including the ones sent by this node, to the receiver.
+     * Receiver can be called from any thread, but never from two threads at once.
+     */
+    void start(@NotNull Consumer<byte[]> receiver);
+
+    void shutdown();
+
+    /**
+     * Sends messages in the given order. Called off the server thread and may block.
+     */
+    void send(@NotNull List<byte[]> messages) throws Exception;
+}
@@ -0,0 +1,8 @@
+package su.nightexpress.nexshop.sync.transport;
+
+public enum SyncTransportType {
+    /** Redis pub/sub. Messages sent while a node is disconnected are lost for it. */
+    PUBSUB,
+    /** Redis stream with a consumer group per node. Nodes continue from the last read message after reconnect. */
+    STREAMS,
+}